@@ -12,7 +12,6 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
@@ -44,13 +43,26 @@ import org.matsim.core.utils.misc.OptionalTime;
 import org.matsim.pt.transitSchedule.api.*;
 import org.matsim.vehicles.Vehicle;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 
@@ -92,6 +104,12 @@ public class Accessibility {
 	private SwissRailRaptorData raptorData;
 	private TransitSchedule transitSchedule;
 	private DeparturesCache departuresCache;
+	private InitialTransfers initialTransfers;
+	private boolean checkpointing = false;
+	private boolean resume = false;
+	private boolean binaryOutput = false;
+	private int partIndex = 0;
+	private int partCount = 1;
 
 	public Accessibility(String networkFilename, String eventsFilename, String scheduleFilename, String transitNetworkFilename,
 			Map<Coord, Double> attractions, double[] carAMDepTimes, double[] carPMDepTimes,
@@ -129,18 +147,21 @@ public class Accessibility {
 		return false;
 	}
 
-	private static List<ODConnection> buildODConnections(List<Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo>> trees, Map<Id<TransitStopFacility>, Double> accessTimes,
-			Map<Id<TransitStopFacility>, Double> egressTimes) {
+	/**
+	 * @param trees per departure time the travel infos of the egress stops, indexed by the egress stop index of the destinations
+	 * @param accessTimes the access times indexed by the {@link Id#index()} of the start stops
+	 */
+	private static List<ODConnection> buildODConnections(TravelInfo[][] trees, double[] accessTimes, DestinationData destinations, int destination) {
 		List<ODConnection> connections = new ArrayList<>();
+		int fromEgress = destinations.egressOffsets[destination];
+		int toEgress = destinations.egressOffsets[destination + 1];
 
-		for (Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> tree : trees) {
-			for (Map.Entry<Id<TransitStopFacility>, Double> egressEntry : egressTimes.entrySet()) {
-				Id<TransitStopFacility> egressStopId = egressEntry.getKey();
-				Double egressTime = egressEntry.getValue();
-				SwissRailRaptorCore.TravelInfo info = tree.get(egressStopId);
+		for (TravelInfo[] tree : trees) {
+			for (int e = fromEgress; e < toEgress; e++) {
+				TravelInfo info = tree[destinations.egressStops[e]];
 				if (info != null && !info.isWalkOnly()) {
-					Double accessTime = accessTimes.get(info.departureStop);
-					ODConnection connection = new ODConnection(info.ptDepartureTime, info.ptTravelTime, accessTime, egressTime, info.transferCount, info);
+					double accessTime = accessTimes[info.departureStop.index()];
+					ODConnection connection = new ODConnection(info.ptDepartureTime, info.ptTravelTime, accessTime, destinations.egressTimes[e], info.transferCount, info);
 					connections.add(connection);
 				}
 			}
@@ -149,27 +170,25 @@ public class Accessibility {
 		return connections;
 	}
 
-	private static List<ODConnection> buildODConnections(ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache,
-			Map<Id<TransitStopFacility>, Double> accessTimes, Map<Id<TransitStopFacility>, Double> egressTimes) {
+	private static List<ODConnection> buildODConnections(ConcurrentHashMap<Id<TransitStopFacility>, List<List<ODConnection>>> cache,
+			Map<Id<TransitStopFacility>, Double> accessTimes, DestinationData destinations, int destination) {
 		List<ODConnection> connections = new ArrayList<>();
+		int fromEgress = destinations.egressOffsets[destination];
+		int toEgress = destinations.egressOffsets[destination + 1];
 
 		for (Map.Entry<Id<TransitStopFacility>, Double> accessE : accessTimes.entrySet()) {
 			Id<TransitStopFacility> fromStopId = accessE.getKey();
 			double accessTime = accessE.getValue();
-			IdMap<TransitStopFacility, List<ODConnection>> fromConnections = cache.get(fromStopId);
+			List<List<ODConnection>> fromConnections = cache.get(fromStopId);
 			if (fromConnections == null) {
 				log.warn("no connections found for stop " + fromStopId);
 				continue;
 			}
 
-			for (Map.Entry<Id<TransitStopFacility>, Double> egressE : egressTimes.entrySet()) {
-				Id<TransitStopFacility> toStopId = egressE.getKey();
-				double egressTime = egressE.getValue();
-				List<ODConnection> fromToConnections = fromConnections.get(toStopId);
-				if (fromToConnections != null) {
-					for (ODConnection conn : fromToConnections) {
-						connections.add(new ODConnection(conn.departureTime, conn.travelTime, accessTime, egressTime, conn.transferCount, conn.travelInfo));
-					}
+			for (int e = fromEgress; e < toEgress; e++) {
+				double egressTime = destinations.egressTimes[e];
+				for (ODConnection conn : fromConnections.get(destinations.egressStops[e])) {
+					connections.add(new ODConnection(conn.departureTime, conn.travelTime, accessTime, egressTime, conn.transferCount, conn.travelInfo));
 				}
 			}
 
@@ -178,6 +197,28 @@ public class Accessibility {
 		return connections;
 	}
 
+	/**
+	 * Builds the connections from a start stop to all egress stops of the destinations, indexed by the egress stop index.
+	 */
+	private static List<List<ODConnection>> buildStopConnections(List<Map<Id<TransitStopFacility>, TravelInfo>> trees, DestinationData destinations, double ptMaxDepartureTime) {
+		List<List<ODConnection>> connectionsPerStop = new ArrayList<>(destinations.egressStopIds.size());
+		for (Id<TransitStopFacility> egressStopId : destinations.egressStopIds) {
+			List<ODConnection> connections = new ArrayList<>();
+
+			for (Map<Id<TransitStopFacility>, TravelInfo> tree : trees) {
+				TravelInfo info = tree.get(egressStopId);
+				if (info != null && !info.isWalkOnly()) {
+					ODConnection connection = new ODConnection(info.ptDepartureTime, info.ptTravelTime, 0, 0, info.transferCount, info);
+					connections.add(connection);
+				}
+			}
+
+			connections = RooftopUtils.sortAndFilterConnections(connections, ptMaxDepartureTime);
+			connectionsPerStop.add(connections);
+		}
+		return connectionsPerStop;
+	}
+
 	private static Collection<TransitStopFacility> findStopCandidates(Coord coord, SwissRailRaptor raptor, RaptorParameters parameters) {
 		Collection<TransitStopFacility> stops = raptor.getUnderlyingData().findNearbyStops(coord.getX(), coord.getY(), parameters.getSearchRadius());
 		if (stops.isEmpty()) {
@@ -188,6 +229,45 @@ public class Accessibility {
 		return stops;
 	}
 
+	/**
+	 * Calculates the trees for all departure times from <code>startTime</code> to <code>endTime</code> in steps of <code>stepSize</code>, as a profile over the departure time.
+	 * <p>
+	 * The tree for a departure time only differs from the tree of an earlier departure time if a departure that was reachable for the earlier one is missed by the later one. Such a departure
+	 * must happen at one of the start stops, or at a stop reachable from them by an initial transfer, including the transfers given by the minimal transfer times of the schedule. As long as no
+	 * such departure happens between two steps, the raptor is not queried again and the tree of the last query is re-used. So only one raptor query is required per departure event instead of
+	 * one per step, while the resulting list of trees is the same.
+	 */
+	static List<Map<Id<TransitStopFacility>, TravelInfo>> calcProfileTrees(Collection<TransitStopFacility> fromStops, double startTime, double endTime, double stepSize,
+			SwissRailRaptor raptor, RaptorParameters parameters, DeparturesCache departuresCache, InitialTransfers initialTransfers) {
+		InitialTransfers.BoardingStops boardingStops = initialTransfers.getBoardingStops(fromStops, raptor.getUnderlyingData());
+		double maxTransferTime = boardingStops.maxTransferTime();
+		double[] departures = departuresCache.getDepartureTimes(boardingStops.stopIds(), startTime, endTime + maxTransferTime);
+
+		List<Map<Id<TransitStopFacility>, TravelInfo>> trees = new ArrayList<>();
+		Map<Id<TransitStopFacility>, TravelInfo> tree = null;
+		double lastQueryTime = startTime;
+		for (double time = startTime; time < endTime; time += stepSize) {
+			if (tree == null || hasDeparture(departures, lastQueryTime, time + maxTransferTime)) {
+				tree = raptor.calcTree(fromStops, time, parameters, null);
+				lastQueryTime = time;
+			}
+			trees.add(tree);
+		}
+		return trees;
+	}
+
+	/**
+	 * @return <code>true</code> if the sorted array of departure times contains a departure within [fromTime, toTime).
+	 */
+	private static boolean hasDeparture(double[] departures, double fromTime, double toTime) {
+		int idx = Arrays.binarySearch(departures, fromTime);
+		if (idx >= 0) {
+			return true;
+		}
+		idx = -(idx + 1);
+		return idx < departures.length && departures[idx] < toTime;
+	}
+
 	public void setXy2LinksPredicate(Predicate<Link> xy2linksPredicate) {
 		this.xy2linksPredicate = xy2linksPredicate;
 	}
@@ -196,6 +276,39 @@ public class Accessibility {
 		this.threadCount = threadCount;
 	}
 
+	/**
+	 * If set, a journal of the completed blocks is written to <code>&lt;csvOutputFile&gt;.checkpoint</code>, so an interrupted calculation can be resumed.
+	 */
+	public void setCheckpointing(boolean checkpointing) {
+		this.checkpointing = checkpointing;
+	}
+
+	/**
+	 * If set, the blocks listed in the checkpoint journal of an earlier calculation are skipped and the results are appended to the existing output files. Implies checkpointing.
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	/**
+	 * If set, the results are additionally written to a binary columnar file alongside the csv file, see {@link AccessibilityBinaryFile}.
+	 */
+	public void setBinaryOutput(boolean binaryOutput) {
+		this.binaryOutput = binaryOutput;
+	}
+
+	/**
+	 * Only calculates the part <code>partIndex</code> (0-based) of <code>partCount</code> disjoint ranges of blocks, allowing to distribute the calculation over multiple machines.
+	 * The binary outputs of all parts can be merged with {@link AccessibilityBinaryFile#merge(List, File, File)}.
+	 */
+	public void setPart(int partIndex, int partCount) {
+		if (partCount < 1 || partIndex < 0 || partIndex >= partCount) {
+			throw new IllegalArgumentException("Invalid part " + partIndex + " of " + partCount);
+		}
+		this.partIndex = partIndex;
+		this.partCount = partCount;
+	}
+
 	public void calculateAccessibility(List<Coord> coordinates, Modes[] modes, File csvOutputFile) {
 		boolean requiresCar = requiresCar(modes);
 
@@ -224,128 +337,201 @@ public class Accessibility {
 				));
 			}
 		}
+		log.info("pre-calculate destination data...");
+		DestinationData destinations = new DestinationData(zoneData, this.zones, raptors[0], RaptorUtils.createParameters(this.config));
 
-		try (BufferedWriter writer = IOUtils.getBufferedWriter(csvOutputFile.getAbsolutePath())) {
-			writer.write("X,Y");
-			for (Modes mode : modes) {
-				writer.write(',');
-				writer.write(mode.id);
+		String[] modeIds = new String[modes.length];
+		for (int m = 0; m < modes.length; m++) {
+			modeIds[m] = modes[m].id;
+		}
+		boolean checkpointing = this.checkpointing || this.resume;
+		File checkpointFile = new File(csvOutputFile.getPath() + ".checkpoint");
+		File binaryOutputFile = AccessibilityBinaryFile.getBinaryFile(csvOutputFile);
+
+		int blockSize = 10_000;
+		Map<BlockKey, BlockData> blocks = getBlocks(coordinates, blockSize);
+		log.info("Divided " + coordinates.size() + " coordinates into " + blocks.size() + " blocks.");
+		Set<BlockKey> partBlocks = getPartBlocks(blocks.keySet());
+		if (this.partCount > 1) {
+			log.info("Calculating part " + (this.partIndex + 1) + "/" + this.partCount + " with " + partBlocks.size() + " blocks.");
+		}
+
+		try {
+			Checkpoint checkpoint = new Checkpoint();
+			if (this.resume && checkpointFile.exists()) {
+				checkpoint = Checkpoint.read(checkpointFile);
+				log.info("Resuming calculation, " + checkpoint.completedBlocks.size() + " blocks are already completed according to " + checkpointFile.getAbsolutePath());
+				if (this.binaryOutput && checkpoint.binaryLength == 0 && !checkpoint.completedBlocks.isEmpty()) {
+					throw new IllegalStateException("Cannot write binary output when resuming a calculation that was started without binary output.");
+				}
 			}
-			writer.write(IOUtils.NATIVE_NEWLINE);
-
-			int blockSize = 10_000;
-			Map<BlockKey, BlockData> blocks = getBlocks(coordinates, blockSize);
-			log.info("Divided " + coordinates.size() + " coordinates into " + blocks.size() + " blocks.");
-
-			int blockCnt = 0;
-			for (Map.Entry<BlockKey, BlockData> e : blocks.entrySet()) {
-				BlockKey key = e.getKey();
-				BlockData block = e.getValue();
-				blockCnt++;
-				log.info("Block " + blockCnt + "/" + blocks.size() + ": " + block.toString(key, blockSize));
-				int coordCount = block.coords.size();
-				int stopCount = block.stops.size();
-				Collection<Tuple<Coord, double[]>> results;
-				if ((int) (coordCount * 1.3) > stopCount) {
-					results = doOptimizedCalculation(block, carGraph, xy2linksNetwork, zoneData, raptors, modes);
-				} else {
-					results = doBasicCalculation(block, carGraph, xy2linksNetwork, zoneData, raptors, modes);
+
+			FileOutputStream csvStream = null;
+			BufferedWriter writer;
+			if (checkpointing) {
+				if (csvOutputFile.getName().endsWith(".gz")) {
+					throw new IllegalArgumentException("Checkpointing requires an uncompressed csv output file, but got " + csvOutputFile.getAbsolutePath());
 				}
+				csvStream = new FileOutputStream(csvOutputFile, true);
+				csvStream.getChannel().truncate(checkpoint.csvLength);
+				writer = new BufferedWriter(new OutputStreamWriter(csvStream, StandardCharsets.UTF_8));
+			} else {
+				writer = IOUtils.getBufferedWriter(csvOutputFile.getAbsolutePath());
+			}
+
+			ExecutorService pool = Executors.newFixedThreadPool(this.threadCount, new ThreadFactory() {
+				private int threadIndex = 0;
 
-				for (Tuple<Coord, double[]> result : results) {
-					Coord coord = result.getFirst();
-					double[] accessibilities = result.getSecond();
-					writer.write(Double.toString(coord.getX()));
-					writer.write(',');
-					writer.write(Double.toString(coord.getY()));
-					for (double acc : accessibilities) {
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "accessibility-" + this.threadIndex++);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			Timings timings = new Timings();
+			try (writer;
+				 AccessibilityBinaryFile.Writer binaryWriter = this.binaryOutput ? new AccessibilityBinaryFile.Writer(binaryOutputFile, modeIds, checkpoint.binaryLength) : null;
+				 BufferedWriter checkpointWriter = checkpointing ? checkpoint.openWriter(checkpointFile) : null) {
+				if (checkpoint.csvLength == 0) {
+					writer.write("X,Y");
+					for (Modes mode : modes) {
 						writer.write(',');
-						writer.write(Double.toString(acc));
+						writer.write(mode.id);
 					}
 					writer.write(IOUtils.NATIVE_NEWLINE);
 				}
-				writer.flush();
+
+				try (ResultSink sink = new ResultSink(writer, csvStream, binaryWriter, checkpointWriter, timings)) {
+					int blockCnt = 0;
+					for (Map.Entry<BlockKey, BlockData> e : blocks.entrySet()) {
+						BlockKey key = e.getKey();
+						BlockData block = e.getValue();
+						if (!partBlocks.contains(key)) {
+							continue;
+						}
+						blockCnt++;
+						if (checkpoint.completedBlocks.contains(key)) {
+							log.info("Block " + blockCnt + "/" + partBlocks.size() + ": " + block.toString(key, blockSize) + " is already completed.");
+							continue;
+						}
+						log.info("Block " + blockCnt + "/" + partBlocks.size() + ": " + block.toString(key, blockSize));
+						int coordCount = block.coords.size();
+						int stopCount = block.stops.size();
+						if ((int) (coordCount * 1.3) > stopCount) {
+							doOptimizedCalculation(block, carGraph, xy2linksNetwork, destinations, raptors, modes, pool, sink, timings);
+						} else {
+							doBasicCalculation(block, carGraph, xy2linksNetwork, destinations, raptors, modes, pool, sink, timings);
+						}
+						sink.completeBlock(key);
+					}
+				}
+			} finally {
+				pool.shutdownNow();
 			}
+			log.info("Timings: stop cache build = " + Timings.seconds(timings.stopCacheNanos) + "s, coordinate calculation = " + Timings.seconds(timings.coordinatesNanos)
+					+ "s, writing = " + Timings.seconds(timings.writingNanos) + "s (in parallel to the calculation), waiting for writing = " + Timings.seconds(timings.writeWaitingNanos) + "s");
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * @return the blocks to be calculated by this part. The blocks are sorted by their key and split into {@link #partCount} contiguous ranges of the same size, so every part gets a disjoint
+	 * set of blocks, independent of the machine it runs on.
+	 */
+	private Set<BlockKey> getPartBlocks(Set<BlockKey> allBlocks) {
+		List<BlockKey> sortedBlocks = new ArrayList<>(allBlocks);
+		sortedBlocks.sort(Comparator.<BlockKey>comparingInt(k -> k.xKey).thenComparingInt(k -> k.yKey));
+		int fromIndex = (int) ((long) sortedBlocks.size() * this.partIndex / this.partCount);
+		int toIndex = (int) ((long) sortedBlocks.size() * (this.partIndex + 1) / this.partCount);
+		return new HashSet<>(sortedBlocks.subList(fromIndex, toIndex));
+	}
+
 	/**
 	 * First, calculate for each stop in the block the best connections to every other stop in the schedule. Store these connections in a thread-safe cache. Then, calculate for each requested
 	 * coordinate the necessary data. Make use of the cache to look-up possible connections, collect and filter them instead of re-calculating them.
 	 */
-	private Collection<Tuple<Coord, double[]>> doOptimizedCalculation(BlockData block, SpeedyGraph carGraph,
-			Network xy2linksNetwork, Map<Coord, ZoneData> zoneData, SwissRailRaptor[] raptors, Modes[] modes) {
+	private void doOptimizedCalculation(BlockData block, SpeedyGraph carGraph, Network xy2linksNetwork, DestinationData destinations, SwissRailRaptor[] raptors, Modes[] modes,
+			ExecutorService pool, ResultSink sink, Timings timings) {
 		ConcurrentLinkedQueue<TransitStopFacility> stops = new ConcurrentLinkedQueue<>(block.stops);
-		ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache = new ConcurrentHashMap<>();
-
-		Thread[] threads = new Thread[this.threadCount];
+		ConcurrentHashMap<Id<TransitStopFacility>, List<List<ODConnection>>> cache = new ConcurrentHashMap<>();
 
+		long start = System.nanoTime();
 		Counter counter = new Counter("# stops ", " / " + block.stops.size());
 		// build cache
+		List<Runnable> workers = new ArrayList<>();
 		for (int i = 0; i < this.threadCount; i++) {
-			StopWorker worker = new StopWorker(counter, stops, cache, raptors[i], RaptorUtils.createParameters(this.config), ptMinDepartureTime, ptMaxDepartureTime, transitSchedule, departuresCache);
-			threads[i] = new Thread(worker, "accessibility-stops-" + i);
-			threads[i].start();
-		}
-		for (int i = 0; i < threadCount; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+			workers.add(new StopWorker(counter, stops, cache, raptors[i], RaptorUtils.createParameters(this.config), ptMinDepartureTime, ptMaxDepartureTime, destinations, departuresCache));
 		}
+		runAll(pool, workers);
+		long stopCacheNanos = System.nanoTime() - start;
 
 		// do calculation
+		start = System.nanoTime();
 		ConcurrentLinkedQueue<Coord> accessibilityCoords = new ConcurrentLinkedQueue<>(block.coords);
 		counter = new Counter("# coords ", " / " + block.coords.size());
-		ConcurrentLinkedQueue<Tuple<Coord, double[]>> results = new ConcurrentLinkedQueue<>();
+		workers.clear();
 		for (int i = 0; i < this.threadCount; i++) {
-			OptimizedRowWorker worker = new OptimizedRowWorker(
+			workers.add(new OptimizedRowWorker(
 					this.carNetwork, carGraph, xy2linksNetwork, tt, td, this.carAMDepTimes, this.carPMDepTimes,
-					cache, this.transitSchedule, this.departuresCache, raptors[i], RaptorUtils.createParameters(this.config), ptMinDepartureTime, ptMaxDepartureTime, trainDetector,
-					zoneData, modes, this.zones, counter, accessibilityCoords, results);
-			threads[i] = new Thread(worker, "accessibility-coords-" + i);
-			threads[i].start();
-		}
-		for (int i = 0; i < threadCount; i++) {
-			try {
-				threads[i].join();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+					cache, this.departuresCache, raptors[i], RaptorUtils.createParameters(this.config), ptMinDepartureTime, ptMaxDepartureTime, trainDetector,
+					destinations, modes, this.zones, counter, accessibilityCoords, sink));
 		}
+		runAll(pool, workers);
+		long coordinatesNanos = System.nanoTime() - start;
 
-		return results;
+		log.info("stop cache build = " + Timings.seconds(stopCacheNanos) + "s, coordinate calculation = " + Timings.seconds(coordinatesNanos) + "s");
+		synchronized (timings) {
+			timings.stopCacheNanos += stopCacheNanos;
+			timings.coordinatesNanos += coordinatesNanos;
+		}
 	}
 
 	/**
 	 * Just calculate for each requested coordinate the necessary data to calculate the accessibility.
 	 */
-	private Collection<Tuple<Coord, double[]>> doBasicCalculation(BlockData block, SpeedyGraph carGraph, Network xy2linksNetwork,
-			Map<Coord, ZoneData> zoneData, SwissRailRaptor[] raptors, Modes[] modes) {
+	private void doBasicCalculation(BlockData block, SpeedyGraph carGraph, Network xy2linksNetwork, DestinationData destinations, SwissRailRaptor[] raptors, Modes[] modes,
+			ExecutorService pool, ResultSink sink, Timings timings) {
+		long start = System.nanoTime();
 		ConcurrentLinkedQueue<Coord> accessibilityCoords = new ConcurrentLinkedQueue<>(block.coords);
-		ConcurrentLinkedQueue<Tuple<Coord, double[]>> results = new ConcurrentLinkedQueue<>();
 
 		Counter counter = new Counter("#", " / " + block.coords.size());
-		Thread[] threads = new Thread[this.threadCount];
+		List<Runnable> workers = new ArrayList<>();
 		for (int i = 0; i < this.threadCount; i++) {
-			RowWorker worker = new RowWorker(
+			workers.add(new RowWorker(
 					this.carNetwork, carGraph, xy2linksNetwork, tt, td, this.carAMDepTimes, this.carPMDepTimes,
+					this.departuresCache, this.initialTransfers,
 					raptors[i], RaptorUtils.createParameters(this.config), ptMinDepartureTime, ptMaxDepartureTime, trainDetector,
-					zoneData, modes, this.zones, counter, accessibilityCoords, results);
-			threads[i] = new Thread(worker, "accessibility-" + i);
-			threads[i].start();
+					destinations, modes, this.zones, counter, accessibilityCoords, sink));
+		}
+		runAll(pool, workers);
+		long coordinatesNanos = System.nanoTime() - start;
+
+		log.info("coordinate calculation = " + Timings.seconds(coordinatesNanos) + "s");
+		synchronized (timings) {
+			timings.coordinatesNanos += coordinatesNanos;
+		}
+	}
+
+	/**
+	 * Runs the workers on the pool and waits until all of them are finished.
+	 */
+	private static void runAll(ExecutorService pool, List<Runnable> workers) {
+		List<Future<?>> futures = new ArrayList<>();
+		for (Runnable worker : workers) {
+			futures.add(pool.submit(worker));
 		}
-		for (int i = 0; i < threadCount; i++) {
+		for (Future<?> future : futures) {
 			try {
-				threads[i].join();
+				future.get();
 			} catch (InterruptedException e) {
-				e.printStackTrace();
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
 			}
 		}
-		return results;
 	}
 
 	private Map<BlockKey, BlockData> getBlocks(Collection<Coord> coordinates, int blockSize) {
@@ -496,6 +682,7 @@ public class Accessibility {
 		this.transitSchedule = ptScenario.getTransitSchedule();
 		this.raptorData = SwissRailRaptorData.create(ptScenario.getTransitSchedule(), ptScenario.getTransitVehicles(), raptorConfig, ptScenario.getNetwork(), null);
 		this.departuresCache = new DeparturesCache(this.transitSchedule);
+		this.initialTransfers = new InitialTransfers(this.transitSchedule, raptorConfig);
 
 		this.scenarioLoaded = true;
 	}
@@ -511,6 +698,88 @@ public class Accessibility {
 		}
 	}
 
+	/**
+	 * The data of all destinations, pre-calculated once as it is the same for every start coordinate.
+	 * <p>
+	 * The egress stops of all destinations are numbered compactly, so trees and cached connections only need to be stored for these stops and can be looked up by that index.
+	 * The egress stops of destination <code>i</code> are stored from <code>egressOffsets[i]</code> (inclusive) to <code>egressOffsets[i + 1]</code> (exclusive) in <code>egressStops</code>
+	 * and <code>egressTimes</code>. The destinations keep the iteration order of the zone data, so results do not depend on this representation.
+	 */
+	private static class DestinationData {
+
+		final int size;
+		final int[] nodeIndices;
+		final double[] attractions;
+		final double[] carEgressTimes;
+		final double[] carParkingCosts;
+		final int[] egressOffsets;
+		final int[] egressStops;
+		final double[] egressTimes;
+		final List<Id<TransitStopFacility>> egressStopIds = new ArrayList<>();
+
+		DestinationData(Map<Coord, ZoneData> zoneData, Zones zones, SwissRailRaptor raptor, RaptorParameters parameters) {
+			this.size = zoneData.size();
+			this.nodeIndices = new int[this.size];
+			this.attractions = new double[this.size];
+			this.carEgressTimes = new double[this.size];
+			this.carParkingCosts = new double[this.size];
+			this.egressOffsets = new int[this.size + 1];
+
+			double walkSpeed = parameters.getBeelineWalkSpeed();
+			Map<Id<TransitStopFacility>, Integer> egressStopIndices = new HashMap<>();
+			int[] egressStops = new int[Math.max(16, this.size * 4)];
+			double[] egressTimes = new double[egressStops.length];
+			int egressCount = 0;
+
+			int i = 0;
+			for (Entry<Coord, ZoneData> e : zoneData.entrySet()) {
+				Coord toCoord = e.getKey();
+				ZoneData zData = e.getValue();
+				this.nodeIndices[i] = zData.node.getId().index();
+				this.attractions[i] = zData.attraction;
+
+				Zone toZone = zones.findZone(toCoord.getX(), toCoord.getY());
+				this.carEgressTimes[i] = toZone == null ? 0 : ((Number) toZone.getAttribute("at_car")).doubleValue(); // in seconds
+				this.carParkingCosts[i] = toZone == null ? 0 : ((Number) toZone.getAttribute("pc_car")).doubleValue();
+
+				// collect the egress stops in a HashMap first to keep the same order as when they are looked up per start coordinate
+				Map<Id<TransitStopFacility>, Double> stopEgressTimes = new HashMap<>();
+				for (TransitStopFacility stop : findStopCandidates(toCoord, raptor, parameters)) {
+					double distance = CoordUtils.calcEuclideanDistance(stop.getCoord(), toCoord);
+					stopEgressTimes.put(stop.getId(), distance / walkSpeed);
+				}
+				this.egressOffsets[i] = egressCount;
+				for (Entry<Id<TransitStopFacility>, Double> egressE : stopEgressTimes.entrySet()) {
+					if (egressCount == egressStops.length) {
+						egressStops = Arrays.copyOf(egressStops, egressCount * 2);
+						egressTimes = Arrays.copyOf(egressTimes, egressCount * 2);
+					}
+					egressStops[egressCount] = egressStopIndices.computeIfAbsent(egressE.getKey(), stopId -> {
+						this.egressStopIds.add(stopId);
+						return this.egressStopIds.size() - 1;
+					});
+					egressTimes[egressCount] = egressE.getValue();
+					egressCount++;
+				}
+				i++;
+			}
+			this.egressOffsets[this.size] = egressCount;
+			this.egressStops = Arrays.copyOf(egressStops, egressCount);
+			this.egressTimes = Arrays.copyOf(egressTimes, egressCount);
+		}
+
+		/**
+		 * @return the travel infos of the tree for all egress stops, indexed by the egress stop index.
+		 */
+		TravelInfo[] getEgressInfos(Map<Id<TransitStopFacility>, TravelInfo> tree) {
+			TravelInfo[] infos = new TravelInfo[this.egressStopIds.size()];
+			for (int i = 0; i < infos.length; i++) {
+				infos[i] = tree.get(this.egressStopIds.get(i));
+			}
+			return infos;
+		}
+	}
+
 	/**
 	 * Simple implementation for TravelTime and TravelDisutility that assumes a fixed speed on all links, resulting in the shortest (and not the fastest) path to be found.
 	 */
@@ -555,6 +824,201 @@ public class Accessibility {
 		}
 	}
 
+	/**
+	 * The journal of the completed blocks. For each completed block, a line with the block key, the number of coordinates and the lengths of the csv and binary output files after writing
+	 * the block is appended. When resuming, the output files are truncated to the lengths of the last completed block, removing results of a block that was only partially written.
+	 */
+	private static class Checkpoint {
+
+		final Set<BlockKey> completedBlocks = new HashSet<>();
+		long csvLength = 0;
+		long binaryLength = 0;
+
+		static Checkpoint read(File file) throws IOException {
+			Checkpoint checkpoint = new Checkpoint();
+			try (BufferedReader reader = IOUtils.getBufferedReader(file.getAbsolutePath())) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] parts = line.split(",");
+					if (parts.length != 5) {
+						log.warn("Ignoring incomplete line in checkpoint file: " + line);
+						break;
+					}
+					checkpoint.completedBlocks.add(new BlockKey(Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+					checkpoint.csvLength = Long.parseLong(parts[3]);
+					checkpoint.binaryLength = Long.parseLong(parts[4]);
+				}
+			}
+			return checkpoint;
+		}
+
+		BufferedWriter openWriter(File file) throws IOException {
+			if (this.completedBlocks.isEmpty()) {
+				return Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+			}
+			return Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+		}
+
+		static void write(BufferedWriter writer, BlockKey key, int coordCount, long csvLength, long binaryLength) throws IOException {
+			writer.write(key.xKey + "," + key.yKey + "," + coordCount + "," + csvLength + "," + binaryLength);
+			writer.write('\n');
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Writes the results on a separate thread while the calculation continues. The results of the workers are passed over a bounded queue, so the workers are slowed down if writing cannot
+	 * keep up. Once all results of a block are written, the block is added to the binary output and recorded in the checkpoint journal.
+	 */
+	private static class ResultSink implements AutoCloseable {
+
+		private static final Object END = new Object();
+
+		private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(10_000);
+		private final BufferedWriter writer;
+		private final FileOutputStream csvStream;
+		private final AccessibilityBinaryFile.Writer binaryWriter;
+		private final BufferedWriter checkpointWriter;
+		private final Timings timings;
+		private final List<Tuple<Coord, double[]>> blockResults = new ArrayList<>();
+		private final Thread thread;
+		private int blockRowCount = 0;
+		private volatile Throwable failure = null;
+
+		ResultSink(BufferedWriter writer, FileOutputStream csvStream, AccessibilityBinaryFile.Writer binaryWriter, BufferedWriter checkpointWriter, Timings timings) {
+			this.writer = writer;
+			this.csvStream = csvStream;
+			this.binaryWriter = binaryWriter;
+			this.checkpointWriter = checkpointWriter;
+			this.timings = timings;
+			this.thread = new Thread(this::run, "accessibility-writer");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		void add(Tuple<Coord, double[]> result) {
+			put(result);
+		}
+
+		void completeBlock(BlockKey key) throws IOException {
+			put(new BlockEnd(key));
+			if (this.failure != null) {
+				throw new IOException("Failed to write accessibility results", this.failure);
+			}
+		}
+
+		private void put(Object item) {
+			try {
+				if (!this.queue.offer(item)) {
+					long start = System.nanoTime();
+					this.queue.put(item);
+					synchronized (this.timings) {
+						this.timings.writeWaitingNanos += System.nanoTime() - start;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+
+		private void run() {
+			try {
+				while (true) {
+					Object item = this.queue.take();
+					if (item == END) {
+						return;
+					}
+					if (this.failure != null) {
+						continue; // keep on draining the queue, so the workers are not blocked
+					}
+					long start = System.nanoTime();
+					try {
+						if (item instanceof BlockEnd blockEnd) {
+							writeBlockEnd(blockEnd.key());
+						} else {
+							@SuppressWarnings("unchecked")
+							Tuple<Coord, double[]> result = (Tuple<Coord, double[]>) item;
+							writeResult(result);
+						}
+					} catch (IOException | RuntimeException e) {
+						this.failure = e;
+					}
+					synchronized (this.timings) {
+						this.timings.writingNanos += System.nanoTime() - start;
+					}
+				}
+			} catch (InterruptedException e) {
+				this.failure = e;
+			}
+		}
+
+		private void writeResult(Tuple<Coord, double[]> result) throws IOException {
+			Coord coord = result.getFirst();
+			double[] accessibilities = result.getSecond();
+			this.writer.write(Double.toString(coord.getX()));
+			this.writer.write(',');
+			this.writer.write(Double.toString(coord.getY()));
+			for (double acc : accessibilities) {
+				this.writer.write(',');
+				this.writer.write(Double.toString(acc));
+			}
+			this.writer.write(IOUtils.NATIVE_NEWLINE);
+			this.blockRowCount++;
+			if (this.binaryWriter != null) {
+				this.blockResults.add(result);
+			}
+		}
+
+		private void writeBlockEnd(BlockKey key) throws IOException {
+			this.writer.flush();
+			long binaryLength = 0;
+			if (this.binaryWriter != null) {
+				this.binaryWriter.writeBlock(this.blockResults);
+				this.blockResults.clear();
+				binaryLength = this.binaryWriter.flush();
+			}
+			if (this.checkpointWriter != null) {
+				// only record the block once its results are completely written, so a resumed calculation can truncate the output files to this state
+				Checkpoint.write(this.checkpointWriter, key, this.blockRowCount, this.csvStream.getChannel().position(), binaryLength);
+			}
+			this.blockRowCount = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			put(END);
+			try {
+				this.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			if (this.failure != null) {
+				throw new IOException("Failed to write accessibility results", this.failure);
+			}
+		}
+
+		private record BlockEnd(BlockKey key) {
+		}
+	}
+
+	/**
+	 * The time spent in the phases of the calculation, to help sizing the machines. Writing happens in parallel to the calculation, only the time the workers had to wait for the writer
+	 * slows down the calculation.
+	 */
+	private static class Timings {
+
+		long stopCacheNanos = 0;
+		long coordinatesNanos = 0;
+		long writingNanos = 0;
+		long writeWaitingNanos = 0;
+
+		static String seconds(long nanos) {
+			return String.format("%.1f", nanos / 1e9);
+		}
+	}
+
 	private static class BlockKey {
 
 		final int xKey;
@@ -594,21 +1058,24 @@ public class Accessibility {
 		private final LeastCostPathTree[] pmLcpTree;
 		private final double[] carAMDepTimes;
 		private final double[] carPMDepTimes;
+		private final DeparturesCache departuresCache;
+		private final InitialTransfers initialTransfers;
+		private final double[] accessTimes;
 		private final SwissRailRaptor raptor;
 		private final RaptorParameters parameters;
 		private final double ptMinDepartureTime;
 		private final double ptMaxDepartureTime;
 		private final BiPredicate<TransitLine, TransitRoute> trainDetector;
-		private final Map<Coord, ZoneData> zoneData;
+		private final DestinationData destinations;
 		private final Modes[] modes;
 		private final Counter counter;
 		private final Queue<Coord> coordinates;
-		private final Queue<Tuple<Coord, double[]>> results;
+		private final ResultSink results;
 		private final Zones zones;
 
 		RowWorker(Network carNetwork, SpeedyGraph carGraph, Network xy2linksNetwork, TravelTime tt, TravelDisutility td, double[] carAMDepTimes, double[] carPMDepTimes,
-				SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime, double ptMaxDepartureTime, BiPredicate<TransitLine, TransitRoute> trainDetector,
-				Map<Coord, ZoneData> zoneData, Modes[] modes, Zones zones, Counter counter, Queue<Coord> coordinates, Queue<Tuple<Coord, double[]>> results) {
+				DeparturesCache departuresCache, InitialTransfers initialTransfers, SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime, double ptMaxDepartureTime, BiPredicate<TransitLine, TransitRoute> trainDetector,
+				DestinationData destinations, Modes[] modes, Zones zones, Counter counter, Queue<Coord> coordinates, ResultSink results) {
 			this.carNetwork = carNetwork;
 			this.xy2linksNetwork = xy2linksNetwork;
 			this.carAMDepTimes = carAMDepTimes;
@@ -625,13 +1092,16 @@ public class Accessibility {
 			for (int i = 0; i < carPMDepTimes.length; i++) {
 				this.pmLcpTree[i] = new LeastCostPathTree(carGraph, tt, td);
 			}
+			this.departuresCache = departuresCache;
+			this.initialTransfers = initialTransfers;
+			this.accessTimes = new double[Id.getNumberOfIds(TransitStopFacility.class)];
 			this.raptor = raptor;
 			this.parameters = parameters;
 			this.ptMinDepartureTime = ptMinDepartureTime;
 			this.ptMaxDepartureTime = ptMaxDepartureTime;
 			this.trainDetector = trainDetector;
 
-			this.zoneData = zoneData;
+			this.destinations = destinations;
 			this.requiresCar = requiresCar(modes);
 			this.modes = modes;
 			this.zones = zones;
@@ -678,22 +1148,21 @@ public class Accessibility {
 			double walkSpeed = this.parameters.getBeelineWalkSpeed();
 
 			Collection<TransitStopFacility> fromStops = findStopCandidates(fromCoord, this.raptor, this.parameters);
-			Map<Id<TransitStopFacility>, Double> accessTimes = new HashMap<>();
 			for (TransitStopFacility stop : fromStops) {
 				double distance = CoordUtils.calcEuclideanDistance(fromCoord, stop.getCoord());
 				double accessTime = distance / walkSpeed;
-				accessTimes.put(stop.getId(), accessTime);
+				this.accessTimes[stop.getId().index()] = accessTime;
 			}
 
-			List<Map<Id<TransitStopFacility>, TravelInfo>> trees = new ArrayList<>();
-
 			double timeWindow = this.ptMaxDepartureTime - this.ptMinDepartureTime;
 			double endTime = this.ptMaxDepartureTime + timeWindow;
 			double stepSize = 120;
-			for (double time = this.ptMinDepartureTime - timeWindow; time < endTime; time += stepSize) {
-
-				Map<Id<TransitStopFacility>, TravelInfo> tree = this.raptor.calcTree(fromStops, time, this.parameters, null);
-				trees.add(tree);
+			List<Map<Id<TransitStopFacility>, TravelInfo>> trees = calcProfileTrees(fromStops, this.ptMinDepartureTime - timeWindow, endTime, stepSize,
+					this.raptor, this.parameters, this.departuresCache, this.initialTransfers);
+			TravelInfo[][] egressTrees = new TravelInfo[trees.size()][];
+			for (int t = 0; t < trees.size(); t++) {
+				// the same tree is re-used for multiple departure times, so only look up its egress infos once
+				egressTrees[t] = (t > 0 && trees.get(t) == trees.get(t - 1)) ? egressTrees[t - 1] : this.destinations.getEgressInfos(trees.get(t));
 			}
 
 			Zone fromZone = this.zones.findZone(fromCoord.getX(), fromCoord.getY());
@@ -702,12 +1171,9 @@ public class Accessibility {
 			// CALCULATION
 
 			double[] accessibility = new double[this.modes.length];
-			for (Entry<Coord, ZoneData> e : this.zoneData.entrySet()) {
-				Coord toCoord = e.getKey();
-				ZoneData zData = e.getValue();
-				Node toNode = zData.node;
-				double attraction = zData.attraction;
-				int toNodeIndex = toNode.getId().index();
+			for (int d = 0; d < this.destinations.size; d++) {
+				double attraction = this.destinations.attractions[d];
+				int toNodeIndex = this.destinations.nodeIndices[d];
 
 				// CAR
 
@@ -764,15 +1230,7 @@ public class Accessibility {
 				distShortest /= 1000.0; // we use kilometers in the following formulas
 
 				// PT
-				Collection<TransitStopFacility> toStops = findStopCandidates(toCoord, this.raptor, this.parameters);
-				Map<Id<TransitStopFacility>, Double> egressTimes = new HashMap<>();
-				for (TransitStopFacility stop : toStops) {
-					double distance = CoordUtils.calcEuclideanDistance(stop.getCoord(), toCoord);
-					double egressTime = distance / walkSpeed;
-					egressTimes.put(stop.getId(), egressTime);
-				}
-
-				List<ODConnection> connections = buildODConnections(trees, accessTimes, egressTimes);
+				List<ODConnection> connections = buildODConnections(egressTrees, this.accessTimes, this.destinations, d);
 				boolean hasPT = !connections.isEmpty();
 
 				double ttTrain = 0;
@@ -801,7 +1259,7 @@ public class Accessibility {
 						ODConnection connection = cs.getKey();
 						double share = cs.getValue();
 
-						accessTime += share * accessTimes.get(connection.travelInfo.departureStop).floatValue();
+						accessTime += share * (float) this.accessTimes[connection.travelInfo.departureStop.index()];
 						egressTime += share * (float) connection.egressTime;
 						transferCount += share * (float) connection.transferCount;
 						travelTime += share * (float) connection.totalTravelTime();
@@ -860,9 +1318,8 @@ public class Accessibility {
 				//
 				//                U(walk)= +2.30 + (-0.100)*dist_car/0.078336
 
-				Zone toZone = this.zones.findZone(toCoord.getX(), toCoord.getY());
-				double carEgressTime = toZone == null ? 0 : ((Number) toZone.getAttribute("at_car")).doubleValue(); // in seconds
-				double carParkingCost = toZone == null ? 0 : ((Number) toZone.getAttribute("pc_car")).doubleValue();
+				double carEgressTime = this.destinations.carEgressTimes[d]; // in seconds
+				double carParkingCost = this.destinations.carParkingCosts[d];
 
 				for (int m = 0; m < this.modes.length; m++) {
 					Modes modes = this.modes[m];
@@ -895,25 +1352,24 @@ public class Accessibility {
 		private final LeastCostPathTree[] pmLcpTree;
 		private final double[] carAMDepTimes;
 		private final double[] carPMDepTimes;
-		private final ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache;
-		private final TransitSchedule transitSchedule;
+		private final ConcurrentHashMap<Id<TransitStopFacility>, List<List<ODConnection>>> cache;
 		private final DeparturesCache departuresCache;
 		private final SwissRailRaptor raptor;
 		private final RaptorParameters parameters;
 		private final double ptMinDepartureTime;
 		private final double ptMaxDepartureTime;
 		private final BiPredicate<TransitLine, TransitRoute> trainDetector;
-		private final Map<Coord, ZoneData> zoneData;
+		private final DestinationData destinations;
 		private final Modes[] modes;
 		private final Counter counter;
 		private final Queue<Coord> coordinates;
-		private final Queue<Tuple<Coord, double[]>> results;
+		private final ResultSink results;
 		private final Zones zones;
 
 		OptimizedRowWorker(Network carNetwork, SpeedyGraph carGraph, Network xy2linksNetwork, TravelTime tt, TravelDisutility td, double[] carAMDepTimes, double[] carPMDepTimes,
-				ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache, TransitSchedule transitSchedule, DeparturesCache departuresCache,
+				ConcurrentHashMap<Id<TransitStopFacility>, List<List<ODConnection>>> cache, DeparturesCache departuresCache,
 				SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime, double ptMaxDepartureTime, BiPredicate<TransitLine, TransitRoute> trainDetector,
-				Map<Coord, ZoneData> zoneData, Modes[] modes, Zones zones, Counter counter, Queue<Coord> coordinates, Queue<Tuple<Coord, double[]>> results) {
+				DestinationData destinations, Modes[] modes, Zones zones, Counter counter, Queue<Coord> coordinates, ResultSink results) {
 			this.carNetwork = carNetwork;
 			this.xy2linksNetwork = xy2linksNetwork;
 			this.carAMDepTimes = carAMDepTimes;
@@ -931,7 +1387,6 @@ public class Accessibility {
 				this.pmLcpTree[i] = new LeastCostPathTree(carGraph, tt, td);
 			}
 			this.cache = cache;
-			this.transitSchedule = transitSchedule;
 			this.departuresCache = departuresCache;
 			this.raptor = raptor;
 			this.parameters = parameters;
@@ -939,7 +1394,7 @@ public class Accessibility {
 			this.ptMaxDepartureTime = ptMaxDepartureTime;
 			this.trainDetector = trainDetector;
 
-			this.zoneData = zoneData;
+			this.destinations = destinations;
 			this.requiresCar = requiresCar(modes);
 			this.requiresPt = requiresPt(modes);
 			this.modes = modes;
@@ -1020,23 +1475,7 @@ public class Accessibility {
 							time += 60; // +1 minute
 						}
 
-						IdMap<TransitStopFacility, List<ODConnection>> connectionsPerStop = new IdMap<>(TransitStopFacility.class);
-						for (TransitStopFacility toStop : this.transitSchedule.getFacilities().values()) {
-							List<ODConnection> connections = new ArrayList<>();
-
-							for (Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> tree : trees) {
-								Id<TransitStopFacility> egressStopId = toStop.getId();
-								SwissRailRaptorCore.TravelInfo info = tree.get(egressStopId);
-								if (info != null && !info.isWalkOnly()) {
-									ODConnection connection = new ODConnection(info.ptDepartureTime, info.ptTravelTime, 0, 0, info.transferCount, info);
-									connections.add(connection);
-								}
-							}
-
-							connections = RooftopUtils.sortAndFilterConnections(connections, ptMaxDepartureTime);
-							connectionsPerStop.put(toStop.getId(), connections);
-						}
-						this.cache.put(fromStop.getId(), connectionsPerStop);
+						this.cache.put(fromStop.getId(), buildStopConnections(trees, this.destinations, this.ptMaxDepartureTime));
 						log.info(Thread.currentThread() + " update cache with " + fromStop.getId() + " " + fromStop.getName());
 					}
 				}
@@ -1045,12 +1484,9 @@ public class Accessibility {
 			// CALCULATION
 
 			double[] accessibility = new double[this.modes.length];
-			for (Entry<Coord, ZoneData> e : this.zoneData.entrySet()) {
-				Coord toCoord = e.getKey();
-				ZoneData zData = e.getValue();
-				Node toNode = zData.node;
-				double attraction = zData.attraction;
-				int toNodeIndex = toNode.getId().index();
+			for (int d = 0; d < this.destinations.size; d++) {
+				double attraction = this.destinations.attractions[d];
+				int toNodeIndex = this.destinations.nodeIndices[d];
 
 				// CAR
 
@@ -1118,15 +1554,7 @@ public class Accessibility {
 				double ptDistance = 0;
 				if (this.requiresPt) {
 
-					Collection<TransitStopFacility> toStops = findStopCandidates(toCoord, this.raptor, this.parameters);
-					Map<Id<TransitStopFacility>, Double> egressTimes = new HashMap<>();
-					for (TransitStopFacility stop : toStops) {
-						double distance = CoordUtils.calcEuclideanDistance(stop.getCoord(), toCoord);
-						double egressTime = distance / walkSpeed;
-						egressTimes.put(stop.getId(), egressTime);
-					}
-
-					List<ODConnection> connections = buildODConnections(this.cache, accessTimes, egressTimes);
+					List<ODConnection> connections = buildODConnections(this.cache, accessTimes, this.destinations, d);
 
 					hasPT = !connections.isEmpty();
 					if (hasPT) {
@@ -1209,9 +1637,8 @@ public class Accessibility {
 				//
 				//                U(walk)= +2.30 + (-0.100)*dist_car/0.078336
 
-				Zone toZone = this.zones.findZone(toCoord.getX(), toCoord.getY());
-				double carEgressTime = toZone == null ? 0 : ((Number) toZone.getAttribute("at_car")).doubleValue(); // in seconds
-				double carParkingCost = toZone == null ? 0 : ((Number) toZone.getAttribute("pc_car")).doubleValue();
+				double carEgressTime = this.destinations.carEgressTimes[d]; // in seconds
+				double carParkingCost = this.destinations.carParkingCosts[d];
 
 				for (int m = 0; m < this.modes.length; m++) {
 					Modes modes = this.modes[m];
@@ -1237,19 +1664,19 @@ public class Accessibility {
 
 		private final Counter counter;
 		private final ConcurrentLinkedQueue<TransitStopFacility> stops;
-		private final ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache;
+		private final ConcurrentHashMap<Id<TransitStopFacility>, List<List<ODConnection>>> cache;
 
 		private final SwissRailRaptor raptor;
 		private final RaptorParameters parameters;
 		private final double ptMinDepartureTime;
 		private final double ptMaxDepartureTime;
-		private final TransitSchedule transitSchedule;
+		private final DestinationData destinations;
 		private final DeparturesCache departuresCache;
 
 		StopWorker(Counter counter, ConcurrentLinkedQueue<TransitStopFacility> stops,
-				ConcurrentHashMap<Id<TransitStopFacility>, IdMap<TransitStopFacility, List<ODConnection>>> cache,
+				ConcurrentHashMap<Id<TransitStopFacility>, List<List<ODConnection>>> cache,
 				SwissRailRaptor raptor, RaptorParameters parameters, double ptMinDepartureTime, double ptMaxDepartureTime,
-				TransitSchedule transitSchedule, DeparturesCache departuresCache) {
+				DestinationData destinations, DeparturesCache departuresCache) {
 			this.counter = counter;
 			this.stops = stops;
 			this.cache = cache;
@@ -1258,7 +1685,7 @@ public class Accessibility {
 			this.parameters = parameters;
 			this.ptMinDepartureTime = ptMinDepartureTime;
 			this.ptMaxDepartureTime = ptMaxDepartureTime;
-			this.transitSchedule = transitSchedule;
+			this.destinations = destinations;
 			this.departuresCache = departuresCache;
 		}
 
@@ -1292,23 +1719,7 @@ public class Accessibility {
 				time += 60; // +1 minute
 			}
 
-			IdMap<TransitStopFacility, List<ODConnection>> connectionsPerStop = new IdMap<>(TransitStopFacility.class);
-			for (TransitStopFacility toStop : this.transitSchedule.getFacilities().values()) {
-				List<ODConnection> connections = new ArrayList<>();
-
-				for (Map<Id<TransitStopFacility>, SwissRailRaptorCore.TravelInfo> tree : trees) {
-					Id<TransitStopFacility> egressStopId = toStop.getId();
-					SwissRailRaptorCore.TravelInfo info = tree.get(egressStopId);
-					if (info != null && !info.isWalkOnly()) {
-						ODConnection connection = new ODConnection(info.ptDepartureTime, info.ptTravelTime, 0, 0, info.transferCount, info);
-						connections.add(connection);
-					}
-				}
-
-				connections = RooftopUtils.sortAndFilterConnections(connections, ptMaxDepartureTime);
-				connectionsPerStop.put(toStop.getId(), connections);
-			}
-			this.cache.put(fromStop.getId(), connectionsPerStop);
+			this.cache.put(fromStop.getId(), buildStopConnections(trees, this.destinations, this.ptMaxDepartureTime));
 		}
 	}
 
@@ -0,0 +1,291 @@
+package ch.sbb.matsim.accessibility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Compact binary columnar storage of accessibility results, written alongside the csv output.
+ * <p>
+ * The file starts with a header (magic number, version, number of modes and the mode ids), followed by any number of blocks. Each block contains the number of rows, then the column of
+ * x-coordinates, the column of y-coordinates and one column of accessibility values per mode. As blocks are only appended, a file can be truncated to the end of its last complete block to
+ * continue an interrupted calculation.
+ * <p>
+ * Files of calculations that were distributed over several machines can be merged with {@link #merge(List, File, File)}, or by running {@link #main(String[])}.
+ */
+public final class AccessibilityBinaryFile {
+
+	private final static Logger log = LogManager.getLogger(AccessibilityBinaryFile.class);
+
+	private static final int MAGIC = 0x53424241; // "SBBA"
+	private static final int VERSION = 1;
+
+	private AccessibilityBinaryFile() {
+	}
+
+	/**
+	 * @return the binary file to be written alongside the given csv file, e.g. <code>accessibility.bin</code> for <code>accessibility.csv</code>.
+	 */
+	public static File getBinaryFile(File csvFile) {
+		String name = csvFile.getName();
+		if (name.endsWith(".gz")) {
+			name = name.substring(0, name.length() - 3);
+		}
+		if (name.endsWith(".csv")) {
+			name = name.substring(0, name.length() - 4);
+		}
+		return new File(csvFile.getParentFile(), name + ".bin");
+	}
+
+	public static Results read(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			String[] modeIds = readHeader(in, file);
+			double[] x = new double[1024];
+			double[] y = new double[1024];
+			double[][] values = new double[modeIds.length][1024];
+			int size = 0;
+			while (true) {
+				int rowCount;
+				try {
+					rowCount = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				if (size + rowCount > x.length) {
+					int capacity = Math.max(x.length * 2, size + rowCount);
+					x = Arrays.copyOf(x, capacity);
+					y = Arrays.copyOf(y, capacity);
+					for (int m = 0; m < modeIds.length; m++) {
+						values[m] = Arrays.copyOf(values[m], capacity);
+					}
+				}
+				readColumn(in, x, size, rowCount);
+				readColumn(in, y, size, rowCount);
+				for (int m = 0; m < modeIds.length; m++) {
+					readColumn(in, values[m], size, rowCount);
+				}
+				size += rowCount;
+			}
+			for (int m = 0; m < modeIds.length; m++) {
+				values[m] = Arrays.copyOf(values[m], size);
+			}
+			return new Results(modeIds, Arrays.copyOf(x, size), Arrays.copyOf(y, size), values);
+		}
+	}
+
+	/**
+	 * Merges the binary files of several partial calculations into one csv and one binary file. The rows are sorted by their x- and then y-coordinate, so the result does not depend on the
+	 * order of the files or on how the blocks were distributed.
+	 */
+	public static void merge(List<File> partFiles, File csvFile, File binaryFile) throws IOException {
+		List<Results> parts = new ArrayList<>();
+		int size = 0;
+		for (File partFile : partFiles) {
+			log.info("reading " + partFile.getAbsolutePath());
+			Results part = read(partFile);
+			if (!parts.isEmpty() && !Arrays.equals(parts.get(0).modeIds(), part.modeIds())) {
+				throw new IllegalArgumentException("The modes of " + partFile.getAbsolutePath() + " " + Arrays.toString(part.modeIds())
+						+ " do not match the modes of " + partFiles.get(0).getAbsolutePath() + " " + Arrays.toString(parts.get(0).modeIds()));
+			}
+			parts.add(part);
+			size += part.size();
+		}
+		if (parts.isEmpty()) {
+			throw new IllegalArgumentException("no files to merge");
+		}
+		String[] modeIds = parts.get(0).modeIds();
+
+		double[] x = new double[size];
+		double[] y = new double[size];
+		double[][] values = new double[modeIds.length][size];
+		int offset = 0;
+		for (Results part : parts) {
+			System.arraycopy(part.x(), 0, x, offset, part.size());
+			System.arraycopy(part.y(), 0, y, offset, part.size());
+			for (int m = 0; m < modeIds.length; m++) {
+				System.arraycopy(part.accessibilities()[m], 0, values[m], offset, part.size());
+			}
+			offset += part.size();
+		}
+
+		int[] order = IntStream.range(0, size).boxed()
+				.sorted(Comparator.<Integer>comparingDouble(i -> x[i]).thenComparingDouble(i -> y[i]))
+				.mapToInt(Integer::intValue).toArray();
+		double[] sortedX = new double[size];
+		double[] sortedY = new double[size];
+		double[][] sortedValues = new double[modeIds.length][size];
+		for (int i = 0; i < size; i++) {
+			sortedX[i] = x[order[i]];
+			sortedY[i] = y[order[i]];
+			for (int m = 0; m < modeIds.length; m++) {
+				sortedValues[m][i] = values[m][order[i]];
+			}
+		}
+
+		log.info("writing " + size + " rows to " + csvFile.getAbsolutePath());
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(csvFile.getAbsolutePath())) {
+			writer.write("X,Y");
+			for (String modeId : modeIds) {
+				writer.write(',');
+				writer.write(modeId);
+			}
+			writer.write(IOUtils.NATIVE_NEWLINE);
+			for (int i = 0; i < size; i++) {
+				writer.write(Double.toString(sortedX[i]));
+				writer.write(',');
+				writer.write(Double.toString(sortedY[i]));
+				for (int m = 0; m < modeIds.length; m++) {
+					writer.write(',');
+					writer.write(Double.toString(sortedValues[m][i]));
+				}
+				writer.write(IOUtils.NATIVE_NEWLINE);
+			}
+		}
+		if (binaryFile != null) {
+			log.info("writing " + size + " rows to " + binaryFile.getAbsolutePath());
+			try (Writer writer = new Writer(binaryFile, modeIds, 0)) {
+				writer.writeBlock(sortedX, sortedY, sortedValues);
+			}
+		}
+	}
+
+	private static String[] readHeader(DataInputStream in, File file) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException(file.getAbsolutePath() + " is not an accessibility binary file.");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version " + version + " of accessibility binary file " + file.getAbsolutePath());
+		}
+		String[] modeIds = new String[in.readInt()];
+		for (int m = 0; m < modeIds.length; m++) {
+			modeIds[m] = in.readUTF();
+		}
+		return modeIds;
+	}
+
+	private static void readColumn(DataInputStream in, double[] column, int offset, int count) throws IOException {
+		for (int i = offset; i < offset + count; i++) {
+			column[i] = in.readDouble();
+		}
+	}
+
+	/**
+	 * Usage: <code>AccessibilityBinaryFile merged.csv part1.bin part2.bin ...</code>. The merged binary file is written alongside the merged csv file.
+	 */
+	public static void main(String[] args) throws IOException {
+		File csvFile = new File(args[0]);
+		List<File> partFiles = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			partFiles.add(new File(args[i]));
+		}
+		merge(partFiles, csvFile, getBinaryFile(csvFile));
+	}
+
+	/**
+	 * The accessibility results of a file, stored by column: <code>accessibilities[m][i]</code> is the accessibility of mode <code>modeIds[m]</code> at coordinate <code>(x[i], y[i])</code>.
+	 */
+	public record Results(String[] modeIds, double[] x, double[] y, double[][] accessibilities) {
+
+		public int size() {
+			return this.x.length;
+		}
+	}
+
+	public static final class Writer implements Closeable {
+
+		private final FileOutputStream stream;
+		private final DataOutputStream out;
+		private final int modeCount;
+
+		/**
+		 * @param position the length to which an existing file is truncated before appending further blocks, or 0 to write a new file.
+		 */
+		public Writer(File file, String[] modeIds, long position) throws IOException {
+			this.modeCount = modeIds.length;
+			if (position > 0) {
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+					String[] existingModeIds = readHeader(in, file);
+					if (!Arrays.equals(existingModeIds, modeIds)) {
+						throw new IOException("Cannot continue " + file.getAbsolutePath() + " with modes " + Arrays.toString(modeIds) + ", it contains the modes " + Arrays.toString(existingModeIds));
+					}
+				}
+				this.stream = new FileOutputStream(file, true);
+				this.stream.getChannel().truncate(position);
+				this.out = new DataOutputStream(new BufferedOutputStream(this.stream, 1 << 16));
+			} else {
+				this.stream = new FileOutputStream(file);
+				this.out = new DataOutputStream(new BufferedOutputStream(this.stream, 1 << 16));
+				this.out.writeInt(MAGIC);
+				this.out.writeInt(VERSION);
+				this.out.writeInt(modeIds.length);
+				for (String modeId : modeIds) {
+					this.out.writeUTF(modeId);
+				}
+			}
+		}
+
+		public void writeBlock(Iterable<Tuple<Coord, double[]>> results) throws IOException {
+			List<Tuple<Coord, double[]>> rows = new ArrayList<>();
+			results.forEach(rows::add);
+			double[] x = new double[rows.size()];
+			double[] y = new double[rows.size()];
+			double[][] values = new double[this.modeCount][rows.size()];
+			for (int i = 0; i < rows.size(); i++) {
+				Tuple<Coord, double[]> row = rows.get(i);
+				x[i] = row.getFirst().getX();
+				y[i] = row.getFirst().getY();
+				for (int m = 0; m < this.modeCount; m++) {
+					values[m][i] = row.getSecond()[m];
+				}
+			}
+			writeBlock(x, y, values);
+		}
+
+		public void writeBlock(double[] x, double[] y, double[][] values) throws IOException {
+			this.out.writeInt(x.length);
+			for (double value : x) {
+				this.out.writeDouble(value);
+			}
+			for (double value : y) {
+				this.out.writeDouble(value);
+			}
+			for (double[] column : values) {
+				for (double value : column) {
+					this.out.writeDouble(value);
+				}
+			}
+		}
+
+		/**
+		 * @return the length of the file after flushing all blocks written so far.
+		 */
+		public long flush() throws IOException {
+			this.out.flush();
+			return this.stream.getChannel().position();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.close();
+		}
+	}
+}
@@ -141,6 +141,30 @@ public class CalculateAccessibility {
 		String[] timesCarAMStr = args[15].split(";");
 		String[] timesCarPMStr = args[16].split(";");
 
+		// optional arguments: --checkpoint, --resume, --binary, --part=<number>/<count>
+		boolean checkpointing = false;
+		boolean resume = false;
+		boolean binaryOutput = false;
+		int partIndex = 0;
+		int partCount = 1;
+		for (int i = 17; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("--checkpoint")) {
+				checkpointing = true;
+			} else if (option.equals("--resume")) {
+				resume = true;
+			} else if (option.equals("--binary")) {
+				binaryOutput = true;
+			} else if (option.startsWith("--part=")) {
+				String[] part = option.substring("--part=".length()).split("/");
+				partIndex = Integer.parseInt(part[0]) - 1;
+				partCount = Integer.parseInt(part[1]);
+				binaryOutput = true; // required to merge the parts afterwards
+			} else {
+				throw new IllegalArgumentException("Unknown option " + option);
+			}
+		}
+
 		double[] carAMDepTimes = new double[timesCarAMStr.length];
 		for (int i = 0; i < timesCarAMStr.length; i++) {
 			carAMDepTimes[i] = Time.parseTime(timesCarAMStr[i]);
@@ -159,7 +183,7 @@ public class CalculateAccessibility {
 			outputDir.mkdirs();
 		}
 
-		File csvOutputFile = new File(outputDirectory, "accessibility.csv");
+		File csvOutputFile = new File(outputDirectory, partCount > 1 ? ("accessibility_part" + (partIndex + 1) + "of" + partCount + ".csv") : "accessibility.csv");
 		File attractionsFile = new File(outputDirectory, "attractions_" + gridSize + ".csv");
 
 		List<Coord> coordinates = new ArrayList<>();
@@ -209,6 +233,10 @@ public class CalculateAccessibility {
 		Accessibility accessibility = new Accessibility(networkFilename, eventsFilename, scheduleFilename, transitNetworkFilename, attractions, carAMDepTimes, carPMDepTimes, ptMinDepTime,
 				ptMaxDepTime, trainDetector, zones);
 		accessibility.setThreadCount(numThreads);
+		accessibility.setCheckpointing(checkpointing);
+		accessibility.setResume(resume);
+		accessibility.setBinaryOutput(binaryOutput);
+		accessibility.setPart(partIndex, partCount);
 		accessibility.calculateAccessibility(coordinates, modes, csvOutputFile);
 
 		log.info("done.");
@@ -2,6 +2,7 @@ package ch.sbb.matsim.accessibility;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import org.matsim.api.core.v01.Id;
@@ -61,4 +62,36 @@ class DeparturesCache {
 		}
 		return OptionalTime.defined(departures[idx]);
 	}
+
+	/**
+	 * Returns the sorted departure times of all the given stops within the interval [fromTime, toTime).
+	 */
+	double[] getDepartureTimes(Collection<Id<TransitStopFacility>> stopIds, double fromTime, double toTime) {
+		double[] times = new double[16];
+		int count = 0;
+		for (Id<TransitStopFacility> stopId : stopIds) {
+			double[] departures = this.cache.get(stopId);
+			if (departures == null) {
+				continue;
+			}
+			int idx = Arrays.binarySearch(departures, fromTime);
+			if (idx < 0) {
+				idx = -(idx + 1);
+			} else {
+				// there might be multiple departures at the same time, make sure to find the first one
+				while (idx > 0 && departures[idx - 1] == fromTime) {
+					idx--;
+				}
+			}
+			for (; idx < departures.length && departures[idx] < toTime; idx++) {
+				if (count == times.length) {
+					times = Arrays.copyOf(times, count * 2);
+				}
+				times[count++] = departures[idx];
+			}
+		}
+		times = Arrays.copyOf(times, count);
+		Arrays.sort(times);
+		return times;
+	}
 }
@@ -0,0 +1,64 @@
+package ch.sbb.matsim.accessibility;
+
+import ch.sbb.matsim.routing.pt.raptor.RaptorStaticConfig;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.matsim.api.core.v01.Id;
+import org.matsim.pt.transitSchedule.api.MinimalTransferTimes;
+import org.matsim.pt.transitSchedule.api.TransitSchedule;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+/**
+ * The transfers the raptor may make from the start stops of a query before boarding the first vehicle.
+ * <p>
+ * Like the transfers of {@link SwissRailRaptorData}, these are beeline walks to all stops within the beeline walk connection distance, and all transfers defined by the
+ * minimal transfer times of the schedule. The latter may connect stops further apart and take longer than a beeline walk, e.g. if they were set to the intra-stop
+ * transfer time plus the walk time between two stops. The transfer times are only used as upper bound, so the boarding stops and transfer times returned here cover
+ * every initial transfer of the raptor.
+ */
+final class InitialTransfers {
+
+	private final double beelineRadius;
+	private final double maxBeelineTransferTime;
+	private final Map<Id<TransitStopFacility>, Double> maxScheduleTransferTimes = new HashMap<>();
+	private final Map<Id<TransitStopFacility>, Set<Id<TransitStopFacility>>> scheduleTransferStops = new HashMap<>();
+
+	InitialTransfers(TransitSchedule schedule, RaptorStaticConfig raptorConfig) {
+		this.beelineRadius = raptorConfig.getBeelineWalkConnectionDistance();
+		this.maxBeelineTransferTime = Math.max(raptorConfig.getMinimalTransferTime(),
+				this.beelineRadius * raptorConfig.getBeelineWalkDistanceFactor() / raptorConfig.getBeelineWalkSpeed());
+		MinimalTransferTimes.MinimalTransferTimesIterator iter = schedule.getMinimalTransferTimes().iterator();
+		while (iter.hasNext()) {
+			iter.next();
+			this.scheduleTransferStops.computeIfAbsent(iter.getFromStopId(), k -> new HashSet<>()).add(iter.getToStopId());
+			this.maxScheduleTransferTimes.merge(iter.getFromStopId(), iter.getSeconds(), Math::max);
+		}
+	}
+
+	/**
+	 * @return the start stops and all stops reachable from them by an initial transfer, together with the longest transfer time to any of them.
+	 */
+	BoardingStops getBoardingStops(Collection<TransitStopFacility> fromStops, SwissRailRaptorData raptorData) {
+		Set<Id<TransitStopFacility>> stopIds = new HashSet<>();
+		double maxTransferTime = this.maxBeelineTransferTime;
+		for (TransitStopFacility stop : fromStops) {
+			stopIds.add(stop.getId());
+			for (TransitStopFacility transferStop : raptorData.findNearbyStops(stop.getCoord().getX(), stop.getCoord().getY(), this.beelineRadius)) {
+				stopIds.add(transferStop.getId());
+			}
+			Set<Id<TransitStopFacility>> scheduleStops = this.scheduleTransferStops.get(stop.getId());
+			if (scheduleStops != null) {
+				stopIds.addAll(scheduleStops);
+				maxTransferTime = Math.max(maxTransferTime, this.maxScheduleTransferTimes.get(stop.getId()));
+			}
+		}
+		return new BoardingStops(stopIds, maxTransferTime);
+	}
+
+	record BoardingStops(Set<Id<TransitStopFacility>> stopIds, double maxTransferTime) {
+	}
+}
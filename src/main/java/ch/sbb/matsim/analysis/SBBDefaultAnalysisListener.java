@@ -10,20 +10,38 @@ import ch.sbb.matsim.analysis.modalsplit.ModalSplitStats;
 import ch.sbb.matsim.analysis.tripsandlegsanalysis.*;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.utils.ScenarioConsistencyChecker;
+import ch.sbb.matsim.zones.ZonesCollection;
 import com.google.inject.Inject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.matsim.analysis.TripsAndLegsWriter;
+import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.groups.ControllerConfigGroup;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.events.IterationEndsEvent;
 import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
 import org.matsim.core.controler.events.StartupEvent;
 import org.matsim.core.controler.listener.IterationEndsListener;
 import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.controler.listener.ShutdownListener;
 import org.matsim.core.controler.listener.StartupListener;
+import org.matsim.core.scoring.ExperiencedPlansService;
 
-public class SBBDefaultAnalysisListener implements IterationEndsListener, StartupListener, IterationStartsListener {
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SBBDefaultAnalysisListener implements IterationEndsListener, StartupListener, IterationStartsListener, ShutdownListener {
+
+    private static final Logger log = LogManager.getLogger(SBBDefaultAnalysisListener.class);
 
     private final OutputDirectoryHierarchy controlerIO;
     private final ControllerConfigGroup config;
@@ -52,6 +70,15 @@ public class SBBDefaultAnalysisListener implements IterationEndsListener, Startu
     @Inject
     private Scenario scenario;
 
+    @Inject
+    private ZonesCollection zonesCollection;
+
+    @Inject
+    private RailTripsAnalyzer railTripsAnalyzer;
+
+    @Inject
+    private ExperiencedPlansService experiencedPlansService;
+
     @Inject
     private TripsAndLegsWriter.CustomTripsWriterExtension sbbTripsExtension;
 
@@ -115,19 +142,94 @@ public class SBBDefaultAnalysisListener implements IterationEndsListener, Startu
                 String modalSpliteFileName = event.getIteration() == this.config.getLastIteration() ? controlerIO.getOutputFilename("")
                         : controlerIO.getIterationFilename(event.getIteration(), "");
 
-                railDemandReporting.calcAndwriteIterationDistanceReporting(railTripsFilename, scalefactor);
-                demandAggregator.aggregateAndWriteMatrix(scalefactor, railDemandAggregateFilename, railDemandStationToStation, railDemandStationToStationFQ, tripsPerMunFile, tripsPerMSRFile);
-                ptLinkVolumeAnalyzer.writePtLinkUsage(ptLinkUsageFilename, scalefactor);
-                putSurveyWriter.collectAndWritePUTSurvey(putSurveyNew);
-                carLinkAnalysis.writeSingleIterationStreetStats(carVolumesName);
-                tripsAndDistanceStats.analyzeAndWriteStats(fullTripsAndDistanceStatsName, tripsAndDistanceStatsName);
-                activityWriter.writeActivities(activityFilename);
-                modalSplitStats.analyzeAndWriteStats(modalSpliteFileName);
+                // all analyses work on the same experienced plans, which are not modified until the next iteration,
+                // so they are decomposed into trips only once
+                IdMap<Person, Plan> experiencedPlans = experiencedPlansService.getExperiencedPlans();
+                TripIndex tripIndex = TripIndex.build(experiencedPlans, scenario, zonesCollection.getZones(ppConfig.getZonesId()), railTripsAnalyzer);
+                List<AnalysisTask> tasks = new ArrayList<>();
+                tasks.add(new AnalysisTask("railDemandReporting", () -> railDemandReporting.calcAndwriteIterationDistanceReporting(railTripsFilename, tripIndex, scalefactor)));
+                tasks.add(new AnalysisTask("demandAggregator", () -> demandAggregator.aggregateAndWriteMatrix(scalefactor, railDemandAggregateFilename, railDemandStationToStation, railDemandStationToStationFQ, tripsPerMunFile, tripsPerMSRFile, tripIndex)));
+                tasks.add(new AnalysisTask("ptLinkVolumeAnalyzer", () -> ptLinkVolumeAnalyzer.writePtLinkUsage(ptLinkUsageFilename, tripIndex, scalefactor)));
+                tasks.add(new AnalysisTask("putSurveyWriter", () -> putSurveyWriter.collectAndWritePUTSurvey(putSurveyNew, tripIndex)));
+                tasks.add(new AnalysisTask("carLinkAnalysis", () -> carLinkAnalysis.writeSingleIterationStreetStats(carVolumesName)));
+                tasks.add(new AnalysisTask("tripsAndDistanceStats", () -> tripsAndDistanceStats.analyzeAndWriteStats(fullTripsAndDistanceStatsName, tripsAndDistanceStatsName, tripIndex)));
+                tasks.add(new AnalysisTask("activityWriter", () -> activityWriter.writeActivities(activityFilename, tripIndex)));
+                tasks.add(new AnalysisTask("modalSplitStats", () -> modalSplitStats.analyzeAndWriteStats(modalSpliteFileName, tripIndex)));
+                runAnalyses(tasks);
             }
         }
         if (ppConfig.getDailyLinkVolumes()) {
-            String carVolumesFile = controlerIO.getOutputFilename("car_volumes_daily.csv.gz");
+            String carVolumesFile = controlerIO.getOutputFilename("car_volumes_daily.bin");
             carLinkAnalysis.writeMultiIterationCarStats(carVolumesFile, event.getIteration());
+            if (event.getIteration() == this.config.getLastIteration()) {
+                carLinkAnalysis.finishMultiIterationCarStats(carVolumesFile, controlerIO.getOutputFilename("car_volumes_daily.csv.gz"));
+            }
+        }
+    }
+
+    /**
+     * Runs the analyses one after another, or concurrently if configured. The analyses only read the experienced plans
+     * and other scenario data, which are not modified during iteration end, and each writes its own output files.
+     * A failing analysis does not stop the others, all failures are thrown together once every analysis has run.
+     */
+    private void runAnalyses(List<AnalysisTask> tasks) {
+        long start = System.nanoTime();
+        if (!this.ppConfig.getRunAnalysesInParallel()) {
+            RuntimeException failure = null;
+            for (AnalysisTask task : tasks) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failure = addFailure(failure, task, e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } else {
+            int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (AnalysisTask task : tasks) {
+                    futures.add(executor.submit(task::run));
+                }
+                RuntimeException failure = null;
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        futures.get(i).get();
+                    } catch (ExecutionException e) {
+                        failure = addFailure(failure, tasks.get(i), e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException(e);
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+        log.info("Running {} analyses took {} ms.", tasks.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static RuntimeException addFailure(RuntimeException failure, AnalysisTask task, Throwable cause) {
+        RuntimeException ex = new RuntimeException("Analysis " + task.name() + " failed.", cause);
+        if (failure == null) {
+            return ex;
+        }
+        failure.addSuppressed(ex);
+        return failure;
+    }
+
+    private record AnalysisTask(String name, Runnable analysis) {
+
+        void run() {
+            long start = System.nanoTime();
+            this.analysis.run();
+            log.info("Analysis {} took {} ms.", this.name, (System.nanoTime() - start) / 1_000_000);
         }
     }
 
@@ -137,4 +239,10 @@ public class SBBDefaultAnalysisListener implements IterationEndsListener, Startu
                 ((SBBTripsExtension) sbbTripsExtension).prepareAddtionalTripAttributes();
             }
         }
+
+    @Override
+    public void notifyShutdown(ShutdownEvent event) {
+        // the daily link volumes are only finished after the last iteration, also close them if the run ends earlier
+        carLinkAnalysis.closeMultiIterationCarStats();
+    }
 }
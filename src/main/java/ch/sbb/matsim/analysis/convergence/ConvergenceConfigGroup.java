@@ -14,11 +14,13 @@ public class ConvergenceConfigGroup extends ReflectiveConfigGroup {
 	private static final String ITERATION_WINDOW_SIZE_PARAM = "iterationWindowSize";
 	private static final String TESTS_TO_RUN_PARAM = "testsToRun";
 	private static final String CONVERGENCE_CRITERION_FUNCTION_TARGET_PARAM = "convergenceCriterionFunctionTarget";
+	private static final String RUN_ASYNCHRONOUSLY_PARAM = "runAsynchronously";
 
 	private boolean activateConvergenceStats = false;
 	private double iterationWindowSize = 60.0;
 	private Test[] testsToRun = new Test[]{Test.KENDALL, Test.KS_NORMAL, Test.CV};
 	private double convergenceCriterionFunctionTarget = 0.0;
+	private boolean runAsynchronously = false;
 
 	public ConvergenceConfigGroup() {
 		super(GROUP_NAME);
@@ -72,6 +74,16 @@ public class ConvergenceConfigGroup extends ReflectiveConfigGroup {
 		this.convergenceCriterionFunctionTarget = convergenceCriterionFunctionTarget;
 	}
 
+	@StringGetter(RUN_ASYNCHRONOUSLY_PARAM)
+	public boolean isRunAsynchronously() {
+		return this.runAsynchronously;
+	}
+
+	@StringSetter(RUN_ASYNCHRONOUSLY_PARAM)
+	public void setRunAsynchronously(boolean runAsynchronously) {
+		this.runAsynchronously = runAsynchronously;
+	}
+
 	@Override
 	public Map<String, String> getComments() {
 		Map<String, String> map = super.getComments();
@@ -80,6 +92,8 @@ public class ConvergenceConfigGroup extends ReflectiveConfigGroup {
 				"number of iterations to be used for calculating the convergence statistics. If between 0.0 and 1.0 the window is sized as a share of the total number of iterations from the controler.");
 		map.put(CONVERGENCE_CRITERION_FUNCTION_TARGET_PARAM,
 				"When the convergence criterion function reaches this value the simulation is terminated. 0.0 is the default and disables the convergence criterion termination. Make sure to set a big enough lastIteration param in the controler, since that value is also used as a termination criterion.");
+		map.put(RUN_ASYNCHRONOUSLY_PARAM,
+				"If true, the tests are run in a background thread, so the next iteration is not delayed. The results are written in the order of the iterations.");
 		return map;
 	}
 
@@ -3,27 +3,37 @@ package ch.sbb.matsim.analysis.convergence;
 import ch.sbb.matsim.csv.CSVReader;
 import ch.sbb.matsim.csv.CSVWriter;
 import jakarta.inject.Inject;
+import org.apache.commons.math3.special.Erf;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
 import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.controler.listener.ShutdownListener;
 import org.matsim.core.utils.io.IOUtils;
 import smile.stat.distribution.GaussianDistribution;
 import smile.stat.hypothesis.CorTest;
 import smile.stat.hypothesis.KSTest;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 
 import static ch.sbb.matsim.analysis.convergence.ConvergenceConfigGroup.Test;
 
-public class ConvergenceStats implements IterationStartsListener {
+public class ConvergenceStats implements IterationStartsListener, ShutdownListener {
 
 	/**
 	 * Calculates at each iteration the following statistics:
@@ -31,8 +41,10 @@ public class ConvergenceStats implements IterationStartsListener {
 	 * 	<li>Kendall's Trend for each of the global statistics (scores, travel distances and mode shares)</li>
 	 * 	<li>Stationarity test's p-value with a 5% significance level (test results for trend equals to 0)</li>
 	 * </ul>
-	 * To avoid re-calculating all MATSim global stats again, the txt files are parsed for obtaining the data.
+	 * To avoid re-calculating all MATSim global stats again, the csv files are parsed for obtaining the data.
 	 * This is not elegant but if this class one day ends up in Core, the data can then be obtained directly.
+	 * Only the rows appended since the previous iteration are parsed, the values of the iteration window are kept in ring buffers
+	 * which also maintain the sums required for Kendall's Trend and the coefficient of variation incrementally.
 	 *
 	 * @author davig
 	 */
@@ -51,8 +63,13 @@ public class ConvergenceStats implements IterationStartsListener {
 	private Map<Test, CSVWriter> writers;
 	private List<String> columns;
 	private final ConvergenceConfigGroup csConfig;
-	private double currentConvergenceFunctionResults = 0.0;
 	private CSVWriter convergenceFunctionWriter;
+	private Map<String, WindowSeries> series;
+	private IncrementalStatsReader scoreStatsReader;
+	private IncrementalStatsReader travelDistanceStatsReader;
+	private IncrementalStatsReader modeStatsReader;
+	private ExecutorService executor;
+	private final List<Future<?>> pendingCalculations = new ArrayList<>();
 
 	@Inject
 	public ConvergenceStats(Config config) {
@@ -69,6 +86,13 @@ public class ConvergenceStats implements IterationStartsListener {
 		this.csConfig = ConfigUtils.addOrGetModule(config, ConvergenceConfigGroup.class);
 		this.iterationWindowSize = iterationWindowSize;
 		this.testsToRun = testsToRun;
+		if (this.csConfig.isRunAsynchronously()) {
+			this.executor = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "convergence-stats");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
 	}
 
 	private static boolean functionTermMatches(String configTest, String actualTest, String configStat, String actualStat) {
@@ -103,23 +127,45 @@ public class ConvergenceStats implements IterationStartsListener {
 
 	@Override
 	public void notifyIterationStarts(IterationStartsEvent event) {
-		this.currentConvergenceFunctionResults = 0.0; // reset value for next iteration
 		if (event.getIteration() >= iterationWindowSize) {
 			if (this.writers == null) {
 				setup(event.getServices().getControlerIO());
 			}
-			calcIteration(event.getServices().getControlerIO(), event.getIteration());
-			for (CSVWriter writer : this.writers.values()) {
+			int iteration = event.getIteration();
+			readNewStats();
+			// the windows are copied, so the series can be updated in the next iteration while the tests are still running
+			Map<String, Window> windows = new LinkedHashMap<>();
+			for (String column : this.columns) {
+				windows.put(column, this.series.get(column).getWindow());
+			}
+			if (this.executor == null) {
+				calcIteration(iteration, windows);
+			} else {
+				checkPendingCalculations(false);
+				this.pendingCalculations.add(this.executor.submit(() -> calcIteration(iteration, windows)));
+			}
+		}
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		close();
+	}
+
+	private void checkPendingCalculations(boolean wait) {
+		Iterator<Future<?>> iterator = this.pendingCalculations.iterator();
+		while (iterator.hasNext()) {
+			Future<?> future = iterator.next();
+			if (wait || future.isDone()) {
 				try {
-					writer.writeRow(true);
-				} catch (IOException e) {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Calculating the convergence statistics failed.", e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
 					throw new RuntimeException(e);
 				}
-			}
-			try {
-				this.convergenceFunctionWriter.writeRow(true);
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+				iterator.remove();
 			}
 		}
 	}
@@ -146,37 +192,75 @@ public class ConvergenceStats implements IterationStartsListener {
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+
+		this.series = new HashMap<>();
+		for (String column : this.columns) {
+			this.series.put(column, new WindowSeries(this.iterationWindowSize));
+		}
+		this.scoreStatsReader = new IncrementalStatsReader(controlerIO.getOutputFilename(SCORESTATS_FILENAME));
+		this.travelDistanceStatsReader = new IncrementalStatsReader(controlerIO.getOutputFilename(TRAVELDISTANCESTATS_FILENAME));
+		this.modeStatsReader = new IncrementalStatsReader(controlerIO.getOutputFilename(MODESTATS_FILENAME));
 	}
 
-	private void calcIteration(OutputDirectoryHierarchy controlerIO, int iteration) {
-		Map.Entry<Double, Double> res;
+	/**
+	 * Adds the rows written by the stats listeners since the last iteration to the series. If a file was rewritten with different content, its series are filled again from the start.
+	 */
+	private void readNewStats() {
 		try {
-			double[] scores = loadGlobalStats(controlerIO.getOutputFilename(SCORESTATS_FILENAME));
-			double[] traveldistances = loadGlobalStats(controlerIO.getOutputFilename(TRAVELDISTANCESTATS_FILENAME));
-			String[] modes = this.columns.subList(2, this.columns.size()).toArray(new String[0]);
-			Map<String, List<Double>> modestats = loadGlobalStats(controlerIO.getOutputFilename(MODESTATS_FILENAME), modes);
-
-			for (Test test : this.testsToRun) {
-				this.writers.get(test).set(COL_ITERATION, String.valueOf(iteration));
-				res = runTest(test, scores);
-				this.writers.get(test).set(COL_SCORES + COL_STATISTIC, String.format("%.4f", res.getKey()));
-				this.writers.get(test).set(COL_SCORES + COL_PVALUE, String.format("%.4f", res.getValue()));
-				this.currentConvergenceFunctionResults += calcConvergenceFuntionTerm(test, "scores", res.getKey());
-
-				res = runTest(test, traveldistances);
-				this.writers.get(test).set(COL_TRAVELDISTANCE + COL_STATISTIC, String.format("%.4f", res.getKey()));
-				this.writers.get(test).set(COL_TRAVELDISTANCE + COL_PVALUE, String.format("%.4f", res.getValue()));
-				this.currentConvergenceFunctionResults += calcConvergenceFuntionTerm(test, "traveldistances", res.getKey());
+			readFirstColumn(this.scoreStatsReader, this.series.get(COL_SCORES));
+			readFirstColumn(this.travelDistanceStatsReader, this.series.get(COL_TRAVELDISTANCE));
 
+			List<String> modes = this.columns.subList(2, this.columns.size());
+			if (this.modeStatsReader.readNewRows()) {
 				for (String mode : modes) {
-					res = runTest(test, modestats.get(mode).stream().mapToDouble(Double::doubleValue).toArray());
-					this.writers.get(test).set(mode + COL_STATISTIC, String.format("%.4f", res.getKey()));
-					this.writers.get(test).set(mode + COL_PVALUE, String.format("%.4f", res.getValue()));
-					this.currentConvergenceFunctionResults += calcConvergenceFuntionTerm(test, mode, res.getKey());
+					this.series.get(mode).clear();
+				}
+			}
+			List<String> msHeader = Arrays.asList(this.modeStatsReader.getHeader());
+			for (String mode : modes) {
+				int index = msHeader.indexOf(mode);
+				if (index >= 0) {
+					WindowSeries modeSeries = this.series.get(mode);
+					for (String[] row : this.modeStatsReader.getRows()) {
+						modeSeries.add(Double.parseDouble(row[index]));
+					}
 				}
 			}
-			this.convergenceFunctionWriter.set(COL_ITERATION, String.valueOf(iteration));
-			this.convergenceFunctionWriter.set(COL_CONVERGENCE_FUNCTION_RESULT, String.valueOf(this.currentConvergenceFunctionResults));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void readFirstColumn(IncrementalStatsReader reader, WindowSeries series) throws IOException {
+		if (reader.readNewRows()) {
+			series.clear();
+		}
+		for (String[] row : reader.getRows()) {
+			series.add(Double.parseDouble(row[1]));
+		}
+	}
+
+	private void calcIteration(int iteration, Map<String, Window> windows) {
+		Map.Entry<Double, Double> res;
+		double convergenceFunctionResult = 0.0;
+		for (Test test : this.testsToRun) {
+			CSVWriter writer = this.writers.get(test);
+			writer.set(COL_ITERATION, String.valueOf(iteration));
+			for (Map.Entry<String, Window> e : windows.entrySet()) {
+				String column = e.getKey();
+				res = runTest(test, e.getValue());
+				writer.set(column + COL_STATISTIC, String.format("%.4f", res.getKey()));
+				writer.set(column + COL_PVALUE, String.format("%.4f", res.getValue()));
+				convergenceFunctionResult += calcConvergenceFuntionTerm(test, column, res.getKey());
+			}
+		}
+		this.convergenceFunctionWriter.set(COL_ITERATION, String.valueOf(iteration));
+		this.convergenceFunctionWriter.set(COL_CONVERGENCE_FUNCTION_RESULT, String.valueOf(convergenceFunctionResult));
+		try {
+			for (CSVWriter writer : this.writers.values()) {
+				writer.writeRow(true);
+			}
+			this.convergenceFunctionWriter.writeRow(true);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -222,14 +306,43 @@ public class ConvergenceStats implements IterationStartsListener {
 		return new AbstractMap.SimpleEntry<>(stat, pvalue);
 	}
 
+	/**
+	 * Same as {@link #runTest(Test, double[])}, but uses the incrementally maintained sums of the window for Kendall's Trend and the coefficient of variation.
+	 */
+	private Map.Entry<Double, Double> runTest(Test test, Window window) {
+		if (window.values().length < this.iterationWindowSize) {
+			return new AbstractMap.SimpleEntry<>(Double.NaN, Double.NaN);
+		}
+		switch (test) {
+			case KENDALL:
+				return new AbstractMap.SimpleEntry<>(window.getKendallTau(), window.getKendallPValue());
+			case CV:
+				return new AbstractMap.SimpleEntry<>(window.getCoefficientOfVariation(), Double.NaN);
+			default:
+				return runTest(test, window.values());
+		}
+	}
+
 	public void close() {
+		if (this.executor != null) {
+			try {
+				checkPendingCalculations(true);
+			} finally {
+				this.executor.shutdown();
+			}
+		}
+		if (this.writers == null) {
+			return;
+		}
 		try {
 			for (CSVWriter writer : this.writers.values()) {
 				writer.close();
 			}
+			this.convergenceFunctionWriter.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		this.writers = null;
 	}
 
 	private double[] standardizeTs(double[] timeseries) {
@@ -237,5 +350,163 @@ public class ConvergenceStats implements IterationStartsListener {
 		return Arrays.stream(timeseries).map(timesery -> (timesery - ds.getMean()) / ds.getStandardDeviation()).toArray();
 	}
 
-}
+	/**
+	 * Ring buffer containing the last values of a global statistic. Adding a value updates the sums required for Kendall's Trend and the coefficient of variation in O(window size),
+	 * instead of recalculating them over all pairs of the window.
+	 */
+	static final class WindowSeries {
+
+		private final double[] values;
+		private int start = 0;
+		private int size = 0;
+		/** sum of the signs of (later value - earlier value) over all pairs of values in the window */
+		private int kendallScore = 0;
+		/** number of pairs of values in the window with different values */
+		private int distinctPairs = 0;
+		private double sum = 0;
+		private double sumOfSquares = 0;
+
+		WindowSeries(int windowSize) {
+			this.values = new double[windowSize];
+		}
+
+		void add(double value) {
+			if (this.size == this.values.length) {
+				double oldest = this.values[this.start];
+				for (int i = 1; i < this.size; i++) {
+					double v = this.values[(this.start + i) % this.values.length];
+					this.kendallScore -= sign(v - oldest);
+					if (v != oldest) {
+						this.distinctPairs--;
+					}
+				}
+				this.sum -= oldest;
+				this.sumOfSquares -= oldest * oldest;
+				this.start = (this.start + 1) % this.values.length;
+				this.size--;
+			}
+			for (int i = 0; i < this.size; i++) {
+				double v = this.values[(this.start + i) % this.values.length];
+				this.kendallScore += sign(value - v);
+				if (v != value) {
+					this.distinctPairs++;
+				}
+			}
+			this.values[(this.start + this.size) % this.values.length] = value;
+			this.size++;
+			this.sum += value;
+			this.sumOfSquares += value * value;
+		}
 
+		void clear() {
+			this.start = 0;
+			this.size = 0;
+			this.kendallScore = 0;
+			this.distinctPairs = 0;
+			this.sum = 0;
+			this.sumOfSquares = 0;
+		}
+
+		Window getWindow() {
+			double[] window = new double[this.size];
+			for (int i = 0; i < this.size; i++) {
+				window[i] = this.values[(this.start + i) % this.values.length];
+			}
+			return new Window(window, this.kendallScore, this.distinctPairs, this.sum, this.sumOfSquares);
+		}
+
+		private static int sign(double difference) {
+			return difference > 0 ? 1 : (difference < 0 ? -1 : 0);
+		}
+	}
+
+	/**
+	 * A copy of the values of a {@link WindowSeries} and its sums, from oldest to newest value.
+	 */
+	record Window(double[] values, int kendallScore, int distinctPairs, double sum, double sumOfSquares) {
+
+		/**
+		 * Kendall's tau-b between the iteration index and the values, see {@link CorTest#kendall(double[], double[])}. As the iteration indices contain no ties, only the ties
+		 * of the values need to be accounted for.
+		 */
+		double getKendallTau() {
+			double n = this.values.length;
+			return this.kendallScore / (Math.sqrt(n * (n - 1) / 2) * Math.sqrt(this.distinctPairs));
+		}
+
+		double getKendallPValue() {
+			double n = this.values.length;
+			double variance = (4.0 * n + 10.0) / (9.0 * n * (n - 1.0));
+			double z = getKendallTau() / Math.sqrt(variance);
+			return Erf.erfc(Math.abs(z) / Math.sqrt(2));
+		}
+
+		/**
+		 * @return the sample standard deviation divided by the mean
+		 */
+		double getCoefficientOfVariation() {
+			double n = this.values.length;
+			double mean = this.sum / n;
+			double variance = Math.max(0, (this.sumOfSquares - this.sum * mean) / (n - 1));
+			return Math.sqrt(variance) / mean;
+		}
+	}
+
+	/**
+	 * Reads the rows appended to a stats file since the previous call. The stats listeners either append rows or rewrite the file with the same content followed by the new rows,
+	 * so the position after the last complete row remains valid as long as the file does not get shorter and its header does not change.
+	 */
+	private static final class IncrementalStatsReader {
+
+		private final String filename;
+		private String[] header;
+		private String headerLine;
+		private long position = 0;
+		private final List<String[]> rows = new ArrayList<>();
+
+		IncrementalStatsReader(String filename) {
+			this.filename = filename;
+		}
+
+		/**
+		 * @return <code>true</code> if the file was read again from the start, i.e. all rows read before are to be discarded.
+		 */
+		boolean readNewRows() throws IOException {
+			this.rows.clear();
+			boolean restart = false;
+			try (RandomAccessFile file = new RandomAccessFile(this.filename, "r")) {
+				String headerLine = file.readLine();
+				if (this.headerLine == null || !this.headerLine.equals(headerLine) || file.length() < this.position) {
+					restart = this.headerLine != null;
+					this.headerLine = headerLine;
+					this.header = headerLine.split(";");
+					this.position = file.getFilePointer();
+				}
+				byte[] data = new byte[(int) (file.length() - this.position)];
+				file.seek(this.position);
+				file.readFully(data);
+				int lineStart = 0;
+				for (int i = 0; i < data.length; i++) {
+					if (data[i] == '\n') {
+						String line = new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8).trim();
+						if (!line.isEmpty()) {
+							this.rows.add(line.split(";"));
+						}
+						lineStart = i + 1;
+					}
+				}
+				this.position += lineStart; // an incomplete last line is read again the next time
+			}
+			return restart;
+		}
+
+		String[] getHeader() {
+			return this.header;
+		}
+
+		List<String[]> getRows() {
+			return this.rows;
+		}
+	}
+
+}
@@ -39,8 +39,6 @@ import org.matsim.core.utils.collections.Tuple;
 
 import java.io.*;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPOutputStream;
 
 public class CarLinkAnalysis {
 
@@ -62,8 +60,8 @@ public class CarLinkAnalysis {
 	private final Population population;
 	private final double samplesize;
 	final IterationLinkAnalyzer linkAnalyzer;
-	private boolean firstcall = true;
-	private TreeSet<Id<Link>> carlinks;
+	private List<Id<Link>> carlinks;
+	private LinkVolumesBinaryFile.Writer multiIterationWriter;
 
 	public CarLinkAnalysis(PostProcessingConfigGroup ppConfig, Scenario scenario, IterationLinkAnalyzer linkAnalyzer) {
 		this.samplesize = ppConfig.getSimulationSampleSize();
@@ -72,33 +70,62 @@ public class CarLinkAnalysis {
 		this.population = scenario.getPopulation();
 	}
 
+	/**
+	 * Appends the daily car and freight volumes of all car links in this iteration to the given {@link LinkVolumesBinaryFile}. The file and its header with the link ids are
+	 * created on the first call, unless the file already exists with the same links, e.g. if the run was restarted.
+	 */
 	public void writeMultiIterationCarStats(String filename, int iteration) {
-		try (OutputStream os = new GZIPOutputStream(new FileOutputStream(filename, true))) {
-            BufferedWriter w = new BufferedWriter(new OutputStreamWriter(os));
-            if (firstcall) {
-                carlinks = network.getLinks().values()
-                        .stream()
-                        .filter(l -> l.getAllowedModes().contains(SBBModes.CAR))
-                        .map(Identifiable::getId)
-                        //.map(LinkStorage::new)
-                        .collect(Collectors.toCollection(TreeSet::new));
-                w.write("Iteration;" + carlinks.stream().map(Objects::toString).collect(Collectors.joining(";")));
-                firstcall = false;
+		try {
+			if (multiIterationWriter == null) {
+				carlinks = network.getLinks().values()
+						.stream()
+						.filter(l -> l.getAllowedModes().contains(SBBModes.CAR))
+						.map(Identifiable::getId)
+						.sorted()
+						.toList();
+				multiIterationWriter = new LinkVolumesBinaryFile.Writer(new File(filename), carlinks.stream().map(Objects::toString).toArray(String[]::new), true);
 			}
-			var linkVolumes = linkAnalyzer.getIterationCounts();
-			w.newLine();
-			w.write(iteration);
-			for (Id<Link> l : carlinks) {
-				double vol = linkVolumes.getOrDefault(l, new LinkStorage(l)).getCarCount() + linkVolumes.getOrDefault(l, new LinkStorage(l)).getFreightCount() / samplesize;
-				w.write(";");
-				w.write(Integer.toString((int) vol));
+			int[] volumes = new int[carlinks.size()];
+			for (int i = 0; i < volumes.length; i++) {
+				Id<Link> l = carlinks.get(i);
+				double vol = linkAnalyzer.getCount(l, AnalysisVehicleType.car) + linkAnalyzer.getCount(l, AnalysisVehicleType.freight) / samplesize;
+				volumes[i] = (int) vol;
 			}
-
-			w.flush();
+			multiIterationWriter.writeIteration(iteration, volumes);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+	}
 
+	/**
+	 * Closes the file written by {@link #writeMultiIterationCarStats(String, int)} and exports its content to the given csv file.
+	 */
+	public void finishMultiIterationCarStats(String filename, String csvFilename) {
+		if (multiIterationWriter == null) {
+			return;
+		}
+		try {
+			multiIterationWriter.close();
+			multiIterationWriter = null;
+			LinkVolumesBinaryFile.exportCsv(LinkVolumesBinaryFile.read(new File(filename)), csvFilename);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Closes the file written by {@link #writeMultiIterationCarStats(String, int)} if it is still open, e.g. if the run ends before the last iteration.
+	 */
+	public void closeMultiIterationCarStats() {
+		if (multiIterationWriter == null) {
+			return;
+		}
+		try {
+			multiIterationWriter.close();
+			multiIterationWriter = null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	public void writeSingleIterationStreetStats(String fileName) {
@@ -233,6 +260,17 @@ public class CarLinkAnalysis {
 			}
 		}
 
+		void increase(IterationLinkAnalyzer.AnalysisVehicleType vehicleType, int count) {
+			switch (vehicleType) {
+				case freight -> freightCount += count;
+				case car -> carCount += count;
+				case ride -> rideCount += count;
+				case bike -> bikeCount += count;
+				case ebike -> ebikeCount += count;
+				default -> log.warn("Vehicle type cannot be recognized");
+			}
+		}
+
 		public Id<Link> getLinkId() {
 			return linkId;
 		}
@@ -22,24 +22,25 @@ package ch.sbb.matsim.analysis.linkAnalysis;
 import ch.sbb.matsim.config.variables.Variables;
 import jakarta.inject.Inject;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.IdMap;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
 import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
 import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.vehicles.Vehicle;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
 
 /**
  * Counts the vehicles per iteration on all links
+ * <p>
+ * The counts are stored in one primitive array per vehicle type, indexed by {@link Id#index()} of the links. The type of the vehicles and the classification of
+ * their drivers are stored in arrays indexed by the vehicle and person ids as well, so handling an event neither allocates objects nor looks up maps.
  */
 public class IterationLinkAnalyzer implements LinkEnterEventHandler, VehicleEntersTrafficEventHandler {
 
@@ -47,60 +48,136 @@ public class IterationLinkAnalyzer implements LinkEnterEventHandler, VehicleEnte
     private Scenario scenario;
 
     enum AnalysisVehicleType {freight, car, ride, bike, ebike}
-    private final IdMap<Link, CarLinkAnalysis.LinkStorage> countPerLink = new IdMap<>(Link.class);
-    private final Map<Id<Vehicle>, AnalysisVehicleType> identification = new HashMap<>();
+
+    private static final AnalysisVehicleType[] VEHICLE_TYPES = AnalysisVehicleType.values();
+    private static final byte UNKNOWN = 0;
+    private static final byte PT = -1;
+
+    private final int[][] countPerLink = new int[VEHICLE_TYPES.length][];
+    /** the vehicle type per vehicle index, stored as <code>ordinal + 1</code>, or {@link #UNKNOWN} if the vehicle should not be counted */
+    private byte[] identification;
+    /** the vehicle type per person index, stored as <code>ordinal + 1</code>, {@link #PT} for persons driving pt vehicles, or {@link #UNKNOWN} if not yet classified */
+    private byte[] personTypes;
 
     @Inject
     public IterationLinkAnalyzer(EventsManager manager) {
+        this();
         manager.addHandler(this);
     }
 
     public IterationLinkAnalyzer(Scenario scenario) {
+        this();
         this.scenario = scenario;
     }
 
+    private IterationLinkAnalyzer() {
+        int linkCount = Id.getNumberOfIds(Link.class);
+        for (int i = 0; i < this.countPerLink.length; i++) {
+            this.countPerLink[i] = new int[linkCount];
+        }
+        this.identification = new byte[Id.getNumberOfIds(Vehicle.class)];
+        this.personTypes = new byte[Id.getNumberOfIds(Person.class)];
+    }
+
     @Override
     public void handleEvent(LinkEnterEvent event) {
-        var linkId = event.getLinkId();
-        var linkStorage = countPerLink.getOrDefault(linkId, new CarLinkAnalysis.LinkStorage(linkId));
-        var vehicleType = identification.get(event.getVehicleId());
+        int vehicleIndex = event.getVehicleId().index();
         // check if the vehicle schould be counted
-        if (vehicleType != null) {
-            linkStorage.increase(vehicleType);
-            countPerLink.put(linkId, linkStorage);
+        if (vehicleIndex < this.identification.length) {
+            byte vehicleType = this.identification[vehicleIndex];
+            if (vehicleType != UNKNOWN) {
+                increase(event.getLinkId().index(), vehicleType);
+            }
         }
     }
 
     @Override
     public void handleEvent(VehicleEntersTrafficEvent event) {
-        var linkId = event.getLinkId();
+        byte vehicleType = getPersonType(event.getPersonId());
 
         // Skip all pt vehicles
-        if (event.getPersonId().toString().contains("pt")) {
+        if (vehicleType == PT) {
             return;
         }
 
-        var linkStorage = countPerLink.getOrDefault(linkId, new CarLinkAnalysis.LinkStorage(linkId));
-
-        // Check if the vehicle is a Lkw
-        if (event.getPersonId().toString().contains("drt") || !scenario.getPopulation().getPersons().get(event.getPersonId()).getAttributes().getAttribute("subpopulation").toString().contains(Variables.FREIGHT_ROAD)) {
-            linkStorage.increase(AnalysisVehicleType.car);
-            countPerLink.put(linkId, linkStorage);
-            identification.put(event.getVehicleId(), AnalysisVehicleType.car);
-        } else {
-            linkStorage.increase(AnalysisVehicleType.freight);
-            countPerLink.put(linkId, linkStorage);
-            identification.put(event.getVehicleId(), AnalysisVehicleType.freight);
+        increase(event.getLinkId().index(), vehicleType);
+        int vehicleIndex = event.getVehicleId().index();
+        if (vehicleIndex >= this.identification.length) {
+            this.identification = Arrays.copyOf(this.identification, Math.max(vehicleIndex + 1, Id.getNumberOfIds(Vehicle.class)));
         }
+        this.identification[vehicleIndex] = vehicleType;
+    }
+
+    private byte getPersonType(Id<Person> personId) {
+        int personIndex = personId.index();
+        if (personIndex >= this.personTypes.length) {
+            this.personTypes = Arrays.copyOf(this.personTypes, Math.max(personIndex + 1, Id.getNumberOfIds(Person.class)));
+        }
+        byte personType = this.personTypes[personIndex];
+        if (personType == UNKNOWN) {
+            String id = personId.toString();
+            if (id.contains("pt")) {
+                personType = PT;
+            } else if (id.contains("drt") || !scenario.getPopulation().getPersons().get(personId).getAttributes().getAttribute("subpopulation").toString().contains(Variables.FREIGHT_ROAD)) {
+                // Check if the vehicle is a Lkw
+                personType = toByte(AnalysisVehicleType.car);
+            } else {
+                personType = toByte(AnalysisVehicleType.freight);
+            }
+            this.personTypes[personIndex] = personType;
+        }
+        return personType;
+    }
+
+    private void increase(int linkIndex, byte vehicleType) {
+        int[] counts = this.countPerLink[vehicleType - 1];
+        if (linkIndex >= counts.length) {
+            int capacity = Math.max(linkIndex + 1, Id.getNumberOfIds(Link.class));
+            for (int i = 0; i < this.countPerLink.length; i++) {
+                this.countPerLink[i] = Arrays.copyOf(this.countPerLink[i], capacity);
+            }
+            counts = this.countPerLink[vehicleType - 1];
+        }
+        counts[linkIndex]++;
+    }
+
+    private static byte toByte(AnalysisVehicleType vehicleType) {
+        return (byte) (vehicleType.ordinal() + 1);
     }
 
     @Override
     public void reset(int iteration) {
-        countPerLink.clear();
+        for (int[] counts : this.countPerLink) {
+            Arrays.fill(counts, 0);
+        }
     }
 
-    public Map<Id<Link>, CarLinkAnalysis.LinkStorage> getIterationCounts() {
-        return countPerLink.entrySet().stream().collect(Collectors.toMap(Entry::getKey, Entry::getValue, (k, k2) -> k, TreeMap::new));
+    /**
+     * @return the number of vehicles of the given type that entered the link in the current iteration.
+     */
+    int getCount(Id<Link> linkId, AnalysisVehicleType vehicleType) {
+        int[] counts = this.countPerLink[vehicleType.ordinal()];
+        int linkIndex = linkId.index();
+        return linkIndex < counts.length ? counts[linkIndex] : 0;
+    }
 
+    public Map<Id<Link>, CarLinkAnalysis.LinkStorage> getIterationCounts() {
+        Map<Id<Link>, CarLinkAnalysis.LinkStorage> iterationCounts = new TreeMap<>();
+        int linkCount = this.countPerLink[0].length;
+        for (int linkIndex = 0; linkIndex < linkCount; linkIndex++) {
+            CarLinkAnalysis.LinkStorage linkStorage = null;
+            for (AnalysisVehicleType vehicleType : VEHICLE_TYPES) {
+                int count = this.countPerLink[vehicleType.ordinal()][linkIndex];
+                if (count > 0) {
+                    if (linkStorage == null) {
+                        Id<Link> linkId = Id.get(linkIndex, Link.class);
+                        linkStorage = new CarLinkAnalysis.LinkStorage(linkId);
+                        iterationCounts.put(linkId, linkStorage);
+                    }
+                    linkStorage.increase(vehicleType, count);
+                }
+            }
+        }
+        return iterationCounts;
     }
 }
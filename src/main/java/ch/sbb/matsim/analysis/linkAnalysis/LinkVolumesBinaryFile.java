@@ -0,0 +1,211 @@
+package ch.sbb.matsim.analysis.linkAnalysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Compact binary columnar storage of daily link volumes over all iterations, replacing the repeatedly appended gzip csv file.
+ * <p>
+ * The file starts with a header (magic number, version, number of links and the link ids), which is written only once. Every iteration then appends one chunk containing the iteration
+ * number and one int column with the volume of each link, in the order of the link ids in the header. Appending an iteration is thus a single sequential write of primitive data.
+ * A restarted run can continue an existing file, as long as it has the same link ids.
+ * <p>
+ * Files can be read with {@link #read(File)} or exported to the csv format previously used with {@link #exportCsv(Volumes, String)}, or by running {@link #main(String[])}.
+ */
+public final class LinkVolumesBinaryFile {
+
+	private static final Logger log = LogManager.getLogger(LinkVolumesBinaryFile.class);
+	private static final int MAGIC = 0x5342424c; // "SBBL"
+	private static final int VERSION = 1;
+
+	private LinkVolumesBinaryFile() {
+	}
+
+	public static Volumes read(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file.getAbsolutePath() + " is not a link volumes binary file.");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version + " of link volumes binary file " + file.getAbsolutePath());
+			}
+			String[] linkIds = new String[in.readInt()];
+			for (int i = 0; i < linkIds.length; i++) {
+				linkIds[i] = in.readUTF();
+			}
+			int[] iterations = new int[16];
+			int[][] volumes = new int[16][];
+			int size = 0;
+			while (true) {
+				int iteration;
+				try {
+					iteration = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				int[] column = new int[linkIds.length];
+				try {
+					for (int i = 0; i < column.length; i++) {
+						column[i] = in.readInt();
+					}
+				} catch (EOFException e) {
+					break; // incomplete last chunk, e.g. if the simulation was killed while writing
+				}
+				if (size == iterations.length) {
+					iterations = Arrays.copyOf(iterations, size * 2);
+					volumes = Arrays.copyOf(volumes, size * 2);
+				}
+				iterations[size] = iteration;
+				volumes[size] = column;
+				size++;
+			}
+			return new Volumes(linkIds, Arrays.copyOf(iterations, size), Arrays.copyOf(volumes, size));
+		}
+	}
+
+	/**
+	 * Writes the volumes as csv with one row per iteration and one column per link, separated by semicolons.
+	 */
+	public static void exportCsv(Volumes volumes, String filename) throws IOException {
+		try (BufferedWriter writer = IOUtils.getBufferedWriter(filename)) {
+			writer.write("Iteration");
+			for (String linkId : volumes.linkIds()) {
+				writer.write(';');
+				writer.write(linkId);
+			}
+			for (int it = 0; it < volumes.iterations().length; it++) {
+				writer.write(IOUtils.NATIVE_NEWLINE);
+				writer.write(Integer.toString(volumes.iterations()[it]));
+				for (int volume : volumes.volumes()[it]) {
+					writer.write(';');
+					writer.write(Integer.toString(volume));
+				}
+			}
+			writer.write(IOUtils.NATIVE_NEWLINE);
+		}
+	}
+
+	/**
+	 * Usage: <code>LinkVolumesBinaryFile car_volumes_daily.bin car_volumes_daily.csv.gz</code>
+	 */
+	public static void main(String[] args) throws IOException {
+		exportCsv(read(new File(args[0])), args[1]);
+	}
+
+	/**
+	 * The link volumes of a file, stored by iteration: <code>volumes[i][l]</code> is the volume on link <code>linkIds[l]</code> in iteration <code>iterations[i]</code>.
+	 */
+	public record Volumes(String[] linkIds, int[] iterations, int[][] volumes) {
+
+		/**
+		 * @return the volumes of the link with the given index over all iterations.
+		 */
+		public int[] getLinkVolumes(int linkIndex) {
+			int[] linkVolumes = new int[this.iterations.length];
+			for (int i = 0; i < linkVolumes.length; i++) {
+				linkVolumes[i] = this.volumes[i][linkIndex];
+			}
+			return linkVolumes;
+		}
+	}
+
+	public static final class Writer implements Closeable {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private final int linkCount;
+
+		/**
+		 * Creates a new file and writes the header with the given link ids.
+		 */
+		public Writer(File file, String[] linkIds) throws IOException {
+			this(file, linkIds, false);
+		}
+
+		/**
+		 * @param append if <code>true</code> and the file already exists with the same link ids, new iterations are appended to it, after dropping an incomplete last
+		 *               iteration. Otherwise, a new file is created.
+		 */
+		public Writer(File file, String[] linkIds, boolean append) throws IOException {
+			this.linkCount = linkIds.length;
+			this.buffer = ByteBuffer.allocate((1 + this.linkCount) * Integer.BYTES);
+			ByteArrayOutputStream headerStream = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(headerStream)) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(linkIds.length);
+				for (String linkId : linkIds) {
+					out.writeUTF(linkId);
+				}
+			}
+			byte[] header = headerStream.toByteArray();
+			if (append && hasHeader(file, header)) {
+				this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+				long chunks = (this.channel.size() - header.length) / this.buffer.capacity();
+				long end = header.length + chunks * this.buffer.capacity();
+				this.channel.truncate(end);
+				this.channel.position(end);
+				log.info("Appending to {}, which already contains {} iterations.", file, chunks);
+			} else {
+				if (append && file.exists()) {
+					log.warn("{} has other link ids than the current network, it is overwritten.", file);
+				}
+				this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				write(ByteBuffer.wrap(header));
+			}
+		}
+
+		private static boolean hasHeader(File file, byte[] header) throws IOException {
+			if (!file.isFile() || file.length() < header.length) {
+				return false;
+			}
+			byte[] existing = new byte[header.length];
+			try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+				in.readFully(existing);
+			}
+			return Arrays.equals(existing, header);
+		}
+
+		/**
+		 * Appends the volumes of one iteration and flushes them to the file.
+		 */
+		public void writeIteration(int iteration, int[] volumes) throws IOException {
+			if (volumes.length != this.linkCount) {
+				throw new IllegalArgumentException("Expected " + this.linkCount + " volumes, got " + volumes.length);
+			}
+			this.buffer.clear();
+			this.buffer.putInt(iteration);
+			this.buffer.asIntBuffer().put(volumes);
+			this.buffer.position(this.buffer.capacity());
+			this.buffer.flip();
+			write(this.buffer);
+		}
+
+		private void write(ByteBuffer data) throws IOException {
+			while (data.hasRemaining()) {
+				this.channel.write(data);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.channel.close();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package ch.sbb.matsim.analysis.modalsplit;
 
 import ch.sbb.matsim.analysis.tripsandlegsanalysis.RailTripsAnalyzer;
+import ch.sbb.matsim.analysis.tripsandlegsanalysis.TripIndex;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
 import ch.sbb.matsim.config.variables.SBBModes;
@@ -20,10 +21,8 @@ import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.io.PopulationReader;
-import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.core.scoring.ExperiencedPlansService;
 import org.matsim.pt.routes.TransitPassengerRoute;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
@@ -33,6 +32,8 @@ import org.matsim.utils.objectattributes.attributable.Attributes;
 import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 
 import static ch.sbb.matsim.RunSBB.getSbbDefaultConfigGroups;
@@ -41,10 +42,10 @@ import static ch.sbb.matsim.config.variables.SBBModes.PT;
 
 public class ModalSplitStats {
 
+    private static final int PERSONS_PER_TASK = 20_000;
+
     private final List<String> analysisSubpopulations = List.of(Variables.REGULAR, Variables.AIRPORT_RAIL, Variables.AIRPORT_ROAD, Variables.CB_RAIL, Variables.CB_ROAD, Variables.TOURISM_RAIL, Variables.FREIGHT_ROAD, "foreign", Variables.CB_COMMUTER, Variables.LIECHTENSTEIN, Variables.TOURIST);
     @Inject
-    private ExperiencedPlansService experiencedPlansService;
-    @Inject
     private Population population;
     @Inject
     private Config config;
@@ -53,8 +54,7 @@ public class ModalSplitStats {
 
     private final Zones zones;
     private final RailTripsAnalyzer railTripsAnalyzer;
-    private final LongestMainModeIdentifier mainModeIdentifier = new LongestMainModeIdentifier();
-    private final PopulationFactory pf = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
+    private static final PopulationFactory pf = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
     private String outputLocation;
     private Map<Id<TransitStopFacility>, StopStation> stopStationsMap;
     private Map<String, Integer> modesMap;
@@ -85,6 +85,8 @@ public class ModalSplitStats {
     private Set<String> feederModesFromConfig;
     private List<String> possibleModesAtStop;
     private List<String> possibleOriginDestinationModesAtStop;
+    private Map<Id<TransitStopFacility>, StopStation> stopStationTemplates;
+    private Map<String, TrainStation> trainStationTemplates;
 
 
     @Inject
@@ -97,6 +99,39 @@ public class ModalSplitStats {
         this.config = config;
     }
 
+    /**
+     * Creates an accumulator for a part of the population. It shares the configuration of the given instance, but counts into its own arrays, which are added to the
+     * totals afterwards with {@link #merge(ModalSplitStats)}.
+     */
+    private ModalSplitStats(ModalSplitStats template) {
+        this.zones = template.zones;
+        this.railTripsAnalyzer = template.railTripsAnalyzer;
+        this.population = template.population;
+        this.transitSchedule = template.transitSchedule;
+        this.config = template.config;
+        this.outputLocation = template.outputLocation;
+        this.feederModesFromConfig = template.feederModesFromConfig;
+        this.possibleModesAtStop = template.possibleModesAtStop;
+        this.possibleOriginDestinationModesAtStop = template.possibleOriginDestinationModesAtStop;
+        this.modesMap = template.modesMap;
+        this.modesInclRailFQMap = template.modesInclRailFQMap;
+        this.feederModesMap = template.feederModesMap;
+        this.variablesMSMap = template.variablesMSMap;
+        this.variablesMSFeederMap = template.variablesMSFeederMap;
+        this.variablesTimeStepsMap = template.variablesTimeStepsMap;
+        // station counters are only created for the stations which are actually used
+        this.stopStationTemplates = template.stopStationsMap;
+        this.trainStationTemplates = template.trainStationMap;
+        this.stopStationsMap = new HashMap<>();
+        this.trainStationMap = new HashMap<>();
+        createAccumulators();
+        // keep the zones in the order they are encountered, so the merged totals are written in the same order as with a sequential analysis
+        this.zonesAccessMSPFMap = new LinkedHashMap<>();
+        this.zonesAccessMSPkmMap = new LinkedHashMap<>();
+        this.zonesEgressMSPFMap = new LinkedHashMap<>();
+        this.zonesEgressMSPkmMap = new LinkedHashMap<>();
+    }
+
     public static void main(String[] args) {
         String experiencedPlansFile = args[0];
         String networkFile = args[1];
@@ -132,14 +167,11 @@ public class ModalSplitStats {
         scenario2.getPopulation().getPersons().values().forEach(p -> experiencedPlans.put(p.getId(), p.getSelectedPlan()));
 
         ModalSplitStats modalSplitStats = new ModalSplitStats(zonesCollection, config, scenario);
-        modalSplitStats.analyzeAndWriteStats(config.controller().getOutputDirectory(), experiencedPlans);
+        TripIndex tripIndex = TripIndex.build(experiencedPlans, scenario, zones, modalSplitStats.railTripsAnalyzer);
+        modalSplitStats.analyzeAndWriteStats(config.controller().getOutputDirectory(), tripIndex);
     }
 
-    public void analyzeAndWriteStats(String outputLocation) {
-        analyzeAndWriteStats(outputLocation, experiencedPlansService.getExperiencedPlans());
-    }
-
-    public void analyzeAndWriteStats(String outputLocation, IdMap<Person, Plan> experiencedPlans) {
+    public void analyzeAndWriteStats(String outputLocation, TripIndex tripIndex) {
 
         this.feederModesFromConfig = getFeederModesinConfig();
         this.possibleModesAtStop = getPossibleModesAtStop();
@@ -153,6 +185,23 @@ public class ModalSplitStats {
         this.variablesMSMap = createVariablesModalSplitMap();
         this.variablesMSFeederMap = createVariablesModalSplitFeederMap();
         this.variablesTimeStepsMap = createVariablesTimeStepsMap();
+        createAccumulators();
+
+        // analyzing
+        analyze(tripIndex);
+
+        // writing the different files
+        writeStopStationAnalysis();
+        writeTrainStationAnalysis();
+        writeDistanceClassesAnalysis();
+        writeModalSplit();
+        writeFeederModalSplit();
+        writeChanges();
+        writeTimeSteps();
+
+    }
+
+    private void createAccumulators() {
         this.subpopulaionDistanceMap = createArrayForSubpopulationMap(this.modesInclRailFQMap.size(), distanceClassesLabel.size());
         this.subpopulaionMSPFMap = createArrayForSubpopulationMap(this.modesMap.size(), this.variablesMSMap.size());
         this.subpopulaionMSPKMMap = createArrayForSubpopulationMap(this.modesMap.size(), this.variablesMSMap.size());
@@ -170,19 +219,6 @@ public class ModalSplitStats {
         this.subpopulationDistanceChangePKMMap = createArrayForSubpopulationMap(changeOrderList.size()* distanceClassesLabel.size(), changeLabelList.size());
         this.timeMap = createTimeStepsForSubpopulaitonMap((int) (this.config.qsim().getEndTime().seconds() / timeSplit), this.variablesTimeStepsMap.size());
         this.travelTimeMap = createTimeStepsForSubpopulaitonMap((lastTravelTimeValue / travelTimeSplit) + 1, this.variablesTimeStepsMap.size());
-
-        // analyzing
-        analyze(experiencedPlans);
-
-        // writing the different files
-        writeStopStationAnalysis();
-        writeTrainStationAnalysis();
-        writeDistanceClassesAnalysis();
-        writeModalSplit();
-        writeFeederModalSplit();
-        writeChanges();
-        writeTimeSteps();
-
     }
 
     private List<String> getPossibleModesAtStop() {
@@ -198,30 +234,140 @@ public class ModalSplitStats {
     }
 
 
-    private void analyze(IdMap<Person, Plan> experiencedPlans) {
-        for (Entry<Id<Person>, Plan> entry : experiencedPlans.entrySet()) {
-
-            // analysis for access and egress mode for each stop station
-            analyzeStopsStations(entry);
-            // analysis for access and egress mode for each train station
-            analyzeTrainsStations(entry);
-            // analysis for distance classes
-            analyzeDistanceClasses(entry);
-            // analysis modal split for persons trips and person km
-            analyzeModalSplit(entry);
-            // analysis access/egress modal split for persons trips and person km
-            analyzeFeederModalSplit(entry);
-            // analysis public transport changes
-            analyzeChanges(entry);
-            // analyze travel time and middle time between to activities
-            analyzeTimes(entry);
+    private void analyze(TripIndex tripIndex) {
+        merge(ForkJoinPool.commonPool().invoke(new AnalysisTask(tripIndex, 0, tripIndex.getPersonCount())));
+    }
 
+    private void analyzePerson(TripIndex tripIndex, int person) {
+        // analysis for access and egress mode for each stop station
+        analyzeStopsStations(tripIndex, person);
+        // analysis for access and egress mode for each train station
+        analyzeTrainsStations(tripIndex, person);
+        // analysis for distance classes
+        analyzeDistanceClasses(tripIndex, person);
+        // analysis modal split for persons trips and person km
+        analyzeModalSplit(tripIndex, person);
+        // analysis access/egress modal split for persons trips and person km
+        analyzeFeederModalSplit(tripIndex, person);
+        // analysis public transport changes
+        analyzeChanges(tripIndex, person);
+        // analyze travel time and middle time between to activities
+        analyzeTimes(tripIndex, person);
+    }
+
+    /**
+     * Adds the counts of an accumulator to this one. Zones not yet known are added in the order of the other accumulator.
+     */
+    private void merge(ModalSplitStats other) {
+        other.stopStationsMap.forEach((stopId, stopStation) -> getStopStation(stopId).add(stopStation));
+        other.trainStationMap.forEach((stationId, trainStation) -> getTrainStation(stationId).add(trainStation));
+        addArrays(this.subpopulaionDistanceMap, other.subpopulaionDistanceMap);
+        addArrays(this.subpopulaionMSPFMap, other.subpopulaionMSPFMap);
+        addArrays(this.subpopulaionMSPKMMap, other.subpopulaionMSPKMMap);
+        addArrays(this.subpopulaionAccessMSPFMap, other.subpopulaionAccessMSPFMap);
+        addArrays(this.subpopulaionEgressMSPFMap, other.subpopulaionEgressMSPFMap);
+        addArrays(this.subpopulaionAccessMSPKMMap, other.subpopulaionAccessMSPKMMap);
+        addArrays(this.subpopulaionEgressMSPKMMap, other.subpopulaionEgressMSPKMMap);
+        addZoneArrays(this.zonesAccessMSPFMap, other.zonesAccessMSPFMap);
+        addZoneArrays(this.zonesAccessMSPkmMap, other.zonesAccessMSPkmMap);
+        addZoneArrays(this.zonesEgressMSPFMap, other.zonesEgressMSPFMap);
+        addZoneArrays(this.zonesEgressMSPkmMap, other.zonesEgressMSPkmMap);
+        addArrays(this.subpopulationChangeMap, other.subpopulationChangeMap);
+        addArrays(this.subpopulationDistanceChangeMap, other.subpopulationDistanceChangeMap);
+        addArrays(this.subpopulationChangePKMMap, other.subpopulationChangePKMMap);
+        addArrays(this.subpopulationDistanceChangePKMMap, other.subpopulationDistanceChangePKMMap);
+        addIntArrays(this.timeMap, other.timeMap);
+        addIntArrays(this.travelTimeMap, other.travelTimeMap);
+    }
+
+    private static void addArrays(Map<String, double[][]> target, Map<String, double[][]> source) {
+        for (Entry<String, double[][]> entry : source.entrySet()) {
+            double[][] targetArray = target.get(entry.getKey());
+            double[][] sourceArray = entry.getValue();
+            for (int i = 0; i < sourceArray.length; i++) {
+                for (int j = 0; j < sourceArray[i].length; j++) {
+                    targetArray[i][j] += sourceArray[i][j];
+                }
+            }
         }
     }
 
-    private void analyzeTrainsStations(Entry<Id<Person>, Plan> entry) {
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
-            if (mainModeIdentifier.identifyMainMode(trip.getTripElements()).equals(PT)) {
+    private static void addIntArrays(Map<String, int[][]> target, Map<String, int[][]> source) {
+        for (Entry<String, int[][]> entry : source.entrySet()) {
+            int[][] targetArray = target.get(entry.getKey());
+            int[][] sourceArray = entry.getValue();
+            for (int i = 0; i < sourceArray.length; i++) {
+                for (int j = 0; j < sourceArray[i].length; j++) {
+                    targetArray[i][j] += sourceArray[i][j];
+                }
+            }
+        }
+    }
+
+    private static void addZoneArrays(Map<String, Map<String, double[][]>> target, Map<String, Map<String, double[][]>> source) {
+        for (Entry<String, Map<String, double[][]>> entry : source.entrySet()) {
+            Map<String, double[][]> targetZone = target.get(entry.getKey());
+            if (targetZone == null) {
+                target.put(entry.getKey(), entry.getValue());
+            } else {
+                addArrays(targetZone, entry.getValue());
+            }
+        }
+    }
+
+    private StopStation getStopStation(Id<TransitStopFacility> stopId) {
+        if (this.stopStationTemplates == null) {
+            return this.stopStationsMap.get(stopId);
+        }
+        return this.stopStationsMap.computeIfAbsent(stopId, id -> new StopStation(this.stopStationTemplates.get(id)));
+    }
+
+    private TrainStation getTrainStation(String stationId) {
+        if (this.trainStationTemplates == null) {
+            return this.trainStationMap.get(stationId);
+        }
+        return this.trainStationMap.computeIfAbsent(stationId, id -> new TrainStation(this.trainStationTemplates.get(id)));
+    }
+
+    /**
+     * Analyzes a range of persons into its own accumulator. The range is split in halves down to a fixed size and the halves are merged in order, so the
+     * result does not depend on the number of threads.
+     */
+    private final class AnalysisTask extends RecursiveTask<ModalSplitStats> {
+
+        private final TripIndex tripIndex;
+        private final int fromPerson;
+        private final int toPerson;
+
+        private AnalysisTask(TripIndex tripIndex, int fromPerson, int toPerson) {
+            this.tripIndex = tripIndex;
+            this.fromPerson = fromPerson;
+            this.toPerson = toPerson;
+        }
+
+        @Override
+        protected ModalSplitStats compute() {
+            if (toPerson - fromPerson <= PERSONS_PER_TASK) {
+                ModalSplitStats accumulator = new ModalSplitStats(ModalSplitStats.this);
+                for (int person = fromPerson; person < toPerson; person++) {
+                    accumulator.analyzePerson(tripIndex, person);
+                }
+                return accumulator;
+            }
+            int middle = (fromPerson + toPerson) >>> 1;
+            AnalysisTask first = new AnalysisTask(tripIndex, fromPerson, middle);
+            first.fork();
+            ModalSplitStats second = new AnalysisTask(tripIndex, middle, toPerson).compute();
+            ModalSplitStats accumulator = first.join();
+            accumulator.merge(second);
+            return accumulator;
+        }
+    }
+
+    private void analyzeTrainsStations(TripIndex tripIndex, int person) {
+        for (int t = tripIndex.getFirstTrip(person); t < tripIndex.getFirstTrip(person + 1); t++) {
+            Trip trip = tripIndex.getTrip(t);
+            if (tripIndex.getMode(tripIndex.getLongestLegMainMode(t)).equals(PT)) {
                 List<Leg> legs = trip.getLegsOnly();
                 Leg legBefore = pf.createLeg(SBBModes.WALK_FOR_ANALYSIS);
                 for (Leg leg : legs) {
@@ -236,34 +382,34 @@ public class ModalSplitStats {
                                     getModeOfTransitRoute(legBefore.getRoute()).equals(PTSubModes.RAIL) &&
                                     subMode.equals(PTSubModes.RAIL)) {
                                 if (!getEndTrainFacility(legBefore.getRoute()).getAttributes().getAttribute(STOP_NO).toString().equals(startTrainStationId)) {
-                                    trainStationMap.get(startTrainStationId).addUmsteigerTyp5b();
+                                    getTrainStation(startTrainStationId).addUmsteigerTyp5b();
                                 } else if (railTripsAnalyzer.hasFQRelevantLeg(List.of((TransitPassengerRoute) legBefore.getRoute()))) {
-                                    trainStationMap.get(startTrainStationId).addUmsteigerSimbaSimba();
+                                    getTrainStation(startTrainStationId).addUmsteigerSimbaSimba();
                                 } else {
-                                    trainStationMap.get(startTrainStationId).addUmsteigerAndereSimba();
+                                    getTrainStation(startTrainStationId).addUmsteigerAndereSimba();
                                 }
                             } else {
-                                trainStationMap.get(startTrainStationId).addQuellEinsteiger();
+                                getTrainStation(startTrainStationId).addQuellEinsteiger();
                             }
                             if (legAfter.getMode().equals(PT) &&
                                     getModeOfTransitRoute(legAfter.getRoute()).equals(PTSubModes.RAIL) &&
                                     subMode.equals(PTSubModes.RAIL)) {
                                 if (!getStartTrainFacility(legAfter.getRoute()).getAttributes().getAttribute(STOP_NO).toString().equals(endTrainStationId)) {
-                                    trainStationMap.get(endTrainStationId).addUmsteigerTyp5a();
+                                    getTrainStation(endTrainStationId).addUmsteigerTyp5a();
                                 } else if (railTripsAnalyzer.hasFQRelevantLeg(List.of((TransitPassengerRoute) legAfter.getRoute()))) {
-                                    trainStationMap.get(endTrainStationId).addUmsteigerSimbaSimba();
+                                    getTrainStation(endTrainStationId).addUmsteigerSimbaSimba();
                                 } else {
-                                    trainStationMap.get(endTrainStationId).addUmsteigerSimbaAndere();
+                                    getTrainStation(endTrainStationId).addUmsteigerSimbaAndere();
                                 }
                             } else {
-                                trainStationMap.get(endTrainStationId).addZielAussteiger();
+                                getTrainStation(endTrainStationId).addZielAussteiger();
                             }
                         } else {
                             if (getModeOfTransitRoute(legBefore.getRoute()) != null && getModeOfTransitRoute(legBefore.getRoute()).equals(PTSubModes.RAIL) && subMode.equals(PTSubModes.RAIL)) {
-                                trainStationMap.get(startTrainStationId).addUmsteigerAndereAndere();
+                                getTrainStation(startTrainStationId).addUmsteigerAndereAndere();
                             }
                             if (getModeOfTransitRoute(legAfter.getRoute()) != null && getModeOfTransitRoute(legAfter.getRoute()).equals(PTSubModes.RAIL) && subMode.equals(PTSubModes.RAIL)) {
-                                trainStationMap.get(endTrainStationId).addUmsteigerAndereAndere();
+                                getTrainStation(endTrainStationId).addUmsteigerAndereAndere();
                             }
                         }
                     }
@@ -275,16 +421,12 @@ public class ModalSplitStats {
         }
     }
 
-    private void analyzeStopsStations(Entry<Id<Person>, Plan> entry) {
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
-            boolean isFQ = false;
-            try {
-                isFQ = railTripsAnalyzer.getFQDistance(trip, true) > 0;
-            } catch (Exception ignored) {
-
-            }
+    private void analyzeStopsStations(TripIndex tripIndex, int person) {
+        for (int t = tripIndex.getFirstTrip(person); t < tripIndex.getFirstTrip(person + 1); t++) {
+            Trip trip = tripIndex.getTrip(t);
+            boolean isFQ = tripIndex.getFQDistance(t) > 0;
 
-            if (mainModeIdentifier.identifyMainMode(trip.getTripElements()).equals(PT)) {
+            if (tripIndex.getMode(tripIndex.getLongestLegMainMode(t)).equals(PT)) {
                 List<Leg> legs = trip.getLegsOnly();
                 Leg legBefore = null;
                 for (Leg leg : legs) {
@@ -293,7 +435,7 @@ public class ModalSplitStats {
                         TransitStopFacility startStopStationFacility = getStartTrainFacility(route);
                         TransitStopFacility endStopStationFacility = getEndTrainFacility(route);
 
-                        StopStation startStopStation = stopStationsMap.get(startStopStationFacility.getId());
+                        StopStation startStopStation = getStopStation(startStopStationFacility.getId());
                         startStopStation.addEntred();
                         String subPTMode = getModeOfTransitRoute(leg.getRoute());
                         boolean isRailLeg = (subPTMode.equals(PTSubModes.RAIL));
@@ -324,7 +466,7 @@ public class ModalSplitStats {
                             startStopStation.getEnteredMode()[possibleModesAtStop.indexOf("walk")] = startStopStation.getEnteredMode()[possibleModesAtStop.indexOf("walk")] + 1;
                         }
 
-                        StopStation endStopStation = stopStationsMap.get(endStopStationFacility.getId());
+                        StopStation endStopStation = getStopStation(endStopStationFacility.getId());
                         endStopStation.addExited();
                         if (isRailLeg) {
                             endStopStation.setRailStation();
@@ -371,12 +513,13 @@ public class ModalSplitStats {
         return result;
     }
 
-    private void analyzeTimes(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = population.getPersons().get(entry.getKey()).getAttributes();
+    private void analyzeTimes(TripIndex tripIndex, int person) {
+        Attributes attributes = tripIndex.getPerson(person).getAttributes();
         String subpopulation = getSubpopulation(attributes);
 
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
-            String tmpMode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
+        for (int t = tripIndex.getFirstTrip(person); t < tripIndex.getFirstTrip(person + 1); t++) {
+            Trip trip = tripIndex.getTrip(t);
+            String tmpMode = tripIndex.getMode(tripIndex.getLongestLegMainMode(t));
             if (tmpMode.equals(SBBModes.WALK_MAIN_MAINMODE)) {
                 tmpMode = SBBModes.WALK_FOR_ANALYSIS;
             }
@@ -421,7 +564,7 @@ public class ModalSplitStats {
                 String submode = MSVariables.submode + separator + SBBModes.RAIL;
                 subpopulationArray[time][variablesTimeStepsMap.get(submode)]++;
                 subpopulationTravelTime[timeArray][variablesTimeStepsMap.get(submode)]++;
-                double fqDistance = railTripsAnalyzer.getFQDistance(trip, true);
+                double fqDistance = tripIndex.getFQDistance(t);
                 if (fqDistance > 0) {
                     submode = MSVariables.submode + separator + SBBModes.FQRAIL;
                     subpopulationArray[time][variablesTimeStepsMap.get(submode)]++;
@@ -438,10 +581,11 @@ public class ModalSplitStats {
         }
     }
 
-    private void analyzeChanges(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = population.getPersons().get(entry.getKey()).getAttributes();
+    private void analyzeChanges(TripIndex tripIndex, int person) {
+        Attributes attributes = tripIndex.getPerson(person).getAttributes();
         String subpulation = getSubpopulation(attributes);
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+        for (int t = tripIndex.getFirstTrip(person); t < tripIndex.getFirstTrip(person + 1); t++) {
+            Trip trip = tripIndex.getTrip(t);
             int ptLegs = 0;
             int railLegs = 0;
             double distance = 0;
@@ -460,7 +604,7 @@ public class ModalSplitStats {
             }
             double fqDistance = 0;
             if (railLegs > 0) {
-                fqDistance = railTripsAnalyzer.getFQDistance(trip, true);
+                fqDistance = tripIndex.getFQDistance(t);
                 isFQ = (fqDistance > 0);
             }
 
@@ -518,11 +662,12 @@ public class ModalSplitStats {
         }
     }
 
-    private void analyzeModalSplit(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = population.getPersons().get(entry.getKey()).getAttributes();
+    private void analyzeModalSplit(TripIndex tripIndex, int person) {
+        Attributes attributes = tripIndex.getPerson(person).getAttributes();
         String subpopulation = getSubpopulation(attributes);
 
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+        for (int t = tripIndex.getFirstTrip(person); t < tripIndex.getFirstTrip(person + 1); t++) {
+            Trip trip = tripIndex.getTrip(t);
             // skip home office activities, it seems that the facility id can be null
             if (trip.getOriginActivity().getFacilityId() != null || trip.getDestinationActivity().getFacilityId() != null) {
                 if (trip.getOriginActivity().getFacilityId().equals(trip.getDestinationActivity().getFacilityId())) {
@@ -530,7 +675,7 @@ public class ModalSplitStats {
                 }
             }
 
-            String tmpMode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
+            String tmpMode = tripIndex.getMode(tripIndex.getLongestLegMainMode(t));
             if (tmpMode.equals(SBBModes.WALK_MAIN_MAINMODE)) {
                 tmpMode = SBBModes.WALK_FOR_ANALYSIS;
             }
@@ -554,7 +699,7 @@ public class ModalSplitStats {
                 distance += leg.getRoute().getDistance() / 1000;
             }
             if (tmpIsRail) {
-                fqDistance = railTripsAnalyzer.getFQDistance(trip, true) / 1000;
+                fqDistance = tripIndex.getFQDistance(t) / 1000;
                 tmpIsFQRail = (fqDistance > 0);
             }
 
@@ -688,10 +833,11 @@ public class ModalSplitStats {
         return lastLeg;
     }
 
-    private void analyzeFeederModalSplit(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = population.getPersons().get(entry.getKey()).getAttributes();
+    private void analyzeFeederModalSplit(TripIndex tripIndex, int person) {
+        Attributes attributes = tripIndex.getPerson(person).getAttributes();
         String subpopulation = getSubpopulation(attributes);
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+        for (int t = tripIndex.getFirstTrip(person); t < tripIndex.getFirstTrip(person + 1); t++) {
+            Trip trip = tripIndex.getTrip(t);
             // skip home office activities, it seems that the facility id can be null
             if (trip.getOriginActivity().getFacilityId() != null || trip.getDestinationActivity().getFacilityId() != null) {
                 if (trip.getOriginActivity().getFacilityId().equals(trip.getDestinationActivity().getFacilityId())) {
@@ -699,7 +845,7 @@ public class ModalSplitStats {
                 }
             }
 
-            if (mainModeIdentifier.identifyMainMode(trip.getTripElements()).equals(PT)) {
+            if (tripIndex.getMode(tripIndex.getLongestLegMainMode(t)).equals(PT)) {
                 // identify access/egress mode
                 List<Leg> legs = trip.getLegsOnly();
                 int firstRailLeg = findFirstRailLeg(legs);
@@ -741,14 +887,14 @@ public class ModalSplitStats {
                     }
 
                     // count PF and PKM
-                    String tmpMode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
+                    String tmpMode = tripIndex.getMode(tripIndex.getLongestLegMainMode(t));
                     if (tmpMode.equals(SBBModes.WALK_MAIN_MAINMODE)) {
                         tmpMode = SBBModes.WALK_FOR_ANALYSIS;
                     }
                     if (tmpMode.equals(PT)) {
                         // get origin and dest zon Maps
-                        Zone originZone = zones.findZone(trip.getOriginActivity().getCoord());
-                        Zone destZone = zones.findZone(trip.getDestinationActivity().getCoord());
+                        Zone originZone = tripIndex.getZone(tripIndex.getOriginZone(t));
+                        Zone destZone = tripIndex.getZone(tripIndex.getDestinationZone(t));
                         String originZoneId = "";
                         String destZoneId = "";
                         String originZonesl3 = "";
@@ -889,9 +1035,10 @@ public class ModalSplitStats {
         }
     }
 
-    private void analyzeDistanceClasses(Entry<Id<Person>, Plan> entry) {
-        Attributes attributes = this.population.getPersons().get(entry.getKey()).getAttributes();
-        for (Trip trip : TripStructureUtils.getTrips(entry.getValue())) {
+    private void analyzeDistanceClasses(TripIndex tripIndex, int person) {
+        Attributes attributes = tripIndex.getPerson(person).getAttributes();
+        for (int t = tripIndex.getFirstTrip(person); t < tripIndex.getFirstTrip(person + 1); t++) {
+            Trip trip = tripIndex.getTrip(t);
             // skip home office activities, it seems that the facility id can be null
             if (trip.getOriginActivity().getFacilityId() != null || trip.getDestinationActivity().getFacilityId() != null) {
                 if (trip.getOriginActivity().getFacilityId().equals(trip.getDestinationActivity().getFacilityId())) {
@@ -899,7 +1046,7 @@ public class ModalSplitStats {
                 }
             }
 
-            String tmpMode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
+            String tmpMode = tripIndex.getMode(tripIndex.getLongestLegMainMode(t));
             if (tmpMode.equals(SBBModes.WALK_MAIN_MAINMODE)) {
                 tmpMode = SBBModes.WALK_FOR_ANALYSIS;
             }
@@ -936,7 +1083,7 @@ public class ModalSplitStats {
                     }
                     int modeRailID = this.modesInclRailFQMap.get(PTSubModes.RAIL);
                     disArray[modeRailID][railDisCl]++;
-                    double railFQdist = railTripsAnalyzer.getFQDistance(trip, true) / 1000;
+                    double railFQdist = tripIndex.getFQDistance(t) / 1000;
                     if (railFQdist > 0) {
                         int modeRailFQID = this.modesInclRailFQMap.get("railFQ");
                         disArray[modeRailFQID][railDisCl]++;
@@ -27,6 +27,31 @@ public class StopStation {
 
     }
 
+    /**
+     * Creates an empty counter for the same stop, e.g. to count a part of the population separately.
+     */
+    StopStation(StopStation template) {
+        this(template.stop, template.zone, template.enteredMode.length);
+    }
+
+    /**
+     * Adds the counts of another counter for the same stop to this one.
+     */
+    void add(StopStation other) {
+        entered += other.entered;
+        exited += other.exited;
+        enteredFQ += other.enteredFQ;
+        exitedFQ += other.exitedFQ;
+        for (int i = 0; i < enteredMode.length; i++) {
+            enteredMode[i] += other.enteredMode[i];
+            exitedMode[i] += other.exitedMode[i];
+        }
+        umsteigeBahnBahn += other.umsteigeBahnBahn;
+        umsteigeAHPBahn += other.umsteigeAHPBahn;
+        umsteigeBahnAHP += other.umsteigeBahnAHP;
+        isRailStation |= other.isRailStation;
+    }
+
     public String getZoneId(){
         if (zone == null) {
             return "NA";
@@ -31,6 +31,30 @@ public class TrainStation {
         this.zone = zone;
     }
 
+    /**
+     * Creates an empty counter for the same station, e.g. to count a part of the population separately.
+     */
+    TrainStation(TrainStation template) {
+        this.hstNummer = template.hstNummer;
+        this.stopCode = template.stopCode;
+        this.zone = template.zone;
+        this.stops.addAll(template.stops);
+    }
+
+    /**
+     * Adds the counts of another counter for the same station to this one.
+     */
+    void add(TrainStation other) {
+        zielAussteiger += other.zielAussteiger;
+        quellEinsteiger += other.quellEinsteiger;
+        umsteigerTyp5a += other.umsteigerTyp5a;
+        umsteigerSimbaSimba += other.umsteigerSimbaSimba;
+        umsteigerSimbaAndere += other.umsteigerSimbaAndere;
+        umsteigerAndereSimba += other.umsteigerAndereSimba;
+        umsteigerAndereAndere += other.umsteigerAndereAndere;
+        umsteigerTyp5b += other.umsteigerTyp5b;
+    }
+
     public void addStop(TransitStopFacility transitStopFacility) {
         stops.add(transitStopFacility);
     }
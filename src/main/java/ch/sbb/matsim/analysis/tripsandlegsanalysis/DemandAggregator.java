@@ -22,32 +22,26 @@ package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.config.variables.Variables;
 import ch.sbb.matsim.csv.CSVWriter;
-import ch.sbb.matsim.routing.SBBAnalysisMainModeIdentifier;
 import ch.sbb.matsim.zones.*;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import org.apache.commons.lang3.mutable.MutableDouble;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
-import org.matsim.api.core.v01.population.HasPlansAndId;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.io.PopulationReader;
-import org.matsim.core.router.MainModeIdentifier;
-import org.matsim.core.router.TripStructureUtils;
-import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.core.scoring.ExperiencedPlansService;
 import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
 import java.util.stream.Collectors;
 
 @Singleton
@@ -55,19 +49,23 @@ public class DemandAggregator {
 
     public static final String OUTSIDE_ZONE = Variables.DEFAULT_OUTSIDE_ZONE;
     public static final Id<Zone> OUTSIDE_ZONE_ID = Id.create(OUTSIDE_ZONE, Zone.class);
+    private static final int DEMAND = 0;
+    private static final int TRAVEL_TIME = 1;
+    private static final int TRAVEL_DISTANCE = 2;
+    private static final int RAIL_TRANSFERS = 3;
     private final RailTripsAnalyzer railTripsAnalyzer;
     private final Map<Id<TransitStopFacility>, String> aggregateZoneStop = new HashMap<>();
     private final Map<Id<TransitStopFacility>, String> zoneStop = new HashMap<>();
-    private final Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> odRailDemandMatrix = new TreeMap<>();
-    private final Map<Id<TransitStopFacility>, Map<Id<TransitStopFacility>, RailODTravelInfo>> odRailDemandMatrixFQ = new TreeMap<>();
+    private final List<Id<TransitStopFacility>> sortedStops;
+    private final int[] stopRank;
+    private final int[] stopAggregateZone;
     private final ArrayList<String> aggregateZones;
-    private final Map<Id<Zone>, Map<Id<Zone>, ODTravelInfo>> allModesOdDemand = new ConcurrentHashMap<>();
+    private ODSums odRailDemand;
+    private ODSums odRailDemandFQ;
+    private TripDemand tripDemand;
     private final Scenario scenario;
     private final Zones zones;
-    private final MainModeIdentifier mainModeIdentifier = new SBBAnalysisMainModeIdentifier();
     private final Logger LOG = LogManager.getLogger(getClass());
-    @Inject
-    private ExperiencedPlansService experiencedPlansService;
 
     @Inject
     public DemandAggregator(Scenario scenario, ZonesCollection zonesCollection, final PostProcessingConfigGroup ppConfig, RailTripsAnalyzer railTripsAnalyzer) {
@@ -89,6 +87,16 @@ public class DemandAggregator {
         aggregateZones = new ArrayList<>(sortedZones);
         aggregateZones.remove("");
 
+        // stations are numbered in the order of their ids, so the station to station demand is written sorted
+        sortedStops = new ArrayList<>(scenario.getTransitSchedule().getFacilities().keySet());
+        Collections.sort(sortedStops);
+        stopRank = new int[Id.getNumberOfIds(TransitStopFacility.class)];
+        stopAggregateZone = new int[stopRank.length];
+        for (int i = 0; i < sortedStops.size(); i++) {
+            Id<TransitStopFacility> stopId = sortedStops.get(i);
+            stopRank[stopId.index()] = i;
+            stopAggregateZone[stopId.index()] = aggregateZones.indexOf(aggregateZoneStop.get(stopId));
+        }
     }
 
     public static void main(String[] args) {
@@ -111,31 +119,33 @@ public class DemandAggregator {
         ppcg.setZonesId("zones");
         RailTripsAnalyzer railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(), scenario.getNetwork(), zonesCollection);
         DemandAggregator demandAggregator = new DemandAggregator(scenario, zonesCollection, ppcg, railTripsAnalyzer);
-        demandAggregator
-                .writeMatrix(demandAggregator.aggregateRailDemand(scaleFactor, scenario.getPopulation().getPersons().values().stream().map(HasPlansAndId::getSelectedPlan).collect(
-                        Collectors.toSet())), outputFile);
+        Map<Id<Person>, Plan> plans = new LinkedHashMap<>();
+        scenario.getPopulation().getPersons().values().forEach(p -> plans.put(p.getId(), p.getSelectedPlan()));
+        TripIndex tripIndex = TripIndex.build(plans, scenario, zonesCollection.getZones(ppcg.getZonesId()), railTripsAnalyzer);
+        demandAggregator.writeMatrix(demandAggregator.aggregateRailDemand(scaleFactor, tripIndex), outputFile);
 
     }
 
-    public void aggregateAndWriteMatrix(double scalefactor, String outputMatrixFile, String stationToStationFile, String stationToStationFQFile, String tripsPerMunFile, String tripsPerMSRFile) {
-        Collection<Plan> experiencedPlans = experiencedPlansService.getExperiencedPlans().values();
-        aggregateAndWriteMatrix(scalefactor, outputMatrixFile, stationToStationFile, stationToStationFQFile, tripsPerMunFile, tripsPerMSRFile, experiencedPlans);
-
+    void aggregateAndWriteMatrix(double scalefactor, String outputMatrixFile, String stationToStationFile, String stationToStationFQFile, String tripsPerMunFile, String tripsPerMSRFile, Collection<Plan> experiencedPlans) {
+        Map<Id<Person>, Plan> plans = new LinkedHashMap<>();
+        experiencedPlans.forEach(plan -> plans.put(plan.getPerson().getId(), plan));
+        aggregateAndWriteMatrix(scalefactor, outputMatrixFile, stationToStationFile, stationToStationFQFile, tripsPerMunFile, tripsPerMSRFile, TripIndex.build(plans, scenario, zones, railTripsAnalyzer));
     }
 
-    void aggregateAndWriteMatrix(double scalefactor, String outputMatrixFile, String stationToStationFile, String stationToStationFQFile, String tripsPerMunFile, String tripsPerMSRFile, Collection<Plan> experiencedPlans) {
+    public void aggregateAndWriteMatrix(double scalefactor, String outputMatrixFile, String stationToStationFile, String stationToStationFQFile, String tripsPerMunFile, String tripsPerMSRFile, TripIndex tripIndex) {
         LOG.info("aggregating Rail Demand");
-        float[][] matrix = aggregateRailDemand(scalefactor, experiencedPlans);
+        float[][] matrix = aggregateRailDemand(scalefactor, tripIndex);
         LOG.info("aggregating Trip Demand");
-        aggregateTripDemand(scalefactor, experiencedPlans);
+        aggregateTripDemand(scalefactor, tripIndex);
         LOG.info("Writing Trip Demand aggregate files.");
         writeMatrix(matrix, outputMatrixFile);
         writeStationToStationDemand(stationToStationFile, stationToStationFQFile);
         writeTripDemand("mun_id", "mun_name", tripsPerMunFile);
         writeTripDemand("amr_id", "amr_name", tripsPerMSRFile);
         LOG.info("Done.");
-        odRailDemandMatrix.clear();
-        allModesOdDemand.clear();
+        odRailDemand = null;
+        odRailDemandFQ = null;
+        tripDemand = null;
     }
 
     public void writeTripDemand(String aggregationString, String aggregationStringName, String outputfile) {
@@ -144,26 +154,55 @@ public class DemandAggregator {
         Map<String, String> zoneAggregateNameString = zonesImpl.getZones().stream().collect(Collectors.toMap(zone -> String.valueOf(zone.getAttribute(aggregationString)), zone -> String.valueOf(zone.getAttribute(aggregationStringName)), (a, b) -> a));
         zoneAggregateNameString.put(OUTSIDE_ZONE, "Outside");
         zoneAggregate.put(OUTSIDE_ZONE_ID, OUTSIDE_ZONE);
-        Map<String, Map<String, ODTravelInfo>> aggregatedAllModesOdDemand = new HashMap<>();
-        Set<String> allModes = new HashSet<>();
-        allModesOdDemand.forEach((zoneId, toFlow) -> {
-            String fromAggregate = zoneAggregate.get(zoneId);
-            toFlow.forEach((toZoneId, flow) -> {
-                String toAggregate = zoneAggregate.get(toZoneId);
-                ODTravelInfo aggregatedFlow = aggregatedAllModesOdDemand
-                        .computeIfAbsent(fromAggregate, a -> new HashMap<>())
-                        .computeIfAbsent(toAggregate, b -> new ODTravelInfo(new HashMap<>(), new HashMap<>(), new HashMap<>()));
-                flow.travelDistancePerMode().forEach((mode, distance) -> {
-                    allModes.add(mode);
-                    double travelTime = flow.travelTimePerMode().get(mode).doubleValue();
-                    double demand = flow.demandPerMode().get(mode).doubleValue();
-                    aggregatedFlow.addTravelInfo(mode, demand, travelTime, distance.doubleValue());
-                });
-
-            });
-        });
-        List<String> sortedModes = new ArrayList<>(allModes);
+
+        ODSums zoneDemand = tripDemand.sums();
+        int zoneCount = tripDemand.zoneIds().length;
+        int modeCount = tripDemand.modes().length;
+
+        TreeSet<String> aggregateSet = new TreeSet<>(new StringNumberComparator());
+        for (Id<Zone> zoneId : tripDemand.zoneIds()) {
+            aggregateSet.add(String.valueOf(zoneAggregate.get(zoneId)));
+        }
+        List<String> aggregates = new ArrayList<>(aggregateSet);
+        Map<String, Integer> aggregateIndex = new HashMap<>();
+        for (int aggregate = 0; aggregate < aggregates.size(); aggregate++) {
+            aggregateIndex.put(aggregates.get(aggregate), aggregate);
+        }
+        int[] zoneAggregateIndex = new int[zoneCount];
+        for (int zone = 0; zone < zoneCount; zone++) {
+            zoneAggregateIndex[zone] = aggregateIndex.get(String.valueOf(zoneAggregate.get(tripDemand.zoneIds()[zone])));
+        }
+
+        boolean[] modeUsed = new boolean[modeCount];
+        for (int entry = 0; entry < zoneDemand.size(); entry++) {
+            modeUsed[(int) (zoneDemand.getKey(entry) % modeCount)] = true;
+        }
+        List<String> sortedModes = new ArrayList<>();
+        for (int mode = 0; mode < modeCount; mode++) {
+            if (modeUsed[mode]) {
+                sortedModes.add(tripDemand.modes()[mode]);
+            }
+        }
         Collections.sort(sortedModes);
+        int[] modeColumn = new int[modeCount];
+        for (int mode = 0; mode < modeCount; mode++) {
+            modeColumn[mode] = sortedModes.indexOf(tripDemand.modes()[mode]);
+        }
+
+        int aggregateCount = aggregates.size();
+        int columnCount = sortedModes.size();
+        ODSums aggregateDemand = ODSums.aggregate(zoneDemand.size(), (long) aggregateCount * aggregateCount * columnCount,
+                entry -> {
+                    long key = zoneDemand.getKey(entry);
+                    long od = key / modeCount;
+                    int fromAggregate = zoneAggregateIndex[(int) (od / zoneCount)];
+                    int toAggregate = zoneAggregateIndex[(int) (od % zoneCount)];
+                    return ((long) fromAggregate * aggregateCount + toAggregate) * columnCount + modeColumn[(int) (key % modeCount)];
+                },
+                entry -> zoneDemand.getSum(DEMAND, entry),
+                entry -> zoneDemand.getSum(TRAVEL_TIME, entry),
+                entry -> zoneDemand.getSum(TRAVEL_DISTANCE, entry));
+
         String[] header = new String[4 + sortedModes.size() * 3];
         header[0] = "from_" + aggregationString;
         header[1] = "from_" + aggregationStringName;
@@ -176,25 +215,36 @@ public class DemandAggregator {
             header[i + 2] = mode + "_average_travelTime";
             i = i + 3;
         }
-        try (CSVWriter writer = new CSVWriter(null, header, outputfile)) {
-            for (var fromZoneFlows : aggregatedAllModesOdDemand.entrySet()) {
-                for (var toZoneFlows : fromZoneFlows.getValue().entrySet()) {
-                    writer.set(header[0], fromZoneFlows.getKey());
-                    writer.set(header[1], zoneAggregateNameString.get(fromZoneFlows.getKey()));
-                    writer.set(header[2], toZoneFlows.getKey());
-                    writer.set(header[3], zoneAggregateNameString.get(toZoneFlows.getKey()));
-                    var info = toZoneFlows.getValue();
-                    for (String mode : sortedModes) {
-                        double demand = info.getDemand(mode);
-                        double distance = info.getTravelDistane(mode);
-                        double travelTime = info.getTravelTime(mode);
-                        String averageTravelTime = demand > 0.0 ? String.valueOf((int) Math.round(travelTime / demand)) : "";
-                        writer.set(mode + "_demand", String.valueOf(demand));
-                        writer.set(mode + "_travelDistance_km", String.valueOf((int) Math.round(distance * 0.001)));
-                        writer.set(mode + "_average_travelTime", averageTravelTime);
-                    }
-                    writer.writeRow();
+        try (CSVWriter writer = new CSVWriter(null, header, outputfile, CSVWriter.DEFAULT_SEPARATOR, true)) {
+            double[] demand = new double[columnCount];
+            double[] distance = new double[columnCount];
+            double[] travelTime = new double[columnCount];
+            int entry = 0;
+            while (entry < aggregateDemand.size()) {
+                long od = aggregateDemand.getKey(entry) / columnCount;
+                Arrays.fill(demand, 0.0);
+                Arrays.fill(distance, 0.0);
+                Arrays.fill(travelTime, 0.0);
+                for (; entry < aggregateDemand.size() && aggregateDemand.getKey(entry) / columnCount == od; entry++) {
+                    int column = (int) (aggregateDemand.getKey(entry) % columnCount);
+                    demand[column] = aggregateDemand.getSum(DEMAND, entry);
+                    travelTime[column] = aggregateDemand.getSum(TRAVEL_TIME, entry);
+                    distance[column] = aggregateDemand.getSum(TRAVEL_DISTANCE, entry);
+                }
+                String fromAggregate = aggregates.get((int) (od / aggregateCount));
+                String toAggregate = aggregates.get((int) (od % aggregateCount));
+                writer.set(header[0], fromAggregate);
+                writer.set(header[1], zoneAggregateNameString.get(fromAggregate));
+                writer.set(header[2], toAggregate);
+                writer.set(header[3], zoneAggregateNameString.get(toAggregate));
+                for (int column = 0; column < columnCount; column++) {
+                    String mode = sortedModes.get(column);
+                    String averageTravelTime = demand[column] > 0.0 ? String.valueOf((int) Math.round(travelTime[column] / demand[column])) : "";
+                    writer.set(mode + "_demand", String.valueOf(demand[column]));
+                    writer.set(mode + "_travelDistance_km", String.valueOf((int) Math.round(distance[column] * 0.001)));
+                    writer.set(mode + "_average_travelTime", averageTravelTime);
                 }
+                writer.writeRow();
             }
 
         } catch (IOException e) {
@@ -204,34 +254,49 @@ public class DemandAggregator {
 
     }
 
-    public void aggregateTripDemand(double scalefactor, Collection<Plan> experiencedPlans) {
+    /**
+     * Sums up the demand, travel time and distance of all trips per origin zone, destination zone and main mode. Trips starting or ending
+     * outside of all zones are counted for {@link #OUTSIDE_ZONE}.
+     */
+    @SuppressWarnings("unchecked")
+    public void aggregateTripDemand(double scalefactor, TripIndex tripIndex) {
         if (scalefactor < 1.0) {
             throw new RuntimeException("Scalefactor set below 1. This will scale traffic down and should not be intended.");
         }
-        experiencedPlans.parallelStream().forEach(plan ->
-        {
-            for (Trip trip : TripStructureUtils.getTrips(plan)) {
-                Coord startCoord = SBBTripsExtension.getCoordFromActivity(trip.getOriginActivity(), scenario);
-                Zone startZone = zones.findZone(startCoord);
-                Id<Zone> startZoneId = startZone != null ? startZone.getId() : OUTSIDE_ZONE_ID;
-
-                Coord endCoord = SBBTripsExtension.getCoordFromActivity(trip.getDestinationActivity(), scenario);
-                Zone endZone = zones.findZone(endCoord);
-                Id<Zone> endZoneId = endZone != null ? endZone.getId() : OUTSIDE_ZONE_ID;
-
-                double travelTime = trip.getLegsOnly().stream().mapToDouble(leg -> leg.getRoute().getTravelTime().orElse(0)).sum();
-                double travelDistance = trip.getLegsOnly().stream().mapToDouble(leg -> leg.getRoute().getDistance()).sum();
-                String mainMode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
-                allModesOdDemand.computeIfAbsent(startZoneId, a -> new ConcurrentHashMap<>())
-                        .computeIfAbsent(endZoneId, a -> new ODTravelInfo(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>()))
-                        .addTravelInfo(mainMode, scalefactor, travelTime * scalefactor, travelDistance * scalefactor);
-
-
-            }
-        });
+        // the last zone code stands for trips outside of all zones
+        int zoneCount = tripIndex.getZoneCount() + 1;
+        int outsideZone = zoneCount - 1;
+        int modeCount = tripIndex.getModeCount();
+        ODSums sums = ODSums.aggregate(tripIndex.getTripCount(), (long) zoneCount * zoneCount * modeCount,
+                t -> {
+                    int fromZone = tripIndex.getOriginZone(t);
+                    int toZone = tripIndex.getDestinationZone(t);
+                    fromZone = fromZone == TripIndex.NO_ZONE ? outsideZone : fromZone;
+                    toZone = toZone == TripIndex.NO_ZONE ? outsideZone : toZone;
+                    return ((long) fromZone * zoneCount + toZone) * modeCount + tripIndex.getMainMode(t);
+                },
+                t -> scalefactor,
+                t -> tripIndex.getTravelTime(t) * scalefactor,
+                t -> tripIndex.getTravelDistance(t) * scalefactor);
+
+        Id<Zone>[] zoneIds = new Id[zoneCount];
+        for (int zone = 0; zone < outsideZone; zone++) {
+            zoneIds[zone] = tripIndex.getZone(zone).getId();
+        }
+        zoneIds[outsideZone] = OUTSIDE_ZONE_ID;
+        String[] modes = new String[modeCount];
+        for (int mode = 0; mode < modeCount; mode++) {
+            modes[mode] = tripIndex.getMode(mode);
+        }
+        this.tripDemand = new TripDemand(sums, zoneIds, modes);
     }
 
     public void writeStationToStationDemand(String outputFile, String outputFileFQ) {
+        writeStationToStationDemand(this.odRailDemand, outputFile, false);
+        writeStationToStationDemand(this.odRailDemandFQ, outputFileFQ, true);
+    }
+
+    private void writeStationToStationDemand(ODSums railDemand, String outputFile, boolean transfersAsDecimal) {
         String from = "from_station";
         String fromName = "from_station_name";
         String fromZone = "from_station_zone";
@@ -245,55 +310,25 @@ public class DemandAggregator {
         String pkm = "rail_pkm";
         String travel_time = "average_travel_time";
         String number_of_transfers = "number_of_rail_transfers";
-        try (CSVWriter writer = new CSVWriter(null, new String[]{from, fromName, fromZone, to, toName, toZone, trips, pkm, travel_time, number_of_transfers}, outputFile)) {
-            for (var entry : this.odRailDemandMatrix.entrySet()) {
-                String fromZoneId = this.zoneStop.get(entry.getKey());
-                String fromStationName = String.valueOf(scenario.getTransitSchedule().getFacilities().get(entry.getKey()).getName());
-                for (var stopEntry : entry.getValue().entrySet()) {
-                    String toZoneId = this.zoneStop.get(stopEntry.getKey());
-                    String toStationName = String.valueOf(scenario.getTransitSchedule().getFacilities().get(stopEntry.getKey()).getName());
-
-                    writer.set(from, entry.getKey().toString());
-                    writer.set(fromZone, fromZoneId);
-                    writer.set(fromName, fromStationName);
-                    writer.set(toName, toStationName);
-                    writer.set(toZone, toZoneId);
-                    writer.set(to, stopEntry.getKey().toString());
-
-                    var travelInfo = stopEntry.getValue();
-                    writer.set(pkm, String.valueOf((int) Math.round(travelInfo.travelDistance().doubleValue())));
-                    writer.set(trips, travelInfo.demand().toString());
-                    writer.set(travel_time, String.valueOf((int) Math.round(travelInfo.travelTime().doubleValue() / travelInfo.demand().doubleValue())));
-                    writer.set(number_of_transfers, String.valueOf((int) Math.round(travelInfo.numberOfRailTransfers().doubleValue() / travelInfo.demand().doubleValue())));
-                    writer.writeRow();
-                }
-            }
-
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        try (CSVWriter writer = new CSVWriter(null, new String[]{from, fromName, fromZone, to, toName, toZone, trips, pkm, travel_time, number_of_transfers}, outputFileFQ)) {
-            for (var entry : this.odRailDemandMatrixFQ.entrySet()) {
-                String fromZoneId = this.zoneStop.get(entry.getKey());
-                String fromStationName = String.valueOf(scenario.getTransitSchedule().getFacilities().get(entry.getKey()).getName());
-                for (var stopEntry : entry.getValue().entrySet()) {
-                    String toZoneId = this.zoneStop.get(stopEntry.getKey());
-                    String toStationName = String.valueOf(scenario.getTransitSchedule().getFacilities().get(stopEntry.getKey()).getName());
-                    writer.set(from, entry.getKey().toString());
-                    writer.set(fromZone, fromZoneId);
-                    writer.set(fromName, fromStationName);
-                    writer.set(toName, toStationName);
-                    writer.set(toZone, toZoneId);
-                    writer.set(to, stopEntry.getKey().toString());
-
-                    var travelInfo = stopEntry.getValue();
-                    writer.set(pkm, String.valueOf((int) Math.round(travelInfo.travelDistance().doubleValue())));
-                    writer.set(trips, travelInfo.demand().toString());
-                    writer.set(travel_time, String.valueOf((int) Math.round(travelInfo.travelTime().doubleValue() / travelInfo.demand().doubleValue())));
-                    writer.set(number_of_transfers, String.valueOf((double) Math.round(travelInfo.numberOfRailTransfers().doubleValue() / travelInfo.demand().doubleValue())));
-                    writer.writeRow();
-                }
+        int stopCount = this.sortedStops.size();
+        try (CSVWriter writer = new CSVWriter(null, new String[]{from, fromName, fromZone, to, toName, toZone, trips, pkm, travel_time, number_of_transfers}, outputFile, CSVWriter.DEFAULT_SEPARATOR, true)) {
+            for (int entry = 0; entry < railDemand.size(); entry++) {
+                Id<TransitStopFacility> fromStop = this.sortedStops.get((int) (railDemand.getKey(entry) / stopCount));
+                Id<TransitStopFacility> toStop = this.sortedStops.get((int) (railDemand.getKey(entry) % stopCount));
+                writer.set(from, fromStop.toString());
+                writer.set(fromZone, this.zoneStop.get(fromStop));
+                writer.set(fromName, String.valueOf(scenario.getTransitSchedule().getFacilities().get(fromStop).getName()));
+                writer.set(toName, String.valueOf(scenario.getTransitSchedule().getFacilities().get(toStop).getName()));
+                writer.set(toZone, this.zoneStop.get(toStop));
+                writer.set(to, toStop.toString());
+
+                double demand = railDemand.getSum(DEMAND, entry);
+                double transfers = Math.round(railDemand.getSum(RAIL_TRANSFERS, entry) / demand);
+                writer.set(pkm, String.valueOf((int) Math.round(railDemand.getSum(TRAVEL_DISTANCE, entry))));
+                writer.set(trips, String.valueOf(demand));
+                writer.set(travel_time, String.valueOf((int) Math.round(railDemand.getSum(TRAVEL_TIME, entry) / demand)));
+                writer.set(number_of_transfers, transfersAsDecimal ? String.valueOf(transfers) : String.valueOf((int) transfers));
+                writer.writeRow();
             }
 
         } catch (IOException e) {
@@ -319,58 +354,36 @@ public class DemandAggregator {
         }
     }
 
-    private float[][] aggregateRailDemand(double scaleFactor, Collection<Plan> plans) {
+    private float[][] aggregateRailDemand(double scaleFactor, TripIndex tripIndex) {
+        int stopCount = this.sortedStops.size();
+        IntToLongFunction stationToStation = t -> {
+            int fromStop = tripIndex.getRailAccessStop(t);
+            if (fromStop == TripIndex.NO_STOP) {
+                return ODSums.SKIP;
+            }
+            return (long) this.stopRank[fromStop] * stopCount + this.stopRank[tripIndex.getRailEgressStop(t)];
+        };
+        IntToDoubleFunction demand = t -> scaleFactor;
+        IntToDoubleFunction travelTime = t -> scaleFactor * tripIndex.getRailTravelTime(t);
+        IntToDoubleFunction travelDistance = t -> scaleFactor * tripIndex.getRailDistance(t) * 0.001;
+        IntToDoubleFunction transfers = t -> scaleFactor * tripIndex.getRailTransfers(t);
+        long stationPairs = (long) stopCount * stopCount;
+        this.odRailDemand = ODSums.aggregate(tripIndex.getTripCount(), stationPairs, stationToStation, demand, travelTime, travelDistance, transfers);
+        // like odRailDemand, the FQ demand only contains the trips of the current call and no longer accumulates over the iterations
+        this.odRailDemandFQ = ODSums.aggregate(tripIndex.getTripCount(), stationPairs, t -> tripIndex.getFQDistance(t) > 0 ? stationToStation.applyAsLong(t) : ODSums.SKIP,
+                demand, travelTime, travelDistance, transfers);
+
         float[][] matrix = new float[aggregateZones.size()][aggregateZones.size()];
-        for (Plan plan : plans) {
-            for (Trip trip : TripStructureUtils.getTrips(plan)) {
-                RailTripsAnalyzer.RailTravelInfo od = railTripsAnalyzer.getRailTravelInfo(trip);
-                double pkmFQ = railTripsAnalyzer.getFQDistance(trip, true);
-                if (od != null) {
-                    String fromZone = aggregateZoneStop.get(od.fromStation());
-                    String toZone = aggregateZoneStop.get(od.toStation());
-                    matrix[aggregateZones.indexOf(fromZone)][aggregateZones.indexOf(toZone)] += scaleFactor;
-
-                    RailODTravelInfo travelInfo = this.odRailDemandMatrix.computeIfAbsent(od.fromStation(), a -> new TreeMap<>()).computeIfAbsent(od.toStation(), b -> new RailODTravelInfo(new MutableDouble(), new MutableDouble(), new MutableDouble(), new MutableDouble()));
-                    travelInfo.demand.add(scaleFactor);
-                    travelInfo.travelDistance().add(scaleFactor * od.distance() * 0.001);
-                    travelInfo.travelTime().add(scaleFactor * od.railTravelTime());
-                    travelInfo.numberOfRailTransfers().add(scaleFactor * od.numberOfTransfers());
-                    if (pkmFQ>0) {
-                        RailODTravelInfo travelInfoFQ = this.odRailDemandMatrixFQ.computeIfAbsent(od.fromStation(), a -> new TreeMap<>()).computeIfAbsent(od.toStation(), b -> new RailODTravelInfo(new MutableDouble(), new MutableDouble(), new MutableDouble(), new MutableDouble()));
-                        travelInfoFQ.demand.add(scaleFactor);
-                        travelInfoFQ.travelDistance().add(scaleFactor * od.distance() * 0.001);
-                        travelInfoFQ.travelTime().add(scaleFactor * od.railTravelTime());
-                        travelInfoFQ.numberOfRailTransfers().add(scaleFactor * od.numberOfTransfers());
-                    }
-                }
+        for (int t = 0; t < tripIndex.getTripCount(); t++) {
+            if (tripIndex.getRailAccessStop(t) == TripIndex.NO_STOP) {
+                continue;
             }
+            matrix[this.stopAggregateZone[tripIndex.getRailAccessStop(t)]][this.stopAggregateZone[tripIndex.getRailEgressStop(t)]] += scaleFactor;
         }
         return matrix;
     }
 
-    record RailODTravelInfo(MutableDouble demand, MutableDouble travelTime, MutableDouble travelDistance, MutableDouble numberOfRailTransfers) {
-    }
-
-    record ODTravelInfo(Map<String, MutableDouble> demandPerMode, Map<String, MutableDouble> travelTimePerMode,
-                        Map<String, MutableDouble> travelDistancePerMode) {
-        void addTravelInfo(String mode, double demand, double travelTime, double travelDistance) {
-            demandPerMode.computeIfAbsent(mode, m -> new MutableDouble()).add(demand);
-            travelTimePerMode.computeIfAbsent(mode, m -> new MutableDouble()).add(travelTime);
-            travelDistancePerMode.computeIfAbsent(mode, m -> new MutableDouble()).add(travelDistance);
-
-        }
-
-        double getDemand(String mode) {
-            return demandPerMode.getOrDefault(mode, new MutableDouble()).doubleValue();
-        }
-
-        double getTravelDistane(String mode) {
-            return travelDistancePerMode().getOrDefault(mode, new MutableDouble()).doubleValue();
-        }
-
-        double getTravelTime(String mode) {
-            return travelTimePerMode().getOrDefault(mode, new MutableDouble()).doubleValue();
-        }
+    private record TripDemand(ODSums sums, Id<Zone>[] zoneIds, String[] modes) {
     }
 
     private static class StringNumberComparator implements Comparator<String> {
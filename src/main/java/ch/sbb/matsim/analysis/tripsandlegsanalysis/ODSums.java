@@ -0,0 +1,113 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package ch.sbb.matsim.analysis.tripsandlegsanalysis;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Sums of several values per key, e.g. per origin, destination and mode, stored as primitive columns sorted by key. Only keys which occur
+ * are stored, so the sums stay small even if the number of possible keys (zones squared times modes) is large.
+ * <p>
+ * The sums are built without locks: the key and the number of every item are packed into one long, these are sorted in parallel and the
+ * values of equal keys are added up in the order of the items. The result therefore does not depend on the number of threads.
+ */
+final class ODSums {
+
+    /**
+     * Key to be returned for items which should not be counted.
+     */
+    static final long SKIP = -1;
+
+    private final long[] keys;
+    private final double[][] sums;
+
+    private ODSums(long[] keys, double[][] sums) {
+        this.keys = keys;
+        this.sums = sums;
+    }
+
+    /**
+     * @param itemCount the number of items, e.g. trips
+     * @param keyCount  the number of possible keys, all keys must be in <code>[0, keyCount)</code>
+     * @param key       the key of an item, or {@link #SKIP}
+     * @param values    the values to sum up per key
+     */
+    static ODSums aggregate(int itemCount, long keyCount, IntToLongFunction key, IntToDoubleFunction... values) {
+        int itemBits = 32 - Integer.numberOfLeadingZeros(itemCount);
+        if (keyCount - 1 > (Long.MAX_VALUE >>> itemBits)) {
+            throw new IllegalArgumentException("Too many keys (" + keyCount + ") for " + itemCount + " items.");
+        }
+        long itemMask = (1L << itemBits) - 1;
+        long[] packed = new long[itemCount];
+        IntStream.range(0, itemCount).parallel().forEach(item -> {
+            long k = key.applyAsLong(item);
+            packed[item] = k == SKIP ? SKIP : (k << itemBits) | item;
+        });
+        Arrays.parallelSort(packed);
+
+        int first = 0;
+        while (first < itemCount && packed[first] == SKIP) {
+            first++;
+        }
+        int keyEntries = 0;
+        long lastKey = SKIP;
+        for (int i = first; i < itemCount; i++) {
+            long k = packed[i] >>> itemBits;
+            if (k != lastKey) {
+                keyEntries++;
+                lastKey = k;
+            }
+        }
+
+        long[] keys = new long[keyEntries];
+        double[][] sums = new double[values.length][keyEntries];
+        int entry = -1;
+        lastKey = SKIP;
+        for (int i = first; i < itemCount; i++) {
+            long k = packed[i] >>> itemBits;
+            if (k != lastKey) {
+                entry++;
+                keys[entry] = k;
+                lastKey = k;
+            }
+            int item = (int) (packed[i] & itemMask);
+            for (int v = 0; v < values.length; v++) {
+                sums[v][entry] += values[v].applyAsDouble(item);
+            }
+        }
+        return new ODSums(keys, sums);
+    }
+
+    int size() {
+        return this.keys.length;
+    }
+
+    long getKey(int entry) {
+        return this.keys[entry];
+    }
+
+    double getSum(int value, int entry) {
+        return this.sums[value][entry];
+    }
+
+}
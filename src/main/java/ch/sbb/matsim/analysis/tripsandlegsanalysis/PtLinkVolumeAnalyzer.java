@@ -31,19 +31,22 @@ import org.matsim.api.core.v01.Identifiable;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.NetworkWriter;
+import org.matsim.api.core.v01.population.Leg;
 import org.matsim.core.config.groups.NetworkConfigGroup;
 import org.matsim.core.network.filter.NetworkFilterManager;
-import org.matsim.core.router.TripStructureUtils;
-import org.matsim.core.scoring.ExperiencedPlansService;
 import org.matsim.pt.routes.TransitPassengerRoute;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class PtLinkVolumeAnalyzer {
 
@@ -55,10 +58,11 @@ public class PtLinkVolumeAnalyzer {
     private static final String HEADER = "$VISION\n* Schweizerische Bundesbahnen SBB Personenverkehr Bern\n* 12/09/22\n* \n* Table: Version block\n* \n$VERSION:VERSNR;FILETYPE;LANGUAGE;UNIT\n12.00;Att;ENG;KM\n\n* \n* Table: Links\n* \n";
     private final static Logger log = LogManager.getLogger(PtLinkVolumeAnalyzer.class);
     private final RailTripsAnalyzer railTripsAnalyzer;
-    private final Set<Id<Link>> ptlinks;
+    private final List<Id<Link>> ptlinks;
+    private final int[] ptLinkPosition;
     private final Network network;
-    @Inject
-    private ExperiencedPlansService experiencedPlansService;
+    private Network ptNetwork;
+    private Network railNetwork;
 
     @Inject
     public PtLinkVolumeAnalyzer(RailTripsAnalyzer railTripsAnalyzer, TransitSchedule schedule, Network network) {
@@ -68,55 +72,106 @@ public class PtLinkVolumeAnalyzer {
                 .stream()
                 .filter(l -> l.getAllowedModes().stream().anyMatch(m -> PTSubModes.submodes.contains(m) || m.equals(SBBModes.PT)))
                 .map(Identifiable::getId)
-                .collect(Collectors.toSet());
+                .sorted(Comparator.comparingInt(Id::index))
+                .collect(Collectors.toList());
+        this.ptLinkPosition = new int[Id.getNumberOfIds(Link.class)];
+        Arrays.fill(this.ptLinkPosition, -1);
+        for (int i = 0; i < this.ptlinks.size(); i++) {
+            this.ptLinkPosition[this.ptlinks.get(i).index()] = i;
+        }
 
     }
 
-    public Map<Id<Link>, Long> analysePtLinkUsage() {
-        Map<Id<Link>, Long> ptUsage = experiencedPlansService.getExperiencedPlans().values()
-                .stream()
-                .flatMap(p -> TripStructureUtils.getLegs(p).stream())
-                .filter(l -> l.getMode().equals(SBBModes.PT))
-                .map(l -> (TransitPassengerRoute) l.getRoute())
-                .flatMap(r -> railTripsAnalyzer.getPtLinkIdsTraveledOn(r).stream())
-                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
-        return ptUsage;
+    /**
+     * @return the pt links of the network, in the order of the volumes returned by {@link #analysePtLinkUsage(TripIndex)}.
+     */
+    public List<Id<Link>> getPtLinks() {
+        return Collections.unmodifiableList(this.ptlinks);
+    }
 
+    /**
+     * Counts the pt passengers per pt link. Every thread counts into its own array, the arrays are added up at the end.
+     *
+     * @return the number of passengers for each link of {@link #getPtLinks()}.
+     */
+    public long[] analysePtLinkUsage(TripIndex tripIndex) {
+        return analysePtLinkUsage(tripIndex, linkId -> {
+        });
+    }
+
+    private long[] analysePtLinkUsage(TripIndex tripIndex, Consumer<Id<Link>> nonPtLinks) {
+        int ptLinkCount = this.ptlinks.size();
+        return IntStream.range(0, tripIndex.getTripCount()).parallel().collect(
+                () -> new long[ptLinkCount],
+                (volumes, t) -> {
+                    for (Leg leg : tripIndex.getTrip(t).getLegsOnly()) {
+                        if (leg.getMode().equals(SBBModes.PT)) {
+                            for (Id<Link> linkId : railTripsAnalyzer.getPtLinkIdsTraveledOn((TransitPassengerRoute) leg.getRoute())) {
+                                int position = linkId.index() < this.ptLinkPosition.length ? this.ptLinkPosition[linkId.index()] : -1;
+                                if (position >= 0) {
+                                    volumes[position]++;
+                                } else {
+                                    nonPtLinks.accept(linkId);
+                                }
+                            }
+                        }
+                    }
+                },
+                (volumes, other) -> {
+                    for (int i = 0; i < ptLinkCount; i++) {
+                        volumes[i] += other[i];
+                    }
+                });
     }
 
-    public void writePtLinkUsage(String outputfile, double scalefactor) {
-        NetworkFilterManager nfm = new NetworkFilterManager(network, new NetworkConfigGroup());
-        nfm.addLinkFilter(l -> this.ptlinks.contains(l.getId()));
-        Network ptNetwork = nfm.applyFilters();
-        var ptVolumes = analysePtLinkUsage();
+    public void writePtLinkUsage(String outputfile, TripIndex tripIndex, double scalefactor) {
+        initPtNetworks();
+        Set<Id<Link>> nonPtLinks = ConcurrentHashMap.newKeySet();
+        var ptVolumes = analysePtLinkUsage(tripIndex, nonPtLinks::add);
+        nonPtLinks.forEach(linkId -> log.warn("Could not find link " + linkId + ". Skipping."));
+        // the networks are reused for every iteration, remove the volumes of the previous one
+        this.ptNetwork.getLinks().values().forEach(l -> l.getAttributes().removeAttribute(VOLUME));
+        this.railNetwork.getLinks().values().forEach(l -> l.getAttributes().removeAttribute(VOLUME));
         try (CSVWriter writer = new CSVWriter(HEADER, VOLUMES_COLUMNS, outputfile)) {
-            for (Entry<Id<Link>, Long> e : ptVolumes.entrySet()) {
-                Id<Link> currentLinkId = e.getKey();
-                int scaledVolume = (int) Math.round((double) e.getValue() * scalefactor);
-                Link l = ptNetwork.getLinks().get(currentLinkId);
-                if (l != null) {
-                    var visumNodeAndLink = MaviHelper.extractVisumNodeAndLinkId(currentLinkId);
-                    if (visumNodeAndLink!=null){
-                    l.getAttributes().putAttribute(VOLUME, scaledVolume);
+            for (int i = 0; i < ptVolumes.length; i++) {
+                if (ptVolumes[i] == 0) {
+                    continue;
+                }
+                Id<Link> currentLinkId = this.ptlinks.get(i);
+                int scaledVolume = (int) Math.round((double) ptVolumes[i] * scalefactor);
+                var visumNodeAndLink = MaviHelper.extractVisumNodeAndLinkId(currentLinkId);
+                if (visumNodeAndLink != null) {
+                    ptNetwork.getLinks().get(currentLinkId).getAttributes().putAttribute(VOLUME, scaledVolume);
+                    Link railLink = railNetwork.getLinks().get(currentLinkId);
+                    if (railLink != null) {
+                        railLink.getAttributes().putAttribute(VOLUME, scaledVolume);
+                    }
                     writer.set(LINK_ID_SIM, currentLinkId.toString());
                     writer.set(VOLUME, Integer.toString(scaledVolume));
                     writer.set(FROMNODENO, Integer.toString(visumNodeAndLink.getFirst()));
                     writer.set(LINK_NO, Integer.toString(visumNodeAndLink.getSecond()));
                     writer.writeRow();
-                    }
-                }
-                else {
-                    log.warn("Could not find link " + currentLinkId + ". Skipping.");
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
         new NetworkWriter(ptNetwork).write(outputfile + "_network.xml.gz");
-        NetworkFilterManager nfm2 = new NetworkFilterManager(ptNetwork, new NetworkConfigGroup());
-        nfm2.addLinkFilter(link -> link.getAllowedModes().contains(PTSubModes.RAIL));
-        Network railNet = nfm2.applyFilters();
-        new NetworkWriter(railNet).write(outputfile + "_rail_network.xml.gz");
+        new NetworkWriter(railNetwork).write(outputfile + "_rail_network.xml.gz");
+    }
+
+    /**
+     * The pt and rail links do not change during the simulation, so the filtered networks are only built once.
+     */
+    private void initPtNetworks() {
+        if (this.ptNetwork == null) {
+            NetworkFilterManager nfm = new NetworkFilterManager(network, new NetworkConfigGroup());
+            nfm.addLinkFilter(l -> l.getId().index() < this.ptLinkPosition.length && this.ptLinkPosition[l.getId().index()] >= 0);
+            this.ptNetwork = nfm.applyFilters();
+            NetworkFilterManager nfm2 = new NetworkFilterManager(ptNetwork, new NetworkConfigGroup());
+            nfm2.addLinkFilter(link -> link.getAllowedModes().contains(PTSubModes.RAIL));
+            this.railNetwork = nfm2.applyFilters();
+        }
     }
 
 }
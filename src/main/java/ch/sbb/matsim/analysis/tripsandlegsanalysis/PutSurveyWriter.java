@@ -34,14 +34,11 @@ import org.matsim.api.core.v01.*;
 import org.matsim.api.core.v01.population.*;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
-import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.io.PopulationReader;
-import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.core.scoring.ExperiencedPlansService;
 import org.matsim.core.utils.collections.CollectionUtils;
 import org.matsim.core.utils.misc.Time;
-import org.matsim.facilities.ActivityFacility;
 import org.matsim.facilities.MatsimFacilitiesReader;
 import org.matsim.pt.routes.TransitPassengerRoute;
 import org.matsim.pt.transitSchedule.api.TransitLine;
@@ -55,6 +52,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class PutSurveyWriter {
 
@@ -106,9 +104,6 @@ public class PutSurveyWriter {
     private final TransitSchedule schedule;
     private final Scenario scenario;
 
-    @Inject
-    ExperiencedPlansService experiencedPlansService;
-
     @Inject
     public PutSurveyWriter(Scenario scenario, ZonesCollection zonesCollection, final PostProcessingConfigGroup ppConfig) {
         this.schedule = scenario.getTransitSchedule();
@@ -169,22 +164,6 @@ public class PutSurveyWriter {
         return Time.writeTime(sec);
     }
 
-    private Coord findCoord(Activity originActivity) {
-        Id<ActivityFacility> facId = originActivity.getFacilityId();
-        if (facId != null) {
-            if (this.scenario.getActivityFacilities().getFacilities().get(facId) != null) {
-                return this.scenario.getActivityFacilities().getFacilities().get(facId).getCoord();
-            }
-        }
-        if (originActivity.getCoord() != null) {
-            return originActivity.getCoord();
-        } else if (originActivity.getLinkId() != null) {
-            return scenario.getNetwork().getLinks().get(originActivity.getLinkId()).getToNode().getCoord();
-        } else {
-            throw new RuntimeException(" No coordinate found for activity " + originActivity);
-        }
-    }
-
     public static void main(String[] args) {
         String experiencedPlansFile = args[0];
         String zonesFile = args[1];
@@ -211,19 +190,19 @@ public class PutSurveyWriter {
 
     }
 
-    public void collectAndWritePUTSurvey(String filename) {
-        collectAndWritePUTSurvey(filename, experiencedPlansService.getExperiencedPlans());
+    public void collectAndWritePUTSurvey(String filename, Map<Id<Person>, Plan> experiencedPlans) {
+        collectAndWritePUTSurvey(filename, TripIndex.build(experiencedPlans, scenario, zones, null));
     }
 
-    public void collectAndWritePUTSurvey(String filename, Map<Id<Person>, Plan> experiencedPlans) {
+    public void collectAndWritePUTSurvey(String filename, TripIndex tripIndex) {
         tripIds = Variables.MOBiTripAttributes.extractTripAttributes(scenario.getPopulation());
 
         AtomicInteger teilwegNr = new AtomicInteger();
-        List<List<PutSurveyEntry>> entries = experiencedPlans.entrySet().parallelStream()
-                .map(e -> TripStructureUtils
-                        .getTrips(e.getValue()).stream()
-                        .flatMap(trip -> {
-                            Person person = this.scenario.getPopulation().getPersons().get(e.getKey());
+        List<List<PutSurveyEntry>> entries = IntStream.range(0, tripIndex.getPersonCount()).parallel()
+                .mapToObj(p -> IntStream.range(tripIndex.getFirstTrip(p), tripIndex.getFirstTrip(p + 1)).boxed()
+                        .flatMap(t -> {
+                            Trip trip = tripIndex.getTrip(t);
+                            Person person = tripIndex.getPerson(p);
                             String tourId = "";
                             String tripId = "";
                             String direction = "";
@@ -254,13 +233,10 @@ public class PutSurveyWriter {
                                 String from_act = trip.getOriginActivity().getType().split("_")[0];
                                 String to_act = trip.getDestinationActivity().getType().split("_")[0];
 
-                                String subpop = "null";
-                                if (person != null) {
-                                    subpop = String.valueOf(PopulationUtils.getSubpopulation(person));
-                                }
+                                String subpop = String.valueOf(tripIndex.getSubpopulation(p));
 
-                                var origzone = zones.findZone(findCoord(trip.getOriginActivity()));
-                                var destzone = zones.findZone(findCoord(trip.getDestinationActivity()));
+                                var origzone = tripIndex.getZone(tripIndex.getOriginZone(t));
+                                var destzone = tripIndex.getZone(tripIndex.getDestinationZone(t));
 
                                 String orig_gem = origzone != null ? origzone.getAttribute(GEM_SHAPE_ATTR).toString() : Variables.DEFAULT_OUTSIDE_ZONE;
                                 String dest_gem = destzone != null ? destzone.getAttribute(GEM_SHAPE_ATTR).toString() : Variables.DEFAULT_OUTSIDE_ZONE;
@@ -289,7 +265,7 @@ public class PutSurveyWriter {
                                                 fzprofilname, teilweg_kennung, from_stop, einhstabfahrtstag, einhstabfahrtszeit, scaleFactor, subpop, orig_gem, dest_gem);
                                         putSurveyEntry.from_act = from_act;
                                         putSurveyEntry.to_act = to_act;
-                                        putSurveyEntry.personId = e.getKey().toString();
+                                        putSurveyEntry.personId = tripIndex.getPersonId(p).toString();
                                         putSurveyEntry.tripId = tripId;
                                         putSurveyEntry.tourId = tourId;
                                         putSurveyEntry.purpose = purpose;
@@ -21,6 +21,7 @@ package ch.sbb.matsim.analysis.tripsandlegsanalysis;
 
 import ch.sbb.matsim.config.variables.Variables;
 import ch.sbb.matsim.csv.CSVWriter;
+import ch.sbb.matsim.zones.Zones;
 import ch.sbb.matsim.zones.ZonesCollection;
 import ch.sbb.matsim.zones.ZonesLoader;
 import jakarta.inject.Inject;
@@ -31,15 +32,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
-import org.matsim.api.core.v01.population.HasPlansAndId;
+import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.io.PopulationReader;
-import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.core.scoring.ExperiencedPlansService;
 import org.matsim.pt.routes.DefaultTransitPassengerRoute;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitSchedule;
@@ -49,6 +48,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Singleton
 public class RailDemandReporting {
@@ -67,8 +67,6 @@ public class RailDemandReporting {
     private final Map<String, MutableDouble> modeDistances = new HashMap<>();
     private final Map<String, MutableInt> modeBoardings = new HashMap<>();
 
-    @Inject
-    private ExperiencedPlansService experiencedPlansService;
     private double fqDistance = 0;
     private int fqTrips = 0;
     private double railDistance = 0.0;
@@ -108,7 +106,9 @@ public class RailDemandReporting {
         new PopulationReader(scenario).readFile(experiencedPlansFile);
         RailTripsAnalyzer railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(), scenario.getNetwork(), zonesCollection);
         RailDemandReporting railDemandReporting = new RailDemandReporting(railTripsAnalyzer, scenario.getTransitSchedule(), scenario.getConfig());
-        railDemandReporting.calcAndWriteDistanceReporting(outputFile, scenario.getPopulation().getPersons().values().stream().map(HasPlansAndId::getSelectedPlan).collect(Collectors.toSet()), scaleFactor);
+        Map<Id<Person>, Plan> plans = new LinkedHashMap<>();
+        scenario.getPopulation().getPersons().values().forEach(p -> plans.put(p.getId(), p.getSelectedPlan()));
+        railDemandReporting.calcAndwriteIterationDistanceReporting(outputFile, TripIndex.build(plans, scenario, zonesCollection.getZones(Id.create("zones", Zones.class)), railTripsAnalyzer), scaleFactor);
     }
 
     private void reset() {
@@ -125,16 +125,12 @@ public class RailDemandReporting {
         railDistance = 0.0;
     }
 
-    private void calcAndWriteDistanceReporting(String outputfile, Collection<Plan> plans, double scaleFactor) {
+    public void calcAndwriteIterationDistanceReporting(String outputfile, TripIndex tripIndex, double scaleFactor) {
         reset();
-        aggregateRailDistances(plans);
+        aggregateRailDistances(tripIndex);
         writeRailDistanceReporting(outputfile, scaleFactor);
     }
 
-    public void calcAndwriteIterationDistanceReporting(String outputfile, double scaleFactor) {
-        calcAndWriteDistanceReporting(outputfile, experiencedPlansService.getExperiencedPlans().values(), scaleFactor);
-    }
-
     private void writeRailDistanceReporting(String outputFile, double scaleFactor) {
 
         String pf = "PF";
@@ -244,8 +240,8 @@ public class RailDemandReporting {
         allModes.forEach(mode -> modeBoardings.put(mode, new MutableInt()));
     }
 
-    private void aggregateRailDistances(Collection<Plan> plans) {
-        Set<DefaultTransitPassengerRoute> allPtRoutes = plans.stream().flatMap(plan -> TripStructureUtils.getLegs(plan).stream()).filter(leg -> leg.getRoute().getRouteType().equals(DefaultTransitPassengerRoute.ROUTE_TYPE)).map(leg -> (DefaultTransitPassengerRoute) leg.getRoute()).collect(Collectors.toSet());
+    private void aggregateRailDistances(TripIndex tripIndex) {
+        Set<DefaultTransitPassengerRoute> allPtRoutes = IntStream.range(0, tripIndex.getTripCount()).mapToObj(t -> tripIndex.getTrip(t).getLegsOnly()).flatMap(List::stream).filter(leg -> leg.getRoute().getRouteType().equals(DefaultTransitPassengerRoute.ROUTE_TYPE)).map(leg -> (DefaultTransitPassengerRoute) leg.getRoute()).collect(Collectors.toSet());
         Set<DefaultTransitPassengerRoute> allRailRoutes = allPtRoutes.stream().filter(defaultTransitPassengerRoute -> railTripsAnalyzer.isRailLine(defaultTransitPassengerRoute.getLineId())).collect(Collectors.toSet());
         for (var route : allRailRoutes) {
             double distance = railTripsAnalyzer.getDomesticRailDistance_m(route);
@@ -256,7 +252,7 @@ public class RailDemandReporting {
                 pkmSparte.get(lineSparte.get(transitLineId)).add(distance);
             }
         }
-        aggregateFQValues(plans);
+        aggregateFQValues(tripIndex);
         for (var route : allPtRoutes) {
             String mode = line2Mode.get(route.getLineId());
             modeDistances.get(mode).add(route.getDistance());
@@ -265,25 +261,25 @@ public class RailDemandReporting {
         }
     }
 
-    private void aggregateFQValues(Collection<Plan> plans) {
-        plans.stream().flatMap(plan -> TripStructureUtils.getTrips(plan).stream()).forEach(trip -> {
-            double tripFQDistance = railTripsAnalyzer.getFQDistance(trip, true);
+    private void aggregateFQValues(TripIndex tripIndex) {
+        for (int t = 0; t < tripIndex.getTripCount(); t++) {
+            double tripFQDistance = tripIndex.getFQDistance(t);
             if (tripFQDistance > 0) {
                 this.fqDistance += tripFQDistance;
                 this.fqTrips++;
             }
-            double domesticFQDistance = railTripsAnalyzer.getFQDistance(trip, false);
+            double domesticFQDistance = tripIndex.getDomesticFQDistance(t);
             if (domesticFQDistance > 0) {
                 this.domesticFQDistance += domesticFQDistance;
                 this.domesticFQTrips++;
             }
 
-            final double tripRailDistance = railTripsAnalyzer.calcRailDistance(trip);
+            final double tripRailDistance = tripIndex.getRailDistance(t);
             this.railDistance += tripRailDistance;
             if (tripRailDistance > 0) {
                 this.railtrips++;
             }
-        });
+        }
     }
 
 }
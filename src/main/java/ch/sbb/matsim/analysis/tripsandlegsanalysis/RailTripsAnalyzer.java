@@ -44,6 +44,7 @@ import org.matsim.pt.transitSchedule.api.TransitSchedule;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Singleton
@@ -55,6 +56,7 @@ public class RailTripsAnalyzer {
     private final Set<Id<TransitStopFacility>> railStops;
     private final TransitSchedule schedule;
     private final Network network;
+    private final Map<TransitRoute, RouteGeometry> routeGeometries = new ConcurrentHashMap<>();
 
     @Inject
     public RailTripsAnalyzer(TransitSchedule schedule, Network network, ZonesCollection zonesCollection) {
@@ -206,7 +208,6 @@ public class RailTripsAnalyzer {
         if (accesIsSwissRailStop && egressIsSwissRailStop) {
             return transitPassengerRoute.getDistance();
         } else if (accesIsSwissRailStop) {
-            calcDomesticDistanceToBorder(transitPassengerRoute.getRouteId(), transitPassengerRoute.getLineId(), accessStopId);
             return calcDomesticDistanceToBorder(transitPassengerRoute.getRouteId(), transitPassengerRoute.getLineId(), accessStopId);
         } else if (egressIsSwissRailStop) {
             return calcDomesticDistanceFromBorder(transitPassengerRoute.getRouteId(), transitPassengerRoute.getLineId(), egressStopId);
@@ -229,27 +230,16 @@ public class RailTripsAnalyzer {
         if (!transitRoute.getTransportMode().equals(PTSubModes.RAIL)) {
             return 0.0;
         }
-        int startIndex = transitRoute.getStops().stream().map(s -> s.getStopFacility().getId()).collect(Collectors.toList()).indexOf(accessStopId);
-        TransitStopFacility lastDomesticStop = null;
-        for (int i = startIndex + 1; i < transitRoute.getStops().size(); i++) {
-            var currentStop = transitRoute.getStops().get(i);
-            if (isSwissRailStop(currentStop.getStopFacility().getId())) {
-                lastDomesticStop = currentStop.getStopFacility();
-            }
-
-        }
-
-        int endIndex = transitRoute.getStops().stream().map(s -> s.getStopFacility().getId()).collect(Collectors.toList()).indexOf(egressStopId);
-        TransitStopFacility firstDomesticStop = null;
-        for (int i = 0; i < endIndex; i++) {
-            var currentStop = transitRoute.getStops().get(i);
-            if (isSwissRailStop(currentStop.getStopFacility().getId())) {
-                firstDomesticStop = currentStop.getStopFacility();
-            }
-
+        RouteGeometry geometry = getRouteGeometry(transitRoute);
+        int startIndex = geometry.getStopIndex(accessStopId);
+        int lastDomesticStop = geometry.getLastSwissStopBefore(geometry.getStopCount());
+        if (lastDomesticStop <= startIndex) {
+            lastDomesticStop = -1;
         }
-        if (firstDomesticStop != null && lastDomesticStop != null) {
-            return RouteUtils.calcDistance(transitRoute, firstDomesticStop, lastDomesticStop, this.network);
+        int endIndex = geometry.getStopIndex(egressStopId);
+        int firstDomesticStop = endIndex > 0 ? geometry.getLastSwissStopBefore(endIndex) : -1;
+        if (firstDomesticStop >= 0 && lastDomesticStop >= 0) {
+            return geometry.calcDistance(firstDomesticStop, lastDomesticStop);
         } else {
             return 0.0;
         }
@@ -259,39 +249,35 @@ public class RailTripsAnalyzer {
     private double calcDomesticDistanceToBorder(Id<TransitRoute> routeId, Id<TransitLine> transitLineId, Id<TransitStopFacility> accessStopId) {
         TransitRoute transitRoute = this.schedule.getTransitLines().get(transitLineId).getRoutes().get(routeId);
         Gbl.assertNotNull(transitRoute);
-        int startIndex = transitRoute.getStops().stream().map(s -> s.getStopFacility().getId()).collect(Collectors.toList()).indexOf(accessStopId);
-        final TransitStopFacility accessStop = schedule.getFacilities().get(accessStopId);
-        TransitStopFacility lastDomesticStop = accessStop;
-        for (int i = startIndex + 1; i < transitRoute.getStops().size(); i++) {
-            var currentStop = transitRoute.getStops().get(i);
-            if (isSwissRailStop(currentStop.getStopFacility().getId())) {
-                lastDomesticStop = currentStop.getStopFacility();
-            }
-
+        RouteGeometry geometry = getRouteGeometry(transitRoute);
+        int startIndex = geometry.getStopIndex(accessStopId);
+        int lastDomesticStop = geometry.getLastSwissStopBefore(geometry.getStopCount());
+        if (startIndex < 0) {
+            // the access stop is not served by the route, measure from its link as the network route does
+            final TransitStopFacility accessStop = schedule.getFacilities().get(accessStopId);
+            TransitStopFacility lastDomesticStopFacility = lastDomesticStop >= 0 ? transitRoute.getStops().get(lastDomesticStop).getStopFacility() : accessStop;
+            return RouteUtils.calcDistance(transitRoute, accessStop, lastDomesticStopFacility, this.network);
         }
-        return RouteUtils.calcDistance(transitRoute, accessStop, lastDomesticStop, this.network);
+        return geometry.calcDistance(startIndex, lastDomesticStop > startIndex ? lastDomesticStop : startIndex);
     }
 
     private double calcDomesticDistanceFromBorder(Id<TransitRoute> routeId, Id<TransitLine> transitLineId, Id<TransitStopFacility> egressStopId) {
         TransitRoute transitRoute = this.schedule.getTransitLines().get(transitLineId).getRoutes().get(routeId);
         Gbl.assertNotNull(transitRoute);
-        int endIndex = transitRoute.getStops().stream().map(s -> s.getStopFacility().getId()).collect(Collectors.toList()).indexOf(egressStopId);
-        final TransitStopFacility egressStop = schedule.getFacilities().get(egressStopId);
-        TransitStopFacility firstDomesticStop = null;
-        for (int i = 0; i < endIndex; i++) {
-            var currentStop = transitRoute.getStops().get(i);
-            if (isSwissRailStop(currentStop.getStopFacility().getId())) {
-                firstDomesticStop = currentStop.getStopFacility();
-            }
-
-        }
-        if (firstDomesticStop != null) {
-            return RouteUtils.calcDistance(transitRoute, firstDomesticStop, egressStop, this.network);
+        RouteGeometry geometry = getRouteGeometry(transitRoute);
+        int endIndex = geometry.getStopIndex(egressStopId);
+        int firstDomesticStop = endIndex > 0 ? geometry.getLastSwissStopBefore(endIndex) : -1;
+        if (firstDomesticStop >= 0) {
+            return geometry.calcDistance(firstDomesticStop, endIndex);
         } else {
             return 0.0;
         }
     }
 
+    private RouteGeometry getRouteGeometry(TransitRoute transitRoute) {
+        return this.routeGeometries.computeIfAbsent(transitRoute, r -> new RouteGeometry(r, this.network, this.swissRailStops));
+    }
+
     public boolean isSwissRailStop(Id<TransitStopFacility> stopId) {
         return swissRailStops.contains(stopId);
     }
@@ -346,6 +332,16 @@ public class RailTripsAnalyzer {
     public List<Id<Link>> getPtLinkIdsTraveledOn(TransitPassengerRoute route) {
         TransitRoute transitRoute = this.schedule.getTransitLines().get(route.getLineId()).getRoutes().get(route.getRouteId());
         Gbl.assertNotNull(transitRoute);
+        RouteGeometry geometry = getRouteGeometry(transitRoute);
+        int accessIndex = geometry.getStopIndex(route.getAccessStopId());
+        int egressIndex = geometry.getStopIndex(route.getEgressStopId());
+        if (accessIndex >= 0 && egressIndex >= 0 && !geometry.hasRepeatedLinks()) {
+            return geometry.getLinkIds(accessIndex, egressIndex);
+        }
+        return scanPtLinkIdsTraveledOn(transitRoute, route);
+    }
+
+    private List<Id<Link>> scanPtLinkIdsTraveledOn(TransitRoute transitRoute, TransitPassengerRoute route) {
         NetworkRoute nr = transitRoute.getRoute();
 
         Id<Link> enterLinkId = schedule.getFacilities().get(route.getAccessStopId()).getLinkId();
@@ -376,4 +372,112 @@ public class RailTripsAnalyzer {
         return linkList;
     }
 
+    /**
+     * Lookup tables of a transit route, built once per route: the stops, the links of the network route (including start and end link) with their cumulative
+     * length, and for every stop the range of links a passenger entering or leaving there travels on. Entering and leaving are resolved with the first
+     * occurrence of the stop's link in the network route, as {@link RouteUtils#calcDistance(TransitRoute, TransitStopFacility, TransitStopFacility, Network)}
+     * does, so distances and link lists are the same as when walking the network route.
+     */
+    private static final class RouteGeometry {
+
+        private static final int NO_POSITION = -1;
+
+        private final int[] stopIds;
+        private final int[] enterPositions;
+        private final int[] exitPositions;
+        private final int[] lastSwissStopBefore;
+        private final List<Id<Link>> linkIds;
+        private final double[] cumulativeLength;
+        private final boolean repeatedLinks;
+
+        private RouteGeometry(TransitRoute transitRoute, Network network, Set<Id<TransitStopFacility>> swissRailStops) {
+            NetworkRoute networkRoute = transitRoute.getRoute();
+            List<Id<Link>> links = new ArrayList<>(networkRoute.getLinkIds().size() + 2);
+            links.add(networkRoute.getStartLinkId());
+            links.addAll(networkRoute.getLinkIds());
+            links.add(networkRoute.getEndLinkId());
+            this.linkIds = Collections.unmodifiableList(links);
+            int endPosition = links.size() - 1;
+
+            this.cumulativeLength = new double[links.size() + 1];
+            Map<Id<Link>, Integer> firstPositions = new HashMap<>();
+            for (int i = 0; i < links.size(); i++) {
+                Link link = network.getLinks().get(links.get(i));
+                this.cumulativeLength[i + 1] = this.cumulativeLength[i] + (link == null ? Double.NaN : link.getLength());
+                if (i > 0 && i < endPosition) {
+                    firstPositions.putIfAbsent(links.get(i), i);
+                }
+            }
+            this.repeatedLinks = firstPositions.size() < endPosition - 1 || firstPositions.containsKey(networkRoute.getStartLinkId());
+
+            int stopCount = transitRoute.getStops().size();
+            this.stopIds = new int[stopCount];
+            this.enterPositions = new int[stopCount];
+            this.exitPositions = new int[stopCount];
+            this.lastSwissStopBefore = new int[stopCount + 1];
+            int lastSwissStop = -1;
+            for (int i = 0; i < stopCount; i++) {
+                TransitStopFacility stop = transitRoute.getStops().get(i).getStopFacility();
+                this.stopIds[i] = stop.getId().index();
+                Id<Link> stopLinkId = stop.getLinkId();
+                this.enterPositions[i] = stopLinkId.equals(networkRoute.getStartLinkId()) ? 0 : firstPositions.getOrDefault(stopLinkId, NO_POSITION);
+                this.exitPositions[i] = firstPositions.getOrDefault(stopLinkId, endPosition);
+                this.lastSwissStopBefore[i] = lastSwissStop;
+                if (swissRailStops.contains(stop.getId())) {
+                    lastSwissStop = i;
+                }
+            }
+            this.lastSwissStopBefore[stopCount] = lastSwissStop;
+        }
+
+        int getStopCount() {
+            return this.stopIds.length;
+        }
+
+        /**
+         * @return the index of the first occurrence of the stop in the route, or -1
+         */
+        int getStopIndex(Id<TransitStopFacility> stopId) {
+            int index = stopId.index();
+            for (int i = 0; i < this.stopIds.length; i++) {
+                if (this.stopIds[i] == index) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the index of the last swiss rail stop before the given stop index, or -1
+         */
+        int getLastSwissStopBefore(int stopIndex) {
+            return this.lastSwissStopBefore[stopIndex];
+        }
+
+        boolean hasRepeatedLinks() {
+            return this.repeatedLinks;
+        }
+
+        /**
+         * @return the length of the links after the link of the from-stop up to and including the link of the to-stop
+         */
+        double calcDistance(int fromStopIndex, int toStopIndex) {
+            int from = this.enterPositions[fromStopIndex];
+            int to = this.exitPositions[toStopIndex];
+            if (from == NO_POSITION || to <= from) {
+                return 0.0;
+            }
+            return this.cumulativeLength[to + 1] - this.cumulativeLength[from + 1];
+        }
+
+        List<Id<Link>> getLinkIds(int fromStopIndex, int toStopIndex) {
+            int from = this.enterPositions[fromStopIndex];
+            int to = this.exitPositions[toStopIndex];
+            if (from == NO_POSITION || to < from) {
+                return Collections.emptyList();
+            }
+            return this.linkIds.subList(from, to + 1);
+        }
+    }
+
 }
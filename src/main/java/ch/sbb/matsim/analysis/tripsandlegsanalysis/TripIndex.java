@@ -0,0 +1,462 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2020 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package ch.sbb.matsim.analysis.tripsandlegsanalysis;
+
+import ch.sbb.matsim.analysis.modalsplit.LongestMainModeIdentifier;
+import ch.sbb.matsim.routing.SBBAnalysisMainModeIdentifier;
+import ch.sbb.matsim.zones.Zone;
+import ch.sbb.matsim.zones.Zones;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.MainModeIdentifier;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.StageActivityHandling;
+import org.matsim.core.router.TripStructureUtils.Trip;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * The trips of all experienced plans of an iteration, decomposed once and stored by column, so that the post-processing analyses do not each
+ * have to split the plans into trips and look up zones, main modes and rail information again.
+ * <p>
+ * Persons, activities and trips are numbered consecutively in the order of the plans given to {@link #build}. The activities and trips of
+ * person <code>p</code> are the ranges <code>[getFirstActivity(p), getFirstActivity(p + 1))</code> and
+ * <code>[getFirstTrip(p), getFirstTrip(p + 1))</code>. Only main activities are stored, stage activities are part of the trips. Zones and
+ * modes are stored as codes, which are resolved with {@link #getZone(int)} and {@link #getMode(int)}.
+ */
+public final class TripIndex {
+
+    public static final int NO_ZONE = -1;
+    public static final int NO_STOP = -1;
+
+    private final static Logger log = LogManager.getLogger(TripIndex.class);
+
+    private final Id<Person>[] personIds;
+    private final Person[] persons;
+    private final int[] personSubpopulation;
+    private final String[] subpopulations;
+    private final int[] personFirstActivity;
+    private final int[] personFirstTrip;
+
+    private final Activity[] activities;
+    private final double[] activityX;
+    private final double[] activityY;
+    private final int[] activityZone;
+    private final Zone[] zoneTable;
+
+    private final Trip[] trips;
+    private final int[] tripPerson;
+    private final int[] tripOriginActivity;
+    private final int[] tripDestinationActivity;
+    private final int[] mainMode;
+    private final int[] longestLegMainMode;
+    private final String[] modes;
+    private final double[] travelTime;
+    private final double[] travelDistance;
+    private final int[] railAccessStop;
+    private final int[] railEgressStop;
+    private final double[] railDistance;
+    private final double[] railTravelTime;
+    private final int[] railTransfers;
+    private final double[] fqDistance;
+    private final double[] domesticFqDistance;
+
+    @SuppressWarnings("unchecked")
+    private TripIndex(List<PersonTrips> personTrips) {
+        int personCount = personTrips.size();
+        int activityCount = 0;
+        int tripCount = 0;
+        for (PersonTrips pt : personTrips) {
+            activityCount += pt.activities.size();
+            tripCount += pt.trips.size();
+        }
+
+        this.personIds = new Id[personCount];
+        this.persons = new Person[personCount];
+        this.personSubpopulation = new int[personCount];
+        this.personFirstActivity = new int[personCount + 1];
+        this.personFirstTrip = new int[personCount + 1];
+
+        this.activities = new Activity[activityCount];
+        this.activityX = new double[activityCount];
+        this.activityY = new double[activityCount];
+        this.activityZone = new int[activityCount];
+
+        this.trips = new Trip[tripCount];
+        this.tripPerson = new int[tripCount];
+        this.tripOriginActivity = new int[tripCount];
+        this.tripDestinationActivity = new int[tripCount];
+        this.mainMode = new int[tripCount];
+        this.longestLegMainMode = new int[tripCount];
+        this.travelTime = new double[tripCount];
+        this.travelDistance = new double[tripCount];
+        this.railAccessStop = new int[tripCount];
+        this.railEgressStop = new int[tripCount];
+        this.railDistance = new double[tripCount];
+        this.railTravelTime = new double[tripCount];
+        this.railTransfers = new int[tripCount];
+        this.fqDistance = new double[tripCount];
+        this.domesticFqDistance = new double[tripCount];
+
+        Map<String, Integer> subpopulationCodes = new LinkedHashMap<>();
+        Map<Id<Zone>, Integer> zoneCodes = new HashMap<>();
+        List<Zone> zoneList = new ArrayList<>();
+        Map<String, Integer> modeCodes = new LinkedHashMap<>();
+
+        int a = 0;
+        int t = 0;
+        for (int p = 0; p < personCount; p++) {
+            PersonTrips pt = personTrips.get(p);
+            this.personIds[p] = pt.personId;
+            this.persons[p] = pt.person;
+            this.personSubpopulation[p] = pt.subpopulation == null ? -1 : subpopulationCodes.computeIfAbsent(pt.subpopulation, s -> subpopulationCodes.size());
+            this.personFirstActivity[p] = a;
+            this.personFirstTrip[p] = t;
+
+            int firstActivity = a;
+            for (int i = 0; i < pt.activities.size(); i++, a++) {
+                this.activities[a] = pt.activities.get(i);
+                Coord coord = pt.activityCoords.get(i);
+                this.activityX[a] = coord == null ? Double.NaN : coord.getX();
+                this.activityY[a] = coord == null ? Double.NaN : coord.getY();
+                Zone zone = pt.activityZones.get(i);
+                if (zone == null) {
+                    this.activityZone[a] = NO_ZONE;
+                } else {
+                    this.activityZone[a] = zoneCodes.computeIfAbsent(zone.getId(), id -> {
+                        zoneList.add(zone);
+                        return zoneList.size() - 1;
+                    });
+                }
+            }
+
+            int activityCursor = firstActivity;
+            for (int i = 0; i < pt.trips.size(); i++, t++) {
+                Trip trip = pt.trips.get(i);
+                this.trips[t] = trip;
+                this.tripPerson[t] = p;
+                // trips connect consecutive main activities, search forward by identity to be safe
+                while (activityCursor < a && this.activities[activityCursor] != trip.getOriginActivity()) {
+                    activityCursor++;
+                }
+                this.tripOriginActivity[t] = activityCursor;
+                this.tripDestinationActivity[t] = activityCursor + 1;
+
+                TripValues values = pt.values.get(i);
+                this.mainMode[t] = modeCodes.computeIfAbsent(values.mainMode, m -> modeCodes.size());
+                this.longestLegMainMode[t] = modeCodes.computeIfAbsent(values.longestLegMainMode, m -> modeCodes.size());
+                this.travelTime[t] = values.travelTime;
+                this.travelDistance[t] = values.travelDistance;
+                this.railAccessStop[t] = values.railAccessStop;
+                this.railEgressStop[t] = values.railEgressStop;
+                this.railDistance[t] = values.railDistance;
+                this.railTravelTime[t] = values.railTravelTime;
+                this.railTransfers[t] = values.railTransfers;
+                this.fqDistance[t] = values.fqDistance;
+                this.domesticFqDistance[t] = values.domesticFqDistance;
+            }
+        }
+        this.personFirstActivity[personCount] = a;
+        this.personFirstTrip[personCount] = t;
+
+        this.subpopulations = subpopulationCodes.keySet().toArray(new String[0]);
+        this.zoneTable = zoneList.toArray(new Zone[0]);
+        this.modes = modeCodes.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Decomposes the plans into trips, in parallel per person.
+     *
+     * @param plans             the (experienced) plans per person. The persons are numbered in the iteration order of this map.
+     * @param scenario          provides the persons with their attributes, and the facilities and network to locate activities without
+     *                          coordinates, see {@link SBBTripsExtension#getCoordFromActivity(Activity, Scenario)}.
+     * @param zones             the zones to which activities are assigned.
+     * @param railTripsAnalyzer used for the rail columns, may be <code>null</code> if they are not needed. All trips are then treated as
+     *                          trips without rail legs.
+     */
+    public static TripIndex build(Map<Id<Person>, ? extends Plan> plans, Scenario scenario, Zones zones, RailTripsAnalyzer railTripsAnalyzer) {
+        long start = System.nanoTime();
+        List<Map.Entry<Id<Person>, ? extends Plan>> entries = new ArrayList<>(plans.entrySet());
+        MainModeIdentifier mainModeIdentifier = new SBBAnalysisMainModeIdentifier();
+        MainModeIdentifier longestLegMainModeIdentifier = new LongestMainModeIdentifier();
+        PersonTrips[] personTrips = new PersonTrips[entries.size()];
+        IntStream.range(0, entries.size()).parallel().forEach(i -> {
+            var entry = entries.get(i);
+            personTrips[i] = decompose(entry.getKey(), entry.getValue(), scenario, zones, railTripsAnalyzer, mainModeIdentifier, longestLegMainModeIdentifier);
+        });
+        TripIndex index = new TripIndex(Arrays.asList(personTrips));
+        log.info("Indexed {} trips of {} persons in {} ms.", index.getTripCount(), index.getPersonCount(), (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    private static PersonTrips decompose(Id<Person> personId, Plan plan, Scenario scenario, Zones zones, RailTripsAnalyzer railTripsAnalyzer,
+                                         MainModeIdentifier mainModeIdentifier, MainModeIdentifier longestLegMainModeIdentifier) {
+        Person person = scenario.getPopulation().getPersons().get(personId);
+        PersonTrips pt = new PersonTrips(personId, person, person == null ? null : PopulationUtils.getSubpopulation(person));
+        for (Activity activity : TripStructureUtils.getActivities(plan, StageActivityHandling.ExcludeStageActivities)) {
+            Coord coord = SBBTripsExtension.getCoordFromActivity(activity, scenario);
+            pt.activities.add(activity);
+            pt.activityCoords.add(coord);
+            pt.activityZones.add(coord == null ? null : zones.findZone(coord));
+        }
+        for (Trip trip : TripStructureUtils.getTrips(plan)) {
+            TripValues values = new TripValues();
+            values.mainMode = mainModeIdentifier.identifyMainMode(trip.getTripElements());
+            values.longestLegMainMode = longestLegMainModeIdentifier.identifyMainMode(trip.getTripElements());
+            for (Leg leg : trip.getLegsOnly()) {
+                values.travelTime += leg.getRoute().getTravelTime().orElse(0);
+                values.travelDistance += leg.getRoute().getDistance();
+            }
+            if (railTripsAnalyzer != null) {
+                RailTripsAnalyzer.RailTravelInfo railInfo = railTripsAnalyzer.getRailTravelInfo(trip);
+                if (railInfo != null) {
+                    values.railAccessStop = railInfo.fromStation().index();
+                    values.railEgressStop = railInfo.toStation().index();
+                    values.railDistance = railInfo.distance();
+                    values.railTravelTime = railInfo.railTravelTime();
+                    values.railTransfers = railInfo.numberOfTransfers();
+                    values.fqDistance = railTripsAnalyzer.getFQDistance(trip, true);
+                    values.domesticFqDistance = railTripsAnalyzer.getFQDistance(trip, false);
+                }
+            }
+            pt.trips.add(trip);
+            pt.values.add(values);
+        }
+        return pt;
+    }
+
+    public int getPersonCount() {
+        return this.personIds.length;
+    }
+
+    public int getActivityCount() {
+        return this.activities.length;
+    }
+
+    public int getTripCount() {
+        return this.trips.length;
+    }
+
+    public Id<Person> getPersonId(int person) {
+        return this.personIds[person];
+    }
+
+    /**
+     * @return the person of the scenario's population, which holds the person attributes, or <code>null</code> if the population does not
+     * contain the person.
+     */
+    public Person getPerson(int person) {
+        return this.persons[person];
+    }
+
+    /**
+     * @return the subpopulation attribute of the person, or <code>null</code> if it is not set.
+     */
+    public String getSubpopulation(int person) {
+        int code = this.personSubpopulation[person];
+        return code < 0 ? null : this.subpopulations[code];
+    }
+
+    public int getFirstActivity(int person) {
+        return this.personFirstActivity[person];
+    }
+
+    public int getFirstTrip(int person) {
+        return this.personFirstTrip[person];
+    }
+
+    public Activity getActivity(int activity) {
+        return this.activities[activity];
+    }
+
+    /**
+     * @return the x-coordinate of the activity, as determined by {@link SBBTripsExtension#getCoordFromActivity(Activity, Scenario)}.
+     */
+    public double getActivityX(int activity) {
+        return this.activityX[activity];
+    }
+
+    public double getActivityY(int activity) {
+        return this.activityY[activity];
+    }
+
+    /**
+     * @return the code of the zone in which the activity takes place, or {@link #NO_ZONE}.
+     */
+    public int getActivityZone(int activity) {
+        return this.activityZone[activity];
+    }
+
+    public Zone getZone(int zone) {
+        return zone == NO_ZONE ? null : this.zoneTable[zone];
+    }
+
+    /**
+     * @return the number of distinct zones in which activities take place, zone codes are in <code>[0, getZoneCount())</code>.
+     */
+    public int getZoneCount() {
+        return this.zoneTable.length;
+    }
+
+    public Trip getTrip(int trip) {
+        return this.trips[trip];
+    }
+
+    public int getTripPerson(int trip) {
+        return this.tripPerson[trip];
+    }
+
+    public int getOriginActivity(int trip) {
+        return this.tripOriginActivity[trip];
+    }
+
+    public int getDestinationActivity(int trip) {
+        return this.tripDestinationActivity[trip];
+    }
+
+    public int getOriginZone(int trip) {
+        return this.activityZone[this.tripOriginActivity[trip]];
+    }
+
+    public int getDestinationZone(int trip) {
+        return this.activityZone[this.tripDestinationActivity[trip]];
+    }
+
+    /**
+     * @return the code of the main mode according to {@link SBBAnalysisMainModeIdentifier}.
+     */
+    public int getMainMode(int trip) {
+        return this.mainMode[trip];
+    }
+
+    /**
+     * @return the code of the main mode according to {@link LongestMainModeIdentifier}, as used by the modal split statistics.
+     */
+    public int getLongestLegMainMode(int trip) {
+        return this.longestLegMainMode[trip];
+    }
+
+    public String getMode(int mode) {
+        return this.modes[mode];
+    }
+
+    public int getModeCount() {
+        return this.modes.length;
+    }
+
+    /**
+     * @return the sum of the travel times of all legs of the trip.
+     */
+    public double getTravelTime(int trip) {
+        return this.travelTime[trip];
+    }
+
+    /**
+     * @return the sum of the route distances of all legs of the trip.
+     */
+    public double getTravelDistance(int trip) {
+        return this.travelDistance[trip];
+    }
+
+    /**
+     * @return the index of the stop where the first rail leg of the trip starts, or {@link #NO_STOP} if the trip has no rail leg.
+     * @see #getStopId(int)
+     */
+    public int getRailAccessStop(int trip) {
+        return this.railAccessStop[trip];
+    }
+
+    public int getRailEgressStop(int trip) {
+        return this.railEgressStop[trip];
+    }
+
+    public static Id<TransitStopFacility> getStopId(int stop) {
+        return stop == NO_STOP ? null : Id.get(stop, TransitStopFacility.class);
+    }
+
+    public double getRailDistance(int trip) {
+        return this.railDistance[trip];
+    }
+
+    public double getRailTravelTime(int trip) {
+        return this.railTravelTime[trip];
+    }
+
+    public int getRailTransfers(int trip) {
+        return this.railTransfers[trip];
+    }
+
+    /**
+     * @return {@link RailTripsAnalyzer#getFQDistance(Trip, boolean)} including the domestic part of foreign trips.
+     */
+    public double getFQDistance(int trip) {
+        return this.fqDistance[trip];
+    }
+
+    /**
+     * @return {@link RailTripsAnalyzer#getFQDistance(Trip, boolean)} of domestic trips only.
+     */
+    public double getDomesticFQDistance(int trip) {
+        return this.domesticFqDistance[trip];
+    }
+
+    private static final class PersonTrips {
+
+        final Id<Person> personId;
+        final Person person;
+        final String subpopulation;
+        final List<Activity> activities = new ArrayList<>();
+        final List<Coord> activityCoords = new ArrayList<>();
+        final List<Zone> activityZones = new ArrayList<>();
+        final List<Trip> trips = new ArrayList<>();
+        final List<TripValues> values = new ArrayList<>();
+
+        PersonTrips(Id<Person> personId, Person person, String subpopulation) {
+            this.personId = personId;
+            this.person = person;
+            this.subpopulation = subpopulation;
+        }
+    }
+
+    private static final class TripValues {
+
+        String mainMode;
+        String longestLegMainMode;
+        double travelTime;
+        double travelDistance;
+        int railAccessStop = NO_STOP;
+        int railEgressStop = NO_STOP;
+        double railDistance;
+        double railTravelTime;
+        int railTransfers;
+        double fqDistance;
+        double domesticFqDistance;
+    }
+}
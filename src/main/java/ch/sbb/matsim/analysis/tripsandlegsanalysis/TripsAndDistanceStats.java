@@ -36,18 +36,14 @@ import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.api.core.v01.population.Plan;
-import org.matsim.api.core.v01.population.Population;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
-import org.matsim.core.population.PopulationUtils;
 import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.population.routes.NetworkRoute;
-import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.router.TripStructureUtils.Trip;
 import org.matsim.core.scenario.ScenarioUtils;
-import org.matsim.core.scoring.ExperiencedPlansService;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.pt.routes.TransitPassengerRoute;
@@ -68,17 +64,13 @@ import static ch.sbb.matsim.routing.access.AccessEgressModule.IS_CH;
 public class TripsAndDistanceStats {
 
     private final Network network;
-    private final Population population;
     private final TransitSchedule transitSchedule;
     private final String runId;
     private final double sampleSize;
-    @Inject
-    private ExperiencedPlansService experiencedPlansService;
 
     @Inject
     public TripsAndDistanceStats(Scenario scenario) {
         this.network = scenario.getNetwork();
-        this.population = scenario.getPopulation();
         this.transitSchedule = scenario.getTransitSchedule();
         this.runId = scenario.getConfig().controller().getRunId();
         this.sampleSize = ConfigUtils.addOrGetModule(scenario.getConfig(), PostProcessingConfigGroup.class).getSimulationSampleSize();
@@ -116,7 +108,8 @@ public class TripsAndDistanceStats {
         TripsAndDistanceStats tripsAndDistanceStats = new TripsAndDistanceStats(scenario);
         IdMap<Person, Plan> experiencedPlans = new IdMap<>(Person.class, scenario2.getPopulation().getPersons().size());
         scenario2.getPopulation().getPersons().values().forEach(p -> experiencedPlans.put(p.getId(), p.getSelectedPlan()));
-        tripsAndDistanceStats.analyzeAndWriteStats(outputFile + "_full.csv", outputFile + "_condensed.csv", experiencedPlans);
+        TripIndex tripIndex = TripIndex.build(experiencedPlans, scenario, zones, null);
+        tripsAndDistanceStats.analyzeAndWriteStats(outputFile + "_full.csv", outputFile + "_condensed.csv", tripIndex);
     }
 
     //trips in CH
@@ -125,13 +118,9 @@ public class TripsAndDistanceStats {
     // km in ch
     // km total
     // je subpopulation
-    public void analyzeAndWriteStats(String fullFileName, String condensedFilename) {
-        analyzeAndWriteStats(fullFileName, condensedFilename, experiencedPlansService.getExperiencedPlans());
-    }
-
-    public void analyzeAndWriteStats(String fullStatsFileName, String condensedStatsFilename, IdMap<Person, Plan> experiencedPlans) {
+    public void analyzeAndWriteStats(String fullStatsFileName, String condensedStatsFilename, TripIndex tripIndex) {
         Map<String, SubpopulationStats> stats = new TreeMap<>();
-        analyze(stats, experiencedPlans);
+        analyze(stats, tripIndex);
         writeFile(fullStatsFileName, stats);
         addArtificialAllPaxSubpopulation(stats);
         for (String s : Variables.EXOGENEOUS_DEMAND) {
@@ -228,15 +217,16 @@ public class TripsAndDistanceStats {
         stats.put("xx", allPaxTraffic);
     }
 
-    private void analyze(Map<String, SubpopulationStats> statsPerSubpopulation, IdMap<Person, Plan> experiencedPlans) {
-        for (Entry<Id<Person>, Plan> e : experiencedPlans.entrySet()) {
-            String subpopulation = PopulationUtils.getSubpopulation(population.getPersons().get(e.getKey()));
+    private void analyze(Map<String, SubpopulationStats> statsPerSubpopulation, TripIndex tripIndex) {
+        for (int p = 0; p < tripIndex.getPersonCount(); p++) {
+            String subpopulation = tripIndex.getSubpopulation(p);
             if (subpopulation == null) {
                 subpopulation = "none";
             }
             String finalSubpopulation = subpopulation;
             SubpopulationStats stats = statsPerSubpopulation.computeIfAbsent(subpopulation, (a) -> new SubpopulationStats(finalSubpopulation));
-            for (Trip trip : TripStructureUtils.getTrips(e.getValue())) {
+            for (int t = tripIndex.getFirstTrip(p); t < tripIndex.getFirstTrip(p + 1); t++) {
+                Trip trip = tripIndex.getTrip(t);
                 Link startLink = network.getLinks().get(trip.getOriginActivity().getLinkId());
                 Link endLink = network.getLinks().get(trip.getOriginActivity().getLinkId());
                 boolean domestic = (isSwiss(startLink) && isSwiss(endLink));
@@ -32,6 +32,8 @@ public class PostProcessingConfigGroup extends ReflectiveConfigGroup {
 	private boolean writeAnalsysis = true;
 	private String railMatrixAggregate = "amgr_id";
 	private Boolean dailylinkVolumes = false;
+	static private final String PARALLEL_ANALYSES = "runAnalysesInParallel";
+	private boolean runAnalysesInParallel = false;
 
 	public PostProcessingConfigGroup() {
 		super(GROUP_NAME);
@@ -69,6 +71,16 @@ public class PostProcessingConfigGroup extends ReflectiveConfigGroup {
 		this.writeAnalsysis = writeAnalsysis;
 	}
 
+	@StringGetter(PARALLEL_ANALYSES)
+	public boolean getRunAnalysesInParallel() {
+		return runAnalysesInParallel;
+	}
+
+	@StringSetter(PARALLEL_ANALYSES)
+	public void setRunAnalysesInParallel(boolean runAnalysesInParallel) {
+		this.runAnalysesInParallel = runAnalysesInParallel;
+	}
+
 	@StringGetter(RAIL_DEMAND_MATRIX_AGGREGATE)
 	public String getRailMatrixAggregate() {
 		return railMatrixAggregate;
@@ -173,8 +185,10 @@ public class PostProcessingConfigGroup extends ReflectiveConfigGroup {
 
 	@Override
 	public Map<String, String> getComments() {
-        return super.getComments();
-    }
+		Map<String, String> comments = super.getComments();
+		comments.put(PARALLEL_ANALYSES, "If true, the default analyses at the end of an iteration run concurrently instead of one after another. Default: false");
+		return comments;
+	}
 
 	public void setAllPostProcessingOff() {
 		this.linkVolumes = false;
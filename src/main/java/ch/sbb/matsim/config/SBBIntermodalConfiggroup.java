@@ -20,9 +20,24 @@ public class SBBIntermodalConfiggroup extends ReflectiveConfigGroup {
 
 	static private final String PARAM_ZONESID = "zonesId";
 	static private final String PARAM_ZONESID_DESC = "Zones ID";
+	static private final String PARAM_GRIDCACHEFILE = "accessEgressGridCacheFile";
+	static private final String PARAM_GRIDCACHEFILE_DESC = "If set, the grid based access/egress cache is read from this binary file if it matches the current network, stops and grid parameters. Otherwise, the cache is calculated and written to this file.";
+	static private final String PARAM_GRIDCACHELAZY = "accessEgressGridCacheLazy";
+	static private final String PARAM_ZONESCACHECAPACITY = "zonesQueryCacheCapacity";
+	static private final String PARAM_ZONESCACHECAPACITY_DESC = "Maximum number of coordinates for which the zone lookups are cached. When full, coordinates are evicted with the CLOCK algorithm, an approximation of least recently used. 0 means unbounded.";
+	static private final String PARAM_GRIDCACHELAZY_DESC = "If true, the grid based access/egress cache of a stop is only calculated when the stop is first used. Useful for small case studies. The cache file is not written in this mode.";
+	static private final String PARAM_ROUTECACHECAPACITY = "simulatedAccessEgressRouteCacheCapacity";
+	static private final String PARAM_ROUTECACHECAPACITY_DESC = "Maximum number of access/egress routes cached for intermodal modes that are simulated on the network. The cache is cleared at the start of each iteration. 0 disables the cache. Small capacities are honoured exactly, the cache then uses fewer segments.";
+	static private final String PARAM_ROUTECACHETIMEBIN = "simulatedAccessEgressRouteCacheTimeBin";
+	static private final String PARAM_ROUTECACHETIMEBIN_DESC = "Size of the departure time bins [s] of the simulated access/egress route cache. Routes departing in the same bin share their cache entry.";
 	private static Logger logger = LogManager.getLogger(SBBIntermodalConfiggroup.class);
 	private final List<SBBIntermodalModeParameterSet> modeParamSets = new ArrayList<>();
 	private Id<Zones> zonesId = null;
+	private String accessEgressGridCacheFile = null;
+	private boolean accessEgressGridCacheLazy = false;
+	private int zonesQueryCacheCapacity = 0;
+	private int simulatedAccessEgressRouteCacheCapacity = 0;
+	private double simulatedAccessEgressRouteCacheTimeBin = 900.0;
 
 	public SBBIntermodalConfiggroup() {
 		super(GROUP_NAME);
@@ -56,6 +71,56 @@ public class SBBIntermodalConfiggroup extends ReflectiveConfigGroup {
 		this.zonesId = zonesId;
 	}
 
+	@StringGetter(PARAM_GRIDCACHEFILE)
+	public String getAccessEgressGridCacheFile() {
+		return this.accessEgressGridCacheFile;
+	}
+
+	@StringSetter(PARAM_GRIDCACHEFILE)
+	public void setAccessEgressGridCacheFile(String accessEgressGridCacheFile) {
+		this.accessEgressGridCacheFile = accessEgressGridCacheFile;
+	}
+
+	@StringGetter(PARAM_GRIDCACHELAZY)
+	public boolean isAccessEgressGridCacheLazy() {
+		return this.accessEgressGridCacheLazy;
+	}
+
+	@StringSetter(PARAM_GRIDCACHELAZY)
+	public void setAccessEgressGridCacheLazy(boolean accessEgressGridCacheLazy) {
+		this.accessEgressGridCacheLazy = accessEgressGridCacheLazy;
+	}
+
+	@StringGetter(PARAM_ZONESCACHECAPACITY)
+	public int getZonesQueryCacheCapacity() {
+		return this.zonesQueryCacheCapacity;
+	}
+
+	@StringSetter(PARAM_ZONESCACHECAPACITY)
+	public void setZonesQueryCacheCapacity(int zonesQueryCacheCapacity) {
+		this.zonesQueryCacheCapacity = zonesQueryCacheCapacity;
+	}
+
+	@StringGetter(PARAM_ROUTECACHECAPACITY)
+	public int getSimulatedAccessEgressRouteCacheCapacity() {
+		return this.simulatedAccessEgressRouteCacheCapacity;
+	}
+
+	@StringSetter(PARAM_ROUTECACHECAPACITY)
+	public void setSimulatedAccessEgressRouteCacheCapacity(int simulatedAccessEgressRouteCacheCapacity) {
+		this.simulatedAccessEgressRouteCacheCapacity = simulatedAccessEgressRouteCacheCapacity;
+	}
+
+	@StringGetter(PARAM_ROUTECACHETIMEBIN)
+	public double getSimulatedAccessEgressRouteCacheTimeBin() {
+		return this.simulatedAccessEgressRouteCacheTimeBin;
+	}
+
+	@StringSetter(PARAM_ROUTECACHETIMEBIN)
+	public void setSimulatedAccessEgressRouteCacheTimeBin(double simulatedAccessEgressRouteCacheTimeBin) {
+		this.simulatedAccessEgressRouteCacheTimeBin = simulatedAccessEgressRouteCacheTimeBin;
+	}
+
 	@Override
 	public void addParameterSet(ConfigGroup set) {
 		if (set instanceof SBBIntermodalModeParameterSet) {
@@ -81,6 +146,11 @@ public class SBBIntermodalConfiggroup extends ReflectiveConfigGroup {
 	public Map<String, String> getComments() {
 		Map<String, String> comments = super.getComments();
 		comments.put(PARAM_ZONESID, PARAM_ZONESID_DESC);
+		comments.put(PARAM_GRIDCACHEFILE, PARAM_GRIDCACHEFILE_DESC);
+		comments.put(PARAM_GRIDCACHELAZY, PARAM_GRIDCACHELAZY_DESC);
+		comments.put(PARAM_ZONESCACHECAPACITY, PARAM_ZONESCACHECAPACITY_DESC);
+		comments.put(PARAM_ROUTECACHECAPACITY, PARAM_ROUTECACHECAPACITY_DESC);
+		comments.put(PARAM_ROUTECACHETIMEBIN, PARAM_ROUTECACHETIMEBIN_DESC);
 		return (comments);
 
 	}
@@ -56,10 +56,12 @@ public class ZonesListConfigGroup extends ReflectiveConfigGroup {
 		private static final String PARAM_ID = "id";
 		private static final String PARAM_FILENAME = "filename";
 		private static final String PARAM_ID_ATTRIBUTE = "idAttributeName";
+		private static final String PARAM_RASTER_CELL_SIZE = "rasterCellSize";
 
 		private String id = null;
 		private String filename = null;
 		private String idAttributeName = null;
+		private double rasterCellSize = 0;
 
 		public ZonesParameterSet() {
 			super(TYPE);
@@ -105,6 +107,19 @@ public class ZonesListConfigGroup extends ReflectiveConfigGroup {
 		public void setIdAttributeName(String idAttributeName) {
 			this.idAttributeName = idAttributeName;
 		}
+
+		/**
+		 * @return the cell size of the raster index used to find the zone of a coordinate, 0 to use the quadtree.
+		 */
+		@StringGetter(PARAM_RASTER_CELL_SIZE)
+		public double getRasterCellSize() {
+			return this.rasterCellSize;
+		}
+
+		@StringSetter(PARAM_RASTER_CELL_SIZE)
+		public void setRasterCellSize(double rasterCellSize) {
+			this.rasterCellSize = rasterCellSize;
+		}
 	}
 
 }
@@ -10,27 +10,69 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 
+/**
+ * Reads delimiter separated files.
+ * <p>
+ * Rows can either be read as maps with {@link #readLine()}, or with the cursor API: {@link #next()} advances to
+ * the next row, whose fields are then accessed by column index (see {@link #getColumnIndex(String)}) with
+ * {@link #get(int)}, {@link #getCharSequence(int)}, {@link #getInt(int)}, {@link #getLong(int)} or
+ * {@link #getDouble(int)}. The cursor API parses the rows in a reused buffer and does not allocate per row, as long as
+ * the separator is a single character. Values are only valid until the next call to {@link #next()}.
+ * <p>
+ * If quote handling is enabled with {@link #setQuoted(boolean)}, fields enclosed in double quotes may contain the
+ * separator, and two double quotes within such a field stand for one. Quoted fields spanning multiple lines are not
+ * supported.
+ */
 public class CSVReader implements AutoCloseable {
 
+	private static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
 	private final String splitBy;
 	private final BufferedReader br;
 	private String[] columns;
+	private Map<String, Integer> columnIndices = null;
+
+	/**
+	 * the separator if it is a single literal character, otherwise -1 and {@link #splitPattern} is used.
+	 */
+	private final int separatorChar;
+	private final Pattern splitPattern;
+	private boolean quoted = false;
+
+	private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+	private int bufferEnd = 0;
+	private int nextLineStart = 0;
+	private boolean eof = false;
+
+	private int fieldCount = 0;
+	private int[] fieldStarts = new int[16];
+	private int[] fieldEnds = new int[16];
+	private boolean[] fieldEscaped = new boolean[16];
+	private String[] splitFields = null;
 
 	public CSVReader(String[] columns, final String csvFile, final String splitBy) {
-		this.columns = columns;
-		this.splitBy = splitBy;
-		this.br = IOUtils.getBufferedReader(csvFile);
+		this(columns, IOUtils.getBufferedReader(csvFile), splitBy);
 	}
 
 	public CSVReader(String[] columns, final URL csvFileURL, final String splitBy) {
-		this.columns = columns;
-		this.splitBy = splitBy;
-		this.br = IOUtils.getBufferedReader(csvFileURL);
+		this(columns, IOUtils.getBufferedReader(csvFileURL), splitBy);
 	}
 
 	public CSVReader(final URL csvFileURL, final String splitBy) throws IOException {
@@ -42,8 +84,7 @@ public class CSVReader implements AutoCloseable {
 	}
 
 	public CSVReader(final String splitBy, BufferedReader br) throws IOException {
-		this.splitBy = splitBy;
-		this.br = br;
+		this(null, br, splitBy);
 
 		String line = this.br.readLine();
 		this.columns = line.split(this.splitBy);
@@ -52,9 +93,15 @@ public class CSVReader implements AutoCloseable {
 	}
 
 	public CSVReader(String[] columns, final InputStream stream, final String splitBy) {
+		this(columns, new BufferedReader(new InputStreamReader(stream)), splitBy);
+	}
+
+	private CSVReader(String[] columns, BufferedReader br, final String splitBy) {
 		this.columns = columns;
 		this.splitBy = splitBy;
-		this.br = new BufferedReader(new InputStreamReader(stream));
+		this.br = br;
+		this.separatorChar = literalSeparator(splitBy);
+		this.splitPattern = this.separatorChar < 0 ? Pattern.compile(splitBy) : null;
 	}
 
 	public String[] getColumns() {
@@ -63,6 +110,30 @@ public class CSVReader implements AutoCloseable {
 
 	public void setColumns(String[] columns) {
 		this.columns = columns;
+		this.columnIndices = null;
+	}
+
+	/**
+	 * Enables or disables the handling of double-quoted fields. Disabled by default, so values are returned as they
+	 * appear in the file.
+	 */
+	public void setQuoted(boolean quoted) {
+		this.quoted = quoted;
+	}
+
+	/**
+	 * @return the index of the column with the given name, or -1 if there is no such column.
+	 */
+	public int getColumnIndex(String column) {
+		Map<String, Integer> indices = this.columnIndices;
+		if (indices == null) {
+			indices = new HashMap<>();
+			for (int i = this.columns.length - 1; i >= 0; i--) {
+				indices.put(this.columns[i], i);
+			}
+			this.columnIndices = indices;
+		}
+		return indices.getOrDefault(column, -1);
 	}
 
 	/**
@@ -71,24 +142,392 @@ public class CSVReader implements AutoCloseable {
 	 * @return map containing the value for each column, <code>null</code> if no more line is available
 	 */
 	public Map<String, String> readLine() throws IOException {
-		String line = this.br.readLine();
-		if (line == null) {
+		if (!next()) {
 			return null;
 		}
 
 		Map<String, String> currentRow = new HashMap<>();
-		String[] parts = line.split(this.splitBy, -1);
 		for (int i = 0; i < this.columns.length; i++) {
-			String column = this.columns[i];
-			String value = (i < parts.length) ? parts[i] : null;
-			currentRow.put(column, value);
+			currentRow.put(this.columns[i], get(i));
 		}
 		return currentRow;
 	}
 
+	/**
+	 * Advances the cursor to the next data row.
+	 *
+	 * @return <code>false</code> if no more line is available
+	 */
+	public boolean next() throws IOException {
+		int lineStart = this.nextLineStart;
+		int scan = lineStart;
+		while (true) {
+			for (int i = scan; i < this.bufferEnd; i++) {
+				if (this.buffer[i] == '\n') {
+					this.nextLineStart = i + 1;
+					parseLine(lineStart, i);
+					return true;
+				}
+			}
+			if (this.eof) {
+				if (lineStart < this.bufferEnd) {
+					this.nextLineStart = this.bufferEnd;
+					parseLine(lineStart, this.bufferEnd);
+					return true;
+				}
+				return false;
+			}
+			// move the incomplete line to the start of the buffer, grow it if the line does not fit
+			int remaining = this.bufferEnd - lineStart;
+			if (lineStart > 0) {
+				System.arraycopy(this.buffer, lineStart, this.buffer, 0, remaining);
+			} else if (remaining == this.buffer.length) {
+				this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+			}
+			lineStart = 0;
+			scan = remaining;
+			this.bufferEnd = remaining;
+			int read = this.br.read(this.buffer, this.bufferEnd, this.buffer.length - this.bufferEnd);
+			if (read < 0) {
+				this.eof = true;
+			} else {
+				this.bufferEnd += read;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of fields in the current row, which might differ from the number of columns.
+	 */
+	public int getFieldCount() {
+		return this.fieldCount;
+	}
+
+	/**
+	 * @return the value of the field in the current row, or <code>null</code> if the row has fewer fields.
+	 */
+	public String get(int column) {
+		if (column < 0 || column >= this.fieldCount) {
+			return null;
+		}
+		if (this.splitFields != null) {
+			return this.splitFields[column];
+		}
+		String value = new String(this.buffer, this.fieldStarts[column], this.fieldEnds[column] - this.fieldStarts[column]);
+		return this.fieldEscaped[column] ? value.replace("\"\"", "\"") : value;
+	}
+
+	/**
+	 * @return a view on the field in the current row without copying it, only valid until the next call to {@link #next()}.
+	 * Escaped quotes within quoted fields are returned as they appear in the file.
+	 */
+	public CharSequence getCharSequence(int column) {
+		if (column < 0 || column >= this.fieldCount) {
+			return null;
+		}
+		if (this.splitFields != null) {
+			return this.splitFields[column];
+		}
+		return CharBuffer.wrap(this.buffer, this.fieldStarts[column], this.fieldEnds[column] - this.fieldStarts[column]);
+	}
+
+	public int getInt(int column) {
+		long value = getLong(column);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Value out of int range: " + get(column));
+		}
+		return (int) value;
+	}
+
+	public long getLong(int column) {
+		if (column < 0 || column >= this.fieldCount || this.splitFields != null) {
+			return Long.parseLong(get(column));
+		}
+		int pos = this.fieldStarts[column];
+		int end = this.fieldEnds[column];
+		boolean negative = false;
+		if (pos < end && (this.buffer[pos] == '-' || this.buffer[pos] == '+')) {
+			negative = this.buffer[pos] == '-';
+			pos++;
+		}
+		if (pos == end || end - pos > 18) {
+			return Long.parseLong(get(column));
+		}
+		long value = 0;
+		for (; pos < end; pos++) {
+			char c = this.buffer[pos];
+			if (c < '0' || c > '9') {
+				return Long.parseLong(get(column));
+			}
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses plain decimal numbers directly from the buffer. Numbers with exponents, special values or more
+	 * significant digits than can be represented exactly are parsed with {@link Double#parseDouble(String)}.
+	 */
+	public double getDouble(int column) {
+		if (column < 0 || column >= this.fieldCount || this.splitFields != null) {
+			return Double.parseDouble(get(column));
+		}
+		int pos = this.fieldStarts[column];
+		int end = this.fieldEnds[column];
+		boolean negative = false;
+		if (pos < end && (this.buffer[pos] == '-' || this.buffer[pos] == '+')) {
+			negative = this.buffer[pos] == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		boolean hasDigits = false;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; pos < end; pos++) {
+			char c = this.buffer[pos];
+			if (c >= '0' && c <= '9') {
+				hasDigits = true;
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa != 0) {
+					digits++;
+				}
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+			} else if (c == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else {
+				return Double.parseDouble(get(column));
+			}
+		}
+		// both the mantissa and the power of ten are exact doubles, so the division is correctly rounded
+		if (!hasDigits || digits > 15 || fractionDigits > 22) {
+			return Double.parseDouble(get(column));
+		}
+		double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+		return negative ? -value : value;
+	}
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private void parseLine(int start, int end) {
+		if (end > start && this.buffer[end - 1] == '\r') {
+			end--;
+		}
+		if (this.separatorChar < 0) {
+			this.splitFields = this.splitPattern.split(new String(this.buffer, start, end - start), -1);
+			this.fieldCount = this.splitFields.length;
+			return;
+		}
+		this.splitFields = null;
+		int count = 0;
+		int pos = start;
+		while (true) {
+			if (count == this.fieldStarts.length) {
+				this.fieldStarts = Arrays.copyOf(this.fieldStarts, count * 2);
+				this.fieldEnds = Arrays.copyOf(this.fieldEnds, count * 2);
+				this.fieldEscaped = Arrays.copyOf(this.fieldEscaped, count * 2);
+			}
+			boolean escaped = false;
+			int fieldStart = pos;
+			int fieldEnd;
+			if (this.quoted && pos < end && this.buffer[pos] == '"') {
+				fieldStart = pos + 1;
+				pos = fieldStart;
+				while (pos < end) {
+					if (this.buffer[pos] == '"') {
+						if (pos + 1 < end && this.buffer[pos + 1] == '"') {
+							escaped = true;
+							pos += 2;
+							continue;
+						}
+						break;
+					}
+					pos++;
+				}
+				fieldEnd = pos;
+				// skip the closing quote and anything up to the next separator
+				while (pos < end && this.buffer[pos] != this.separatorChar) {
+					pos++;
+				}
+			} else {
+				while (pos < end && this.buffer[pos] != this.separatorChar) {
+					pos++;
+				}
+				fieldEnd = pos;
+			}
+			this.fieldStarts[count] = fieldStart;
+			this.fieldEnds[count] = fieldEnd;
+			this.fieldEscaped[count] = escaped;
+			count++;
+			if (pos >= end) {
+				break;
+			}
+			pos++; // skip separator
+		}
+		this.fieldCount = count;
+	}
+
+	private static int literalSeparator(String splitBy) {
+		String metaCharacters = "\\\\.[]{}()<>*+-=!?^$|";
+		if (splitBy.length() == 1 && metaCharacters.indexOf(splitBy.charAt(0)) < 0) {
+			return splitBy.charAt(0);
+		}
+		if (splitBy.length() == 2 && splitBy.charAt(0) == '\\' && metaCharacters.indexOf(splitBy.charAt(1)) >= 0) {
+			return splitBy.charAt(1);
+		}
+		if (splitBy.equals("\\t")) {
+			return '\t';
+		}
+		return -1;
+	}
+
 	@Override
 	public void close() throws IOException {
 		this.br.close();
 	}
 
+	/**
+	 * Handles the current row of a {@link CSVReader}. Called concurrently by {@link #readParallel}.
+	 */
+	@FunctionalInterface
+	public interface RowHandler {
+		void handleRow(CSVReader row);
+	}
+
+	/**
+	 * Parses a large uncompressed UTF-8 file with a header line in several threads. The file is split into byte ranges
+	 * aligned to line breaks, each parsed by its own cursor, so rows are handed to the handler concurrently and in no
+	 * particular order. The handler can resolve column indices on the passed reader, all readers share the same columns.
+	 */
+	public static void readParallel(Path csvFile, String splitBy, int threadCount, RowHandler handler) throws IOException {
+		int threads = Math.max(1, threadCount);
+		String[] columns;
+		long dataStart;
+		long size;
+		try (FileChannel channel = FileChannel.open(csvFile, StandardOpenOption.READ)) {
+			size = channel.size();
+			dataStart = findLineStart(channel, 0);
+			ByteBuffer headerBytes = ByteBuffer.allocate((int) dataStart);
+			while (headerBytes.hasRemaining()) {
+				if (channel.read(headerBytes, headerBytes.position()) < 0) {
+					break;
+				}
+			}
+			String header = new String(headerBytes.array(), StandardCharsets.UTF_8).replace("\r", "").replace("\n", "");
+			columns = Arrays.stream(header.split(splitBy)).map(item -> item.replace("\"", "")).toArray(String[]::new);
+
+			long[] chunkStarts = new long[threads + 1];
+			chunkStarts[0] = dataStart;
+			for (int i = 1; i < threads; i++) {
+				long nominalStart = dataStart + (size - dataStart) * i / threads;
+				chunkStarts[i] = Math.max(chunkStarts[i - 1], findLineStart(channel, nominalStart - 1));
+			}
+			chunkStarts[threads] = size;
+
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			List<Thread> workers = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				long from = chunkStarts[i];
+				long to = chunkStarts[i + 1];
+				if (from >= to) {
+					continue;
+				}
+				Thread worker = new Thread(() -> {
+					try (FileChannel chunkChannel = FileChannel.open(csvFile, StandardOpenOption.READ)) {
+						chunkChannel.position(from);
+						InputStream in = new BoundedInputStream(Channels.newInputStream(chunkChannel), to - from);
+						CSVReader reader = new CSVReader(columns, new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), splitBy);
+						while (reader.next()) {
+							handler.handleRow(reader);
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}, "csv-reader-" + i);
+				worker.start();
+				workers.add(worker);
+			}
+			for (Thread worker : workers) {
+				try {
+					worker.join();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			if (failure.get() != null) {
+				if (failure.get() instanceof IOException e) {
+					throw e;
+				}
+				if (failure.get() instanceof UncheckedIOException e) {
+					throw e.getCause();
+				}
+				throw new RuntimeException("Could not read " + csvFile, failure.get());
+			}
+		}
+	}
+
+	/**
+	 * @return the position after the first line break at or after <code>position</code>, or the file size.
+	 */
+	private static long findLineStart(FileChannel channel, long position) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(8192);
+		long pos = Math.max(0, position);
+		while (true) {
+			bytes.clear();
+			int read = channel.read(bytes, pos);
+			if (read <= 0) {
+				return channel.size();
+			}
+			for (int i = 0; i < read; i++) {
+				if (bytes.get(i) == '\n') {
+					return pos + i + 1;
+				}
+			}
+			pos += read;
+		}
+	}
+
+	private static final class BoundedInputStream extends InputStream {
+
+		private final InputStream delegate;
+		private long remaining;
+
+		BoundedInputStream(InputStream delegate, long length) {
+			this.delegate = delegate;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			int b = this.delegate.read();
+			if (b >= 0) {
+				this.remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			int read = this.delegate.read(b, off, (int) Math.min(len, this.remaining));
+			if (read > 0) {
+				this.remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.delegate.close();
+		}
+	}
+
 }
@@ -9,43 +9,76 @@ import org.matsim.core.utils.misc.Counter;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Writes rows of a csv file.
+ * <p>
+ * In asynchronous mode, completed rows are handed to a bounded queue and written, formatted and compressed by a
+ * background thread, so the caller only blocks if the queue is full. {@link #flush()} and {@link #close()} block until
+ * the background thread has written all rows queued so far, and rethrow any failure of the background thread.
+ * Asynchronous writers compress <code>.gz</code> files in parallel blocks, see {@link ParallelGzipOutputStream}.
+ */
 public class CSVWriter implements AutoCloseable {
 
 	public static final String DEFAULT_SEPARATOR = ";";
+	public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+	private static final Object END = new Object();
+
 	private final String separator;
 	private final String[] columns;
 	private final int columnCount;
 	private final BufferedWriter writer;
 	private final String[] currentRow;
 	private final Counter counter;
+	private final BlockingQueue<Object> queue;
+	private final Thread backgroundWriter;
+	private final CompletableFuture<Void> finished;
+	private volatile IOException failure = null;
+	private volatile boolean closed = false;
 
 	public CSVWriter(final String header, final String[] columns, final String filename) throws IOException {
-		this(header, columns, IOUtils.getBufferedWriter(filename), DEFAULT_SEPARATOR);
+		this(header, columns, IOUtils.getBufferedWriter(filename), DEFAULT_SEPARATOR, false);
 	}
 
 	public CSVWriter(final List<String> columns, final String filename) throws IOException {
-		this(null, columns.toArray(new String[columns.size()]), IOUtils.getBufferedWriter(filename), DEFAULT_SEPARATOR);
+		this(null, columns.toArray(new String[columns.size()]), IOUtils.getBufferedWriter(filename), DEFAULT_SEPARATOR, false);
 	}
 
 	public CSVWriter(final String header, final String[] columns, final String filename, final String separator) throws IOException {
-		this(header, columns, IOUtils.getBufferedWriter(filename), separator);
+		this(header, columns, IOUtils.getBufferedWriter(filename), separator, false);
+	}
+
+	/**
+	 * @param async if <code>true</code>, rows are written and compressed by a background thread.
+	 */
+	public CSVWriter(final String header, final String[] columns, final String filename, final String separator, final boolean async) throws IOException {
+		this(header, columns, async ? getAsyncBufferedWriter(filename) : IOUtils.getBufferedWriter(filename), separator, async);
 	}
 
 	public CSVWriter(final String header, final String[] columns, final String filename, final Charset encoding) throws IOException {
-		this(header, columns, new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), encoding)), DEFAULT_SEPARATOR);
+		this(header, columns, new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), encoding)), DEFAULT_SEPARATOR, false);
 	}
 
 	public CSVWriter(final String header, final String[] columns, final String filename, final Charset encoding, final String separator) throws IOException {
-		this(header, columns, new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), encoding)), separator);
+		this(header, columns, new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), encoding)), separator, false);
 	}
 
 	public CSVWriter(final String header, final String[] columns, final OutputStream stream, final String separator) throws IOException {
-		this(header, columns, new BufferedWriter(new OutputStreamWriter(stream)), separator);
+		this(header, columns, new BufferedWriter(new OutputStreamWriter(stream)), separator, false);
 	}
 
-	private CSVWriter(final String header, final String[] columns, final BufferedWriter writer, final String separator) throws IOException {
+	public CSVWriter(final String header, final String[] columns, final OutputStream stream, final String separator, final boolean async) throws IOException {
+		this(header, columns, new BufferedWriter(new OutputStreamWriter(stream)), separator, async);
+	}
+
+	private CSVWriter(final String header, final String[] columns, final BufferedWriter writer, final String separator, final boolean async) throws IOException {
 		this.columns = columns;
 		this.columnCount = this.columns.length;
 		this.currentRow = new String[this.columnCount];
@@ -59,16 +92,30 @@ public class CSVWriter implements AutoCloseable {
 		}
 
 		// write column names
-		for (int i = 0; i < this.columnCount; i++) {
-			if (i > 0) {
-				this.writer.write(this.separator);
-			}
-			String col = columns[i];
-			this.writer.write(col);
-		}
-		this.writer.write("\n");
+		writeFields(columns);
 
 		clearRow();
+
+		if (async) {
+			this.queue = new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+			this.finished = new CompletableFuture<>();
+			this.backgroundWriter = new Thread(this::runBackgroundWriter, "CSVWriter");
+			this.backgroundWriter.setDaemon(true);
+			this.backgroundWriter.start();
+		} else {
+			this.queue = null;
+			this.finished = null;
+			this.backgroundWriter = null;
+		}
+	}
+
+	private static BufferedWriter getAsyncBufferedWriter(String filename) throws IOException {
+		if (filename.endsWith(".gz")) {
+			int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+			OutputStream stream = new ParallelGzipOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16), threads);
+			return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+		}
+		return IOUtils.getBufferedWriter(filename);
 	}
 
 	/**
@@ -101,34 +148,165 @@ public class CSVWriter implements AutoCloseable {
 	}
 
 	public void writeRow(boolean flush) throws IOException {
-		try {
-			for (int i = 0; i < this.columnCount; i++) {
-				if (i > 0) {
-					this.writer.write(this.separator);
-				}
-				this.writer.write(this.currentRow[i]);
-			}
-			this.writer.write("\n");
+		if (this.queue != null) {
+			checkFailure();
+			enqueue(this.currentRow.clone());
 			if (flush) {
-				this.writer.flush();
+				flush();
+			}
+		} else {
+			try {
+				writeFields(this.currentRow);
+				if (flush) {
+					this.writer.flush();
+				}
+			} catch (IOException e) {
+				throw new IOException(e);
 			}
-		} catch (IOException e) {
-			throw new IOException(e);
 		}
 		this.counter.incCounter();
 		clearRow();
 	}
 
+	/**
+	 * Flushes all rows written so far. In asynchronous mode, this blocks until the background thread has written them.
+	 */
+	public void flush() throws IOException {
+		if (this.queue == null) {
+			this.writer.flush();
+			return;
+		}
+		if (this.closed) {
+			awaitFinished();
+			return;
+		}
+		CompletableFuture<Void> barrier = new CompletableFuture<>();
+		enqueue(barrier);
+		try {
+			barrier.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw asIOException(e.getCause());
+		}
+	}
+
+	private void writeFields(String[] fields) throws IOException {
+		for (int i = 0; i < this.columnCount; i++) {
+			if (i > 0) {
+				this.writer.write(this.separator);
+			}
+			this.writer.write(fields[i]);
+		}
+		this.writer.write("\n");
+	}
+
 	private void clearRow() {
 		for (int i = 0; i < this.columns.length; i++) {
 			this.currentRow[i] = "";
 		}
 	}
 
+	private void enqueue(Object item) throws IOException {
+		try {
+			this.queue.put(item);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (this.failure != null) {
+			throw new IOException(this.failure);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void runBackgroundWriter() {
+		try {
+			while (true) {
+				Object item = this.queue.take();
+				if (item == END) {
+					break;
+				}
+				if (this.failure != null) {
+					// keep draining the queue so producers do not block
+					if (item instanceof CompletableFuture<?> barrier) {
+						barrier.completeExceptionally(this.failure);
+					}
+					continue;
+				}
+				try {
+					if (item instanceof String[] row) {
+						writeFields(row);
+					} else if (item instanceof CompletableFuture<?> barrier) {
+						this.writer.flush();
+						((CompletableFuture<Void>) barrier).complete(null);
+					}
+				} catch (IOException e) {
+					this.failure = e;
+					if (item instanceof CompletableFuture<?> barrier) {
+						barrier.completeExceptionally(e);
+					}
+				}
+			}
+			try {
+				this.writer.close();
+			} catch (IOException e) {
+				if (this.failure == null) {
+					this.failure = e;
+				}
+			}
+		} catch (InterruptedException e) {
+			this.failure = new InterruptedIOException("CSVWriter interrupted");
+		} finally {
+			if (this.failure != null) {
+				this.finished.completeExceptionally(this.failure);
+			} else {
+				this.finished.complete(null);
+			}
+		}
+	}
+
+	private void awaitFinished() throws IOException {
+		try {
+			this.finished.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw asIOException(e.getCause());
+		}
+	}
+
+	private static IOException asIOException(Throwable t) {
+		return t instanceof IOException io ? new IOException(io.getMessage(), io) : new IOException(t);
+	}
+
+	/**
+	 * Closes the writer. In asynchronous mode, this blocks until the background thread has written the remaining rows
+	 * and closed the file.
+	 *
+	 * @throws IOException if the background thread failed to write or close the file
+	 */
 	@Override
 	public void close() throws IOException {
+		if (this.closed) {
+			if (this.queue != null) {
+				awaitFinished();
+			}
+			return;
+		}
+		this.closed = true;
 		this.counter.printCounter();
-		this.writer.close();
+		if (this.queue != null) {
+			enqueue(END);
+			awaitFinished();
+		} else {
+			this.writer.close();
+		}
 	}
 
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) Schweizerische Bundesbahnen SBB, 2024.
+ */
+
+package ch.sbb.matsim.csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses data in independent blocks on several threads and writes each block as a gzip member of its own.
+ * The concatenated members form a valid gzip file that can be read with any gzip reader, including
+ * {@link java.util.zip.GZIPInputStream} as used by MATSim's IOUtils.
+ * <p>
+ * Blocks are written in order; at most two blocks per thread are in flight, so memory usage stays bounded.
+ */
+public final class ParallelGzipOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	private final OutputStream out;
+	private final int blockSize;
+	private final int maxPending;
+	private final ExecutorService executor;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+	private byte[] buffer;
+	private int count = 0;
+	private boolean anyMemberWritten = false;
+	private boolean closed = false;
+
+	public ParallelGzipOutputStream(OutputStream out, int threads) {
+		this(out, threads, DEFAULT_BLOCK_SIZE);
+	}
+
+	public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize) {
+		int threadCount = Math.max(1, threads);
+		this.out = out;
+		this.blockSize = blockSize;
+		this.maxPending = 2 * threadCount;
+		this.buffer = new byte[blockSize];
+		this.executor = Executors.newFixedThreadPool(threadCount, r -> {
+			Thread t = new Thread(r, "ParallelGzip");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (this.count == this.blockSize) {
+			submitBlock();
+		}
+		this.buffer[this.count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (this.count == this.blockSize) {
+				submitBlock();
+			}
+			int n = Math.min(len, this.blockSize - this.count);
+			System.arraycopy(b, off, this.buffer, this.count, n);
+			this.count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Compresses and writes all data passed so far. Each flush of a partially filled block results in an additional
+	 * (smaller) gzip member, so flush should only be called at meaningful points.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.count > 0) {
+			submitBlock();
+		}
+		while (!this.pending.isEmpty()) {
+			writeNextMember();
+		}
+		this.out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			flush();
+			if (!this.anyMemberWritten) {
+				// an empty file is not valid gzip
+				this.out.write(compress(new byte[0], 0));
+			}
+			this.out.close();
+		} finally {
+			this.executor.shutdownNow();
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+		while (this.pending.size() >= this.maxPending) {
+			writeNextMember();
+		}
+		byte[] block = this.buffer;
+		int length = this.count;
+		this.pending.add(this.executor.submit(() -> compress(block, length)));
+		this.buffer = new byte[this.blockSize];
+		this.count = 0;
+	}
+
+	private void writeNextMember() throws IOException {
+		Future<byte[]> member = this.pending.poll();
+		try {
+			this.out.write(member.get());
+			this.anyMemberWritten = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static byte[] compress(byte[] block, int length) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, 1 << 16)) {
+			gzip.write(block, 0, length);
+		}
+		return bytes.toByteArray();
+	}
+
+}
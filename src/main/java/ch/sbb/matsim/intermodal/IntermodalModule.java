@@ -46,6 +46,11 @@ public class IntermodalModule extends AbstractModule {
 			bind(RaptorIntermodalAccessEgress.class).to(SBBRaptorIntermodalAccessEgress.class).asEagerSingleton();
 			bind(AccessEgressRouteCache.class).to(GridbasedAccessEgressCache.class).asEagerSingleton();
 			bind(RaptorStopFinder.class).to(SBBIntermodalRaptorStopFinder.class);
+			addControlerListenerBinding().to(IntermodalEligibilityReset.class);
+			bind(SimulatedAccessEgressRouteCache.class).asEagerSingleton();
+			if (configGroup.getSimulatedAccessEgressRouteCacheCapacity() > 0) {
+				addControlerListenerBinding().to(SimulatedAccessEgressRouteCache.class);
+			}
 		}
 	}
 
@@ -11,6 +11,7 @@ import ch.sbb.matsim.config.variables.SBBModes;
 import ch.sbb.matsim.routing.pt.raptor.RaptorIntermodalAccessEgress;
 import ch.sbb.matsim.routing.pt.raptor.RaptorParameters;
 import ch.sbb.matsim.routing.pt.raptor.RaptorStopFinder.Direction;
+import ch.sbb.matsim.zones.BoundedZonesQueryCache;
 import ch.sbb.matsim.zones.Zones;
 import ch.sbb.matsim.zones.ZonesCollection;
 import ch.sbb.matsim.zones.ZonesQueryCache;
@@ -45,7 +46,13 @@ public class SBBRaptorIntermodalAccessEgress implements RaptorIntermodalAccessEg
         scoreConfigGroup = config.scoring();
         intermodalModeParams = intermodalConfigGroup.getModeParameterSets();
 		Id<Zones> zonesId = intermodalConfigGroup.getZonesId();
-		this.zones = zonesId != null ? new ZonesQueryCache(zonesCollection.getZones(intermodalConfigGroup.getZonesId())) : null;
+		if (zonesId == null) {
+			this.zones = null;
+		} else {
+			Zones intermodalZones = zonesCollection.getZones(zonesId);
+			int cacheCapacity = intermodalConfigGroup.getZonesQueryCacheCapacity();
+			this.zones = cacheCapacity > 0 ? new BoundedZonesQueryCache(intermodalZones, cacheCapacity) : new ZonesQueryCache(intermodalZones);
+		}
 		this.network = network;
 	}
 
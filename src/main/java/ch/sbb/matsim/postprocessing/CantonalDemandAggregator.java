@@ -2,17 +2,22 @@ package ch.sbb.matsim.postprocessing;
 
 import ch.sbb.matsim.analysis.tripsandlegsanalysis.DemandAggregator;
 import ch.sbb.matsim.analysis.tripsandlegsanalysis.RailTripsAnalyzer;
+import ch.sbb.matsim.analysis.tripsandlegsanalysis.TripIndex;
 import ch.sbb.matsim.config.PostProcessingConfigGroup;
 import ch.sbb.matsim.zones.ZonesCollection;
 import ch.sbb.matsim.zones.ZonesLoader;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
 
-import java.util.stream.Collectors;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class CantonalDemandAggregator {
 
@@ -37,7 +42,9 @@ public class CantonalDemandAggregator {
         ppcg.setSimulationSampleSize(scaleFactor);
         RailTripsAnalyzer railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(), scenario.getNetwork(), zonesCollection);
         DemandAggregator demandAggregator = new DemandAggregator(scenario, zonesCollection, ppcg, railTripsAnalyzer);
-        demandAggregator.aggregateTripDemand(1.0 / scaleFactor, scenario.getPopulation().getPersons().values().stream().map(person -> person.getSelectedPlan()).collect(Collectors.toList()));
+        Map<Id<Person>, Plan> plans = new LinkedHashMap<>();
+        scenario.getPopulation().getPersons().values().forEach(person -> plans.put(person.getId(), person.getSelectedPlan()));
+        demandAggregator.aggregateTripDemand(1.0 / scaleFactor, TripIndex.build(plans, scenario, zonesCollection.getZones(ppcg.getZonesId()), null));
         demandAggregator.writeTripDemand("amr_id", "amr_name", outputFile);
 
 
@@ -11,6 +11,7 @@ import ch.sbb.matsim.zones.ZonesCollection;
 import ch.sbb.matsim.zones.ZonesModule;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.contrib.parking.parkingcost.config.ParkingCostConfigGroup;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
@@ -21,6 +22,7 @@ import org.matsim.core.router.NetworkRoutingProvider;
 
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class AccessEgressModule extends AbstractModule {
 
@@ -51,34 +53,55 @@ public class AccessEgressModule extends AbstractModule {
 					.forEach(mode -> parkingCostParameters.put(mode, parkingCostConfigGroup.linkAttributePrefix + mode));
 		}
 
-		for (var l : scenario.getNetwork().getLinks().values()) {
-			Zone zone = zones.findZone(l.getCoord());
+		List<String> accessTimeModes = new ArrayList<>(accessTimeParameters.keySet());
+		List<String> detourAttributes = new ArrayList<>(detourParams);
+		List<String> parkingCostModes = new ArrayList<>(parkingCostParameters.keySet());
+
+		// resolve the zones of all links in parallel, then read the attributes of each zone only once
+		List<Link> links = new ArrayList<>(scenario.getNetwork().getLinks().values());
+		Zone[] linkZones = new Zone[links.size()];
+		IntStream.range(0, links.size()).parallel().forEach(i -> linkZones[i] = zones.findZone(links.get(i).getCoord()));
+
+		Map<Zone, ZoneLinkAttributes> zoneAttributes = new IdentityHashMap<>();
+		for (Zone zone : linkZones) {
+			if (zone != null && !zoneAttributes.containsKey(zone)) {
+				double[] accessTimes = new double[accessTimeModes.size()];
+				for (int i = 0; i < accessTimes.length; i++) {
+					accessTimes[i] = ((Number) zone.getAttribute(accessTimeParameters.get(accessTimeModes.get(i)))).intValue();
+				}
+				Double[] detourFactors = new Double[detourAttributes.size()];
+				for (int i = 0; i < detourFactors.length; i++) {
+					detourFactors[i] = ((Number) zone.getAttribute(detourAttributes.get(i))).doubleValue();
+				}
+				Double[] parkingCosts = new Double[parkingCostModes.size()];
+				for (int i = 0; i < parkingCosts.length; i++) {
+					parkingCosts[i] = ((Number) zone.getAttribute(parkingCostParameters.get(parkingCostModes.get(i)))).doubleValue();
+				}
+				zoneAttributes.put(zone, new ZoneLinkAttributes(accessTimes, detourFactors, parkingCosts, Variables.isSwissZone(zone.getId())));
+			}
+		}
+		ZoneLinkAttributes noZoneAttributes = new ZoneLinkAttributes(new double[accessTimeModes.size()], null, null, false);
+
+		// every link has its own attributes, so they can be written in parallel
+		IntStream.range(0, links.size()).parallel().forEach(linkIndex -> {
+			Link l = links.get(linkIndex);
+			Zone zone = linkZones[linkIndex];
+			ZoneLinkAttributes attributes = zone == null ? noZoneAttributes : zoneAttributes.get(zone);
 
-			for (var entry : accessTimeParameters.entrySet()) {
-				String mode = entry.getKey();
-				String attribute = entry.getValue();
-				double accessTime = zone != null ? ((Number) zone.getAttribute(attribute)).intValue() : .0;
+			for (int i = 0; i < accessTimeModes.size(); i++) {
+				String mode = accessTimeModes.get(i);
 				if (l.getAllowedModes().contains(mode)) {
-					NetworkUtils.setLinkAccessTime(l, mode, accessTime);
-					NetworkUtils.setLinkEgressTime(l, mode, accessTime);
+					NetworkUtils.setLinkAccessTime(l, mode, attributes.accessTimes()[i]);
+					NetworkUtils.setLinkEgressTime(l, mode, attributes.accessTimes()[i]);
 				}
 			}
-			boolean isInCH = false;
 			if (zone != null) {
-				if (Variables.isSwissZone(zone.getId())) {
-					isInCH = true;
+				for (int i = 0; i < detourAttributes.size(); i++) {
+					l.getAttributes().putAttribute(detourAttributes.get(i), attributes.detourFactors()[i]);
 				}
-				for (String detourAttribute : detourParams) {
-					double detourFactor = ((Number) zone.getAttribute(detourAttribute)).doubleValue();
-					l.getAttributes().putAttribute(detourAttribute, detourFactor);
-				}
-
-				for (var entry : parkingCostParameters.entrySet()) {
-					String mode = entry.getKey();
-					String attribute = entry.getValue();
-					double pc = ((Number) zone.getAttribute(attribute)).doubleValue();
-					if (l.getAllowedModes().contains(mode)) {
-						l.getAttributes().putAttribute(attribute, pc);
+				for (int i = 0; i < parkingCostModes.size(); i++) {
+					if (l.getAllowedModes().contains(parkingCostModes.get(i))) {
+						l.getAttributes().putAttribute(parkingCostParameters.get(parkingCostModes.get(i)), attributes.parkingCosts()[i]);
 					}
 				}
 			}
@@ -86,8 +109,15 @@ public class AccessEgressModule extends AbstractModule {
 			NetworkUtils.setLinkEgressTime(l, SBBModes.BIKE, 1.0);
 			NetworkUtils.setLinkAccessTime(l, SBBModes.BIKEFEEDER, 1.0);
 			NetworkUtils.setLinkEgressTime(l, SBBModes.BIKEFEEDER, 1.0);
-			l.getAttributes().putAttribute(IS_CH, isInCH);
-		}
+			l.getAttributes().putAttribute(IS_CH, attributes.isInCH());
+		});
+	}
+
+	/**
+	 * The link attributes derived from one zone, in the order of the corresponding attribute lists.
+	 * Boxed values are shared between all links of the zone.
+	 */
+	private record ZoneLinkAttributes(double[] accessTimes, Double[] detourFactors, Double[] parkingCosts, boolean isInCH) {
 	}
 
 
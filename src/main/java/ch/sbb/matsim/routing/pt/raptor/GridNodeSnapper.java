@@ -0,0 +1,59 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+/**
+ * Snaps coordinates to the nearest network node via a table on a fixed grid aligned to multiples of the
+ * grid size. Each grid point is looked up in the network's quadtree at most once, so the cells shared by the
+ * grids of neighbouring stops do not have to be snapped over and over again. Coordinates are rounded to the
+ * nearest grid point, coordinates outside the covered extent are looked up directly.
+ * <p>
+ * The table is filled on demand and can be shared between threads: concurrent lookups of the same grid point
+ * may both query the quadtree, but always store the same node.
+ */
+final class GridNodeSnapper {
+
+    private final Network network;
+    private final double gridSize;
+    private final long minColumn;
+    private final long minRow;
+    private final int columns;
+    private final int rows;
+    private final Node[] nodes;
+
+    GridNodeSnapper(Network network, double gridSize, double minX, double minY, double maxX, double maxY) {
+        this.network = network;
+        this.gridSize = gridSize;
+        if (minX > maxX || minY > maxY) {
+            this.minColumn = 0;
+            this.minRow = 0;
+            this.columns = 0;
+            this.rows = 0;
+        } else {
+            this.minColumn = Math.round(minX / gridSize);
+            this.minRow = Math.round(minY / gridSize);
+            this.columns = (int) (Math.round(maxX / gridSize) - this.minColumn + 1);
+            this.rows = (int) (Math.round(maxY / gridSize) - this.minRow + 1);
+        }
+        this.nodes = new Node[Math.multiplyExact(this.columns, this.rows)];
+    }
+
+    Node getNearestNode(Coord coord) {
+        long column = Math.round(coord.getX() / gridSize) - minColumn;
+        long row = Math.round(coord.getY() / gridSize) - minRow;
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return NetworkUtils.getNearestNode(network, coord);
+        }
+        int index = (int) (row * columns + column);
+        Node node = nodes[index];
+        if (node == null) {
+            node = NetworkUtils.getNearestNode(network, new Coord((column + minColumn) * gridSize, (row + minRow) * gridSize));
+            nodes[index] = node;
+        }
+        return node;
+    }
+
+}
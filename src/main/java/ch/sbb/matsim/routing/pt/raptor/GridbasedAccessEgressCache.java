@@ -29,16 +29,33 @@ import org.matsim.core.router.speedy.SpeedyALTFactory;
 import org.matsim.core.router.speedy.SpeedyGraph;
 import org.matsim.core.router.speedy.SpeedyGraphBuilder;
 import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.utils.misc.Counter;
 import org.matsim.facilities.Facility;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 import org.matsim.vehicles.Vehicle;
 import org.matsim.vehicles.VehicleType;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
@@ -52,6 +69,8 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
     private int cellSize;
     private int rowSize;
     private String linkIdAttribute;
+    private String stopFilterAttribute;
+    private String stopFilterValue;
     private final Scenario scenario;
     private final SBBIntermodalConfiggroup sbbIntermodalConfiggroup;
     final FreespeedTravelTimeAndDisutility disutility = new FreespeedTravelTimeAndDisutility(-0.1, 0.1, -0.01);
@@ -60,7 +79,15 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
     private final Logger logger = LogManager.getLogger(getClass());
     private Vehicle bike;
     private List<Id<TransitStopFacility>> cachedStops;
-    private final Map<Id<TransitStopFacility>, int[][]> cachedDistancesAndTimes = new ConcurrentHashMap<>();
+    private Set<Id<TransitStopFacility>> cachedStopIds;
+    private final Map<Id<TransitStopFacility>, StopGrid> cachedDistancesAndTimes = new ConcurrentHashMap<>();
+    private final Map<Id<TransitStopFacility>, FutureTask<StopGrid>> pendingStopGrids = new ConcurrentHashMap<>();
+    private boolean lazy;
+    private SpeedyGraph carGraph;
+    private SpeedyGraph bikeGraph;
+    private GridNodeSnapper carNodeSnapper;
+    private GridNodeSnapper bikeNodeSnapper;
+    private ThreadLocal<GridRouters> lazyRouters;
 
 
 
@@ -75,10 +102,12 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
             var railRaptorConfigGroup = ConfigUtils.addOrGetModule(scenario.getConfig(), SwissRailRaptorConfigGroup.class);
             SwissRailRaptorConfigGroup.IntermodalAccessEgressParameterSet carInterModalSet = railRaptorConfigGroup.getIntermodalAccessEgressParameterSets().stream().filter(set -> set.getMode().equals(SBBModes.CARFEEDER)).findAny().get();
             this.linkIdAttribute = carInterModalSet.getLinkIdAttribute();
-            String stopFilterValue = carInterModalSet.getStopFilterValue();
-            String stopFilterAttribute = carInterModalSet.getStopFilterAttribute();
+            this.stopFilterValue = carInterModalSet.getStopFilterValue();
+            this.stopFilterAttribute = carInterModalSet.getStopFilterAttribute();
             scenario.getNetwork().getLinks().values().stream().filter(link -> link.getLength() < 0.1).forEach(link -> link.setLength(0.1));
             this.cachedStops = scenario.getTransitSchedule().getFacilities().values().stream().filter(transitStopFacility -> transitStopFacility.getAttributes().getAttribute(stopFilterAttribute).equals(stopFilterValue)).map(TransitStopFacility::getId).collect(Collectors.toList());
+            this.cachedStopIds = new HashSet<>(cachedStops);
+            this.lazy = sbbIntermodalConfiggroup.isAccessEgressGridCacheLazy();
             logger.info("Cache will consist of " + cachedStops.size() + " stops.");
 
             rowSize = diameterInM / gridsizeInM;
@@ -99,7 +128,22 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
 
 
             prepareAccessTimes();
-            calculateGridTraveltimesViaTree();
+            String cacheFile = sbbIntermodalConfiggroup.getAccessEgressGridCacheFile();
+            Path cachePath = cacheFile == null ? null : Path.of(cacheFile);
+            byte[] cacheKey = cachePath == null ? null : calculateCacheKey();
+            var storedCache = cachePath == null ? null : GridbasedAccessEgressCacheFile.read(cachePath, cacheKey, cellSize);
+            if (storedCache != null && storedCache.keySet().containsAll(cachedStops)) {
+                cachedDistancesAndTimes.putAll(storedCache);
+            } else if (lazy) {
+                prepareGraphs();
+                this.lazyRouters = ThreadLocal.withInitial(this::createRouters);
+                logger.info("Grid cache will be calculated when the stops are first used.");
+            } else {
+                calculateGridTraveltimesViaTree();
+                if (cachePath != null) {
+                    GridbasedAccessEgressCacheFile.write(cachePath, cacheKey, cellSize, cachedStops, cachedDistancesAndTimes);
+                }
+            }
         } else {
             logger.info("No modes with intermodal caching are being used. Will not build a cache.");
         }
@@ -122,41 +166,74 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
     }
 
 
-    void calculateGridTraveltimesViaTree() {
-        Gbl.printMemoryUsage();
+    private void prepareGraphs() {
         bikenet.getLinks().values().stream().filter(link -> link.getFreespeed() > bikeFreespeed).forEach(link -> link.setFreespeed(bikeFreespeed));
-        SpeedyGraph carGraph = SpeedyGraphBuilder.build(carnet);
-        SpeedyGraph bikeGraph = SpeedyGraphBuilder.build(bikenet);
+        this.carGraph = SpeedyGraphBuilder.build(carnet);
+        this.bikeGraph = SpeedyGraphBuilder.build(bikenet);
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Id<TransitStopFacility> stopId : cachedStops) {
+            Coord stopCoord = scenario.getTransitSchedule().getFacilities().get(stopId).getCoord();
+            minX = Math.min(minX, stopCoord.getX() - diameterInM / 2.0);
+            minY = Math.min(minY, stopCoord.getY() - diameterInM / 2.0);
+            maxX = Math.max(maxX, stopCoord.getX() + diameterInM / 2.0);
+            maxY = Math.max(maxY, stopCoord.getY() + diameterInM / 2.0);
+        }
+        this.carNodeSnapper = new GridNodeSnapper(carnet, gridsizeInM, minX, minY, maxX, maxY);
+        this.bikeNodeSnapper = new GridNodeSnapper(bikenet, gridsizeInM, minX, minY, maxX, maxY);
+    }
+
+    private GridRouters createRouters() {
         SpeedyALTFactory factory = new SpeedyALTFactory();
+        return new GridRouters(
+                new LeastCostPathTree(carGraph, disutility, disutility),
+                new LeastCostPathTree(bikeGraph, disutility, disutility),
+                factory.createPathCalculator(carnet, disutility, disutility),
+                factory.createPathCalculator(bikenet, disutility, disutility));
+    }
+
+    void calculateGridTraveltimesViaTree() {
+        Gbl.printMemoryUsage();
+        prepareGraphs();
         logger.info("Building Cache Structure for " + cachedStops.size() + " stops.");
 
         Gbl.printMemoryUsage();
-        List<List<Id<TransitStopFacility>>> partitions = new ArrayList<>();
         if (cachedStops.size() < threads) {
             threads = Math.max(cachedStops.size(), 1);
         }
-        int size = cachedStops.size() / threads;
+        // workers pull stops from a shared queue, so stops with large networks around them do not leave other threads idle
+        ConcurrentLinkedQueue<Id<TransitStopFacility>> stopQueue = new ConcurrentLinkedQueue<>(cachedStops);
+        Counter counter = new Counter("# grid cache stops ", " / " + cachedStops.size());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long start = System.nanoTime();
+        Thread[] workers = new Thread[threads];
         for (int i = 0; i < threads; i++) {
-            int toIndex = Math.min((i + 1) * size, cachedStops.size());
-            List<Id<TransitStopFacility>> partition = cachedStops.subList(i * size, toIndex);
-            partitions.add(partition);
+            workers[i] = new Thread(new GridWorker(stopQueue, counter, failure), "grid-cache-" + i);
+            workers[i].start();
         }
-        partitions.parallelStream().forEach(list -> {
-            LeastCostPathTree bikeLeastCostPathTree = new LeastCostPathTree(bikeGraph, disutility, disutility);
-            LeastCostPathTree carLeastCostPathTree = new LeastCostPathTree(carGraph, disutility, disutility);
-            var carLcp = factory.createPathCalculator(carnet, disutility, disutility);
-            var bikeLcp = factory.createPathCalculator(bikenet, disutility, disutility);
-            for (Id<TransitStopFacility> stopId : list) {
-                var stop = scenario.getTransitSchedule().getFacilities().get(stopId);
-                cachedDistancesAndTimes.put(stopId, calculateGridForStopViaTree(stop, carLeastCostPathTree, bikeLeastCostPathTree, carLcp, bikeLcp));
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
             }
-
-        });
-
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException("Building the access/egress grid cache failed.", failure.get());
+        }
+        List<Id<TransitStopFacility>> missingStops = cachedStops.stream().filter(stopId -> !cachedDistancesAndTimes.containsKey(stopId)).collect(Collectors.toList());
+        if (!missingStops.isEmpty()) {
+            throw new IllegalStateException("The access/egress grid cache is missing " + missingStops.size() + " stops, e.g. " + missingStops.get(0));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info(String.format("Built grid cache for %d stops in %.1f s (%.2f stops/s).", cachedStops.size(), seconds, cachedStops.size() / seconds));
     }
 
 
-    int[][] calculateGridForStopViaTree(TransitStopFacility stop, LeastCostPathTree carLeastCostPathTree, LeastCostPathTree bikeLeastCostPathTree, LeastCostPathCalculator carlcp, LeastCostPathCalculator bikelcp) {
+    StopGrid calculateGridForStopViaTree(TransitStopFacility stop, LeastCostPathTree carLeastCostPathTree, LeastCostPathTree bikeLeastCostPathTree, LeastCostPathCalculator carlcp, LeastCostPathCalculator bikelcp) {
         Link carFromLink = carnet.getLinks().get(Id.createLinkId(String.valueOf(stop.getAttributes().getAttribute(linkIdAttribute))));
         Node carFromNode = carFromLink.getToNode();
 
@@ -166,56 +243,41 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
         bikeLeastCostPathTree.calculate(bikeFromNode.getId().index(), 0, null, bike, new LeastCostPathTree.TravelDistanceStopCriterion(this.diameterInM * 5.0));
 
 
-        int[][] dist = new int[cellSize][4];
+        StopGrid grid = new StopGrid(cellSize);
 
         int found = 0;
         for (int i = 0; i < cellSize; i++) {
             Coord coord = getCellCoordinate(stop.getCoord(), i);
-            Node nearestCarNode = NetworkUtils.getNearestNode(carnet, coord);
+            Node nearestCarNode = carNodeSnapper.getNearestNode(coord);
             int nearestCarNodeIndex = nearestCarNode.getId().index();
-            Node nearestBikeNode = NetworkUtils.getNearestNode(bikenet, coord);
+            Node nearestBikeNode = bikeNodeSnapper.getNearestNode(coord);
             int nearestBikeNodeIndex = nearestBikeNode.getId().index();
-            double carTravelTime;
-            double carDistance;
             if (carLeastCostPathTree.getTime(nearestCarNodeIndex).isDefined()) {
-                carTravelTime = carLeastCostPathTree.getTime(nearestCarNodeIndex).seconds() * CAR_FREESPEED_TRAVELTIME_FACTOR;
-                carDistance = carLeastCostPathTree.getDistance(nearestCarNodeIndex);
+                grid.setCar(i, carLeastCostPathTree.getTime(nearestCarNodeIndex).seconds() * CAR_FREESPEED_TRAVELTIME_FACTOR, carLeastCostPathTree.getDistance(nearestCarNodeIndex));
                 found++;
             } else {
                 var carpath = carlcp.calcLeastCostPath(nearestCarNode, carFromNode, 0, null, null);
                 if (carpath != null) {
-                    carTravelTime = carpath.travelTime * CAR_FREESPEED_TRAVELTIME_FACTOR;
-                    carDistance = carpath.links.stream().mapToDouble(l -> l.getLength()).sum();
+                    grid.setCar(i, carpath.travelTime * CAR_FREESPEED_TRAVELTIME_FACTOR, carpath.links.stream().mapToDouble(l -> l.getLength()).sum());
                 } else {
-                    carTravelTime = 9999;
-                    carDistance = 99999;
+                    grid.setCarUnreachable(i);
                 }
 
             }
 
-
-            double bikeTravelTime;
-            double bikeDistance;
             if (bikeLeastCostPathTree.getTime(nearestBikeNodeIndex).isDefined()) {
-                bikeTravelTime = bikeLeastCostPathTree.getTime(nearestBikeNodeIndex).seconds();
-                bikeDistance = bikeLeastCostPathTree.getDistance(nearestBikeNodeIndex);
+                grid.setBike(i, bikeLeastCostPathTree.getTime(nearestBikeNodeIndex).seconds(), bikeLeastCostPathTree.getDistance(nearestBikeNodeIndex));
             } else {
                 var bikepath = bikelcp.calcLeastCostPath(nearestBikeNode, bikeFromNode, 0, null, bike);
                 if (bikepath != null) {
-                    bikeTravelTime = bikepath.travelTime;
-                    bikeDistance = bikepath.links.stream().mapToDouble(l -> l.getLength()).sum();
+                    grid.setBike(i, bikepath.travelTime, bikepath.links.stream().mapToDouble(l -> l.getLength()).sum());
                 } else {
-                    bikeTravelTime = 9999;
-                    bikeDistance = 99999;
+                    grid.setBikeUnreachable(i);
                 }
             }
-            dist[i][0] = (int) carTravelTime;
-            dist[i][1] = (int) carDistance;
-            dist[i][2] = (int) bikeTravelTime;
-            dist[i][3] = (int) bikeDistance;
         }
         //logger.info("Found " + found + " of " + cellSize);
-        return dist;
+        return grid;
     }
 
     Coord getCellCoordinate(Coord stopCoord, int i) {
@@ -248,11 +310,11 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
     public RouteCharacteristics getCachedRouteCharacteristics(String mode, Facility stopFacility, Facility actFacility, RoutingModule module, Person person) {
         Id<TransitStopFacility> transitStopFacilityId = ((Identifiable<TransitStopFacility>) stopFacility).getId();
         int cell = getCellNumber(stopFacility.getCoord(), actFacility.getCoord());
-        int[][] cache = this.cachedDistancesAndTimes.get(transitStopFacilityId);
-        if (cache != null && cellInBound(cell)) {
-            int[] cellCache = cache[cell];
-            double travelTime = mode.equals(SBBModes.BIKEFEEDER) ? cellCache[2] : cellCache[0];
-            double travelDistance = mode.equals(SBBModes.BIKEFEEDER) ? cellCache[3] : cellCache[1];
+        StopGrid cache = cellInBound(cell) ? getStopGrid(transitStopFacilityId) : null;
+        if (cache != null) {
+            boolean isBike = mode.equals(SBBModes.BIKEFEEDER);
+            double travelTime = isBike ? cache.getBikeTime(cell) : cache.getCarTime(cell);
+            double travelDistance = isBike ? cache.getBikeDistance(cell) : cache.getCarDistance(cell);
             Integer accessTime = this.accessTimesAtStops.get(transitStopFacilityId).get(mode);
             if (accessTime == null) {
                 accessTime = 0;
@@ -275,6 +337,122 @@ public class GridbasedAccessEgressCache implements AccessEgressRouteCache {
         return (cell >= 0 && cell < cellSize);
     }
 
+    /**
+     * @return the grid of the stop, calculating it first if the cache is lazy and the stop has not been used before.
+     * Concurrent first requests for the same stop wait for a single calculation.
+     */
+    private StopGrid getStopGrid(Id<TransitStopFacility> stopId) {
+        StopGrid grid = this.cachedDistancesAndTimes.get(stopId);
+        if (grid != null || !lazy || !cachedStopIds.contains(stopId)) {
+            return grid;
+        }
+        FutureTask<StopGrid> task = new FutureTask<>(() -> {
+            GridRouters routers = lazyRouters.get();
+            var stop = scenario.getTransitSchedule().getFacilities().get(stopId);
+            return calculateGridForStopViaTree(stop, routers.carTree(), routers.bikeTree(), routers.carLcp(), routers.bikeLcp());
+        });
+        FutureTask<StopGrid> existingTask = this.pendingStopGrids.putIfAbsent(stopId, task);
+        if (existingTask == null) {
+            task.run();
+            existingTask = task;
+        }
+        try {
+            grid = existingTask.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Could not calculate access/egress grid for stop " + stopId, e);
+        }
+        this.cachedDistancesAndTimes.put(stopId, grid);
+        this.pendingStopGrids.remove(stopId);
+        return grid;
+    }
+
+    /**
+     * Hashes everything the cached values depend on: grid and speed parameters, the selected stops and
+     * the network. A stored cache is only reused if its key matches.
+     */
+    byte[] calculateCacheKey() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(new ByteArrayOutputStream(), digest))) {
+                out.writeInt(GridbasedAccessEgressCacheFile.VERSION);
+                out.writeInt(gridsizeInM);
+                out.writeInt(diameterInM);
+                out.writeDouble(CAR_FREESPEED_TRAVELTIME_FACTOR);
+                out.writeDouble(bikeFreespeed);
+                out.writeUTF(String.valueOf(linkIdAttribute));
+                out.writeUTF(String.valueOf(stopFilterAttribute));
+                out.writeUTF(String.valueOf(stopFilterValue));
+                for (Id<TransitStopFacility> stopId : new TreeSet<>(cachedStops)) {
+                    TransitStopFacility stop = scenario.getTransitSchedule().getFacilities().get(stopId);
+                    out.writeUTF(stopId.toString());
+                    out.writeDouble(stop.getCoord().getX());
+                    out.writeDouble(stop.getCoord().getY());
+                    out.writeUTF(String.valueOf(stop.getAttributes().getAttribute(linkIdAttribute)));
+                }
+                List<Link> links = new ArrayList<>(scenario.getNetwork().getLinks().values());
+                links.sort(Comparator.comparing(Link::getId));
+                for (Link link : links) {
+                    out.writeUTF(link.getId().toString());
+                    out.writeDouble(link.getFromNode().getCoord().getX());
+                    out.writeDouble(link.getFromNode().getCoord().getY());
+                    out.writeDouble(link.getToNode().getCoord().getX());
+                    out.writeDouble(link.getToNode().getCoord().getY());
+                    out.writeUTF(link.getFromNode().getId().toString());
+                    out.writeUTF(link.getToNode().getId().toString());
+                    out.writeDouble(link.getLength());
+                    out.writeDouble(link.getFreespeed());
+                    out.writeInt(link.getAllowedModes().size());
+                    for (String mode : new TreeSet<>(link.getAllowedModes())) {
+                        out.writeUTF(mode);
+                    }
+                }
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    private record GridRouters(LeastCostPathTree carTree, LeastCostPathTree bikeTree, LeastCostPathCalculator carLcp, LeastCostPathCalculator bikeLcp) {
+
+    }
+
+    private class GridWorker implements Runnable {
+
+        private final ConcurrentLinkedQueue<Id<TransitStopFacility>> stops;
+        private final Counter counter;
+        private final AtomicReference<Throwable> failure;
+
+        GridWorker(ConcurrentLinkedQueue<Id<TransitStopFacility>> stops, Counter counter, AtomicReference<Throwable> failure) {
+            this.stops = stops;
+            this.counter = counter;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            int processed = 0;
+            try {
+                GridRouters routers = createRouters();
+                while (failure.get() == null) {
+                    Id<TransitStopFacility> stopId = this.stops.poll();
+                    if (stopId == null) {
+                        break;
+                    }
+                    var stop = scenario.getTransitSchedule().getFacilities().get(stopId);
+                    cachedDistancesAndTimes.put(stopId, calculateGridForStopViaTree(stop, routers.carTree(), routers.bikeTree(), routers.carLcp(), routers.bikeLcp()));
+                    processed++;
+                    this.counter.incCounter();
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            logger.info(String.format("%s processed %d stops in %.1f s (%.2f stops/s).", Thread.currentThread().getName(), processed, seconds, seconds > 0 ? processed / seconds : 0.0));
+        }
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary on-disk representation of the {@link GridbasedAccessEgressCache}.
+ * <p>
+ * Layout: magic, format version, length of the header block, header block, data block.
+ * The header block contains the cache key (a hash over network, stop filter and grid parameters),
+ * the number of grid cells per stop and the ids of all stops. The data block contains the {@link StopGrid}
+ * of all stops in the order of the header, each one as car times, bike times, car distances and bike distances.
+ * When reading, the data block is memory-mapped, so the cache lives off-heap and is paged in by the operating
+ * system on demand.
+ */
+final class GridbasedAccessEgressCacheFile {
+
+    private static final Logger log = LogManager.getLogger(GridbasedAccessEgressCacheFile.class);
+
+    private static final int MAGIC = 0x53424247; // "SBBG"
+    static final int VERSION = 3;
+
+    private GridbasedAccessEgressCacheFile() {
+    }
+
+    static void write(Path file, byte[] key, int cellCount, List<Id<TransitStopFacility>> stopIds, Map<Id<TransitStopFacility>, StopGrid> data) {
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            byte[] header = createHeader(key, cellCount, stopIds);
+            try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer prefix = ByteBuffer.allocate(3 * Integer.BYTES + header.length);
+                prefix.putInt(MAGIC).putInt(VERSION).putInt(header.length).put(header).flip();
+                writeFully(channel, prefix);
+
+                ByteBuffer buffer = ByteBuffer.allocate(cellCount * StopGrid.BYTES_PER_CELL);
+                for (Id<TransitStopFacility> stopId : stopIds) {
+                    StopGrid grid = data.get(stopId);
+                    buffer.clear();
+                    for (int i = 0; i < cellCount; i++) {
+                        buffer.putChar(grid.carTimes.get(i));
+                    }
+                    for (int i = 0; i < cellCount; i++) {
+                        buffer.putChar(grid.bikeTimes.get(i));
+                    }
+                    for (int i = 0; i < cellCount; i++) {
+                        buffer.putInt(grid.carDistances.get(i));
+                    }
+                    for (int i = 0; i < cellCount; i++) {
+                        buffer.putInt(grid.bikeDistances.get(i));
+                    }
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                }
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Wrote access/egress grid cache for " + stopIds.size() + " stops to " + file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write access/egress grid cache to " + file, e);
+        }
+    }
+
+    /**
+     * @return the memory-mapped grids per stop, or <code>null</code> if the file does not exist
+     * or was written for a different key or format.
+     */
+    static Map<Id<TransitStopFacility>, StopGrid> read(Path file, byte[] key, int cellCount) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(3 * Integer.BYTES);
+            readFully(channel, prefix);
+            prefix.flip();
+            if (prefix.getInt() != MAGIC) {
+                log.warn(file + " is not an access/egress grid cache file, it will be ignored.");
+                return null;
+            }
+            int version = prefix.getInt();
+            if (version != VERSION) {
+                log.warn(file + " has format version " + version + ", expected " + VERSION + ". It will be ignored.");
+                return null;
+            }
+            ByteBuffer headerBuffer = ByteBuffer.allocate(prefix.getInt());
+            readFully(channel, headerBuffer);
+            List<Id<TransitStopFacility>> stopIds;
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(headerBuffer.array()))) {
+                byte[] fileKey = new byte[in.readInt()];
+                in.readFully(fileKey);
+                if (!Arrays.equals(fileKey, key) || in.readInt() != cellCount) {
+                    log.warn(file + " was written for a different network, stop selection or grid. It will be ignored.");
+                    return null;
+                }
+                int stopCount = in.readInt();
+                Id<TransitStopFacility>[] ids = new Id[stopCount];
+                for (int i = 0; i < stopCount; i++) {
+                    ids[i] = Id.create(in.readUTF(), TransitStopFacility.class);
+                }
+                stopIds = Arrays.asList(ids);
+            }
+
+            long dataOffset = channel.position();
+            long bytesPerStop = (long) cellCount * StopGrid.BYTES_PER_CELL;
+            if (channel.size() != dataOffset + bytesPerStop * stopIds.size()) {
+                log.warn(file + " is truncated or corrupt. It will be ignored.");
+                return null;
+            }
+            // a single mapping is limited to 2 GB, so map chunks of complete stops
+            int stopsPerChunk = (int) Math.max(1, Integer.MAX_VALUE / bytesPerStop);
+            Map<Id<TransitStopFacility>, StopGrid> result = new HashMap<>();
+            for (int chunkStart = 0; chunkStart < stopIds.size(); chunkStart += stopsPerChunk) {
+                int chunkStops = Math.min(stopsPerChunk, stopIds.size() - chunkStart);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + chunkStart * bytesPerStop, chunkStops * bytesPerStop);
+                for (int i = 0; i < chunkStops; i++) {
+                    ByteBuffer stopData = chunk.slice((int) (i * bytesPerStop), (int) bytesPerStop);
+                    int timeBytes = cellCount * Character.BYTES;
+                    int distanceBytes = cellCount * Integer.BYTES;
+                    StopGrid grid = new StopGrid(
+                            stopData.slice(0, timeBytes).asCharBuffer(),
+                            stopData.slice(timeBytes, timeBytes).asCharBuffer(),
+                            stopData.slice(2 * timeBytes, distanceBytes).asIntBuffer(),
+                            stopData.slice(2 * timeBytes + distanceBytes, distanceBytes).asIntBuffer());
+                    result.put(stopIds.get(chunkStart + i), grid);
+                }
+            }
+            log.info("Mapped access/egress grid cache for " + stopIds.size() + " stops from " + file);
+            return result;
+        } catch (IOException e) {
+            log.warn("Could not read access/egress grid cache from " + file + ", it will be ignored.", e);
+            return null;
+        }
+    }
+
+    private static byte[] createHeader(byte[] key, int cellCount, List<Id<TransitStopFacility>> stopIds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(cellCount);
+            out.writeInt(stopIds.size());
+            for (Id<TransitStopFacility> stopId : stopIds) {
+                out.writeUTF(stopId.toString());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+    }
+
+}
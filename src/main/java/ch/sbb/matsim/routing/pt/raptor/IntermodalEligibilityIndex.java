@@ -0,0 +1,158 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.config.SBBIntermodalModeParameterSet;
+import ch.sbb.matsim.config.SwissRailRaptorConfigGroup.IntermodalAccessEgressParameterSet;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputes for each person which intermodal access/egress parameter sets may be used at each activity location.
+ * <p>
+ * For every person, the person filter of all parameter sets and the activity filter of the intermodal modes are
+ * evaluated once per distinct activity coordinate of the selected plan, and stored as a bitmask of eligible parameter
+ * sets. The entry is kept in the person's custom attributes and rebuilt if the person's selected plan changes, or if
+ * a location is queried that is not part of the cached plan. All entries are invalidated at the start of each iteration
+ * by {@link IntermodalEligibilityReset}. Strategies that change activity types during replanning without changing
+ * the plan or the location must call {@link #invalidate(Person)}.
+ */
+final class IntermodalEligibilityIndex {
+
+	private static final String CUSTOM_ATTRIBUTE = "sbbIntermodalEligibility";
+	static final int MAX_PARAMETER_SETS = Long.SIZE;
+
+	private final Map<IntermodalAccessEgressParameterSet, Integer> indices = new IdentityHashMap<>();
+	private final String[] personFilterAttributes;
+	private final String[] personFilterValues;
+	private final String[] activityFilterAttributes;
+
+	IntermodalEligibilityIndex(List<IntermodalAccessEgressParameterSet> parameterSets, Map<String, SBBIntermodalModeParameterSet> intermodalModeParams) {
+		int count = Math.min(parameterSets.size(), MAX_PARAMETER_SETS);
+		this.personFilterAttributes = new String[count];
+		this.personFilterValues = new String[count];
+		this.activityFilterAttributes = new String[count];
+		for (int i = 0; i < count; i++) {
+			IntermodalAccessEgressParameterSet paramSet = parameterSets.get(i);
+			this.indices.put(paramSet, i);
+			this.personFilterAttributes[i] = paramSet.getPersonFilterAttribute();
+			this.personFilterValues[i] = paramSet.getPersonFilterValue();
+			SBBIntermodalModeParameterSet modeParams = intermodalModeParams.get(paramSet.getMode());
+			this.activityFilterAttributes[i] = modeParams == null ? null : modeParams.getParamPersonActivityFilterAttribute();
+		}
+	}
+
+	/**
+	 * @return the index of the parameter set in the eligibility bitmask, or -1 if the parameter set is not indexed.
+	 */
+	int getIndex(IntermodalAccessEgressParameterSet paramSet) {
+		Integer index = this.indices.get(paramSet);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * @return a bitmask of the parameter sets the person may use at the given location, bit <code>i</code>
+	 * corresponding to {@link #getIndex(IntermodalAccessEgressParameterSet)} <code>== i</code>.
+	 */
+	long getEligibleParameterSets(Person person, Coord coord) {
+		Plan plan = person.getSelectedPlan();
+		Object cached = person.getCustomAttributes().get(CUSTOM_ATTRIBUTE);
+		PersonEligibility eligibility = cached instanceof PersonEligibility e && e.plan() == plan ? e : null;
+		if (eligibility != null) {
+			int index = eligibility.indexOf(coord);
+			if (index >= 0) {
+				return eligibility.masks()[index];
+			}
+		}
+		eligibility = build(person, plan);
+		person.getCustomAttributes().put(CUSTOM_ATTRIBUTE, eligibility);
+		int index = eligibility.indexOf(coord);
+		return index >= 0 ? eligibility.masks()[index] : eligibility.baseMask();
+	}
+
+	static void invalidate(Person person) {
+		person.getCustomAttributes().remove(CUSTOM_ATTRIBUTE);
+	}
+
+	private PersonEligibility build(Person person, Plan plan) {
+		int count = this.personFilterAttributes.length;
+		long baseMask = 0;
+		String[][] activityPrefixes = new String[count][];
+		for (int i = 0; i < count; i++) {
+			if (this.personFilterAttributes[i] != null) {
+				Object attr = person.getAttributes().getAttribute(this.personFilterAttributes[i]);
+				String attrValue = attr == null ? null : attr.toString();
+				if (!this.personFilterValues[i].equals(attrValue)) {
+					continue;
+				}
+			}
+			baseMask |= 1L << i;
+			if (this.activityFilterAttributes[i] != null) {
+				Object attr = person.getAttributes().getAttribute(this.activityFilterAttributes[i]);
+				if (attr != null) {
+					List<String> prefixes = new ArrayList<>();
+					for (String prefix : attr.toString().split(",")) {
+						if (!prefix.isEmpty()) {
+							prefixes.add(prefix);
+						}
+					}
+					activityPrefixes[i] = prefixes.toArray(new String[0]);
+				}
+			}
+		}
+
+		List<Coord> coords = new ArrayList<>();
+		List<Long> masks = new ArrayList<>();
+		if (plan != null) {
+			for (Activity activity : TripStructureUtils.getActivities(plan, TripStructureUtils.StageActivityHandling.ExcludeStageActivities)) {
+				Coord coord = activity.getCoord();
+				if (coord == null || coords.contains(coord)) {
+					// like before, the first activity at a location determines its type
+					continue;
+				}
+				long mask = baseMask;
+				for (int i = 0; i < count; i++) {
+					String[] prefixes = activityPrefixes[i];
+					if (prefixes != null && !matchesAny(activity.getType(), prefixes)) {
+						mask &= ~(1L << i);
+					}
+				}
+				coords.add(coord);
+				masks.add(mask);
+			}
+		}
+		long[] maskArray = new long[masks.size()];
+		for (int i = 0; i < maskArray.length; i++) {
+			maskArray[i] = masks.get(i);
+		}
+		return new PersonEligibility(plan, coords.toArray(new Coord[0]), maskArray, baseMask);
+	}
+
+	private static boolean matchesAny(String activityType, String[] prefixes) {
+		for (String prefix : prefixes) {
+			if (activityType.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private record PersonEligibility(Plan plan, Coord[] coords, long[] masks, long baseMask) {
+
+		int indexOf(Coord coord) {
+			for (int i = 0; i < this.coords.length; i++) {
+				if (this.coords[i].equals(coord)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+}
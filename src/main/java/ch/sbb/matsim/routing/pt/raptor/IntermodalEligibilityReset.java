@@ -0,0 +1,35 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import jakarta.inject.Inject;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationStartsListener;
+
+/**
+ * Invalidates the intermodal eligibility of all persons at the start of each iteration, before replanning. Person
+ * attributes and activity types changed by the previous iteration's listeners or strategies are thus taken into account,
+ * even if they did not change the selected plan.
+ */
+public class IntermodalEligibilityReset implements IterationStartsListener {
+
+	private final Population population;
+
+	@Inject
+	public IntermodalEligibilityReset(Scenario scenario) {
+		this(scenario.getPopulation());
+	}
+
+	IntermodalEligibilityReset(Population population) {
+		this.population = population;
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		for (Person person : this.population.getPersons().values()) {
+			IntermodalEligibilityIndex.invalidate(person);
+		}
+	}
+
+}
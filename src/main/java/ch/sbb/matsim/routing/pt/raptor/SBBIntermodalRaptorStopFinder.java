@@ -47,20 +47,26 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 	private final TransitSchedule transitSchedule;
 	private final Random random = MatsimRandom.getLocalInstance();
 	private final AccessEgressRouteCache accessEgressRouteCache;
+	private final SimulatedAccessEgressRouteCache simulatedRouteCache;
 	private final IntermodalAccessEgressParameterSet walkParameterset;
+	private final IntermodalEligibilityIndex eligibilityIndex;
+	private final Map<IntermodalAccessEgressParameterSet, StopTable> stopTables;
 
 	@Inject
 	public SBBIntermodalRaptorStopFinder(Config config, RaptorIntermodalAccessEgress intermodalAE,
 										 Map<String, Provider<RoutingModule>> routingModuleProviders,
-										 TransitSchedule transitSchedule, AccessEgressRouteCache accessEgressRouteCache) {
+										 TransitSchedule transitSchedule, AccessEgressRouteCache accessEgressRouteCache,
+										 SimulatedAccessEgressRouteCache simulatedRouteCache) {
 		this.intermodalAE = intermodalAE;
 		this.transitSchedule = transitSchedule;
 		this.accessEgressRouteCache = accessEgressRouteCache;
+		this.simulatedRouteCache = simulatedRouteCache;
 
 		SBBIntermodalConfiggroup intermodalConfigGroup = ConfigUtils.addOrGetModule(config, SBBIntermodalConfiggroup.class);
 		this.intermodalModeParams = intermodalConfigGroup.getModeParameterSets().stream().collect(Collectors.toMap(SBBIntermodalModeParameterSet::getMode, set -> set, (a, b) -> a));
 		SwissRailRaptorConfigGroup srrConfig = ConfigUtils.addOrGetModule(config, SwissRailRaptorConfigGroup.class);
 		walkParameterset = srrConfig.getIntermodalAccessEgressParameterSets().stream().filter(l -> l.getMode().equals(TransportMode.walk)).findFirst().orElseThrow(RuntimeException::new);
+		this.eligibilityIndex = new IntermodalEligibilityIndex(srrConfig.getIntermodalAccessEgressParameterSets(), this.intermodalModeParams);
 		this.routingModules = new HashMap<>();
 		if (srrConfig.isUseIntermodalAccessEgress()) {
 			for (IntermodalAccessEgressParameterSet params : srrConfig.getIntermodalAccessEgressParameterSets()) {
@@ -69,7 +75,36 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 
 			}
 		}
+		this.stopTables = buildStopTables(srrConfig.getIntermodalAccessEgressParameterSets());
+	}
+
+	/**
+	 * Stop attributes required per intermodal parameter set, indexed by {@link Id#index()} of the stops.
+	 * A <code>null</code> facility marks stops that were not part of the schedule at injection.
+	 */
+	private record StopTable(boolean[] filterMatches, Facility[] facilities, double[] transferTimes) {
+
+		boolean contains(int stopIndex) {
+			return stopIndex < this.facilities.length && this.facilities[stopIndex] != null;
+		}
+	}
 
+	private Map<IntermodalAccessEgressParameterSet, StopTable> buildStopTables(List<IntermodalAccessEgressParameterSet> paramSets) {
+		Map<IntermodalAccessEgressParameterSet, StopTable> tables = new IdentityHashMap<>();
+		int size = Id.getNumberOfIds(TransitStopFacility.class);
+		for (IntermodalAccessEgressParameterSet paramSet : paramSets) {
+			boolean[] filterMatches = new boolean[size];
+			Facility[] facilities = new Facility[size];
+			double[] transferTimes = new double[size];
+			for (TransitStopFacility stop : this.transitSchedule.getFacilities().values()) {
+				int index = stop.getId().index();
+				filterMatches[index] = stopFilterMatches(stop, paramSet);
+				facilities[index] = getStopFacility(stop, paramSet.getLinkIdAttribute());
+				transferTimes[index] = calcTransferTime(stop, paramSet.getMode());
+			}
+			tables.put(paramSet, new StopTable(filterMatches, facilities, transferTimes));
+		}
+		return tables;
 	}
 
 	@Override
@@ -123,8 +158,11 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 		List<InitialStop> initialStops = new ArrayList<>();
 
 		List<IntermodalAccessEgressParameterSet> filteredParameterSet = new ArrayList<>();
+		long eligible = person == null ? 0 : this.eligibilityIndex.getEligibleParameterSets(person, facility.getCoord());
 		for (IntermodalAccessEgressParameterSet paramSet : srrCfg.getIntermodalAccessEgressParameterSets()) {
-			if (personMatches(facility, person, paramSet)) {
+			int index = person == null ? -1 : this.eligibilityIndex.getIndex(paramSet);
+			boolean matches = index >= 0 ? (eligible & (1L << index)) != 0 : personMatches(facility, person, paramSet);
+			if (matches) {
 				filteredParameterSet.add(paramSet);
 			}
 		}
@@ -161,6 +199,9 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 		return initialStops;
 	}
 
+	/**
+	 * Evaluates the person and activity filters directly, used for parameter sets not covered by the {@link IntermodalEligibilityIndex}.
+	 */
 	private boolean personMatches(Facility facility, Person person, IntermodalAccessEgressParameterSet paramset) {
 		String personFilterAttribute = paramset.getPersonFilterAttribute();
 		String personFilterValue = paramset.getPersonFilterValue();
@@ -177,10 +218,9 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 					.filter(activity -> activity.getCoord().equals(facility.getCoord())).map(Activity::getType).findAny();
 			if (actType.isPresent()) {
 				final String activityType = actType.get();
-				List<SBBIntermodalModeParameterSet> filtered = intermodalModeParams.values().stream().filter(a -> a.getMode().equals(paramset.getMode()))
-						.collect(Collectors.toList());
-				if (filtered.size() == 1) {
-					String personActivityFilterAttribute = filtered.get(0).getParamPersonActivityFilterAttribute();
+				SBBIntermodalModeParameterSet modeParams = intermodalModeParams.get(paramset.getMode());
+				if (modeParams != null) {
+					String personActivityFilterAttribute = modeParams.getParamPersonActivityFilterAttribute();
 					if (personActivityFilterAttribute != null) {
 						attr = person.getAttributes().getAttribute(personActivityFilterAttribute);
 						if (attr != null) {
@@ -206,37 +246,27 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 		String mode = paramset.getMode();
 		SBBIntermodalModeParameterSet params = this.intermodalModeParams.get(mode);
 
-		boolean useMinimalTransferTimes = this.doUseMinimalTransferTimes(mode);
-
 		String overrideMode = null;
 		if (mode.equals(SBBModes.WALK_MAIN_MAINMODE) || mode.equals(SBBModes.PT_FALLBACK_MODE)) {
 			overrideMode = SBBModes.ACCESS_EGRESS_WALK;
 		}
 		String linkIdAttribute = paramset.getLinkIdAttribute();
-		String stopFilterAttribute = paramset.getStopFilterAttribute();
-		String stopFilterValue = paramset.getStopFilterValue();
+		StopTable stopTable = this.stopTables.get(paramset);
+		boolean useRouteCache = params != null && params.isRoutedOnNetwork() && (!params.isSimulatedOnNetwork());
+		boolean useSimulatedRouteCache = params != null && params.isRoutedOnNetwork() && params.isSimulatedOnNetwork() && this.simulatedRouteCache.isEnabled();
+		RoutingModule module = this.routingModules.get(mode);
 
 		Collection<TransitStopFacility> stopFacilities = data.stopsQT.getDisk(x, y, radius);
 		for (TransitStopFacility stop : stopFacilities) {
-			boolean filterMatches = true;
-			if (stopFilterAttribute != null) {
-				Object attr = stop.getAttributes().getAttribute(stopFilterAttribute);
-				String attrValue = attr == null ? null : attr.toString();
-				filterMatches = stopFilterValue.equals(attrValue);
-			}
+			int stopIndex = stop.getId().index();
+			boolean tabled = stopTable != null && stopTable.contains(stopIndex);
+			boolean filterMatches = tabled ? stopTable.filterMatches()[stopIndex] : stopFilterMatches(stop, paramset);
 			if (filterMatches) {
-				Facility stopFacility = stop;
-				if (linkIdAttribute != null) {
-					Object attr = stop.getAttributes().getAttribute(linkIdAttribute);
-					if (attr != null) {
-						stopFacility = new ChangedLinkFacility(stop, Id.create(attr.toString(), Link.class));
-					}
-				}
+				Facility stopFacility = tabled ? stopTable.facilities()[stopIndex] : getStopFacility(stop, linkIdAttribute);
 
 				List<? extends PlanElement> routeParts;
-				RoutingModule module = this.routingModules.get(mode);
 				if (direction == Direction.ACCESS) {
-					if (params != null && params.isRoutedOnNetwork() && (!params.isSimulatedOnNetwork())) {
+					if (useRouteCache) {
 						routeParts = getCachedTravelTime(stopFacility, facility, departureTime, person, mode, module, true);
 					} else {
                         if (stopFacility.getLinkId() == null) {
@@ -247,19 +277,29 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
                         }
                         Objects.requireNonNull(facility.getLinkId(), "Facility" + facility.getCoord() + "has no link Id associated.");
                         Objects.requireNonNull(stopFacility.getLinkId(), "StopFacility" + stop.getName() + "has no link Id associated.");
-                        routeParts = module.calcRoute(DefaultRoutingRequest.withoutAttributes(facility, stopFacility, departureTime, person));
+                        if (useSimulatedRouteCache) {
+                            routeParts = this.simulatedRouteCache.getRoute(mode, stopFacility, facility, departureTime, true, person,
+                                    () -> module.calcRoute(DefaultRoutingRequest.withoutAttributes(facility, stopFacility, departureTime, person)));
+                        } else {
+                            routeParts = module.calcRoute(DefaultRoutingRequest.withoutAttributes(facility, stopFacility, departureTime, person));
+                        }
                     }
 					if (routeParts == null) continue;
 
 				} else { // it's Egress
 					// We don't know the departure time for the egress trip, so just use the original departureTime,
 					// although it is wrong and might result in a wrong traveltime and thus wrong route.
-					if (params != null && params.isRoutedOnNetwork() && (!params.isSimulatedOnNetwork())) {
+					if (useRouteCache) {
 						routeParts = getCachedTravelTime(stopFacility, facility, departureTime, person, mode, module, false);
 					} else {
                       	Objects.requireNonNull(facility.getLinkId(), "Facility" + facility.getCoord() + "has no link Id associated.");
 						Objects.requireNonNull(stopFacility.getLinkId(), "StopFacility" + stop.getName() + "has no link Id associated.");
-                        routeParts = module.calcRoute(DefaultRoutingRequest.withoutAttributes(stopFacility, facility, departureTime, person));
+                        if (useSimulatedRouteCache) {
+                            routeParts = this.simulatedRouteCache.getRoute(mode, stopFacility, facility, departureTime, false, person,
+                                    () -> module.calcRoute(DefaultRoutingRequest.withoutAttributes(stopFacility, facility, departureTime, person)));
+                        } else {
+                            routeParts = module.calcRoute(DefaultRoutingRequest.withoutAttributes(stopFacility, facility, departureTime, person));
+                        }
                     }
 					if (routeParts == null) continue;
 					// clear the (wrong) departureTime so users don't get confused
@@ -279,41 +319,15 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 					}
 				}
 				if (stopFacility != stop) {
+					double transferTime = tabled ? stopTable.transferTimes()[stopIndex] : calcTransferTime(stop, mode);
+					// the cached route parts are a list of our own and can be extended directly
+					List<PlanElement> tmp = useRouteCache ? (List<PlanElement>) routeParts : new ArrayList<>(routeParts);
 					if (direction == Direction.ACCESS) {
-						Leg transferLeg = PopulationUtils.createLeg(SBBModes.ACCESS_EGRESS_WALK);
-						Route transferRoute = RouteUtils.createGenericRouteImpl(stopFacility.getLinkId(), stop.getLinkId());
-						double transferTime = 0.0;
-						if (useMinimalTransferTimes) {
-							transferTime = this.getMinimalTransferTime(stop);
-						}
-						transferTime += this.getStopAccessTime(stop, mode);
-						transferRoute.setTravelTime(transferTime);
-						transferRoute.setDistance(0);
-						transferLeg.setRoute(transferRoute);
-						transferLeg.setTravelTime(transferTime);
-
-						List<PlanElement> tmp = new ArrayList<>(routeParts.size() + 1);
-						tmp.addAll(routeParts);
-						tmp.add(transferLeg);
-						routeParts = tmp;
+						tmp.add(createTransferLeg(stopFacility.getLinkId(), stop.getLinkId(), transferTime));
 					} else {
-						Leg transferLeg = PopulationUtils.createLeg(SBBModes.ACCESS_EGRESS_WALK);
-						Route transferRoute = RouteUtils.createGenericRouteImpl(stop.getLinkId(), stopFacility.getLinkId());
-						double transferTime = 0.0;
-						if (useMinimalTransferTimes) {
-							transferTime = this.getMinimalTransferTime(stop);
-						}
-						transferTime += this.getStopAccessTime(stop, mode);
-						transferRoute.setTravelTime(transferTime);
-						transferRoute.setDistance(0);
-						transferLeg.setRoute(transferRoute);
-						transferLeg.setTravelTime(transferTime);
-
-						List<PlanElement> tmp = new ArrayList<>(routeParts.size() + 1);
-						tmp.add(transferLeg);
-						tmp.addAll(routeParts);
-						routeParts = tmp;
+						tmp.add(0, createTransferLeg(stop.getLinkId(), stopFacility.getLinkId(), transferTime));
 					}
+					routeParts = tmp;
 				}
 				RaptorIntermodalAccessEgress.RIntermodalAccessEgress accessEgress = this.intermodalAE.calcIntermodalAccessEgress(routeParts, parameters, person, direction);
 				InitialStop iStop = new InitialStop(stop, accessEgress.disutility, accessEgress.travelTime, accessEgress.routeParts);
@@ -322,6 +336,44 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 		}
 	}
 	
+	private static boolean stopFilterMatches(TransitStopFacility stop, IntermodalAccessEgressParameterSet paramset) {
+		String stopFilterAttribute = paramset.getStopFilterAttribute();
+		if (stopFilterAttribute == null) {
+			return true;
+		}
+		Object attr = stop.getAttributes().getAttribute(stopFilterAttribute);
+		String attrValue = attr == null ? null : attr.toString();
+		return paramset.getStopFilterValue().equals(attrValue);
+	}
+
+	private static Facility getStopFacility(TransitStopFacility stop, String linkIdAttribute) {
+		if (linkIdAttribute != null) {
+			Object attr = stop.getAttributes().getAttribute(linkIdAttribute);
+			if (attr != null) {
+				return new ChangedLinkFacility(stop, Id.create(attr.toString(), Link.class));
+			}
+		}
+		return stop;
+	}
+
+	private double calcTransferTime(TransitStopFacility stop, String mode) {
+		double transferTime = 0.0;
+		if (this.doUseMinimalTransferTimes(mode)) {
+			transferTime = this.getMinimalTransferTime(stop);
+		}
+		return transferTime + this.getStopAccessTime(stop, mode);
+	}
+
+	private static Leg createTransferLeg(Id<Link> fromLinkId, Id<Link> toLinkId, double transferTime) {
+		Leg transferLeg = PopulationUtils.createLeg(SBBModes.ACCESS_EGRESS_WALK);
+		Route transferRoute = RouteUtils.createGenericRouteImpl(fromLinkId, toLinkId);
+		transferRoute.setTravelTime(transferTime);
+		transferRoute.setDistance(0);
+		transferLeg.setRoute(transferRoute);
+		transferLeg.setTravelTime(transferTime);
+		return transferLeg;
+	}
+
 	private double getStopAccessTime(TransitStopFacility stop, String mode) {
 		Double accessTime;
 		try {
@@ -340,7 +392,7 @@ public class SBBIntermodalRaptorStopFinder implements RaptorStopFinder {
 
         Id<Link> startLink = backwards ? actFacility.getLinkId() : stopFacility.getLinkId();
         Id<Link> endLink = backwards ? stopFacility.getLinkId() : actFacility.getLinkId();
-        List<PlanElement> travel = new ArrayList<>();
+        List<PlanElement> travel = new ArrayList<>(2);
         double accessTime = backwards ? characteristics.egressTime() : characteristics.accessTime();
         double egressTime = backwards ? characteristics.accessTime() : characteristics.egressTime();
 
@@ -0,0 +1,225 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.config.SBBIntermodalConfiggroup;
+import ch.sbb.matsim.csv.CSVWriter;
+import jakarta.inject.Inject;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.facilities.Facility;
+import org.matsim.vehicles.VehicleUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caches the access and egress routes of intermodal modes that are simulated on the network, and thus cannot use the
+ * {@link AccessEgressRouteCache}. Routes are keyed by the activity location, the stop, the mode, the direction and the
+ * departure time bin. The cache holds at most the configured number of routes, split into segments that each evict
+ * their least recently used route. Capacities below the default number of segments use one segment per route, so the
+ * capacity is never exceeded.
+ * <p>
+ * As the travel times change from iteration to iteration, the cache is cleared at the start of each iteration.
+ * Person specific routing (e.g. randomized travel disutilities) is ignored for cached routes, the first routed
+ * person of a key determines the route for all others in the same iteration. Only the vehicle of network routes is
+ * replaced by the vehicle of the requesting person.
+ * The hits and misses of each iteration are written to {@value #STATS_FILENAME} in the output directory.
+ */
+public class SimulatedAccessEgressRouteCache implements IterationStartsListener, IterationEndsListener {
+
+	private static final Logger log = LogManager.getLogger(SimulatedAccessEgressRouteCache.class);
+	static final String STATS_FILENAME = "simulatedAccessEgressRouteCacheStats.csv";
+	private static final int SEGMENTS = 32;
+	private static final CachedRoute NO_ROUTE = new CachedRoute(null, 0);
+
+	private final int capacity;
+	private final double timeBinSize;
+	private final OutputDirectoryHierarchy controlerIO;
+	private final Segment[] segments;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final List<String[]> statsHistory = new ArrayList<>();
+
+	@Inject
+	public SimulatedAccessEgressRouteCache(Config config, OutputDirectoryHierarchy controlerIO) {
+		this(ConfigUtils.addOrGetModule(config, SBBIntermodalConfiggroup.class), controlerIO);
+	}
+
+	SimulatedAccessEgressRouteCache(SBBIntermodalConfiggroup intermodalConfigGroup, OutputDirectoryHierarchy controlerIO) {
+		this.capacity = intermodalConfigGroup.getSimulatedAccessEgressRouteCacheCapacity();
+		this.timeBinSize = intermodalConfigGroup.getSimulatedAccessEgressRouteCacheTimeBin();
+		this.controlerIO = controlerIO;
+		this.segments = new Segment[Math.max(0, Math.min(SEGMENTS, this.capacity))];
+		for (int i = 0; i < this.segments.length; i++) {
+			// distribute the remainder, so the segments add up to the capacity
+			this.segments[i] = new Segment(this.capacity / this.segments.length + (i < this.capacity % this.segments.length ? 1 : 0));
+		}
+	}
+
+	public boolean isEnabled() {
+		return this.capacity > 0;
+	}
+
+	/**
+	 * Returns a copy of the cached route between the activity facility and the stop, or calculates the route with the
+	 * given router and caches it. The returned list is always a copy and may be modified by the caller.
+	 *
+	 * @param person the person the route is requested for, network routes of the copy use the person's vehicle
+	 * @return the route parts, or <code>null</code> if no route was found
+	 */
+	public List<? extends PlanElement> getRoute(String mode, Facility stopFacility, Facility actFacility, double departureTime, boolean access, Person person,
+			Supplier<List<? extends PlanElement>> router) {
+		if (!isEnabled()) {
+			return router.get();
+		}
+		RouteKey key = new RouteKey(actFacility.getLinkId(), actFacility.getCoord().getX(), actFacility.getCoord().getY(), stopFacility.getLinkId(),
+				mode, access, (int) Math.floor(departureTime / this.timeBinSize));
+		Segment segment = this.segments[Math.floorMod(key.hashCode(), this.segments.length)];
+		CachedRoute cached;
+		synchronized (segment) {
+			cached = segment.get(key);
+		}
+		if (cached != null) {
+			this.hits.increment();
+		} else {
+			this.misses.increment();
+			List<? extends PlanElement> routeParts = router.get();
+			cached = routeParts == null ? NO_ROUTE : new CachedRoute(copy(routeParts, 0, null), departureTime);
+			synchronized (segment) {
+				segment.put(key, cached);
+			}
+		}
+		if (cached.routeParts == null) {
+			return null;
+		}
+		return copy(cached.routeParts, departureTime - cached.departureTime, person);
+	}
+
+	/**
+	 * @param person if not <code>null</code>, network routes with a vehicle are assigned the person's vehicle of the leg mode
+	 */
+	private static List<PlanElement> copy(List<? extends PlanElement> routeParts, double timeShift, Person person) {
+		List<PlanElement> copy = new ArrayList<>(routeParts.size() + 1);
+		for (PlanElement pe : routeParts) {
+			if (pe instanceof Leg leg) {
+				Leg legCopy = PopulationUtils.createLeg(leg);
+				if (timeShift != 0 && leg.getDepartureTime().isDefined()) {
+					legCopy.setDepartureTime(leg.getDepartureTime().seconds() + timeShift);
+				}
+				if (person != null && legCopy.getRoute() instanceof NetworkRoute route && route.getVehicleId() != null) {
+					route.setVehicleId(VehicleUtils.getVehicleId(person, leg.getMode()));
+				}
+				copy.add(legCopy);
+			} else if (pe instanceof Activity activity) {
+				Activity activityCopy = PopulationUtils.createActivity(activity);
+				if (timeShift != 0 && activity.getEndTime().isDefined()) {
+					activityCopy.setEndTime(activity.getEndTime().seconds() + timeShift);
+				}
+				copy.add(activityCopy);
+			} else {
+				copy.add(pe);
+			}
+		}
+		return copy;
+	}
+
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+
+	public void clear() {
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		// travel times were updated at the end of the previous iteration
+		clear();
+		this.hits.reset();
+		this.misses.reset();
+		this.evictions.reset();
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		if (!isEnabled()) {
+			return;
+		}
+		long hitCount = getHits();
+		long missCount = getMisses();
+		double hitRate = hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount);
+		log.info("Simulated access/egress route cache: {} hits, {} misses, {} evictions, hit rate {}.", hitCount, missCount, getEvictions(), hitRate);
+		this.statsHistory.add(new String[]{Integer.toString(event.getIteration()), Long.toString(hitCount), Long.toString(missCount), Long.toString(getEvictions()),
+				String.valueOf(hitRate)});
+		String[] columns = new String[]{"iteration", "hits", "misses", "evictions", "hitRate"};
+		try (CSVWriter writer = new CSVWriter(null, columns, this.controlerIO.getOutputFilename(STATS_FILENAME))) {
+			for (String[] row : this.statsHistory) {
+				for (int i = 0; i < columns.length; i++) {
+					writer.set(columns[i], row[i]);
+				}
+				writer.writeRow();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private record RouteKey(Id<Link> actLinkId, double actX, double actY, Id<Link> stopLinkId, String mode, boolean access, int timeBin) {
+	}
+
+	private record CachedRoute(List<PlanElement> routeParts, double departureTime) {
+	}
+
+	private final class Segment extends LinkedHashMap<RouteKey, CachedRoute> {
+
+		private final int maxSize;
+
+		Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<RouteKey, CachedRoute> eldest) {
+			if (size() > this.maxSize) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Car and bike travel times and distances from all cells of the grid around one stop, stored as one
+ * primitive column per metric. Travel times are stored as unsigned 16-bit seconds, the highest value
+ * marks cells from which the stop is unreachable. The columns are either heap arrays or slices of a
+ * memory-mapped cache file, see {@link GridbasedAccessEgressCacheFile}.
+ */
+final class StopGrid {
+
+    static final int UNREACHABLE_TIME = 9999;
+    static final int UNREACHABLE_DISTANCE = 99999;
+    private static final char UNREACHABLE = Character.MAX_VALUE;
+    private static final char MAX_TIME = Character.MAX_VALUE - 1;
+
+    /**
+     * Bytes required per cell: two 16-bit times and two 32-bit distances.
+     */
+    static final int BYTES_PER_CELL = 2 * Character.BYTES + 2 * Integer.BYTES;
+
+    final CharBuffer carTimes;
+    final CharBuffer bikeTimes;
+    final IntBuffer carDistances;
+    final IntBuffer bikeDistances;
+
+    StopGrid(int cellCount) {
+        this(CharBuffer.allocate(cellCount), CharBuffer.allocate(cellCount), IntBuffer.allocate(cellCount), IntBuffer.allocate(cellCount));
+    }
+
+    StopGrid(CharBuffer carTimes, CharBuffer bikeTimes, IntBuffer carDistances, IntBuffer bikeDistances) {
+        this.carTimes = carTimes;
+        this.bikeTimes = bikeTimes;
+        this.carDistances = carDistances;
+        this.bikeDistances = bikeDistances;
+    }
+
+    int getCellCount() {
+        return this.carTimes.capacity();
+    }
+
+    void setCar(int cell, double travelTime, double distance) {
+        this.carTimes.put(cell, encodeTime(travelTime));
+        this.carDistances.put(cell, (int) distance);
+    }
+
+    void setCarUnreachable(int cell) {
+        this.carTimes.put(cell, UNREACHABLE);
+        this.carDistances.put(cell, UNREACHABLE_DISTANCE);
+    }
+
+    void setBike(int cell, double travelTime, double distance) {
+        this.bikeTimes.put(cell, encodeTime(travelTime));
+        this.bikeDistances.put(cell, (int) distance);
+    }
+
+    void setBikeUnreachable(int cell) {
+        this.bikeTimes.put(cell, UNREACHABLE);
+        this.bikeDistances.put(cell, UNREACHABLE_DISTANCE);
+    }
+
+    int getCarTime(int cell) {
+        return decodeTime(this.carTimes.get(cell));
+    }
+
+    int getCarDistance(int cell) {
+        return this.carDistances.get(cell);
+    }
+
+    int getBikeTime(int cell) {
+        return decodeTime(this.bikeTimes.get(cell));
+    }
+
+    int getBikeDistance(int cell) {
+        return this.bikeDistances.get(cell);
+    }
+
+    private static char encodeTime(double travelTime) {
+        return (char) Math.max(0, Math.min((int) travelTime, MAX_TIME));
+    }
+
+    private static int decodeTime(char value) {
+        return value == UNREACHABLE ? UNREACHABLE_TIME : value;
+    }
+
+}
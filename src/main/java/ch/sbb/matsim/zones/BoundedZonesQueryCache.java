@@ -0,0 +1,207 @@
+package ch.sbb.matsim.zones;
+
+import org.matsim.api.core.v01.Id;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A variant of {@link ZonesQueryCache} with bounded memory usage that does not allocate on lookups.
+ * <p>
+ * Results are stored in primitive tables keyed by the bits of the queried x and y coordinates. Each table is
+ * set-associative: a coordinate hashes to a set of 8 slots, which are probed linearly. If all slots of a set
+ * are occupied, one is evicted following the CLOCK algorithm, so recently queried coordinates are kept.
+ * Hits and misses are counted once per query, evictions for both tables together.
+ */
+public class BoundedZonesQueryCache implements Zones {
+
+	private static final Zone NO_ZONE = new SimpleFeatureZone(null, null);
+	private final Zones zones;
+	private final CoordTable cache;
+	private final CoordTable nearestCache;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param capacity the maximum number of coordinates cached for each of {@link #findZone(double, double)} and
+	 *                 {@link #findNearestZone(double, double, double)}.
+	 */
+	public BoundedZonesQueryCache(Zones zones, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive, but is " + capacity);
+		}
+		this.zones = zones;
+		this.cache = new CoordTable(capacity);
+		this.nearestCache = new CoordTable(capacity);
+	}
+
+	@Override
+	public Id<Zones> getId() {
+		return this.zones.getId();
+	}
+
+	@Override
+	public int size() {
+		return this.zones.size();
+	}
+
+	private Zone zoneOrNull(Zone zone) {
+		if (zone == NO_ZONE) {
+			return null;
+		}
+		return zone;
+	}
+
+	@Override
+	public Zone findZone(double x, double y) {
+		Zone z = this.cache.get(x, y);
+		if (z != null) {
+			this.hits.increment();
+			return zoneOrNull(z);
+		}
+		this.misses.increment();
+		z = this.zones.findZone(x, y);
+		this.cache.put(x, y, z == null ? NO_ZONE : z);
+		return z;
+	}
+
+	@Override
+	public Zone findNearestZone(double x, double y, double maxDistance) {
+		Zone z = this.cache.get(x, y);
+		if (z != null && z != NO_ZONE) {
+			this.hits.increment();
+			return z;
+		}
+		Zone nearest = this.nearestCache.get(x, y);
+		if (nearest != null) {
+			this.hits.increment();
+			return zoneOrNull(nearest);
+		}
+		this.misses.increment();
+		if (z == null) {
+			z = this.zones.findZone(x, y);
+			this.cache.put(x, y, z == null ? NO_ZONE : z);
+			if (z != null) {
+				return z;
+			}
+		}
+		nearest = this.zones.findNearestZone(x, y, maxDistance);
+		this.nearestCache.put(x, y, nearest == null ? NO_ZONE : nearest);
+		return nearest;
+	}
+
+	@Override
+	public Zone getZone(Id<Zone> id) {
+		return this.zones.getZone(id);
+	}
+
+	@Override
+	public List<Zone> getZones() {
+		return this.zones.getZones();
+	}
+
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "BoundedZonesQueryCache[zones=" + getId() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	private final class CoordTable {
+
+		private static final int WAYS = 8;
+		private static final int LOCK_STRIPES = 64;
+
+		private final long[] xBits;
+		private final long[] yBits;
+		private final Zone[] values;
+		private final boolean[] referenced;
+		private final byte[] hands;
+		private final Object[] locks = new Object[LOCK_STRIPES];
+		private final int setMask;
+
+		CoordTable(int capacity) {
+			int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS));
+			this.setMask = sets - 1;
+			this.xBits = new long[sets * WAYS];
+			this.yBits = new long[sets * WAYS];
+			this.values = new Zone[sets * WAYS];
+			this.referenced = new boolean[sets * WAYS];
+			this.hands = new byte[sets];
+			for (int i = 0; i < LOCK_STRIPES; i++) {
+				this.locks[i] = new Object();
+			}
+		}
+
+		Zone get(double x, double y) {
+			long xb = bits(x);
+			long yb = bits(y);
+			int set = hash(xb, yb) & this.setMask;
+			int base = set * WAYS;
+			synchronized (this.locks[set & (LOCK_STRIPES - 1)]) {
+				for (int i = base; i < base + WAYS; i++) {
+					if (this.values[i] != null && this.xBits[i] == xb && this.yBits[i] == yb) {
+						this.referenced[i] = true;
+						return this.values[i];
+					}
+				}
+			}
+			return null;
+		}
+
+		void put(double x, double y, Zone zone) {
+			long xb = bits(x);
+			long yb = bits(y);
+			int set = hash(xb, yb) & this.setMask;
+			int base = set * WAYS;
+			synchronized (this.locks[set & (LOCK_STRIPES - 1)]) {
+				int slot = -1;
+				for (int i = base; i < base + WAYS; i++) {
+					if (this.values[i] == null || (this.xBits[i] == xb && this.yBits[i] == yb)) {
+						slot = i;
+						break;
+					}
+				}
+				if (slot < 0) {
+					int hand = this.hands[set];
+					while (this.referenced[base + hand]) {
+						this.referenced[base + hand] = false;
+						hand = (hand + 1) % WAYS;
+					}
+					slot = base + hand;
+					this.hands[set] = (byte) ((hand + 1) % WAYS);
+					evictions.increment();
+				}
+				this.xBits[slot] = xb;
+				this.yBits[slot] = yb;
+				this.values[slot] = zone;
+				this.referenced[slot] = false;
+			}
+		}
+
+		private static long bits(double value) {
+			// adding 0.0 turns -0.0 into 0.0, so both are treated as the same coordinate like in Coord.equals()
+			return Double.doubleToLongBits(value + 0.0);
+		}
+
+		private static int hash(long xb, long yb) {
+			long h = xb * 0x9E3779B97F4A7C15L + yb;
+			h ^= h >>> 33;
+			h *= 0xff51afd7ed558ccdL;
+			h ^= h >>> 33;
+			return (int) h;
+		}
+	}
+
+}
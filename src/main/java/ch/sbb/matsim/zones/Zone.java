@@ -1,6 +1,7 @@
 package ch.sbb.matsim.zones;
 
 import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
 import org.matsim.api.core.v01.Id;
 
@@ -19,4 +20,11 @@ public interface Zone {
 
 	double distance(Point pt);
 
+	/**
+	 * @return the geometry of the zone, or <code>null</code> if it is not available. Only used to build spatial indices.
+	 */
+	default Geometry getGeometry() {
+		return null;
+	}
+
 }
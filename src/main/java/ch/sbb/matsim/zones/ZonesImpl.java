@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.index.SpatialIndex;
@@ -19,10 +21,14 @@ import org.matsim.core.utils.geometry.geotools.MGC;
  */
 public class ZonesImpl implements Zones {
 
+	private static final Logger log = LogManager.getLogger(ZonesImpl.class);
+
 	private final Id<Zones> id;
 	private final List<Zone> zones = new ArrayList<>();
 	private ConcurrentHashMap<Id<Zone>, Zone> lookup;
 	private SpatialIndex qt = null;
+	private double rasterCellSize = 0;
+	private ZonesRasterIndex raster = null;
 
 	public ZonesImpl(Id<Zones> id) {
 		this.id = id;
@@ -37,16 +43,31 @@ public class ZonesImpl implements Zones {
 		this.zones.add(zone);
 		this.qt = null;
 		this.lookup = null;
+		this.raster = null;
 	}
 
 	public void remove(Zone zone) {
 		this.zones.remove(zone);
 		this.qt = null;
 		this.lookup = null;
+		this.raster = null;
 	}
 
 	public void clear() {
 		this.zones.clear();
+		this.qt = null;
+		this.lookup = null;
+		this.raster = null;
+	}
+
+	/**
+	 * Use a raster index with the given cell size for {@link #findZone(double, double)} instead of the quadtree.
+	 * Cells fully covered by a zone are answered without any geometric test, so the cell size should be small
+	 * compared to the zones. A cell size of 0 disables the raster index.
+	 */
+	public void setRasterCellSize(double rasterCellSize) {
+		this.rasterCellSize = rasterCellSize;
+		this.raster = null;
 	}
 
 	@Override
@@ -56,6 +77,9 @@ public class ZonesImpl implements Zones {
 
 	@Override
 	public Zone findZone(double x, double y) {
+		if (this.rasterCellSize > 0) {
+			return getRasterIndex().findZone(x, y);
+		}
 		SpatialIndex qt = getSpatialIndex();
 		Point pt = MGC.xy2Point(x, y);
 		List elements = qt.query(pt.getEnvelopeInternal());
@@ -121,6 +145,25 @@ public class ZonesImpl implements Zones {
 		return qt;
 	}
 
+	private ZonesRasterIndex getRasterIndex() {
+		ZonesRasterIndex raster = this.raster;
+		if (raster == null) {
+			raster = buildRasterIndex();
+		}
+		return raster;
+	}
+
+	private synchronized ZonesRasterIndex buildRasterIndex() {
+		ZonesRasterIndex raster = this.raster;
+		if (raster != null) {
+			return raster;
+		}
+		raster = new ZonesRasterIndex(ImmutableList.copyOf(this.zones), this.rasterCellSize);
+		log.info("Built raster index for zones " + this.id + " with " + raster.getCellCount() + " cells, of which " + raster.getBorderCellCount() + " are on zone borders.");
+		this.raster = raster;
+		return raster;
+	}
+
 	private Map<Id<Zone>, Zone> getLookupMap() {
 		Map<Id<Zone>, Zone> map = this.lookup;
 		if (map == null) {
@@ -35,6 +35,9 @@ public final class ZonesLoader {
 			String filenameString = group.getFilename();
 			String idAttribute = group.getIdAttributeName();
 			Zones zones = loadZones(id, filenameURL, filenameString, idAttribute);
+			if (group.getRasterCellSize() > 0 && zones instanceof ZonesImpl) {
+				((ZonesImpl) zones).setRasterCellSize(group.getRasterCellSize());
+			}
 			zonesCollection.addZones(zones);
 		}
     }
@@ -0,0 +1,193 @@
+package ch.sbb.matsim.zones;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.core.utils.geometry.geotools.MGC;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform raster over the extent of all zones to speed up point-in-zone lookups.
+ * <p>
+ * Each cell either references the single zone that fully covers it, is empty, or references a short list of
+ * candidate zones whose geometry intersects the cell. Lookups in fully covered or empty cells are a plain
+ * array read, only cells on zone borders require exact tests with {@link Zone#contains(Point)}.
+ * Zones that do not provide their geometry are always treated as candidates of all cells of their envelope.
+ */
+final class ZonesRasterIndex {
+
+	private static final int EMPTY = -1;
+
+	private final List<Zone> zones;
+	private final double cellSize;
+	private final double minX;
+	private final double minY;
+	private final int columns;
+	private final int rows;
+	/**
+	 * per cell: a zone index if &ge; 0, {@link #EMPTY}, or the encoded index <code>-(list + 2)</code> of a candidate list.
+	 */
+	private final int[] cells;
+	private final int[] candidateOffsets;
+	private final int[] candidates;
+
+	ZonesRasterIndex(List<Zone> zones, double cellSize) {
+		this.zones = zones;
+		this.cellSize = cellSize;
+
+		Envelope extent = new Envelope();
+		for (Zone zone : zones) {
+			extent.expandToInclude(zone.getEnvelope());
+		}
+		if (extent.isNull()) {
+			this.minX = 0;
+			this.minY = 0;
+			this.columns = 0;
+			this.rows = 0;
+		} else {
+			this.minX = extent.getMinX();
+			this.minY = extent.getMinY();
+			this.columns = (int) (extent.getWidth() / cellSize) + 1;
+			this.rows = (int) (extent.getHeight() / cellSize) + 1;
+		}
+		this.cells = new int[Math.multiplyExact(this.columns, this.rows)];
+		Arrays.fill(this.cells, EMPTY);
+
+		// candidates are first collected as linked lists per cell, stored in growing primitive arrays
+		int[] head = new int[this.cells.length];
+		Arrays.fill(head, EMPTY);
+		int[] next = new int[1024];
+		int[] zoneOfEntry = new int[1024];
+		int entryCount = 0;
+		GeometryFactory geometryFactory = new GeometryFactory();
+		PreparedGeometryFactory preparedGeometryFactory = new PreparedGeometryFactory();
+
+		for (int zoneIndex = 0; zoneIndex < zones.size(); zoneIndex++) {
+			Zone zone = zones.get(zoneIndex);
+			Geometry geometry = zone.getGeometry();
+			PreparedGeometry prepared = geometry == null ? null : preparedGeometryFactory.create(geometry);
+			Envelope envelope = zone.getEnvelope();
+			int fromColumn = getColumn(envelope.getMinX());
+			int toColumn = getColumn(envelope.getMaxX());
+			int fromRow = getRow(envelope.getMinY());
+			int toRow = getRow(envelope.getMaxY());
+			for (int row = fromRow; row <= toRow; row++) {
+				for (int column = fromColumn; column <= toColumn; column++) {
+					int cell = row * this.columns + column;
+					if (this.cells[cell] >= 0) {
+						continue; // already fully covered by another zone
+					}
+					if (prepared != null) {
+						Geometry cellGeometry = geometryFactory.toGeometry(getCellEnvelope(column, row));
+						if (prepared.covers(cellGeometry)) {
+							this.cells[cell] = zoneIndex;
+							continue;
+						}
+						if (!prepared.intersects(cellGeometry)) {
+							continue;
+						}
+					}
+					if (entryCount == next.length) {
+						next = Arrays.copyOf(next, entryCount * 2);
+						zoneOfEntry = Arrays.copyOf(zoneOfEntry, entryCount * 2);
+					}
+					zoneOfEntry[entryCount] = zoneIndex;
+					next[entryCount] = head[cell];
+					head[cell] = entryCount;
+					entryCount++;
+				}
+			}
+		}
+
+		// compact the candidate lists of all border cells, keeping the order in which the zones were added
+		int listCount = 0;
+		int candidateCount = 0;
+		for (int cell = 0; cell < this.cells.length; cell++) {
+			if (this.cells[cell] == EMPTY && head[cell] != EMPTY) {
+				listCount++;
+				for (int entry = head[cell]; entry != EMPTY; entry = next[entry]) {
+					candidateCount++;
+				}
+			}
+		}
+		this.candidateOffsets = new int[listCount + 1];
+		this.candidates = new int[candidateCount];
+		int list = 0;
+		int offset = 0;
+		for (int cell = 0; cell < this.cells.length; cell++) {
+			if (this.cells[cell] == EMPTY && head[cell] != EMPTY) {
+				this.candidateOffsets[list] = offset;
+				int end = offset;
+				for (int entry = head[cell]; entry != EMPTY; entry = next[entry]) {
+					end++;
+				}
+				// the linked list is in reverse order of insertion
+				int pos = end;
+				for (int entry = head[cell]; entry != EMPTY; entry = next[entry]) {
+					this.candidates[--pos] = zoneOfEntry[entry];
+				}
+				this.cells[cell] = -(list + 2);
+				offset = end;
+				list++;
+			}
+		}
+		this.candidateOffsets[listCount] = offset;
+	}
+
+	Zone findZone(double x, double y) {
+		double dx = x - this.minX;
+		double dy = y - this.minY;
+		if (dx < 0 || dy < 0) {
+			return null;
+		}
+		int column = (int) (dx / this.cellSize);
+		int row = (int) (dy / this.cellSize);
+		if (column >= this.columns || row >= this.rows) {
+			return null;
+		}
+		int value = this.cells[row * this.columns + column];
+		if (value >= 0) {
+			return this.zones.get(value);
+		}
+		if (value == EMPTY) {
+			return null;
+		}
+		int list = -value - 2;
+		Point pt = MGC.xy2Point(x, y);
+		for (int i = this.candidateOffsets[list], end = this.candidateOffsets[list + 1]; i < end; i++) {
+			Zone zone = this.zones.get(this.candidates[i]);
+			if (zone.contains(pt)) {
+				return zone;
+			}
+		}
+		return null;
+	}
+
+	int getBorderCellCount() {
+		return this.candidateOffsets.length - 1;
+	}
+
+	int getCellCount() {
+		return this.cells.length;
+	}
+
+	private int getColumn(double x) {
+		return Math.min(this.columns - 1, Math.max(0, (int) ((x - this.minX) / this.cellSize)));
+	}
+
+	private int getRow(double y) {
+		return Math.min(this.rows - 1, Math.max(0, (int) ((y - this.minY) / this.cellSize)));
+	}
+
+	private Envelope getCellEnvelope(int column, int row) {
+		double x = this.minX + column * this.cellSize;
+		double y = this.minY + row * this.cellSize;
+		return new Envelope(x, x + this.cellSize, y, y + this.cellSize);
+	}
+
+}
@@ -0,0 +1,89 @@
+package ch.sbb.matsim.accessibility;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class AccessibilityBinaryFileTest {
+
+	@RegisterExtension
+	public final MatsimTestUtils helper = new MatsimTestUtils();
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		File file = new File(this.helper.getOutputDirectory(), "accessibility.bin");
+		String[] modeIds = {"mm", "pt"};
+		try (AccessibilityBinaryFile.Writer writer = new AccessibilityBinaryFile.Writer(file, modeIds, 0)) {
+			writer.writeBlock(List.of(new Tuple<>(new Coord(100, 200), new double[]{1.5, 2.5}), new Tuple<>(new Coord(300, 400), new double[]{3.5, 4.5})));
+			writer.writeBlock(List.of(new Tuple<>(new Coord(500, 600), new double[]{5.5, 6.5})));
+		}
+
+		AccessibilityBinaryFile.Results results = AccessibilityBinaryFile.read(file);
+		Assert.assertArrayEquals(modeIds, results.modeIds());
+		Assert.assertEquals(3, results.size());
+		Assert.assertArrayEquals(new double[]{100, 300, 500}, results.x(), 0.0);
+		Assert.assertArrayEquals(new double[]{200, 400, 600}, results.y(), 0.0);
+		Assert.assertArrayEquals(new double[]{1.5, 3.5, 5.5}, results.accessibilities()[0], 0.0);
+		Assert.assertArrayEquals(new double[]{2.5, 4.5, 6.5}, results.accessibilities()[1], 0.0);
+	}
+
+	@Test
+	public void testContinueAfterTruncation() throws IOException {
+		File file = new File(this.helper.getOutputDirectory(), "accessibility.bin");
+		String[] modeIds = {"mm"};
+		long position;
+		try (AccessibilityBinaryFile.Writer writer = new AccessibilityBinaryFile.Writer(file, modeIds, 0)) {
+			writer.writeBlock(List.of(new Tuple<>(new Coord(100, 200), new double[]{1.0})));
+			position = writer.flush();
+			writer.writeBlock(List.of(new Tuple<>(new Coord(300, 400), new double[]{2.0}))); // e.g. interrupted before the block was recorded as completed
+		}
+
+		try (AccessibilityBinaryFile.Writer writer = new AccessibilityBinaryFile.Writer(file, modeIds, position)) {
+			writer.writeBlock(List.of(new Tuple<>(new Coord(500, 600), new double[]{3.0})));
+		}
+
+		AccessibilityBinaryFile.Results results = AccessibilityBinaryFile.read(file);
+		Assert.assertArrayEquals(new double[]{100, 500}, results.x(), 0.0);
+		Assert.assertArrayEquals(new double[]{1.0, 3.0}, results.accessibilities()[0], 0.0);
+	}
+
+	@Test
+	public void testMerge() throws IOException {
+		String[] modeIds = {"mm", "car"};
+		File part1 = new File(this.helper.getOutputDirectory(), "accessibility_part1of2.bin");
+		try (AccessibilityBinaryFile.Writer writer = new AccessibilityBinaryFile.Writer(part1, modeIds, 0)) {
+			writer.writeBlock(List.of(new Tuple<>(new Coord(300, 100), new double[]{3.0, 30.0}), new Tuple<>(new Coord(100, 200), new double[]{2.0, 20.0})));
+		}
+		File part2 = new File(this.helper.getOutputDirectory(), "accessibility_part2of2.bin");
+		try (AccessibilityBinaryFile.Writer writer = new AccessibilityBinaryFile.Writer(part2, modeIds, 0)) {
+			writer.writeBlock(List.of(new Tuple<>(new Coord(100, 100), new double[]{1.0, 10.0})));
+		}
+
+		File csv1 = new File(this.helper.getOutputDirectory(), "merged1.csv");
+		File csv2 = new File(this.helper.getOutputDirectory(), "merged2.csv");
+		File binary = new File(this.helper.getOutputDirectory(), "merged1.bin");
+		AccessibilityBinaryFile.merge(List.of(part1, part2), csv1, binary);
+		AccessibilityBinaryFile.merge(List.of(part2, part1), csv2, null);
+
+		List<String> lines = Files.readAllLines(csv1.toPath());
+		Assert.assertEquals(List.of("X,Y,mm,car", "100.0,100.0,1.0,10.0", "100.0,200.0,2.0,20.0", "300.0,100.0,3.0,30.0"), lines);
+		Assert.assertEquals(lines, Files.readAllLines(csv2.toPath()));
+
+		AccessibilityBinaryFile.Results results = AccessibilityBinaryFile.read(binary);
+		Assert.assertArrayEquals(new double[]{100, 100, 300}, results.x(), 0.0);
+		Assert.assertArrayEquals(new double[]{10.0, 20.0, 30.0}, results.accessibilities()[1], 0.0);
+	}
+
+	@Test
+	public void testGetBinaryFile() {
+		Assert.assertEquals("accessibility.bin", AccessibilityBinaryFile.getBinaryFile(new File("out/accessibility.csv")).getName());
+		Assert.assertEquals("accessibility.bin", AccessibilityBinaryFile.getBinaryFile(new File("out/accessibility.csv.gz")).getName());
+	}
+}
@@ -34,6 +34,25 @@ public class DeparturesCacheTest {
 		Assert.assertEquals(7 * 3600 + 20 * 60 + 300, cache.getNextDepartureTime(stopId, 7 * 3600 + 1021).seconds(), 1e-8); // line 1, route A
 	}
 
+	@Test
+	public void testGetDepartureTimes() {
+		Fixture f = new Fixture();
+
+		DeparturesCache cache = new DeparturesCache(f.scenario.getTransitSchedule());
+
+		List<Id<TransitStopFacility>> stopIds = List.of(Id.create("1", TransitStopFacility.class), Id.create("4", TransitStopFacility.class));
+		double[] departures = cache.getDepartureTimes(stopIds, 7 * 3600, 7 * 3600 + 40 * 60);
+		Assert.assertArrayEquals(new double[]{
+				7 * 3600, 7 * 3600, // line 1 route A and line 2 route B depart at the same time
+				7 * 3600 + 10 * 60, 7 * 3600 + 20 * 60, 7 * 3600 + 20 * 60, 7 * 3600 + 30 * 60}, departures, 1e-8);
+
+		departures = cache.getDepartureTimes(stopIds, 7 * 3600 + 1, 7 * 3600 + 20 * 60 + 1);
+		Assert.assertArrayEquals(new double[]{7 * 3600 + 10 * 60, 7 * 3600 + 20 * 60, 7 * 3600 + 20 * 60}, departures, 1e-8);
+
+		departures = cache.getDepartureTimes(List.of(Id.create("3", TransitStopFacility.class)), 0, 24 * 3600);
+		Assert.assertEquals(0, departures.length); // only arrivals at stop 3
+	}
+
 	private static class Fixture {
 
         final Config config = ConfigUtils.createConfig();
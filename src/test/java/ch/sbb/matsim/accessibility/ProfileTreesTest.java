@@ -0,0 +1,143 @@
+package ch.sbb.matsim.accessibility;
+
+import ch.sbb.matsim.routing.pt.raptor.DefaultRaptorInVehicleCostCalculator;
+import ch.sbb.matsim.routing.pt.raptor.DefaultRaptorStopFinder;
+import ch.sbb.matsim.routing.pt.raptor.DefaultRaptorTransferCostCalculator;
+import ch.sbb.matsim.routing.pt.raptor.RaptorParameters;
+import ch.sbb.matsim.routing.pt.raptor.RaptorStaticConfig;
+import ch.sbb.matsim.routing.pt.raptor.RaptorUtils;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptor;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorCore.TravelInfo;
+import ch.sbb.matsim.routing.pt.raptor.SwissRailRaptorData;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.transitSchedule.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ProfileTreesTest {
+
+	/**
+	 * Stop B is far outside the beeline walk connection distance of the start stop A, but connected to it by a minimal transfer time of the schedule. The departures at B must
+	 * therefore trigger new raptor queries like the departures at A.
+	 */
+	@Test
+	public void testSameTreesAsQueryPerStep() {
+		Config config = ConfigUtils.createConfig();
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		Network network = scenario.getNetwork();
+		TransitSchedule schedule = scenario.getTransitSchedule();
+		createLink(network, "A", new Coord(-10, 0), new Coord(0, 0));
+		createLink(network, "B", new Coord(4990, 0), new Coord(5000, 0));
+		createLink(network, "C", new Coord(9990, 0), new Coord(10000, 0));
+		createLink(network, "AC", new Coord(0, 0), new Coord(9990, 0));
+		createLink(network, "BC", new Coord(5000, 0), new Coord(9990, 0));
+
+		TransitScheduleFactory f = schedule.getFactory();
+		TransitStopFacility stopA = createStop(schedule, "A", new Coord(0, 0));
+		TransitStopFacility stopB = createStop(schedule, "B", new Coord(5000, 0));
+		TransitStopFacility stopC = createStop(schedule, "C", new Coord(10000, 0));
+		schedule.getMinimalTransferTimes().set(stopA.getId(), stopB.getId(), 900);
+
+		TransitLine line = f.createTransitLine(Id.create("1", TransitLine.class));
+		TransitRoute routeAC = createRoute(f, "AC", stopA, stopC, 1800);
+		for (int i = 0; i < 3; i++) {
+			routeAC.addDeparture(f.createDeparture(Id.create("AC" + i, Departure.class), 7 * 3600 + i * 1800));
+		}
+		line.addRoute(routeAC);
+		TransitRoute routeBC = createRoute(f, "BC", stopB, stopC, 300);
+		for (int i = 0; i < 12; i++) {
+			routeBC.addDeparture(f.createDeparture(Id.create("BC" + i, Departure.class), 7 * 3600 + i * 420));
+		}
+		line.addRoute(routeBC);
+		schedule.addTransitLine(line);
+
+		RaptorStaticConfig raptorConfig = RaptorUtils.createStaticConfig(config);
+		raptorConfig.setOptimization(RaptorStaticConfig.RaptorOptimization.OneToAllRouting);
+		SwissRailRaptorData raptorData = SwissRailRaptorData.create(schedule, null, raptorConfig, network, null);
+		SwissRailRaptor raptor = new SwissRailRaptor(raptorData, null, null, new DefaultRaptorStopFinder(ConfigUtils.createConfig(), null, null),
+				new DefaultRaptorInVehicleCostCalculator(), new DefaultRaptorTransferCostCalculator());
+		RaptorParameters parameters = RaptorUtils.createParameters(config);
+		InitialTransfers initialTransfers = new InitialTransfers(schedule, raptorConfig);
+		Assert.assertTrue(initialTransfers.getBoardingStops(List.of(stopA), raptorData).stopIds().contains(stopB.getId()));
+
+		double startTime = 6.5 * 3600;
+		double endTime = 8.5 * 3600;
+		double stepSize = 120;
+		List<Map<Id<TransitStopFacility>, TravelInfo>> trees = Accessibility.calcProfileTrees(List.of(stopA), startTime, endTime, stepSize, raptor, parameters,
+				new DeparturesCache(schedule), initialTransfers);
+
+		int step = 0;
+		int reused = 0;
+		for (double time = startTime; time < endTime; time += stepSize, step++) {
+			Map<Id<TransitStopFacility>, TravelInfo> expected = raptor.calcTree(List.of(stopA), time, parameters, null);
+			Map<Id<TransitStopFacility>, TravelInfo> actual = trees.get(step);
+			Assert.assertEquals("stops at " + time, expected.keySet(), actual.keySet());
+			for (Map.Entry<Id<TransitStopFacility>, TravelInfo> e : expected.entrySet()) {
+				TravelInfo expectedInfo = e.getValue();
+				TravelInfo actualInfo = actual.get(e.getKey());
+				String message = e.getKey() + " at " + time;
+				Assert.assertEquals(message, expectedInfo.isWalkOnly(), actualInfo.isWalkOnly());
+				Assert.assertEquals(message, expectedInfo.ptDepartureTime, actualInfo.ptDepartureTime, 1e-6);
+				Assert.assertEquals(message, expectedInfo.ptTravelTime, actualInfo.ptTravelTime, 1e-6);
+				Assert.assertEquals(message, expectedInfo.transferCount, actualInfo.transferCount);
+			}
+			if (step > 0 && actual == trees.get(step - 1)) {
+				reused++;
+			}
+		}
+		Assert.assertEquals(step, trees.size());
+		Assert.assertTrue("trees should be re-used between departures", reused > 0);
+	}
+
+	private static void createLink(Network network, String id, Coord from, Coord to) {
+		NetworkFactory nf = network.getFactory();
+		Node fromNode = getOrCreateNode(network, from);
+		Node toNode = getOrCreateNode(network, to);
+		Link link = nf.createLink(Id.createLinkId(id), fromNode, toNode);
+		link.setLength(Math.max(1, Math.abs(to.getX() - from.getX())));
+		link.setFreespeed(30);
+		network.addLink(link);
+	}
+
+	private static Node getOrCreateNode(Network network, Coord coord) {
+		Id<Node> id = Id.createNodeId((int) coord.getX() + "_" + (int) coord.getY());
+		Node node = network.getNodes().get(id);
+		if (node == null) {
+			node = network.getFactory().createNode(id, coord);
+			network.addNode(node);
+		}
+		return node;
+	}
+
+	private static TransitStopFacility createStop(TransitSchedule schedule, String id, Coord coord) {
+		TransitStopFacility stop = schedule.getFactory().createTransitStopFacility(Id.create(id, TransitStopFacility.class), coord, false);
+		stop.setLinkId(Id.createLinkId(id));
+		schedule.addStopFacility(stop);
+		return stop;
+	}
+
+	private static TransitRoute createRoute(TransitScheduleFactory f, String id, TransitStopFacility from, TransitStopFacility to, double travelTime) {
+		List<Id<Link>> links = new ArrayList<>();
+		links.add(Id.createLinkId(id));
+		NetworkRoute networkRoute = RouteUtils.createLinkNetworkRouteImpl(from.getLinkId(), links, to.getLinkId());
+		List<TransitRouteStop> stops = new ArrayList<>();
+		stops.add(f.createTransitRouteStopBuilder(from).departureOffset(0).build());
+		stops.add(f.createTransitRouteStopBuilder(to).arrivalOffset(travelTime).build());
+		return f.createTransitRoute(Id.create(id, TransitRoute.class), networkRoute, stops, "train");
+	}
+}
@@ -35,6 +35,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
@@ -74,6 +75,40 @@ public class ConvergenceStatsTest {
 		}
 	}
 
+	@Test
+	public void test_incrementalStats() throws IOException {
+		File inputDir = new File(utils.getPackageInputDirectory() + "convergence");
+		String[] filenames = {"scorestats.csv", "traveldistancestats.csv", "modestats.csv"};
+		for (String filename : filenames) {
+			List<String> lines = Files.readAllLines(new File(inputDir, filename).toPath());
+			Files.write(Paths.get(utils.getOutputDirectory(), filename), lines.subList(0, 201));
+		}
+		ConvergenceStats cs = new ConvergenceStats(60, ConvergenceConfigGroup.Test.values(), ConfigUtils.createConfig());
+		cs.notifyIterationStarts(new IterationStartsEvent(new StubControler(), 200, false));
+		FileUtils.copyDirectory(inputDir, new File(utils.getOutputDirectory()));
+		cs.notifyIterationStarts(new IterationStartsEvent(new StubControler(), 301, false));
+		cs.close();
+
+		double[] scores = ConvergenceStats.loadGlobalStats(utils.getOutputDirectory() + "scorestats.csv");
+		Map<String, List<Double>> modestats = ConvergenceStats.loadGlobalStats(utils.getOutputDirectory() + "modestats.csv", "car");
+		double[] car = modestats.get("car").stream().mapToDouble(Double::doubleValue).toArray();
+		for (ConvergenceConfigGroup.Test test : ConvergenceConfigGroup.Test.values()) {
+			File file = Paths.get(utils.getOutputDirectory(), "convergence", test.name().toLowerCase() + ".csv").toFile();
+			List<String> lines = Files.readAllLines(file.toPath());
+			Assert.assertEquals(3, lines.size());
+			List<String> header = List.of(lines.get(0).split(";"));
+			String[] lastRow = lines.get(2).split(";");
+			Assert.assertEquals("301", lastRow[header.indexOf("ITERATION")]);
+			Assert.assertEquals(cs.runTest(test, scores).getKey(), parse(lastRow[header.indexOf("scores_stat")]), 1e-4);
+			Assert.assertEquals(cs.runTest(test, car).getKey(), parse(lastRow[header.indexOf("car_stat")]), 1e-4);
+			Assert.assertEquals(cs.runTest(test, car).getValue(), parse(lastRow[header.indexOf("car_p-value")]), 1e-4);
+		}
+	}
+
+	private static double parse(String formattedValue) {
+		return Double.parseDouble(formattedValue.replace(',', '.'));
+	}
+
 	@Test
 	public void test_convergenceCriterion() throws IOException {
 		System.setProperty("matsim.preferLocalDtds", "true");
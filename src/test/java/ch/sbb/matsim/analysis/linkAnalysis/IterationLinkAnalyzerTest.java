@@ -0,0 +1,120 @@
+package ch.sbb.matsim.analysis.linkAnalysis;
+
+import ch.sbb.matsim.analysis.linkAnalysis.IterationLinkAnalyzer.AnalysisVehicleType;
+import ch.sbb.matsim.config.variables.Variables;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
+import org.matsim.api.core.v01.events.handler.VehicleEntersTrafficEventHandler;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.vehicles.Vehicle;
+
+public class IterationLinkAnalyzerTest {
+
+	private static final String INPUT_DIR = "test/input/ch/sbb/matsim/analysis/linkAnalysis/IterationLinkAnalyzerTest/";
+
+	/**
+	 * Feeds a small events file with car, freight, drt and pt vehicles through the analyzer and compares the counts per vehicle type with the expected volumes and a
+	 * straight-forward map based implementation.
+	 */
+	@Test
+	public void testRecordedEvents() {
+		System.setProperty("matsim.preferLocalDtds", "true");
+		Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+		new PopulationReader(scenario).readFile(INPUT_DIR + "population.xml");
+
+		IterationLinkAnalyzer analyzer = new IterationLinkAnalyzer(scenario);
+		ReferenceCounter reference = new ReferenceCounter(scenario);
+		EventsManager events = EventsUtils.createEventsManager();
+		events.addHandler(analyzer);
+		events.addHandler(reference);
+		events.initProcessing();
+		new MatsimEventsReader(events).readFile(INPUT_DIR + "events.xml");
+		events.finishProcessing();
+
+		// pt vehicles and vehicles that never entered traffic are not counted
+		assertCounts(analyzer, "a", 2, 1);
+		assertCounts(analyzer, "b", 2, 2);
+		assertCounts(analyzer, "c", 3, 1);
+
+		Map<Id<Link>, CarLinkAnalysis.LinkStorage> counts = analyzer.getIterationCounts();
+		Assert.assertEquals(reference.counts.keySet(), counts.keySet());
+		for (Map.Entry<Id<Link>, int[]> e : reference.counts.entrySet()) {
+			CarLinkAnalysis.LinkStorage linkStorage = counts.get(e.getKey());
+			Assert.assertEquals(e.getKey().toString(), e.getValue()[AnalysisVehicleType.car.ordinal()], linkStorage.getCarCount());
+			Assert.assertEquals(e.getKey().toString(), e.getValue()[AnalysisVehicleType.freight.ordinal()], linkStorage.getFreightCount());
+			Assert.assertEquals(0, linkStorage.getRideCount());
+			Assert.assertEquals(0, linkStorage.getBikeCount());
+			Assert.assertEquals(0, linkStorage.getEbikeCount());
+		}
+
+		// replay the events through the analyzer only, as it happens in every iteration
+		analyzer.reset(1);
+		Assert.assertTrue(analyzer.getIterationCounts().isEmpty());
+		EventsManager replay = EventsUtils.createEventsManager();
+		replay.addHandler(analyzer);
+		replay.initProcessing();
+		new MatsimEventsReader(replay).readFile(INPUT_DIR + "events.xml");
+		replay.finishProcessing();
+		Assert.assertEquals(counts.keySet(), analyzer.getIterationCounts().keySet());
+		assertCounts(analyzer, "b", 2, 2);
+	}
+
+	private static void assertCounts(IterationLinkAnalyzer analyzer, String linkId, int carCount, int freightCount) {
+		Assert.assertEquals(linkId, carCount, analyzer.getCount(Id.createLinkId(linkId), AnalysisVehicleType.car));
+		Assert.assertEquals(linkId, freightCount, analyzer.getCount(Id.createLinkId(linkId), AnalysisVehicleType.freight));
+		Assert.assertEquals(linkId, 0, analyzer.getCount(Id.createLinkId(linkId), AnalysisVehicleType.ride));
+	}
+
+	/**
+	 * Counts the vehicles the same way {@link IterationLinkAnalyzer} did before it used primitive arrays.
+	 */
+	private static class ReferenceCounter implements LinkEnterEventHandler, VehicleEntersTrafficEventHandler {
+
+		private final Scenario scenario;
+		private final Map<Id<Link>, int[]> counts = new HashMap<>();
+		private final Map<Id<Vehicle>, AnalysisVehicleType> identification = new HashMap<>();
+
+		ReferenceCounter(Scenario scenario) {
+			this.scenario = scenario;
+		}
+
+		@Override
+		public void handleEvent(LinkEnterEvent event) {
+			AnalysisVehicleType vehicleType = this.identification.get(event.getVehicleId());
+			if (vehicleType != null) {
+				this.counts.computeIfAbsent(event.getLinkId(), k -> new int[AnalysisVehicleType.values().length])[vehicleType.ordinal()]++;
+			}
+		}
+
+		@Override
+		public void handleEvent(VehicleEntersTrafficEvent event) {
+			String personId = event.getPersonId().toString();
+			if (personId.contains("pt")) {
+				return;
+			}
+			AnalysisVehicleType vehicleType = AnalysisVehicleType.car;
+			if (!personId.contains("drt")) {
+				Person person = this.scenario.getPopulation().getPersons().get(event.getPersonId());
+				if (person.getAttributes().getAttribute("subpopulation").toString().contains(Variables.FREIGHT_ROAD)) {
+					vehicleType = AnalysisVehicleType.freight;
+				}
+			}
+			this.counts.computeIfAbsent(event.getLinkId(), k -> new int[AnalysisVehicleType.values().length])[vehicleType.ordinal()]++;
+			this.identification.put(event.getVehicleId(), vehicleType);
+		}
+	}
+}
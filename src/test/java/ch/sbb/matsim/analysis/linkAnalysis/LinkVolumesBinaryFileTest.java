@@ -0,0 +1,80 @@
+package ch.sbb.matsim.analysis.linkAnalysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class LinkVolumesBinaryFileTest {
+
+	@RegisterExtension
+	public final MatsimTestUtils helper = new MatsimTestUtils();
+
+	@Test
+	public void testWriteReadAndExport() throws IOException {
+		File file = new File(this.helper.getOutputDirectory(), "car_volumes_daily.bin");
+		try (LinkVolumesBinaryFile.Writer writer = new LinkVolumesBinaryFile.Writer(file, new String[]{"1", "2", "3"})) {
+			writer.writeIteration(0, new int[]{10, 20, 30});
+			writer.writeIteration(1, new int[]{11, 0, 31});
+		}
+
+		LinkVolumesBinaryFile.Volumes volumes = LinkVolumesBinaryFile.read(file);
+		Assert.assertArrayEquals(new String[]{"1", "2", "3"}, volumes.linkIds());
+		Assert.assertArrayEquals(new int[]{0, 1}, volumes.iterations());
+		Assert.assertArrayEquals(new int[]{11, 0, 31}, volumes.volumes()[1]);
+		Assert.assertArrayEquals(new int[]{30, 31}, volumes.getLinkVolumes(2));
+
+		File csv = new File(this.helper.getOutputDirectory(), "car_volumes_daily.csv");
+		LinkVolumesBinaryFile.exportCsv(volumes, csv.getAbsolutePath());
+		Assert.assertEquals(List.of("Iteration;1;2;3", "0;10;20;30", "1;11;0;31"), Files.readAllLines(csv.toPath()));
+	}
+
+	@Test
+	public void testIncompleteIteration() throws IOException {
+		File file = new File(this.helper.getOutputDirectory(), "car_volumes_daily.bin");
+		try (LinkVolumesBinaryFile.Writer writer = new LinkVolumesBinaryFile.Writer(file, new String[]{"a", "b"})) {
+			writer.writeIteration(0, new int[]{1, 2});
+			writer.writeIteration(1, new int[]{3, 4});
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 2); // e.g. the simulation was killed while writing
+		}
+
+		LinkVolumesBinaryFile.Volumes volumes = LinkVolumesBinaryFile.read(file);
+		Assert.assertArrayEquals(new int[]{0}, volumes.iterations());
+		Assert.assertArrayEquals(new int[]{1, 2}, volumes.volumes()[0]);
+	}
+
+	@Test
+	public void testAppendAfterRestart() throws IOException {
+		File file = new File(this.helper.getOutputDirectory(), "car_volumes_daily.bin");
+		try (LinkVolumesBinaryFile.Writer writer = new LinkVolumesBinaryFile.Writer(file, new String[]{"a", "b"})) {
+			writer.writeIteration(0, new int[]{1, 2});
+			writer.writeIteration(1, new int[]{3, 4});
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 2);
+		}
+
+		// the incomplete iteration is dropped, the others are kept
+		try (LinkVolumesBinaryFile.Writer writer = new LinkVolumesBinaryFile.Writer(file, new String[]{"a", "b"}, true)) {
+			writer.writeIteration(1, new int[]{5, 6});
+		}
+		LinkVolumesBinaryFile.Volumes volumes = LinkVolumesBinaryFile.read(file);
+		Assert.assertArrayEquals(new int[]{0, 1}, volumes.iterations());
+		Assert.assertArrayEquals(new int[]{5, 6}, volumes.volumes()[1]);
+
+		// other links cannot be appended
+		try (LinkVolumesBinaryFile.Writer writer = new LinkVolumesBinaryFile.Writer(file, new String[]{"a", "c"}, true)) {
+			writer.writeIteration(2, new int[]{7, 8});
+		}
+		volumes = LinkVolumesBinaryFile.read(file);
+		Assert.assertArrayEquals(new String[]{"a", "c"}, volumes.linkIds());
+		Assert.assertArrayEquals(new int[]{2}, volumes.iterations());
+	}
+}
@@ -0,0 +1,105 @@
+package ch.sbb.matsim.analysis.modalsplit;
+
+import ch.sbb.matsim.RunSBB;
+import ch.sbb.matsim.analysis.tripsandlegsanalysis.TripIndex;
+import ch.sbb.matsim.config.PostProcessingConfigGroup;
+import ch.sbb.matsim.csv.CSVWriter;
+import ch.sbb.matsim.zones.Zones;
+import ch.sbb.matsim.zones.ZonesCollection;
+import ch.sbb.matsim.zones.ZonesLoader;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ModalSplitStatsTest {
+
+    @RegisterExtension
+    public final MatsimTestUtils helper = new MatsimTestUtils();
+
+    /**
+     * Analyzes a population of copies of the same agent, large enough to be split into several parallel tasks, and checks that the merged trip counts are
+     * exactly the counts of the single agent times the number of copies.
+     */
+    @Test
+    public void testParallelAnalysisMatchesSingleAgent() throws IOException {
+        System.setProperty("matsim.preferLocalDtds", "true");
+        Config config = RunSBB.buildConfig("test/input/scenarios/mobi31test/config.xml");
+        config.controller().setRunId("test");
+        config.qsim().setEndTime(30 * 3600);
+        PostProcessingConfigGroup ppConfig = ConfigUtils.addOrGetModule(config, PostProcessingConfigGroup.class);
+        ppConfig.setSimulationSampleSize(1.0);
+        ppConfig.setZonesId("zones");
+        Scenario scenario = ScenarioUtils.createScenario(config);
+        new PopulationReader(scenario).readFile("test/input/scenarios/mobi31test/singleptagent.xml");
+        new TransitScheduleReader(scenario).readFile("test/input/scenarios/mobi31test/transitSchedule.xml.gz");
+        new MatsimNetworkReader(scenario.getNetwork()).readFile("test/input/scenarios/mobi31test/network.xml.gz");
+        ZonesCollection zonesCollection = new ZonesCollection();
+        Zones zones = ZonesLoader.loadZones("zones", "test/input/scenarios/mobi31test/zones/andermatt-zones.shp");
+        zonesCollection.addZones(zones);
+
+        Population population = scenario.getPopulation();
+        Person agent = population.getPersons().values().iterator().next();
+        Map<Id<Person>, Plan> singlePlan = Map.of(agent.getId(), agent.getSelectedPlan());
+
+        int copies = 50_001;
+        Map<Id<Person>, Plan> copiedPlans = new LinkedHashMap<>();
+        for (int i = 0; i < copies; i++) {
+            Person copy = population.getFactory().createPerson(Id.createPersonId(agent.getId() + "_" + i));
+            agent.getAttributes().getAsMap().forEach(copy.getAttributes()::putAttribute);
+            Plan plan = population.getFactory().createPlan();
+            PopulationUtils.copyFromTo(agent.getSelectedPlan(), plan);
+            copy.addPlan(plan);
+            copy.setSelectedPlan(plan);
+            population.addPerson(copy);
+            copiedPlans.put(copy.getId(), plan);
+        }
+
+        ModalSplitStats modalSplitStats = new ModalSplitStats(zonesCollection, config, scenario);
+        String singleOutput = this.helper.getOutputDirectory() + "single/";
+        String copiesOutput = this.helper.getOutputDirectory() + "copies/";
+        new File(singleOutput).mkdirs();
+        new File(copiesOutput).mkdirs();
+
+        modalSplitStats.analyzeAndWriteStats(singleOutput, TripIndex.build(singlePlan, scenario, zones, null));
+        modalSplitStats.analyzeAndWriteStats(copiesOutput, TripIndex.build(copiedPlans, scenario, zones, null));
+
+        for (String filename : List.of(MSVariables.oNModalSplitPF, MSVariables.oNModalSplitFeederPF)) {
+            List<String> singleLines = Files.readAllLines(new File(singleOutput + "SBB_" + filename).toPath());
+            List<String> copiesLines = Files.readAllLines(new File(copiesOutput + "SBB_" + filename).toPath());
+            Assert.assertEquals(singleLines.size(), copiesLines.size());
+            Assert.assertEquals(singleLines.get(0), copiesLines.get(0));
+            for (int line = 1; line < singleLines.size(); line++) {
+                String[] singleValues = singleLines.get(line).split(CSVWriter.DEFAULT_SEPARATOR);
+                String[] copiesValues = copiesLines.get(line).split(CSVWriter.DEFAULT_SEPARATOR);
+                for (int column = 0; column < singleValues.length; column++) {
+                    if (singleValues[column].matches("-?\\d+")) {
+                        Assert.assertEquals(copies * Long.parseLong(singleValues[column]), Long.parseLong(copiesValues[column]));
+                    } else {
+                        Assert.assertEquals(singleValues[column], copiesValues[column]);
+                    }
+                }
+            }
+        }
+    }
+
+}
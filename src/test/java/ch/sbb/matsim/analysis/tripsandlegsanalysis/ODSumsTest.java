@@ -0,0 +1,29 @@
+package ch.sbb.matsim.analysis.tripsandlegsanalysis;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+
+public class ODSumsTest {
+
+    @Test
+    public void testSumsAreSortedByKey() {
+        long[] keys = {5, ODSums.SKIP, 2, 5, 0, 2, 2};
+        double[] values = {1, 100, 2, 3, 4, 5, 6};
+        ODSums sums = ODSums.aggregate(keys.length, 10, i -> keys[i], i -> values[i], i -> 1.0);
+
+        Assert.assertEquals(3, sums.size());
+        Assert.assertEquals(0, sums.getKey(0));
+        Assert.assertEquals(2, sums.getKey(1));
+        Assert.assertEquals(5, sums.getKey(2));
+        Assert.assertEquals(4.0, sums.getSum(0, 0), 0.0);
+        Assert.assertEquals(13.0, sums.getSum(0, 1), 0.0);
+        Assert.assertEquals(4.0, sums.getSum(0, 2), 0.0);
+        Assert.assertEquals(3.0, sums.getSum(1, 1), 0.0);
+    }
+
+    @Test
+    public void testTooManyKeys() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> ODSums.aggregate(1000, Long.MAX_VALUE / 2, i -> 0, i -> 1.0));
+    }
+
+}
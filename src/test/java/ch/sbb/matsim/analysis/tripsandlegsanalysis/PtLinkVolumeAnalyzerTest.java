@@ -0,0 +1,66 @@
+package ch.sbb.matsim.analysis.tripsandlegsanalysis;
+
+import ch.sbb.matsim.config.variables.SBBModes;
+import ch.sbb.matsim.zones.Zones;
+import ch.sbb.matsim.zones.ZonesCollection;
+import ch.sbb.matsim.zones.ZonesLoader;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.routes.TransitPassengerRoute;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PtLinkVolumeAnalyzerTest {
+
+    @Test
+    public void testVolumesMatchLinksTraveledOn() {
+        System.setProperty("matsim.preferLocalDtds", "true");
+        Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+        new PopulationReader(scenario).readFile("test/input/scenarios/mobi31test/singleptagent.xml");
+        new TransitScheduleReader(scenario).readFile("test/input/scenarios/mobi31test/transitSchedule.xml.gz");
+        new MatsimNetworkReader(scenario.getNetwork()).readFile("test/input/scenarios/mobi31test/network.xml.gz");
+        ZonesCollection zonesCollection = new ZonesCollection();
+        Zones zones = ZonesLoader.loadZones("zones", "test/input/scenarios/mobi31test/zones/andermatt-zones.shp");
+        zonesCollection.addZones(zones);
+        RailTripsAnalyzer railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(), scenario.getNetwork(), zonesCollection);
+        PtLinkVolumeAnalyzer analyzer = new PtLinkVolumeAnalyzer(railTripsAnalyzer, scenario.getTransitSchedule(), scenario.getNetwork());
+
+        // the same agent twice
+        Plan plan = scenario.getPopulation().getPersons().get(Id.createPersonId("mobi-test1")).getSelectedPlan();
+        Map<Id<Person>, Plan> plans = new LinkedHashMap<>();
+        plans.put(Id.createPersonId("mobi-test1"), plan);
+        plans.put(Id.createPersonId("mobi-test1-copy"), plan);
+        long[] volumes = analyzer.analysePtLinkUsage(TripIndex.build(plans, scenario, zones, null));
+
+        Map<Id<Link>, Long> expected = new HashMap<>();
+        for (Leg leg : TripStructureUtils.getLegs(plan)) {
+            if (leg.getMode().equals(SBBModes.PT)) {
+                for (Id<Link> linkId : railTripsAnalyzer.getPtLinkIdsTraveledOn((TransitPassengerRoute) leg.getRoute())) {
+                    expected.merge(linkId, 2L, Long::sum);
+                }
+            }
+        }
+        List<Id<Link>> ptLinks = analyzer.getPtLinks();
+        Assert.assertEquals(ptLinks.size(), volumes.length);
+        Assert.assertEquals(2L, volumes[ptLinks.indexOf(Id.createLinkId("pt_2537-pt_1959"))]);
+        for (int i = 0; i < volumes.length; i++) {
+            Assert.assertEquals(ptLinks.get(i).toString(), expected.getOrDefault(ptLinks.get(i), 0L).longValue(), volumes[i]);
+        }
+    }
+
+}
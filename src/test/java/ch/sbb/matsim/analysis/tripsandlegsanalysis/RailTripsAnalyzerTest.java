@@ -11,15 +11,20 @@ import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Leg;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.population.routes.RouteUtils;
 import org.matsim.core.population.io.PopulationReader;
 import org.matsim.core.router.TripStructureUtils;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.routes.DefaultTransitPassengerRoute;
 import org.matsim.pt.routes.TransitPassengerRoute;
 import org.matsim.pt.transitSchedule.api.TransitLine;
 import org.matsim.pt.transitSchedule.api.TransitRoute;
+import org.matsim.pt.transitSchedule.api.TransitRouteStop;
 import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
 import org.matsim.pt.transitSchedule.api.TransitStopFacility;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -70,6 +75,35 @@ public class RailTripsAnalyzerTest {
         System.out.println(linesAtRealp);
     }
 
+    @Test
+    public void ptLinksTraveledOnMatchNetworkRouteDistance() {
+        Scenario scenario = setupScenario();
+        ZonesCollection zonesCollection = new ZonesCollection();
+        zonesCollection.addZones(ZonesLoader.loadZones("zones", "test/input/scenarios/mobi31test/zones/andermatt-zones.shp"));
+        RailTripsAnalyzer railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(), scenario.getNetwork(), zonesCollection);
+        for (TransitLine line : scenario.getTransitSchedule().getTransitLines().values()) {
+            for (TransitRoute transitRoute : line.getRoutes().values()) {
+                List<Id<Link>> routeLinkIds = new ArrayList<>(transitRoute.getRoute().getLinkIds());
+                routeLinkIds.add(transitRoute.getRoute().getStartLinkId());
+                if (new HashSet<>(routeLinkIds).size() < routeLinkIds.size()) {
+                    continue;
+                }
+                List<TransitRouteStop> stops = transitRoute.getStops();
+                for (int i = 0; i < stops.size(); i++) {
+                    for (int j = i + 1; j < stops.size(); j++) {
+                        TransitStopFacility access = stops.get(i).getStopFacility();
+                        TransitStopFacility egress = stops.get(j).getStopFacility();
+                        var route = new DefaultTransitPassengerRoute(access, line, transitRoute, egress);
+                        List<Id<Link>> linkIds = railTripsAnalyzer.getPtLinkIdsTraveledOn(route);
+                        double distance = linkIds.stream().skip(1).mapToDouble(linkId -> scenario.getNetwork().getLinks().get(linkId).getLength()).sum();
+                        double expected = RouteUtils.calcDistance(transitRoute, access, egress, scenario.getNetwork());
+                        Assert.isTrue(Math.abs(expected - distance) < 1e-6, transitRoute.getId() + ": " + expected + " != " + distance);
+                    }
+                }
+            }
+        }
+    }
+
     private Scenario setupScenario() {
         System.setProperty("matsim.preferLocalDtds", "true");
         Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
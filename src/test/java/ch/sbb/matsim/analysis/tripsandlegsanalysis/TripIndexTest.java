@@ -0,0 +1,86 @@
+package ch.sbb.matsim.analysis.tripsandlegsanalysis;
+
+import ch.sbb.matsim.config.variables.SBBModes;
+import ch.sbb.matsim.routing.SBBAnalysisMainModeIdentifier;
+import ch.sbb.matsim.zones.Zone;
+import ch.sbb.matsim.zones.Zones;
+import ch.sbb.matsim.zones.ZonesCollection;
+import ch.sbb.matsim.zones.ZonesLoader;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.io.MatsimNetworkReader;
+import org.matsim.core.population.io.PopulationReader;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.StageActivityHandling;
+import org.matsim.core.router.TripStructureUtils.Trip;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.pt.transitSchedule.api.TransitScheduleReader;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TripIndexTest {
+
+    @Test
+    public void testIndexMatchesTripDecomposition() {
+        System.setProperty("matsim.preferLocalDtds", "true");
+        Scenario scenario = ScenarioUtils.createScenario(ConfigUtils.createConfig());
+        new PopulationReader(scenario).readFile("test/input/scenarios/mobi31test/singleptagent.xml");
+        new TransitScheduleReader(scenario).readFile("test/input/scenarios/mobi31test/transitSchedule.xml.gz");
+        new MatsimNetworkReader(scenario.getNetwork()).readFile("test/input/scenarios/mobi31test/network.xml.gz");
+        ZonesCollection zonesCollection = new ZonesCollection();
+        Zones zones = ZonesLoader.loadZones("zones", "test/input/scenarios/mobi31test/zones/andermatt-zones.shp");
+        zonesCollection.addZones(zones);
+        RailTripsAnalyzer railTripsAnalyzer = new RailTripsAnalyzer(scenario.getTransitSchedule(), scenario.getNetwork(), zonesCollection);
+
+        Map<Id<Person>, Plan> plans = new LinkedHashMap<>();
+        scenario.getPopulation().getPersons().values().forEach(p -> plans.put(p.getId(), p.getSelectedPlan()));
+        TripIndex index = TripIndex.build(plans, scenario, zones, railTripsAnalyzer);
+
+        Assert.assertEquals(plans.size(), index.getPersonCount());
+        SBBAnalysisMainModeIdentifier mainModeIdentifier = new SBBAnalysisMainModeIdentifier();
+        int p = 0;
+        for (Map.Entry<Id<Person>, Plan> e : plans.entrySet()) {
+            Assert.assertEquals(e.getKey(), index.getPersonId(p));
+            List<Activity> activities = TripStructureUtils.getActivities(e.getValue(), StageActivityHandling.ExcludeStageActivities);
+            Assert.assertEquals(activities.size(), index.getFirstActivity(p + 1) - index.getFirstActivity(p));
+            List<Trip> trips = TripStructureUtils.getTrips(e.getValue());
+            Assert.assertEquals(trips.size(), index.getFirstTrip(p + 1) - index.getFirstTrip(p));
+            for (int i = 0; i < trips.size(); i++) {
+                int t = index.getFirstTrip(p) + i;
+                Trip trip = trips.get(i);
+                Assert.assertSame(trip.getOriginActivity(), index.getActivity(index.getOriginActivity(t)));
+                Assert.assertSame(trip.getDestinationActivity(), index.getActivity(index.getDestinationActivity(t)));
+                Assert.assertEquals(mainModeIdentifier.identifyMainMode(trip.getTripElements()), index.getMode(index.getMainMode(t)));
+
+                Zone originZone = zones.findZone(SBBTripsExtension.getCoordFromActivity(trip.getOriginActivity(), scenario));
+                Zone destinationZone = zones.findZone(SBBTripsExtension.getCoordFromActivity(trip.getDestinationActivity(), scenario));
+                Assert.assertSame(originZone, index.getZone(index.getOriginZone(t)));
+                Assert.assertSame(destinationZone, index.getZone(index.getDestinationZone(t)));
+
+                Assert.assertEquals(railTripsAnalyzer.calcRailDistance(trip), index.getRailDistance(t), 1e-6);
+                Assert.assertEquals(railTripsAnalyzer.getFQDistance(trip, true), index.getFQDistance(t), 1e-6);
+                Assert.assertEquals(railTripsAnalyzer.getFQDistance(trip, false), index.getDomesticFQDistance(t), 1e-6);
+            }
+            p++;
+        }
+
+        // the single pt agent travels Realp-Flueelen and Flueelen-Goeschenen by rail
+        int t0 = index.getFirstTrip(0);
+        Assert.assertEquals(SBBModes.PT, index.getMode(index.getMainMode(t0)));
+        Assert.assertEquals("2537", TripIndex.getStopId(index.getRailAccessStop(t0)).toString());
+        Assert.assertEquals("1749", TripIndex.getStopId(index.getRailEgressStop(t0)).toString());
+        Assert.assertEquals(50442.05, index.getRailDistance(t0), 0.01);
+        Assert.assertEquals("1749", TripIndex.getStopId(index.getRailAccessStop(t0 + 1)).toString());
+        Assert.assertEquals("1850", TripIndex.getStopId(index.getRailEgressStop(t0 + 1)).toString());
+        Assert.assertEquals(38142.03, index.getFQDistance(t0 + 1), 0.01);
+    }
+
+}
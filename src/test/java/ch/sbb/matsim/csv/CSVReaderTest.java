@@ -8,9 +8,15 @@ import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author mrieser / SBB
@@ -66,4 +72,77 @@ public class CSVReaderTest {
 		new File("testfile.csv").delete();
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void readCursor() throws Exception {
+		String content = "ID;VALUE;COUNT\r\na;1.25;3\nb;-0.5;-7\nc;1e3;12345678901\n";
+		CSVReader reader = new CSVReader(new String[]{"ID", "VALUE", "COUNT"}, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), ";");
+
+		Assert.assertEquals(1, reader.getColumnIndex("VALUE"));
+		Assert.assertEquals(-1, reader.getColumnIndex("MISSING"));
+
+		Assert.assertTrue(reader.next()); // header
+		Assert.assertEquals(3, reader.getFieldCount());
+		Assert.assertEquals("COUNT", reader.get(2));
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals("a", reader.get(0));
+		Assert.assertEquals(1.25, reader.getDouble(1), 0.0);
+		Assert.assertEquals(3, reader.getInt(2));
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals("b", reader.getCharSequence(0).toString());
+		Assert.assertEquals(-0.5, reader.getDouble(1), 0.0);
+		Assert.assertEquals(-7, reader.getInt(2));
+
+		Assert.assertTrue(reader.next());
+		Assert.assertEquals(1000.0, reader.getDouble(1), 0.0);
+		Assert.assertEquals(12345678901L, reader.getLong(2));
+
+		Assert.assertFalse(reader.next());
+		reader.close();
+	}
+
+	@Test
+	public void readQuoted() throws Exception {
+		String content = "\"x;y\";\"say \"\"hi\"\"\";plain\n";
+
+		CSVReader unquoted = new CSVReader(new String[]{"A", "B", "C"}, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), ";");
+		Assert.assertTrue(unquoted.next());
+		Assert.assertEquals("quotes must be ignored by default", 4, unquoted.getFieldCount());
+		unquoted.close();
+
+		CSVReader quoted = new CSVReader(new String[]{"A", "B", "C"}, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), ";");
+		quoted.setQuoted(true);
+		Assert.assertTrue(quoted.next());
+		Assert.assertEquals(3, quoted.getFieldCount());
+		Assert.assertEquals("x;y", quoted.get(0));
+		Assert.assertEquals("say \"hi\"", quoted.get(1));
+		Assert.assertEquals("plain", quoted.get(2));
+		quoted.close();
+	}
+
+	@Test
+	public void readParallel() throws Exception {
+		Path file = Files.createTempFile("csvReaderTest", ".csv");
+		StringBuilder content = new StringBuilder("ID;VALUE\n");
+		long expectedSum = 0;
+		int rowCount = 100_000;
+		for (int i = 0; i < rowCount; i++) {
+			content.append(i).append(';').append(i % 97).append('\n');
+			expectedSum += i % 97;
+		}
+		Files.writeString(file, content);
+
+		AtomicLong sum = new AtomicLong();
+		AtomicInteger rows = new AtomicInteger();
+		CSVReader.readParallel(file, ";", 4, row -> {
+			sum.addAndGet(row.getInt(row.getColumnIndex("VALUE")));
+			rows.incrementAndGet();
+		});
+		Assert.assertEquals(rowCount, rows.get());
+		Assert.assertEquals(expectedSum, sum.get());
+
+		Files.delete(file);
+	}
+
+}
@@ -7,8 +7,15 @@ package ch.sbb.matsim.csv;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author mrieser / SBB
@@ -50,4 +57,59 @@ public class CSVWriterTest {
 
 		Assert.assertEquals("This is a\nrandom file header\n\nId;ATTR1;ATTR2\n1;eins;zwei\n2;un;deux\n3;uno;due\n4;one;\n5;;two\n", result);
 	}
+
+	@Test
+	public void testWriteAsync() throws IOException {
+		String[] columns = new String[]{"Id", "ATTR1"};
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		CSVWriter writer = new CSVWriter(null, columns, stream, ";", true);
+		writer.set("Id", "1");
+		writer.set("ATTR1", "eins");
+		writer.writeRow();
+		writer.flush();
+		Assert.assertEquals("Id;ATTR1\n1;eins\n", stream.toString());
+
+		writer.set("Id", "2");
+		writer.writeRow();
+		writer.close();
+
+		Assert.assertEquals("Id;ATTR1\n1;eins\n2;\n", stream.toString());
+	}
+
+	@Test
+	public void testWriteAsyncGzip() throws IOException {
+		Path file = Files.createTempFile("csvWriterTest", ".csv.gz");
+		int rowCount = 200_000;
+		try (CSVWriter writer = new CSVWriter(null, new String[]{"Id", "VALUE"}, file.toString(), ";", true)) {
+			for (int i = 0; i < rowCount; i++) {
+				writer.set("Id", Integer.toString(i));
+				writer.set("VALUE", Integer.toString(i % 7));
+				writer.writeRow();
+			}
+		}
+
+		// the file consists of several gzip members, which must be read transparently
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file.toFile()))))) {
+			Assert.assertEquals("Id;VALUE", reader.readLine());
+			for (int i = 0; i < rowCount; i++) {
+				Assert.assertEquals(i + ";" + (i % 7), reader.readLine());
+			}
+			Assert.assertNull(reader.readLine());
+		}
+		Files.delete(file);
+	}
+
+	@Test
+	public void testAsyncCloseRethrowsFailure() throws IOException {
+		OutputStream failingStream = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		};
+		CSVWriter writer = new CSVWriter(null, new String[]{"Id"}, failingStream, ";", true);
+		writer.set("Id", "1");
+		writer.writeRow();
+		Assert.assertThrows(IOException.class, writer::close);
+	}
 }
@@ -6,15 +6,30 @@ import ch.sbb.matsim.config.SwissRailRaptorConfigGroup;
 import ch.sbb.matsim.config.variables.SBBModes;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
 import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.config.Config;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.pt.transitSchedule.api.TransitStopFacility;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.matsim.core.config.ConfigUtils.createConfig;
 import static org.matsim.core.scenario.ScenarioUtils.createScenario;
 
 public class GridbasedAccessEgressCacheTest {
 
+    @RegisterExtension
+    public final MatsimTestUtils helper = new MatsimTestUtils();
+
     private static GridbasedAccessEgressCache getGridbasedAccessEgressCache() {
         Config config = createConfig();
         config.global().setNumberOfThreads(1);
@@ -87,5 +102,82 @@ public class GridbasedAccessEgressCacheTest {
 
     }
 
+    @Test
+    public void testCacheFileRoundtrip() {
+        Path file = Path.of(helper.getOutputDirectory(), "gridCache.bin");
+        byte[] key = {1, 2, 3, 4};
+        Id<TransitStopFacility> stopA = Id.create("A", TransitStopFacility.class);
+        Id<TransitStopFacility> stopB = Id.create("B", TransitStopFacility.class);
+        Map<Id<TransitStopFacility>, StopGrid> data = new HashMap<>();
+        data.put(stopA, createGrid(0));
+        data.put(stopB, createGrid(100));
+        GridbasedAccessEgressCacheFile.write(file, key, 8, List.of(stopA, stopB), data);
+
+        Map<Id<TransitStopFacility>, StopGrid> read = GridbasedAccessEgressCacheFile.read(file, key, 8);
+        Assert.assertNotNull(read);
+        Assert.assertEquals(2, read.size());
+        for (Id<TransitStopFacility> stopId : List.of(stopA, stopB)) {
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals(data.get(stopId).getCarTime(i), read.get(stopId).getCarTime(i));
+                Assert.assertEquals(data.get(stopId).getCarDistance(i), read.get(stopId).getCarDistance(i));
+                Assert.assertEquals(data.get(stopId).getBikeTime(i), read.get(stopId).getBikeTime(i));
+                Assert.assertEquals(data.get(stopId).getBikeDistance(i), read.get(stopId).getBikeDistance(i));
+            }
+        }
+
+        Assert.assertNull("a different key must not be accepted", GridbasedAccessEgressCacheFile.read(file, new byte[]{1, 2, 3, 5}, 8));
+        Assert.assertNull("a different grid size must not be accepted", GridbasedAccessEgressCacheFile.read(file, key, 4));
+        Assert.assertNull(GridbasedAccessEgressCacheFile.read(Path.of(helper.getOutputDirectory(), "missing.bin"), key, 8));
+    }
+
+    @Test
+    public void testStopGridEncoding() {
+        StopGrid grid = new StopGrid(3);
+        grid.setCar(0, 120.7, 1500.2);
+        grid.setBike(0, 360, 1400);
+        grid.setCarUnreachable(1);
+        grid.setBikeUnreachable(1);
+        grid.setCar(2, 1e6, 200000);
+        grid.setBike(2, -1, 0);
+
+        Assert.assertEquals(120, grid.getCarTime(0));
+        Assert.assertEquals(1500, grid.getCarDistance(0));
+        Assert.assertEquals(360, grid.getBikeTime(0));
+        Assert.assertEquals(1400, grid.getBikeDistance(0));
+        Assert.assertEquals(StopGrid.UNREACHABLE_TIME, grid.getCarTime(1));
+        Assert.assertEquals(StopGrid.UNREACHABLE_DISTANCE, grid.getCarDistance(1));
+        Assert.assertEquals(StopGrid.UNREACHABLE_TIME, grid.getBikeTime(1));
+        Assert.assertEquals(StopGrid.UNREACHABLE_DISTANCE, grid.getBikeDistance(1));
+        Assert.assertEquals(Character.MAX_VALUE - 1, grid.getCarTime(2));
+        Assert.assertEquals(200000, grid.getCarDistance(2));
+        Assert.assertEquals(0, grid.getBikeTime(2));
+    }
+
+    @Test
+    public void testGridNodeSnapper() {
+        Network network = NetworkUtils.createNetwork();
+        Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+        Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(1000, 0));
+        GridNodeSnapper snapper = new GridNodeSnapper(network, 200, -400, -400, 1400, 400);
+
+        Assert.assertEquals(a, snapper.getNearestNode(new Coord(90, 50)));
+        Assert.assertEquals(a, snapper.getNearestNode(new Coord(-300, 300)));
+        Assert.assertEquals(b, snapper.getNearestNode(new Coord(950, -100)));
+        // cells are snapped to the aligned grid point at (600, 0), which is closer to b
+        Assert.assertEquals(b, snapper.getNearestNode(new Coord(510, 0)));
+        // outside of the covered extent
+        Assert.assertEquals(b, snapper.getNearestNode(new Coord(5000, 5000)));
+    }
+
+    private static StopGrid createGrid(int offset) {
+        StopGrid grid = new StopGrid(8);
+        for (int i = 0; i < 7; i++) {
+            grid.setCar(i, offset + i, offset + 10 * i);
+            grid.setBike(i, offset + 2 * i, offset + 20 * i);
+        }
+        grid.setCarUnreachable(7);
+        grid.setBikeUnreachable(7);
+        return grid;
+    }
 
-}
\ No newline at end of file
+}
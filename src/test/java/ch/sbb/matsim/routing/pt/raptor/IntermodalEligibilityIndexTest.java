@@ -0,0 +1,130 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.config.SBBIntermodalModeParameterSet;
+import ch.sbb.matsim.config.SwissRailRaptorConfigGroup.IntermodalAccessEgressParameterSet;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import java.util.List;
+import java.util.Map;
+
+public class IntermodalEligibilityIndexTest {
+
+	private final PopulationFactory factory = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation().getFactory();
+	private final Coord home = new Coord(1000, 1000);
+	private final Coord work = new Coord(5000, 1000);
+	private final Coord elsewhere = new Coord(9000, 9000);
+
+	@Test
+	public void testPersonAndActivityFilters() {
+		IntermodalAccessEgressParameterSet walk = createParamSet("walk", null, null);
+		IntermodalAccessEgressParameterSet bike = createParamSet("bike", null, null);
+		IntermodalAccessEgressParameterSet car = createParamSet("car", "carAvail", "always");
+		SBBIntermodalModeParameterSet bikeParams = new SBBIntermodalModeParameterSet();
+		bikeParams.setMode("bike");
+		bikeParams.setParamPersonActivityFilterAttribute("bikeActivities");
+
+		IntermodalEligibilityIndex index = new IntermodalEligibilityIndex(List.of(walk, bike, car), Map.of("bike", bikeParams));
+		int walkBit = index.getIndex(walk);
+		int bikeBit = index.getIndex(bike);
+		int carBit = index.getIndex(car);
+		Assert.assertEquals(-1, index.getIndex(createParamSet("walk", null, null)));
+
+		Person person = createPerson("1", "home,work");
+		person.getAttributes().putAttribute("carAvail", "always");
+		person.getAttributes().putAttribute("bikeActivities", "work,");
+
+		long atHome = index.getEligibleParameterSets(person, this.home);
+		Assert.assertTrue(isSet(atHome, walkBit));
+		Assert.assertFalse("bike is only allowed at work activities", isSet(atHome, bikeBit));
+		Assert.assertTrue(isSet(atHome, carBit));
+
+		long atWork = index.getEligibleParameterSets(person, this.work);
+		Assert.assertTrue(isSet(atWork, walkBit));
+		Assert.assertTrue(isSet(atWork, bikeBit));
+		Assert.assertTrue(isSet(atWork, carBit));
+
+		long unknownLocation = index.getEligibleParameterSets(person, this.elsewhere);
+		Assert.assertTrue("activity filters do not apply away from activities", isSet(unknownLocation, bikeBit));
+
+		Person noCar = createPerson("2", "home,work");
+		long noCarAtHome = index.getEligibleParameterSets(noCar, this.home);
+		Assert.assertFalse(isSet(noCarAtHome, carBit));
+		Assert.assertTrue("without activity filter attribute, all activities are allowed", isSet(noCarAtHome, bikeBit));
+	}
+
+	@Test
+	public void testInvalidation() {
+		IntermodalAccessEgressParameterSet bike = createParamSet("bike", null, null);
+		SBBIntermodalModeParameterSet bikeParams = new SBBIntermodalModeParameterSet();
+		bikeParams.setMode("bike");
+		bikeParams.setParamPersonActivityFilterAttribute("bikeActivities");
+		IntermodalEligibilityIndex index = new IntermodalEligibilityIndex(List.of(bike), Map.of("bike", bikeParams));
+
+		Person person = createPerson("1", "home,work");
+		person.getAttributes().putAttribute("bikeActivities", "work");
+		Assert.assertEquals(0L, index.getEligibleParameterSets(person, this.home));
+		Assert.assertEquals(1L, index.getEligibleParameterSets(person, this.work));
+
+		// a newly selected plan is detected automatically
+		Plan plan = createPlan("work,home");
+		person.addPlan(plan);
+		person.setSelectedPlan(plan);
+		Assert.assertEquals(1L, index.getEligibleParameterSets(person, this.home));
+		Assert.assertEquals(0L, index.getEligibleParameterSets(person, this.work));
+
+		// changed activity types in the same plan require an explicit invalidation
+		((Activity) plan.getPlanElements().get(0)).setType("home");
+		((Activity) plan.getPlanElements().get(2)).setType("work");
+		Assert.assertEquals(1L, index.getEligibleParameterSets(person, this.home));
+		IntermodalEligibilityIndex.invalidate(person);
+		Assert.assertEquals(0L, index.getEligibleParameterSets(person, this.home));
+
+		// or happen at the start of the next iteration
+		((Activity) plan.getPlanElements().get(0)).setType("work");
+		Population population = ScenarioUtils.createScenario(ConfigUtils.createConfig()).getPopulation();
+		population.addPerson(person);
+		new IntermodalEligibilityReset(population).notifyIterationStarts(null);
+		Assert.assertEquals(1L, index.getEligibleParameterSets(person, this.home));
+	}
+
+	private static boolean isSet(long mask, int bit) {
+		return (mask & (1L << bit)) != 0;
+	}
+
+	private static IntermodalAccessEgressParameterSet createParamSet(String mode, String personFilterAttribute, String personFilterValue) {
+		IntermodalAccessEgressParameterSet paramSet = new IntermodalAccessEgressParameterSet();
+		paramSet.setMode(mode);
+		paramSet.setMaxRadius(1000);
+		paramSet.setPersonFilterAttribute(personFilterAttribute);
+		paramSet.setPersonFilterValue(personFilterValue);
+		return paramSet;
+	}
+
+	private Person createPerson(String id, String activityTypes) {
+		Person person = this.factory.createPerson(Id.createPersonId(id));
+		Plan plan = createPlan(activityTypes);
+		person.addPlan(plan);
+		person.setSelectedPlan(plan);
+		return person;
+	}
+
+	private Plan createPlan(String activityTypes) {
+		String[] types = activityTypes.split(",");
+		Plan plan = this.factory.createPlan();
+		plan.addActivity(this.factory.createActivityFromCoord(types[0], this.home));
+		plan.addLeg(this.factory.createLeg("pt"));
+		plan.addActivity(this.factory.createActivityFromCoord(types[1], this.work));
+		return plan;
+	}
+
+}
@@ -0,0 +1,177 @@
+package ch.sbb.matsim.routing.pt.raptor;
+
+import ch.sbb.matsim.config.SBBIntermodalConfiggroup;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.core.population.routes.RouteUtils;
+import org.matsim.facilities.Facility;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.vehicles.VehicleUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class SimulatedAccessEgressRouteCacheTest {
+
+	private final Facility home = new TestFacility(Id.createLinkId("home"), new Coord(100, 100));
+	private final Facility stop = new TestFacility(Id.createLinkId("stop"), new Coord(2000, 100));
+
+	@Test
+	public void testCachedPerTimeBin() {
+		SimulatedAccessEgressRouteCache cache = createCache(1000);
+		AtomicInteger routed = new AtomicInteger();
+		Supplier<List<? extends PlanElement>> router = () -> {
+			routed.incrementAndGet();
+			Leg leg = PopulationUtils.createLeg("car_feeder");
+			leg.setDepartureTime(7 * 3600);
+			leg.setTravelTime(300);
+			return List.of(leg);
+		};
+
+		List<? extends PlanElement> first = cache.getRoute("car_feeder", this.stop, this.home, 7 * 3600, true, null, router);
+		Assert.assertEquals(1, routed.get());
+
+		// same time bin: a copy with shifted departure time
+		List<? extends PlanElement> second = cache.getRoute("car_feeder", this.stop, this.home, 7 * 3600 + 60, true, null, router);
+		Assert.assertEquals(1, routed.get());
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertNotSame(first.get(0), second.get(0));
+		Assert.assertEquals(7 * 3600 + 60, ((Leg) second.get(0)).getDepartureTime().seconds(), 1e-9);
+		Assert.assertEquals(300, ((Leg) second.get(0)).getTravelTime().seconds(), 1e-9);
+
+		// modifying a returned route must not change the cache
+		((Leg) second.get(0)).setTravelTime(999);
+		List<? extends PlanElement> third = cache.getRoute("car_feeder", this.stop, this.home, 7 * 3600, true, null, router);
+		Assert.assertEquals(300, ((Leg) third.get(0)).getTravelTime().seconds(), 1e-9);
+
+		// other time bin, other direction
+		cache.getRoute("car_feeder", this.stop, this.home, 8 * 3600, true, null, router);
+		cache.getRoute("car_feeder", this.stop, this.home, 7 * 3600, false, null, router);
+		Assert.assertEquals(3, routed.get());
+		Assert.assertEquals(3, cache.getMisses());
+
+		// cleared at iteration start
+		cache.notifyIterationStarts(null);
+		Assert.assertEquals(0, cache.getHits());
+		cache.getRoute("car_feeder", this.stop, this.home, 7 * 3600, true, null, router);
+		Assert.assertEquals(4, routed.get());
+	}
+
+	@Test
+	public void testCopiedRoutesUseVehicleOfPerson() {
+		SimulatedAccessEgressRouteCache cache = createCache(1000);
+		Person alice = createPerson("alice");
+		Person bob = createPerson("bob");
+		Supplier<List<? extends PlanElement>> router = () -> {
+			Leg leg = PopulationUtils.createLeg("car_feeder");
+			NetworkRoute route = RouteUtils.createLinkNetworkRouteImpl(this.home.getLinkId(), this.stop.getLinkId());
+			route.setVehicleId(Id.createVehicleId("alice_car_feeder"));
+			leg.setRoute(route);
+			return List.of(leg);
+		};
+
+		List<? extends PlanElement> first = cache.getRoute("car_feeder", this.stop, this.home, 7 * 3600, true, alice, router);
+		List<? extends PlanElement> second = cache.getRoute("car_feeder", this.stop, this.home, 7 * 3600, true, bob, router);
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(Id.createVehicleId("alice_car_feeder"), ((NetworkRoute) ((Leg) first.get(0)).getRoute()).getVehicleId());
+		Assert.assertEquals(Id.createVehicleId("bob_car_feeder"), ((NetworkRoute) ((Leg) second.get(0)).getRoute()).getVehicleId());
+	}
+
+	@Test
+	public void testBoundedAndMissingRoutes() {
+		SimulatedAccessEgressRouteCache cache = createCache(64);
+		AtomicInteger routed = new AtomicInteger();
+		for (int i = 0; i < 1000; i++) {
+			Facility activity = new TestFacility(Id.createLinkId("home"), new Coord(i, 0));
+			Assert.assertNull(cache.getRoute("car_feeder", this.stop, activity, 0, true, null, () -> {
+				routed.incrementAndGet();
+				return null;
+			}));
+		}
+		Assert.assertEquals(1000, routed.get());
+		Assert.assertTrue(cache.getEvictions() >= 1000 - 64);
+
+		// missing routes are cached as well
+		Assert.assertNull(cache.getRoute("car_feeder", this.stop, new TestFacility(Id.createLinkId("home"), new Coord(999, 0)), 0, true, null, () -> {
+			routed.incrementAndGet();
+			return null;
+		}));
+		Assert.assertEquals(1000, routed.get());
+	}
+
+	@Test
+	public void testCapacityBelowSegmentCount() {
+		SimulatedAccessEgressRouteCache cache = createCache(4);
+		for (int i = 0; i < 1000; i++) {
+			Facility activity = new TestFacility(Id.createLinkId("home"), new Coord(i, 0));
+			cache.getRoute("car_feeder", this.stop, activity, 0, true, null, List::of);
+		}
+		Assert.assertEquals(1000, cache.getMisses());
+		Assert.assertTrue(cache.getEvictions() >= 1000 - 4);
+	}
+
+	@Test
+	public void testDisabled() {
+		SimulatedAccessEgressRouteCache cache = createCache(0);
+		Assert.assertFalse(cache.isEnabled());
+		AtomicInteger routed = new AtomicInteger();
+		for (int i = 0; i < 2; i++) {
+			cache.getRoute("car_feeder", this.stop, this.home, 0, true, null, () -> {
+				routed.incrementAndGet();
+				return List.of();
+			});
+		}
+		Assert.assertEquals(2, routed.get());
+	}
+
+	private static Person createPerson(String id) {
+		Person person = PopulationUtils.getFactory().createPerson(Id.createPersonId(id));
+		Map<String, Id<Vehicle>> vehicles = Map.of("car_feeder", Id.createVehicleId(id + "_car_feeder"));
+		VehicleUtils.insertVehicleIdsIntoAttributes(person, vehicles);
+		return person;
+	}
+
+	private static SimulatedAccessEgressRouteCache createCache(int capacity) {
+		SBBIntermodalConfiggroup configGroup = new SBBIntermodalConfiggroup();
+		configGroup.setSimulatedAccessEgressRouteCacheCapacity(capacity);
+		configGroup.setSimulatedAccessEgressRouteCacheTimeBin(900);
+		return new SimulatedAccessEgressRouteCache(configGroup, null);
+	}
+
+	private static final class TestFacility implements Facility {
+
+		private final Id<Link> linkId;
+		private final Coord coord;
+
+		TestFacility(Id<Link> linkId, Coord coord) {
+			this.linkId = linkId;
+			this.coord = coord;
+		}
+
+		@Override
+		public Id<Link> getLinkId() {
+			return this.linkId;
+		}
+
+		@Override
+		public Coord getCoord() {
+			return this.coord;
+		}
+
+		@Override
+		public Map<String, Object> getCustomAttributes() {
+			return Map.of();
+		}
+	}
+
+}
@@ -6,6 +6,9 @@ import org.junit.jupiter.api.Test;
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.Random;
 
 /**
  * @author mrieser
@@ -39,4 +42,30 @@ public class ZonesLoaderTest {
 		Assert.assertNotNull(testZones);
 		Assert.assertEquals(5, testZones.size());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testRasterIndexMatchesQuadtree() {
+		ZonesImpl quadtreeZones = (ZonesImpl) ZonesLoader.loadZones("testZones", "src/test/resources/shapefiles/AccessTime/accesstime_zone.shp", "ID");
+		ZonesImpl rasterZones = (ZonesImpl) ZonesLoader.loadZones("testZones", "src/test/resources/shapefiles/AccessTime/accesstime_zone.shp", "ID");
+		rasterZones.setRasterCellSize(50);
+
+		Envelope extent = new Envelope();
+		for (Zone zone : quadtreeZones.getZones()) {
+			extent.expandToInclude(zone.getEnvelope());
+		}
+		extent.expandBy(100);
+		Random random = new Random(4711);
+		int found = 0;
+		for (int i = 0; i < 10000; i++) {
+			double x = extent.getMinX() + random.nextDouble() * extent.getWidth();
+			double y = extent.getMinY() + random.nextDouble() * extent.getHeight();
+			Zone expected = quadtreeZones.findZone(x, y);
+			Zone actual = rasterZones.findZone(x, y);
+			Assert.assertEquals("different zone at " + x + "/" + y, expected == null ? null : expected.getId(), actual == null ? null : actual.getId());
+			if (expected != null) {
+				found++;
+			}
+		}
+		Assert.assertTrue(found > 0);
+	}
+}
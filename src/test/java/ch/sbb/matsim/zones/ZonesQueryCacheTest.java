@@ -87,6 +87,43 @@ public class ZonesQueryCacheTest {
 		Assert.assertEquals("bb", z.getAttribute("-").toString());
 	}
 
+	@Test
+	public void testBoundedCache() {
+		TestZones zones = new TestZones("test");
+		zones.zones.add(new TestZone("A", "aa", 10, 0, 20, 10));
+		zones.zones.add(new TestZone("B", "bb", 50, 0, 70, 10));
+
+		// a capacity of 8 results in a single set of 8 slots
+		BoundedZonesQueryCache cache = new BoundedZonesQueryCache(zones, 8);
+		Assert.assertEquals("aa", cache.findZone(15, 5).getAttribute("-").toString());
+		Assert.assertNull(cache.findZone(95, 15));
+		Assert.assertEquals(2, cache.getMisses());
+		Assert.assertEquals(0, cache.getHits());
+
+		Assert.assertEquals("aa", cache.findZone(15, 5).getAttribute("-").toString());
+		Assert.assertNull(cache.findZone(95, 15));
+		Assert.assertEquals(2, cache.getHits());
+		Assert.assertEquals(0, cache.getEvictions());
+
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals("bb", cache.findZone(51 + i, 5).getAttribute("-").toString());
+		}
+		Assert.assertEquals(4, cache.getEvictions());
+		// the two referenced entries survive the first round of the clock
+		Assert.assertEquals("aa", cache.findZone(15, 5).getAttribute("-").toString());
+		Assert.assertEquals(3, cache.getHits());
+
+		Assert.assertEquals(12, cache.getMisses());
+
+		// a nearest zone query counts once, although it looks up both tables
+		Assert.assertEquals("aa", cache.findNearestZone(15, 13, 4).getAttribute("-").toString());
+		Assert.assertEquals(13, cache.getMisses());
+		Assert.assertEquals("aa", cache.findNearestZone(15, 13, 4).getAttribute("-").toString());
+		Assert.assertNull(cache.findZone(15, 13));
+		Assert.assertEquals(13, cache.getMisses());
+		Assert.assertEquals(5, cache.getHits());
+	}
+
 	private static class TestZones implements Zones {
 
         private final List<Zone> zones = new ArrayList<>();